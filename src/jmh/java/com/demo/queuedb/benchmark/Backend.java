@@ -0,0 +1,47 @@
+package com.demo.queuedb.benchmark;
+
+import com.alibaba.fastjson.JSONObject;
+import com.demo.queuedb.queue.PersistentQueue;
+import com.demo.queuedb.queue.QueueBackends;
+import com.demo.queuedb.queue.QueueSpec;
+
+import java.nio.file.Path;
+
+/**
+ * 基准测试中对比的队列实现，通过QueueBackend按名称打开
+ *
+ * @author lizhiming
+ */
+public enum Backend {
+
+    /**
+     * LMDB
+     */
+    LMDB,
+
+    /**
+     * BDB
+     */
+    BDB,
+
+    /**
+     * 内存映射段文件
+     */
+    SEGMENT;
+
+    /**
+     * LMDB map大小，稀疏文件，只按实际写入占用磁盘
+     */
+    private static final long LMDB_MAP_SIZE = 32L * 1024 * 1024 * 1024;
+
+    /**
+     * 在指定目录打开队列
+     *
+     * @param dir the dir
+     * @return the persistent queue
+     */
+    public PersistentQueue<JSONObject> open(Path dir) {
+        QueueSpec spec = new QueueSpec().setName("bench").setPath(dir.toString()).setMapSize(LMDB_MAP_SIZE);
+        return QueueBackends.get(name()).open(spec, JSONObject.class);
+    }
+}
@@ -0,0 +1,230 @@
+package com.demo.queuedb.benchmark;
+
+import com.alibaba.fastjson.JSONObject;
+import com.demo.queuedb.queue.PersistentQueue;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LMDB与BDB队列的offer/poll基准测试
+ * <p>
+ * 吞吐量与延迟分位数(SampleTime)同时输出，生产者/消费者线程数通过 -t 与 -tg 指定：
+ * <pre>
+ * mvn -P benchmark package
+ * java -jar target/queue-db-1.0-SNAPSHOT-benchmarks.jar QueueBenchmark.offer -t 4 -p backend=LMDB
+ * java -jar target/queue-db-1.0-SNAPSHOT-benchmarks.jar QueueBenchmark.offerPoll -tg 2,4
+ * </pre>
+ * offerPoll分组内方法按名称排序，-tg 的第一个值为消费者(consume)线程数，第二个值为生产者(produce)线程数。
+ *
+ * @author lizhiming
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueueBenchmark {
+
+    /**
+     * 队列实现
+     */
+    @Param({"LMDB", "BDB", "SEGMENT"})
+    public Backend backend;
+
+    /**
+     * 负载大小，字节
+     */
+    @Param({"1024", "102400", "1048576"})
+    public int payloadSize;
+
+    /**
+     * 每次操作的条数，1为单条offer/poll，大于1为offerAll/drainTo
+     */
+    @Param({"1", "32"})
+    public int batchSize;
+
+    /**
+     * 数据目录
+     */
+    private Path dir;
+
+    /**
+     * 队列
+     */
+    private PersistentQueue<JSONObject> queue;
+
+    /**
+     * 单条负载
+     */
+    private JSONObject payload;
+
+    /**
+     * 批量负载
+     */
+    private List<JSONObject> batch;
+
+    /**
+     * Sets up.
+     *
+     * @throws IOException the io exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("queue-db-bench");
+        queue = backend.open(dir);
+        payload = payload(payloadSize);
+        batch = Collections.nCopies(batchSize, payload);
+    }
+
+    /**
+     * 每轮结束后清空队列，避免数据量无限增长
+     */
+    @TearDown(Level.Iteration)
+    public void drain() {
+        List<JSONObject> sink = new ArrayList<>();
+        while (queue.drainTo(sink, 256) > 0) {
+            sink.clear();
+        }
+    }
+
+    /**
+     * Tear down.
+     *
+     * @throws IOException the io exception
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        queue.close();
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    /**
+     * 纯写入
+     *
+     * @return the boolean
+     */
+    @Benchmark
+    public boolean offer() {
+        return write();
+    }
+
+    /**
+     * 生产者
+     *
+     * @return the boolean
+     */
+    @Benchmark
+    @Group("offerPoll")
+    @GroupThreads(1)
+    public boolean produce() {
+        return write();
+    }
+
+    /**
+     * 消费者，空轮询与实际取出条数分别计数
+     *
+     * @param counters the counters
+     * @return the int
+     */
+    @Benchmark
+    @Group("offerPoll")
+    @GroupThreads(1)
+    public int consume(PollCounters counters) {
+        int n;
+        if (batchSize == 1) {
+            n = queue.poll() == null ? 0 : 1;
+        } else {
+            n = queue.drainTo(counters.sink, batchSize);
+            counters.sink.clear();
+        }
+        if (n == 0) {
+            counters.empty++;
+        } else {
+            counters.polled += n;
+        }
+        return n;
+    }
+
+    /**
+     * 写入一次
+     *
+     * @return the boolean
+     */
+    private boolean write() {
+        if (batchSize == 1) {
+            return queue.offer(payload);
+        }
+        return queue.offerAll(batch);
+    }
+
+    /**
+     * 构造指定大小的负载，结构与线上图片消息一致
+     *
+     * @param size the size
+     * @return the json object
+     */
+    static JSONObject payload(int size) {
+        byte[] image = new byte[size];
+        new Random(size).nextBytes(image);
+        JSONObject obj = new JSONObject();
+        obj.put("image", image);
+        return obj;
+    }
+
+    /**
+     * 消费者计数器
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class PollCounters {
+
+        /**
+         * 实际取出的条数
+         */
+        public long polled;
+
+        /**
+         * 空轮询次数
+         */
+        public long empty;
+
+        /**
+         * 批量取出的暂存
+         */
+        final List<JSONObject> sink = new ArrayList<>();
+
+        /**
+         * Reset.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            polled = 0;
+            empty = 0;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.demo.queuedb.autoconfigure;
+
+import com.demo.queuedb.metrics.MicrometerQueueMetrics;
+import com.demo.queuedb.queue.PersistentQueue;
+import com.demo.queuedb.queue.QueueBackend;
+import com.demo.queuedb.queue.QueueBackends;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 命名队列自动配置
+ * 按queue-db.queues.*创建队列，每个队列注册为一个以队列名命名的PersistentQueue bean；
+ * 后端由queue-db.backend或queue-db.queues.名称.backend选择，更换后端只需修改配置
+ *
+ * @author lizhiming
+ */
+@Configuration
+@EnableConfigurationProperties(QueueDbProperties.class)
+public class QueueDbAutoConfiguration {
+
+    /**
+     * 命名队列
+     * 容器中的QueueBackend bean优先于ServiceLoader注册的同名后端；有MeterRegistry且未关闭queue-db.metrics.enabled时注册队列指标
+     *
+     * @param properties      the properties
+     * @param beans           the beans
+     * @param meterRegistries the meter registries
+     * @return the queue registry
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public QueueRegistry queueRegistry(QueueDbProperties properties, ObjectProvider<QueueBackend> beans, ObjectProvider<MeterRegistry> meterRegistries) {
+        List<QueueBackend> backends = new ArrayList<>();
+        beans.orderedStream().forEach(backends::add);
+        backends.addAll(QueueBackends.all());
+        MeterRegistry meterRegistry = properties.getMetrics().isEnabled() ? meterRegistries.getIfAvailable() : null;
+        if (meterRegistry == null) {
+            return new QueueRegistry(properties, backends);
+        }
+        return new QueueRegistry(properties, backends, (name, backend) -> new MicrometerQueueMetrics(meterRegistry, name, backend));
+    }
+
+    /**
+     * 把每个命名队列注册为bean
+     *
+     * @return the queue bean registrar
+     */
+    @Bean
+    public static QueueBeanRegistrar queueBeanRegistrar() {
+        return new QueueBeanRegistrar();
+    }
+
+    /**
+     * 按配置中的队列名注册bean，实例从QueueRegistry获取，生命周期由QueueRegistry管理
+     */
+    public static class QueueBeanRegistrar implements BeanDefinitionRegistryPostProcessor, EnvironmentAware, BeanFactoryAware {
+
+        /**
+         * The Environment.
+         */
+        private Environment environment;
+
+        /**
+         * The Bean factory.
+         */
+        private BeanFactory beanFactory;
+
+        @Override
+        public void setEnvironment(Environment environment) {
+            this.environment = environment;
+        }
+
+        @Override
+        public void setBeanFactory(BeanFactory beanFactory) {
+            this.beanFactory = beanFactory;
+        }
+
+        @Override
+        public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
+            QueueDbProperties properties = Binder.get(environment).bind("queue-db", QueueDbProperties.class).orElseGet(QueueDbProperties::new);
+            properties.getQueues().forEach((name, queue) -> {
+                RootBeanDefinition definition = new RootBeanDefinition(PersistentQueue.class);
+                //按元素类型注入，如PersistentQueue<JSONObject>
+                definition.setTargetType(ResolvableType.forClassWithGenerics(PersistentQueue.class, queue.getType()));
+                definition.setInstanceSupplier(() -> beanFactory.getBean(QueueRegistry.class).get(name));
+                //由QueueRegistry统一关闭
+                definition.setDestroyMethodName("");
+                registry.registerBeanDefinition(name, definition);
+            });
+        }
+
+        @Override
+        public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+            //无需处理
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package com.demo.queuedb.autoconfigure;
+
+import com.alibaba.fastjson.JSONObject;
+import com.demo.queuedb.queue.QueueSpec;
+import com.demo.queuedb.queue.SyncMode;
+import com.demo.queuedb.util.BlockingSupport;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 命名队列配置，前缀queue-db
+ * <pre>
+ * queue-db.backend=lmdb
+ * queue-db.path=/data/queue-db
+ * queue-db.queues.image.backend=segment
+ * queue-db.queues.image.capacity=100000
+ * queue-db.queues.image.properties.segment-size=134217728
+ * queue-db.metrics.enabled=true
+ * </pre>
+ *
+ * @author lizhiming
+ */
+@ConfigurationProperties(prefix = "queue-db")
+public class QueueDbProperties {
+
+    /**
+     * 默认后端：lmdb、bdb、segment
+     */
+    private String backend = "lmdb";
+
+    /**
+     * 默认根目录，队列未指定path时使用 根目录/队列名
+     */
+    private String path = "queue-db";
+
+    /**
+     * 命名队列，key为队列名
+     */
+    private Map<String, Queue> queues = new LinkedHashMap<>();
+
+    /**
+     * 队列指标
+     */
+    private Metrics metrics = new Metrics();
+
+    /**
+     * Gets backend.
+     *
+     * @return the backend
+     */
+    public String getBackend() {
+        return backend;
+    }
+
+    /**
+     * Sets backend.
+     *
+     * @param backend the backend
+     */
+    public void setBackend(String backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Gets path.
+     *
+     * @return the path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Sets path.
+     *
+     * @param path the path
+     */
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Gets queues.
+     *
+     * @return the queues
+     */
+    public Map<String, Queue> getQueues() {
+        return queues;
+    }
+
+    /**
+     * Sets queues.
+     *
+     * @param queues the queues
+     */
+    public void setQueues(Map<String, Queue> queues) {
+        this.queues = queues;
+    }
+
+    /**
+     * Gets metrics.
+     *
+     * @return the metrics
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets metrics.
+     *
+     * @param metrics the metrics
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 队列指标配置
+     */
+    public static class Metrics {
+
+        /**
+         * 容器中有MeterRegistry(引入Actuator)时是否为命名队列注册指标；关闭后读写路径不计时
+         */
+        private boolean enabled = true;
+
+        /**
+         * Is enabled boolean.
+         *
+         * @return the boolean
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets enabled.
+         *
+         * @param enabled the enabled
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * 单个队列的配置
+     */
+    public static class Queue {
+
+        /**
+         * 后端，为空时使用queue-db.backend
+         */
+        private String backend;
+
+        /**
+         * 存储目录，为空时使用 queue-db.path/队列名
+         */
+        private String path;
+
+        /**
+         * 元素类型
+         */
+        private Class<?> type = JSONObject.class;
+
+        /**
+         * LMDB环境大小，默认1GB
+         */
+        private long mapSize = 1024L * 1024 * 1024;
+
+        /**
+         * LMDB最大读事务数
+         */
+        private int readers = 126;
+
+        /**
+         * 刷盘模式
+         */
+        private SyncMode syncMode = SyncMode.NONE;
+
+        /**
+         * PERIODIC模式的刷盘间隔，毫秒；0表示不按时间刷盘
+         */
+        private long syncIntervalMillis = 1000;
+
+        /**
+         * PERIODIC模式下累计多少条未刷盘记录时提前刷盘；0表示只按时间刷盘
+         */
+        private long syncEveryRecords;
+
+        /**
+         * 记录编码，见Codecs
+         */
+        private String codec;
+
+        /**
+         * 容量，默认不限
+         */
+        private int capacity = BlockingSupport.UNBOUNDED;
+
+        /**
+         * 后端特有的配置
+         */
+        private Map<String, String> properties = new LinkedHashMap<>();
+
+        /**
+         * 转换为后端使用的队列规格
+         *
+         * @param name the name
+         * @param root the root
+         * @return the queue spec
+         */
+        public QueueSpec toSpec(String name, QueueDbProperties root) {
+            return new QueueSpec().setName(name)
+                    .setPath(path != null ? path : Paths.get(root.getPath(), name).toString())
+                    .setMapSize(mapSize).setReaders(readers).setSyncMode(syncMode)
+                    .setSyncIntervalMillis(syncIntervalMillis).setSyncEveryRecords(syncEveryRecords).setCodec(codec).setCapacity(capacity)
+                    .setProperties(new LinkedHashMap<>(properties));
+        }
+
+        /**
+         * 实际使用的后端
+         *
+         * @param root the root
+         * @return the string
+         */
+        public String backendOrDefault(QueueDbProperties root) {
+            return backend != null ? backend : root.getBackend();
+        }
+
+        /**
+         * Gets backend.
+         *
+         * @return the backend
+         */
+        public String getBackend() {
+            return backend;
+        }
+
+        /**
+         * Sets backend.
+         *
+         * @param backend the backend
+         */
+        public void setBackend(String backend) {
+            this.backend = backend;
+        }
+
+        /**
+         * Gets path.
+         *
+         * @return the path
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Sets path.
+         *
+         * @param path the path
+         */
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Gets type.
+         *
+         * @return the type
+         */
+        public Class<?> getType() {
+            return type;
+        }
+
+        /**
+         * Sets type.
+         *
+         * @param type the type
+         */
+        public void setType(Class<?> type) {
+            this.type = type;
+        }
+
+        /**
+         * Gets map size.
+         *
+         * @return the map size
+         */
+        public long getMapSize() {
+            return mapSize;
+        }
+
+        /**
+         * Sets map size.
+         *
+         * @param mapSize the map size
+         */
+        public void setMapSize(long mapSize) {
+            this.mapSize = mapSize;
+        }
+
+        /**
+         * Gets readers.
+         *
+         * @return the readers
+         */
+        public int getReaders() {
+            return readers;
+        }
+
+        /**
+         * Sets readers.
+         *
+         * @param readers the readers
+         */
+        public void setReaders(int readers) {
+            this.readers = readers;
+        }
+
+        /**
+         * Gets sync mode.
+         *
+         * @return the sync mode
+         */
+        public SyncMode getSyncMode() {
+            return syncMode;
+        }
+
+        /**
+         * Sets sync mode.
+         *
+         * @param syncMode the sync mode
+         */
+        public void setSyncMode(SyncMode syncMode) {
+            this.syncMode = syncMode;
+        }
+
+        /**
+         * Gets sync interval millis.
+         *
+         * @return the sync interval millis
+         */
+        public long getSyncIntervalMillis() {
+            return syncIntervalMillis;
+        }
+
+        /**
+         * Sets sync interval millis.
+         *
+         * @param syncIntervalMillis the sync interval millis
+         */
+        public void setSyncIntervalMillis(long syncIntervalMillis) {
+            this.syncIntervalMillis = syncIntervalMillis;
+        }
+
+        /**
+         * Gets sync every records.
+         *
+         * @return the sync every records
+         */
+        public long getSyncEveryRecords() {
+            return syncEveryRecords;
+        }
+
+        /**
+         * Sets sync every records.
+         *
+         * @param syncEveryRecords the sync every records
+         */
+        public void setSyncEveryRecords(long syncEveryRecords) {
+            this.syncEveryRecords = syncEveryRecords;
+        }
+
+        /**
+         * Gets codec.
+         *
+         * @return the codec
+         */
+        public String getCodec() {
+            return codec;
+        }
+
+        /**
+         * Sets codec.
+         *
+         * @param codec the codec
+         */
+        public void setCodec(String codec) {
+            this.codec = codec;
+        }
+
+        /**
+         * Gets capacity.
+         *
+         * @return the capacity
+         */
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * Sets capacity.
+         *
+         * @param capacity the capacity
+         */
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Gets properties.
+         *
+         * @return the properties
+         */
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+
+        /**
+         * Sets properties.
+         *
+         * @param properties the properties
+         */
+        public void setProperties(Map<String, String> properties) {
+            this.properties = properties;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.demo.queuedb.autoconfigure;
+
+import com.demo.queuedb.queue.PersistentQueue;
+import com.demo.queuedb.queue.QueueBackend;
+import com.demo.queuedb.queue.QueueMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * 按配置创建的命名队列，随Spring容器关闭
+ *
+ * @author lizhiming
+ */
+public class QueueRegistry implements AutoCloseable {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueueRegistry.class);
+
+    /**
+     * 命名队列
+     */
+    private final Map<String, PersistentQueue<?>> queues = new LinkedHashMap<>();
+
+    /**
+     * 按配置打开所有队列
+     *
+     * @param properties the properties
+     * @param backends   可用的后端
+     */
+    public QueueRegistry(QueueDbProperties properties, List<QueueBackend> backends) {
+        this(properties, backends, (name, backend) -> QueueMetrics.NOOP);
+    }
+
+    /**
+     * 按配置打开所有队列，并为每个队列创建埋点
+     *
+     * @param properties the properties
+     * @param backends   可用的后端
+     * @param metrics    按队列名与后端名创建埋点
+     */
+    public QueueRegistry(QueueDbProperties properties, List<QueueBackend> backends, BiFunction<String, String, QueueMetrics> metrics) {
+        try {
+            properties.getQueues().forEach((name, queue) -> {
+                String backendName = queue.backendOrDefault(properties);
+                QueueBackend backend = backends.stream().filter(b -> b.name().equalsIgnoreCase(backendName)).findFirst()
+                        .orElseThrow(() -> new IllegalArgumentException("unknown queue backend: " + backendName + " for queue " + name));
+                queues.put(name, open(backend, queue, name, properties, metrics.apply(name, backend.name())));
+                LOGGER.info("queue {} opened on {}.", name, backend.name());
+            });
+        } catch (RuntimeException e) {
+            //部分队列打开失败时关闭已打开的队列
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开队列
+     *
+     * @param backend    the backend
+     * @param queue      the queue
+     * @param name       the name
+     * @param properties the properties
+     * @param metrics    the metrics
+     * @return the persistent queue
+     */
+    @SuppressWarnings("unchecked")
+    private PersistentQueue<?> open(QueueBackend backend, QueueDbProperties.Queue queue, String name, QueueDbProperties properties, QueueMetrics metrics) {
+        return backend.open(queue.toSpec(name, properties).setMetrics(metrics), (Class<Serializable>) queue.getType());
+    }
+
+    /**
+     * 获取命名队列
+     *
+     * @param <E>  the type parameter
+     * @param name the name
+     * @return the persistent queue
+     */
+    @SuppressWarnings("unchecked")
+    public <E> PersistentQueue<E> get(String name) {
+        PersistentQueue<?> queue = queues.get(name);
+        if (queue == null) {
+            throw new IllegalArgumentException("unknown queue: " + name);
+        }
+        return (PersistentQueue<E>) queue;
+    }
+
+    /**
+     * 所有队列名
+     *
+     * @return the set
+     */
+    public Set<String> names() {
+        return Collections.unmodifiableSet(queues.keySet());
+    }
+
+    /**
+     * 关闭所有队列
+     */
+    @Override
+    public void close() {
+        queues.forEach((name, queue) -> {
+            try {
+                queue.close();
+            } catch (Exception e) {
+                LOGGER.error("close queue " + name + " fail.", e);
+            }
+        });
+        queues.clear();
+    }
+}
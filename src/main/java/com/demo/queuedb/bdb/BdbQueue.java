@@ -1,12 +1,34 @@
 package com.demo.queuedb.bdb;
 
+import com.demo.queuedb.codec.BlobStore;
+import com.demo.queuedb.codec.Codec;
+import com.demo.queuedb.codec.Codecs;
+import com.demo.queuedb.codec.SpillCodec;
+import com.demo.queuedb.queue.Compactor;
+import com.demo.queuedb.queue.Lease;
+import com.demo.queuedb.queue.LeaseReaper;
+import com.demo.queuedb.queue.PersistentQueue;
+import com.demo.queuedb.queue.QueueMetrics;
+import com.demo.queuedb.queue.QueueStats;
+import com.demo.queuedb.queue.SyncMode;
+import com.demo.queuedb.queue.Syncer;
+import com.demo.queuedb.util.BlockingSupport;
 import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.bind.tuple.LongBinding;
 import com.sleepycat.bind.tuple.TupleBinding;
 import com.sleepycat.collections.StoredSortedMap;
+import com.sleepycat.je.CheckpointConfig;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.DatabaseNotFoundException;
+import com.sleepycat.je.Environment;
 import com.sleepycat.je.EnvironmentConfig;
+import com.sleepycat.je.EnvironmentStats;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.StatsConfig;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,9 +36,18 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.NoSuchElementException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -24,7 +55,7 @@ import java.util.concurrent.atomic.AtomicLong;
  *
  * @param <E> the type parameter
  */
-public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implements Serializable {
+public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implements PersistentQueue<E>, Serializable {
 
     /**
      * logger
@@ -36,6 +67,41 @@ public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implement
      */
     private static final long serialVersionUID = -4175431971478491701L;
 
+    /**
+     * 租约库名后缀
+     */
+    private static final String IN_FLIGHT_DB_SUFFIX = "_inflight";
+
+    /**
+     * 元数据库名后缀
+     */
+    private static final String META_DB_SUFFIX = "_meta";
+
+    /**
+     * 记录编码id的key
+     */
+    private static final String CODEC_KEY = "codec";
+
+    /**
+     * 正常关闭时保存未确认租约数的key，打开时读取后删除；异常退出后没有该key，重新统计
+     */
+    private static final String IN_FLIGHT_COUNT_KEY = "in_flight_count";
+
+    /**
+     * 外置存储目录后缀
+     */
+    private static final String BLOBS_DIR_SUFFIX = "_blobs";
+
+    /**
+     * 每次回收最多重新投递的条数
+     */
+    private static final int REAP_BATCH_SIZE = 1024;
+
+    /**
+     * 批量取出时每次认领的最大记录数，限制一次读入内存的数据量
+     */
+    private static final int DRAIN_BATCH_SIZE = 1024;
+
     /**
      * 数据库环境
      */
@@ -51,6 +117,21 @@ public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implement
      */
     private transient StoredSortedMap<Long, E> queueMap;
 
+    /**
+     * 值序列化绑定，游标批量操作时直接使用
+     */
+    private transient EntryBinding<E> valueBinding;
+
+    /**
+     * 元数据库，保存记录编码id
+     */
+    private transient Database metaDb;
+
+    /**
+     * 大记录外置，未开启时为null
+     */
+    private transient SpillCodec<E> spill;
+
     /**
      * 数据库所在位置
      */
@@ -67,9 +148,75 @@ public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implement
     private AtomicLong tailIndex;
 
     /**
-     * 当前获取的值
+     * 头部指针，消费者通过CAS认领位置，无需全局锁
+     */
+    private AtomicLong headIndex;
+
+    /**
+     * 已获取但尚未写完的指针段的起始位置，用于区分尚未写入的位置与写入失败留下的空洞；
+     * 获取指针段与读取最小写入位置在该集合的锁内进行
+     */
+    private final transient ConcurrentSkipListSet<Long> writing = new ConcurrentSkipListSet<>();
+
+    /**
+     * 容量控制与非空等待
+     */
+    private transient BlockingSupport blocking;
+
+    /**
+     * 租约库，key为租约id，value为8字节deadline加序列化数据
+     */
+    private transient Database inFlightDb;
+
+    /**
+     * 已预留未确认的数量
+     */
+    private transient AtomicLong inFlight;
+
+    /**
+     * 未确认租约的最早deadline下界，早于该时间不遍历租约库；Long.MIN_VALUE表示未知，下次回收时遍历
+     */
+    private final transient AtomicLong nextDeadline = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * 确认与重新投递互斥，保证同一租约只会被其中一方处理
+     */
+    private final transient Object leaseLock = new Object();
+
+    /**
+     * 默认可见性超时，毫秒
+     */
+    private transient long leaseTimeoutMillis;
+
+    /**
+     * 租约回收线程
+     */
+    private transient LeaseReaper leaseReaper;
+
+    /**
+     * 压缩线程，未开启自动压缩时为null
      */
-    private transient volatile E peekItem = null;
+    private transient Compactor compactor;
+
+    /**
+     * 每次写入后刷盘
+     */
+    private transient boolean syncOnWrite;
+
+    /**
+     * 刷盘线程与未刷盘记录的统计
+     */
+    private transient Syncer syncer;
+
+    /**
+     * 队列埋点
+     */
+    private transient QueueMetrics metrics;
+
+    /**
+     * 是否计时，未开启监控时不读取时钟
+     */
+    private transient boolean timed;
 
     /**
      * 构造函数,传入BDB数据库
@@ -80,10 +227,16 @@ public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implement
     public BdbQueue(Database db, Class<E> valueClass) {
         this.queueDb = db;
         this.dbName = db.getDatabaseName();
+        BdbQueueConfig config = new BdbQueueConfig();
+        initMetrics(config);
         //绑定数据库
-        bindDatabase(queueDb, valueClass);
+        bindDatabase(queueDb, valueClass, config);
         //初始化指针
         initIndex();
+        initLeases(config);
+        initSpill();
+        initSyncer(config);
+        bindMetrics();
     }
 
     /**
@@ -94,21 +247,189 @@ public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implement
      * @param valueClass <br>
      */
     public BdbQueue(String dbDir, String dbName, Class<E> valueClass) {
-        this.dbDir = dbDir;
-        this.dbName = dbName;
-        createAndBindDatabase(valueClass);
+        this(new BdbQueueConfig().setDbDir(dbDir).setDbName(dbName), valueClass);
+    }
+
+    /**
+     * 构造函数,按配置创建数据库
+     *
+     * @param config     config
+     * @param valueClass valueClass
+     */
+    public BdbQueue(BdbQueueConfig config, Class<E> valueClass) {
+        this.dbDir = config.getDbDir();
+        this.dbName = config.getDbName();
+        this.syncOnWrite = config.getSyncMode() == SyncMode.SYNC;
+        initMetrics(config);
+        createAndBindDatabase(valueClass, config);
         initIndex();
+        initLeases(config);
+        initSpill();
+        initSyncer(config);
+        bindMetrics();
+    }
+
+    /**
+     * 初始化埋点
+     *
+     * @param config config
+     */
+    private void initMetrics(BdbQueueConfig config) {
+        metrics = config.getMetrics();
+        timed = metrics.isEnabled();
+    }
+
+    /**
+     * 启动定期刷盘线程，PERIODIC以外的模式只统计未刷盘的记录
+     *
+     * @param config config
+     */
+    private void initSyncer(BdbQueueConfig config) {
+        syncer = new Syncer("bdb-sync-" + dbName, config.getSyncMode(), config.getSyncIntervalMillis(), config.getSyncEveryRecords(),
+                this::flushAll, metrics);
+    }
+
+    /**
+     * 队列打开完成后注册指标，已有记录的写入时间未知，按打开时间计
+     */
+    private void bindMetrics() {
+        long head = headIndex.get();
+        metrics.recordAppend(head, size());
+        metrics.recordHead(head);
+        metrics.bind(this);
+    }
+
+    /**
+     * 打开同一环境下的租约库，启动回收线程
+     *
+     * @param config config
+     */
+    private void initLeases(BdbQueueConfig config) {
+        //与队列库使用相同的配置
+        DatabaseConfig dbConfig = queueDb.getConfig();
+        dbConfig.setAllowCreate(true);
+        inFlightDb = queueDb.getEnvironment().openDatabase(null, dbName + IN_FLIGHT_DB_SUFFIX, dbConfig);
+        //租约id即预留时的指针位，尾部指针不能回退到未确认的租约id以下，否则新的预留会覆盖这些租约
+        long leased = lastKey(inFlightDb);
+        if (leased >= tailIndex.get()) {
+            if (headIndex.get() >= tailIndex.get()) {
+                headIndex.set(leased + 1);
+            }
+            tailIndex.set(leased + 1);
+        }
+        //上次运行未确认的租约，超时后由回收线程重新投递
+        inFlight = new AtomicLong(loadInFlightCount());
+        //未确认的记录确认前仍占用容量
+        blocking = new BlockingSupport(config.getCapacity(), longSize() + inFlight.get());
+        leaseTimeoutMillis = config.getLeaseTimeoutMillis();
+        leaseReaper = new LeaseReaper("bdb-lease-reaper-" + dbName, config.getLeaseReapIntervalMillis(), this::redeliverExpired);
+        //压缩线程，清理由je.cleaner.minUtilization控制，无可清理的日志文件时不做任何事
+        if (config.getCompactIntervalMillis() > 0) {
+            compactor = new Compactor("bdb-compactor-" + dbName, config.getCompactIntervalMillis(), config.isCompactIdleOnly(),
+                    () -> tailIndex.get() + headIndex.get(), this::compact);
+        }
+    }
 
+    /**
+     * 读取上次正常关闭时保存的未确认租约数并删除，没有时遍历租约库统计
+     *
+     * @return the long
+     */
+    private long loadInFlightCount() {
+        DatabaseEntry key = new DatabaseEntry(IN_FLIGHT_COUNT_KEY.getBytes(StandardCharsets.UTF_8));
+        DatabaseEntry value = new DatabaseEntry();
+        if (metaDb.get(null, key, value, null) != OperationStatus.SUCCESS) {
+            return inFlightDb.count();
+        }
+        //删除后再异常退出时重新统计，不会使用过期的值
+        metaDb.delete(null, key);
+        metaDb.sync();
+        return LongBinding.entryToLong(value);
+    }
+
+    /**
+     * 保存未确认租约数，下次打开时不需要遍历租约库
+     */
+    private void saveInFlightCount() {
+        DatabaseEntry value = new DatabaseEntry();
+        LongBinding.longToEntry(inFlight.get(), value);
+        metaDb.put(null, new DatabaseEntry(IN_FLIGHT_COUNT_KEY.getBytes(StandardCharsets.UTF_8)), value);
+        metaDb.sync();
+    }
+
+    /**
+     * 扫描队列与租约库中的记录重建外置内容的引用计数，删除没有被引用的外置文件
+     */
+    private void initSpill() {
+        if (spill == null) {
+            return;
+        }
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        //只读取标志与引用
+        value.setPartial(0, 1 + BlobStore.HASH_BYTES, true);
+        try (Cursor cursor = queueDb.openCursor(null, CursorConfig.READ_COMMITTED)) {
+            while (cursor.getNext(key, value, null) == OperationStatus.SUCCESS) {
+                spill.retain(spill.reference(value.getData(), value.getOffset()));
+            }
+        }
+        //跳过8字节deadline
+        value.setPartial(Long.BYTES, 1 + BlobStore.HASH_BYTES, true);
+        try (Cursor cursor = inFlightDb.openCursor(null, CursorConfig.READ_COMMITTED)) {
+            while (cursor.getNext(key, value, null) == OperationStatus.SUCCESS) {
+                spill.retain(spill.reference(value.getData(), value.getOffset()));
+            }
+        }
+        spill.getStore().deleteUnreferenced();
     }
 
     /**
-     * 初始化指针
+     * 初始化指针，由游标定位第一条与最后一条记录，只读取key
      */
     private void initIndex() {
-        if (queueMap.isEmpty()) {
-            tailIndex = new AtomicLong(0);
-        } else {
-            tailIndex = new AtomicLong(queueMap.lastKey() + 1);
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        value.setPartial(0, 0, true);
+        long head = 0;
+        long tail = 0;
+        try (Cursor cursor = queueDb.openCursor(null, CursorConfig.DEFAULT)) {
+            if (cursor.getFirst(key, value, null) == OperationStatus.SUCCESS) {
+                head = LongBinding.entryToLong(key);
+                cursor.getLast(key, value, null);
+                tail = LongBinding.entryToLong(key) + 1;
+            }
+        }
+        headIndex = new AtomicLong(head);
+        tailIndex = new AtomicLong(tail);
+    }
+
+    /**
+     * 库中最后一条记录的key，只读取key
+     *
+     * @param db the db
+     * @return 库为空时返回-1
+     */
+    private static long lastKey(Database db) {
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        value.setPartial(0, 0, true);
+        try (Cursor cursor = db.openCursor(null, CursorConfig.DEFAULT)) {
+            return cursor.getLast(key, value, null) == OperationStatus.SUCCESS ? LongBinding.entryToLong(key) : -1;
+        }
+    }
+
+    /**
+     * 库中是否有记录，只读取第一条的key
+     *
+     * @param db the db
+     * @return the boolean
+     */
+    private static boolean hasRecords(Database db) {
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        value.setPartial(0, 0, true);
+        try (Cursor cursor = db.openCursor(null, CursorConfig.DEFAULT)) {
+            return cursor.getFirst(key, value, null) == OperationStatus.SUCCESS;
         }
     }
 
@@ -118,27 +439,63 @@ public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implement
      *
      * @param db         db
      * @param valueClass valueClass
+     * @param config     config
      */
-    private void bindDatabase(Database db, Class<E> valueClass) {
+    @SuppressWarnings("unchecked")
+    private void bindDatabase(Database db, Class<E> valueClass, BdbQueueConfig config) {
         queueDb = db;
 
-        //使用Kryo序列化
-        EntryBinding<E> valueBinding = new KryoBinding<>(valueClass);
+        //使用队列记录的编码
+        Codec<E> codec = initCodec(valueClass, config);
+        if (codec instanceof SpillCodec) {
+            spill = (SpillCodec<E>) codec;
+        }
+        valueBinding = new CodecBinding<>(codec, config.getMetrics());
         queueMap = new StoredSortedMap<>(db, TupleBinding.getPrimitiveBinding(Long.class), valueBinding, true);
     }
 
+    /**
+     * 读取队列记录的编码，新建队列记录配置的编码
+     *
+     * @param valueClass valueClass
+     * @param config     config
+     * @return the codec
+     */
+    private Codec<E> initCodec(Class<E> valueClass, BdbQueueConfig config) {
+        //与队列库使用相同的配置
+        DatabaseConfig dbConfig = queueDb.getConfig();
+        dbConfig.setAllowCreate(true);
+        metaDb = queueDb.getEnvironment().openDatabase(null, dbName + META_DB_SUFFIX, dbConfig);
+        DatabaseEntry key = new DatabaseEntry(CODEC_KEY.getBytes(StandardCharsets.UTF_8));
+        DatabaseEntry value = new DatabaseEntry();
+        boolean recorded = metaDb.get(null, key, value, null) == OperationStatus.SUCCESS;
+        //旧版本已创建过租约库的队列按已有数据处理
+        boolean hasData = hasRecords(queueDb) || queueDb.getEnvironment().getDatabaseNames().contains(dbName + IN_FLIGHT_DB_SUFFIX);
+        String id = Codecs.resolve(dbName, recorded ? new String(value.getData(), value.getOffset(), value.getSize(), StandardCharsets.UTF_8) : null,
+                SpillCodec.configure(config.getCodec(), config.getSpillThreshold()), hasData);
+        //先创建，编码无效时不记录
+        Codec<E> codec = SpillCodec.create(id, valueClass, () -> new BlobStore(queueDb.getEnvironment().getHome().toPath().resolve(dbName + BLOBS_DIR_SUFFIX),
+                config.getSyncMode() != SyncMode.NONE), config.getSpillThreshold());
+        if (!recorded) {
+            metaDb.put(null, key, new DatabaseEntry(id.getBytes(StandardCharsets.UTF_8)));
+            metaDb.sync();
+        }
+        return codec;
+    }
+
     /**
      * 创建以及绑定数据库
      *
      * @param valueClass valueClass
+     * @param config     config
      */
-    private void createAndBindDatabase(Class<E> valueClass) {
+    private void createAndBindDatabase(Class<E> valueClass, BdbQueueConfig config) {
         Database db;
         try {
             //创建数据库
-            db = createDb();
+            db = createDb(config);
             //绑定数据库
-            bindDatabase(db, valueClass);
+            bindDatabase(db, valueClass, config);
         } catch (Exception e) {
             LOGGER.error("create db failed", e);
             throw e;
@@ -149,14 +506,21 @@ public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implement
     /**
      * 创建数据库
      *
+     * @param config config
      * @return the database
      */
-    private Database createDb() {
+    private Database createDb(BdbQueueConfig config) {
         // 数据库位置
         File envFile = new File(dbDir);
         // 数据库环境配置
         EnvironmentConfig envConfig = new EnvironmentConfig();
         envConfig.setAllowCreate(true);
+        //日志整体利用率低于该值时清理，JE允许的范围为0-90
+        long minUtilization = Math.round((1 - config.getCompactFreeRatio()) * 100);
+        envConfig.setConfigParam(EnvironmentConfig.CLEANER_MIN_UTILIZATION, String.valueOf(Math.max(0, Math.min(90, minUtilization))));
+        if (config.getLogFileMax() > 0) {
+            envConfig.setConfigParam(EnvironmentConfig.LOG_FILE_MAX, String.valueOf(config.getLogFileMax()));
+        }
         dbEnv = new BdbEnvironment(envFile, envConfig);
         // 数据库配置
         DatabaseConfig dbConfig = new DatabaseConfig();
@@ -181,66 +545,784 @@ public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implement
      */
     @Override
     public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, longSize());
+    }
+
+    @Override
+    public long longSize() {
+        return Math.max(0, tailIndex.get() - headIndex.get());
+    }
+
+    /**
+     * 插入值，容量已满时返回false
+     */
+    @Override
+    public boolean offer(E e) {
+        Objects.requireNonNull(e);
+        if (!blocking.tryAcquire(1)) {
+            return false;
+        }
+        enqueue(e);
+        return true;
+    }
+
+    /**
+     * 插入值，容量已满时阻塞等待
+     */
+    @Override
+    public void put(E e) throws InterruptedException {
+        Objects.requireNonNull(e);
+        blocking.acquire(1);
+        enqueue(e);
+    }
+
+    /**
+     * 插入值，容量已满时最多等待timeout
+     */
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(e);
+        if (!blocking.tryAcquire(1, timeout, unit)) {
+            return false;
+        }
+        enqueue(e);
+        return true;
+    }
+
+    /**
+     * 已获取容量许可后写入，失败时归还许可
+     *
+     * @param e the e
+     */
+    private void enqueue(E e) {
+        long start = timed ? System.nanoTime() : 0L;
+        long targetIndex = claimIndex(1);
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
         try {
-            return Math.max(0,
-                    (int) (tailIndex.get()
-                            - queueMap.firstKey()));
-        } catch (IllegalStateException | NoSuchElementException | NullPointerException ise) {
-            return 0;
+            LongBinding.longToEntry(targetIndex, key);
+            valueBinding.objectToEntry(e, value);
+            queueDb.put(null, key, value);
+        } catch (RuntimeException ex) {
+            //未写入，释放编码时增加的外置引用
+            releaseSpilled(value);
+            blocking.release(1);
+            throw ex;
+        } finally {
+            writing.remove(targetIndex);
+        }
+        afterWrite(1);
+        blocking.signalNotEmpty();
+        if (timed) {
+            metrics.recordAppend(targetIndex, 1);
+            metrics.recordOffer(System.nanoTime() - start, 1);
+        }
+    }
+
+    /**
+     * 写入失败时释放编码时外置内容增加的引用
+     *
+     * @param value 编码结果，编码失败时没有数据
+     */
+    private void releaseSpilled(DatabaseEntry value) {
+        if (spill != null && value.getData() != null) {
+            spill.release(spill.reference(value.getData(), value.getOffset()));
+        }
+    }
+
+    /**
+     * 按刷盘模式在写入后刷盘，或计入未刷盘的记录
+     *
+     * @param count 本次写入的记录数
+     */
+    private void afterWrite(int count) {
+        if (syncOnWrite) {
+            flush(queueDb);
         }
+        syncer.written(count);
     }
 
     /**
-     * 插入值
+     * 刷盘，开启监控时记录耗时
+     *
+     * @param db the db
+     */
+    private void flush(Database db) {
+        if (!timed) {
+            db.sync();
+            return;
+        }
+        long start = System.nanoTime();
+        db.sync();
+        metrics.recordCommit(System.nanoTime() - start);
+    }
+
+    /**
+     * 批量插入值，通过一个游标顺序追加
+     *
+     * @param items the items
+     * @return the boolean
      */
     @Override
-    public boolean offer(E e) {
-        long targetIndex = tailIndex.getAndIncrement();
-        queueMap.put(targetIndex, e);
+    public boolean offerAll(Collection<? extends E> items) {
+        items.forEach(Objects::requireNonNull);
+        if (items.isEmpty()) {
+            return true;
+        }
+        //整批获取容量许可，不足时整批拒绝
+        if (!blocking.tryAcquire(items.size())) {
+            return false;
+        }
+        long start = timed ? System.nanoTime() : 0L;
+        //一次性获取一段连续的指针位
+        long firstIndex = claimIndex(items.size());
+        long targetIndex = firstIndex;
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        try (Cursor cursor = queueDb.openCursor(null, CursorConfig.DEFAULT)) {
+            for (E item : items) {
+                LongBinding.longToEntry(targetIndex++, key);
+                valueBinding.objectToEntry(item, value);
+                try {
+                    cursor.put(key, value);
+                } catch (RuntimeException e) {
+                    //已写入的记录持有各自的引用，只释放未写入的这一条
+                    releaseSpilled(value);
+                    throw e;
+                }
+            }
+        } catch (RuntimeException e) {
+            blocking.release(items.size());
+            throw e;
+        } finally {
+            writing.remove(firstIndex);
+        }
+        afterWrite(items.size());
+        blocking.signalNotEmpty();
+        if (timed) {
+            metrics.recordAppend(firstIndex, items.size());
+            metrics.recordOffer(System.nanoTime() - start, items.size());
+        }
         return true;
     }
 
     /**
-     * 从头部获取值，将删除的值保存在peekItem
+     * 批量从头部获取值并删除，最多取出maxElements条
+     * 按DRAIN_BATCH_SIZE分批认领，每批一次游标遍历读取头部连续的记录，通过CAS一次认领整段位置后再删除
+     *
+     * @param c           the c
+     * @param maxElements the max elements
+     * @return 实际取出的数量
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int total = 0;
+        while (total < maxElements) {
+            int n = drainBatch(c, Math.min(DRAIN_BATCH_SIZE, maxElements - total));
+            if (n == 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * 认领并取出头部最多maxElements条连续的记录
+     *
+     * @param c           the c
+     * @param maxElements 不超过DRAIN_BATCH_SIZE
+     * @return 实际取出的数量
+     */
+    private int drainBatch(Collection<? super E> c, int maxElements) {
+        long start = timed ? System.nanoTime() : 0L;
+        DatabaseEntry key = new DatabaseEntry();
+        List<DatabaseEntry> values = new ArrayList<>(maxElements);
+        long head = claimHead(key, values, maxElements);
+        if (head < 0) {
+            return 0;
+        }
+        //删除已认领的记录
+        deleteRange(head, values.size());
+        //归还容量
+        blocking.release(values.size());
+        for (DatabaseEntry value : values) {
+            c.add(valueBinding.entryToObject(value));
+            release(value);
+        }
+        if (timed) {
+            metrics.recordHead(head + values.size());
+            metrics.recordPoll(System.nanoTime() - start, values.size());
+        }
+        return values.size();
+    }
+
+    /**
+     * 读取头部最多maxElements条连续的记录，通过CAS一次认领整段位置
+     *
+     * @param key         the key
+     * @param values      返回已认领的记录
+     * @param maxElements the max elements
+     * @return 认领的起始指针，没有可读的记录时返回-1
+     */
+    private long claimHead(DatabaseEntry key, List<DatabaseEntry> values, int maxElements) {
+        long head;
+        do {
+            values.clear();
+            head = locateHead(key, new DatabaseEntry());
+            if (head < 0) {
+                return -1;
+            }
+            //从头部开始读取连续的记录
+            try (Cursor cursor = queueDb.openCursor(null, CursorConfig.DEFAULT)) {
+                DatabaseEntry value = new DatabaseEntry();
+                OperationStatus status = cursor.getSearchKey(key, value, null);
+                while (status == OperationStatus.SUCCESS && values.size() < maxElements
+                        && LongBinding.entryToLong(key) == head + values.size()) {
+                    values.add(value);
+                    value = new DatabaseEntry();
+                    status = cursor.getNext(key, value, null);
+                }
+            }
+            //认领失败说明被其他消费者取走，重新定位
+        } while (values.isEmpty() || !headIndex.compareAndSet(head, head + values.size()));
+        return head;
+    }
+
+    /**
+     * 预留头部数据，使用默认可见性超时
+     *
+     * @return 队列为空时返回null
+     */
+    public Lease<E> reserve() {
+        return reserve(leaseTimeoutMillis);
+    }
+
+    /**
+     * 预留头部数据，记录移入租约库，超时前未确认则重新投递
+     *
+     * @param visibilityMillis 可见性超时
+     * @return 队列为空时返回null
+     */
+    public Lease<E> reserve(long visibilityMillis) {
+        List<Lease<E>> leases = reserve(1, visibilityMillis);
+        return leases.isEmpty() ? null : leases.get(0);
+    }
+
+    /**
+     * 批量预留头部数据，通过一个游标写入租约库，一次最多预留DRAIN_BATCH_SIZE条
+     *
+     * @param maxElements      the max elements
+     * @param visibilityMillis 可见性超时
+     * @return the list
+     */
+    public List<Lease<E>> reserve(int maxElements, long visibilityMillis) {
+        if (maxElements <= 0) {
+            return new ArrayList<>(0);
+        }
+        long start = timed ? System.nanoTime() : 0L;
+        DatabaseEntry key = new DatabaseEntry();
+        //一次最多认领DRAIN_BATCH_SIZE条，调用方可继续预留剩余部分
+        int batch = Math.min(maxElements, DRAIN_BATCH_SIZE);
+        List<DatabaseEntry> values = new ArrayList<>(batch);
+        long head = claimHead(key, values, batch);
+        if (head < 0) {
+            return new ArrayList<>(0);
+        }
+        long deadline = System.currentTimeMillis() + visibilityMillis;
+        //先写入租约库再删除，中途宕机时记录至少保留一份
+        try (Cursor cursor = inFlightDb.openCursor(null, CursorConfig.DEFAULT)) {
+            DatabaseEntry leaseValue = new DatabaseEntry();
+            for (int i = 0; i < values.size(); i++) {
+                byte[] data = values.get(i).getData();
+                ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + data.length);
+                buffer.putLong(deadline).put(data);
+                LongBinding.longToEntry(head + i, key);
+                leaseValue.setData(buffer.array());
+                //租约id不应重复，重复说明指针被回退过，不能覆盖未确认的租约
+                if (cursor.putNoOverwrite(key, leaseValue) != OperationStatus.SUCCESS) {
+                    throw new IllegalStateException("bdb lease id already in flight: " + (head + i));
+                }
+            }
+        }
+        //写入租约库之后再更新，回收线程遍历前已写入的租约不会被漏掉
+        nextDeadline.accumulateAndGet(deadline, Math::min);
+        if (syncOnWrite) {
+            //租约落盘后再删除队列中的记录
+            flush(inFlightDb);
+        }
+        inFlight.addAndGet(values.size());
+        deleteRange(head, values.size());
+        //确认前不归还容量
+        List<Lease<E>> leases = new ArrayList<>(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            leases.add(new Lease<>(head + i, valueBinding.entryToObject(values.get(i)), deadline));
+        }
+        if (timed) {
+            metrics.recordHead(head + values.size());
+            metrics.recordPoll(System.nanoTime() - start, values.size());
+        }
+        return leases;
+    }
+
+    /**
+     * 确认处理完成，删除租约
+     *
+     * @param id the id
+     * @return 租约已超时被重新投递或已确认时返回false
+     */
+    public boolean ack(long id) {
+        return ack(Collections.singletonList(id)) == 1;
+    }
+
+    /**
+     * 批量确认
+     *
+     * @param ids the ids
+     * @return 实际确认的数量
+     */
+    public int ack(Collection<Long> ids) {
+        int acked = 0;
+        DatabaseEntry key = new DatabaseEntry();
+        List<byte[]> references = new ArrayList<>(0);
+        synchronized (leaseLock) {
+            for (Long id : ids) {
+                LongBinding.longToEntry(id, key);
+                if (spill != null) {
+                    //删除前取出外置内容的引用，跳过8字节deadline
+                    DatabaseEntry value = new DatabaseEntry();
+                    value.setPartial(Long.BYTES, 1 + BlobStore.HASH_BYTES, true);
+                    if (inFlightDb.get(null, key, value, null) == OperationStatus.SUCCESS) {
+                        references.add(spill.reference(value.getData(), value.getOffset()));
+                    }
+                }
+                if (inFlightDb.delete(null, key) == OperationStatus.SUCCESS) {
+                    acked++;
+                }
+            }
+        }
+        for (byte[] reference : references) {
+            spill.release(reference);
+        }
+        inFlight.addAndGet(-acked);
+        //归还容量
+        blocking.release(acked);
+        return acked;
+    }
+
+    /**
+     * 退回租约，记录立即重新投递到队列尾部
+     *
+     * @param id the id
+     * @return 租约已超时被重新投递或已确认时返回false
+     */
+    public boolean nack(long id) {
+        return nack(Collections.singletonList(id)) == 1;
+    }
+
+    /**
+     * 批量退回
+     *
+     * @param ids the ids
+     * @return 实际退回的数量
+     */
+    public int nack(Collection<Long> ids) {
+        return requeue(ids);
+    }
+
+    /**
+     * 重新投递deadline不晚于now的租约，由回收线程调用
+     * 最早deadline未到时不遍历租约库；遍历时顺便计算剩余租约的最早deadline
+     *
+     * @param now the now
+     * @return 重新投递的数量
+     */
+    private int redeliverExpired(long now) {
+        if (inFlight.get() == 0 || now < nextDeadline.get()) {
+            return 0;
+        }
+        //遍历期间新预留的租约通过accumulateAndGet并入
+        nextDeadline.set(Long.MAX_VALUE);
+        long earliest = Long.MAX_VALUE;
+        List<Long> expired = new ArrayList<>();
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        //只读取deadline
+        value.setPartial(0, Long.BYTES, true);
+        try (Cursor cursor = inFlightDb.openCursor(null, CursorConfig.READ_COMMITTED)) {
+            OperationStatus status = cursor.getFirst(key, value, null);
+            while (status == OperationStatus.SUCCESS && expired.size() < REAP_BATCH_SIZE) {
+                long deadline = ByteBuffer.wrap(value.getData(), value.getOffset(), Long.BYTES).getLong();
+                if (deadline <= now) {
+                    expired.add(LongBinding.entryToLong(key));
+                } else {
+                    earliest = Math.min(earliest, deadline);
+                }
+                status = cursor.getNext(key, value, null);
+            }
+            if (status == OperationStatus.SUCCESS) {
+                //超过单次回收条数，剩余部分下次继续遍历
+                earliest = Long.MIN_VALUE;
+            }
+        } catch (RuntimeException e) {
+            nextDeadline.set(Long.MIN_VALUE);
+            throw e;
+        }
+        nextDeadline.accumulateAndGet(earliest, Math::min);
+        try {
+            return requeue(expired);
+        } catch (RuntimeException e) {
+            //未移回的租约下次重新遍历
+            nextDeadline.set(Long.MIN_VALUE);
+            throw e;
+        }
+    }
+
+    /**
+     * 把租约库中的记录移回队列尾部，已确认的id跳过
+     * 先追加到队列再删除租约，中途宕机时记录至少保留一份
+     *
+     * @param ids the ids
+     * @return 实际移回的数量
+     */
+    private int requeue(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<DatabaseEntry> keys = new ArrayList<>(ids.size());
+        List<byte[]> payloads = new ArrayList<>(ids.size());
+        long firstIndex;
+        synchronized (leaseLock) {
+            for (Long id : ids) {
+                DatabaseEntry key = new DatabaseEntry();
+                DatabaseEntry value = new DatabaseEntry();
+                LongBinding.longToEntry(id, key);
+                if (inFlightDb.get(null, key, value, null) == OperationStatus.SUCCESS) {
+                    keys.add(key);
+                    payloads.add(Arrays.copyOfRange(value.getData(), Long.BYTES, value.getSize()));
+                }
+            }
+            if (keys.isEmpty()) {
+                return 0;
+            }
+            firstIndex = claimIndex(payloads.size());
+            long targetIndex = firstIndex;
+            try (Cursor cursor = queueDb.openCursor(null, CursorConfig.DEFAULT)) {
+                DatabaseEntry key = new DatabaseEntry();
+                for (byte[] payload : payloads) {
+                    LongBinding.longToEntry(targetIndex++, key);
+                    cursor.put(key, new DatabaseEntry(payload));
+                }
+            } finally {
+                writing.remove(firstIndex);
+            }
+            for (DatabaseEntry key : keys) {
+                inFlightDb.delete(null, key);
+            }
+        }
+        inFlight.addAndGet(-keys.size());
+        afterWrite(keys.size());
+        blocking.signalNotEmpty();
+        metrics.recordAppend(firstIndex, keys.size());
+        return keys.size();
+    }
+
+    /**
+     * 已预留未确认的数量
+     *
+     * @return the long
+     */
+    public long inFlightSize() {
+        return inFlight.get();
+    }
+
+    /**
+     * 取出当前所有数据
+     *
+     * @param c the c
+     * @return 实际取出的数量
+     */
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        //只取调用时已有的数据，避免生产者持续写入时无法返回
+        long available = longSize();
+        int total = 0;
+        while (total < available) {
+            int n = drainTo(c, (int) Math.min(DRAIN_BATCH_SIZE, available - total));
+            if (n == 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * 从头部获取值并删除，队列为空时阻塞等待
+     */
+    @Override
+    public E take() throws InterruptedException {
+        for (; ; ) {
+            E head = poll();
+            if (head != null) {
+                return head;
+            }
+            blocking.awaitNotEmpty(this::isEmpty, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 从头部获取值并删除，队列为空时最多等待timeout
      */
     @Override
-    public synchronized E peek() {
-        if (peekItem == null) {
-            if (queueMap.isEmpty()) {
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (; ; ) {
+            E head = poll();
+            if (head != null) {
+                return head;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !blocking.awaitNotEmpty(this::isEmpty, remaining)) {
                 return null;
             }
-            peekItem = queueMap.remove(queueMap.firstKey());
         }
-        return peekItem;
     }
 
     /**
-     * 从头部获取值,并删除当前值
+     * 剩余容量
      */
     @Override
-    public synchronized E poll() {
-        E head = peek();
-        peekItem = null;
-        return head;
+    public int remainingCapacity() {
+        return blocking.remainingCapacity();
+    }
+
+    /**
+     * 获取一段连续的指针位并登记为写入中，写完后需从writing中移除
+     *
+     * @param n 条数
+     * @return 起始指针
+     */
+    private long claimIndex(int n) {
+        synchronized (writing) {
+            long first = tailIndex.getAndAdd(n);
+            writing.add(first);
+            return first;
+        }
     }
 
+    /**
+     * 仍在写入的最小指针，小于该位置的指针都已写完(成功或失败)；没有写入中的指针时为尾部指针
+     *
+     * @return the long
+     */
+    private long lowestWriting() {
+        synchronized (writing) {
+            return writing.isEmpty() ? tailIndex.get() : writing.first();
+        }
+    }
+
+    /**
+     * 定位头部记录，跳过写入失败留下的空洞；空洞只按最小写入中的指针判断，与其他位置是否在写入无关
+     *
+     * @param key   返回头部记录的key
+     * @param value 返回头部记录的值
+     * @return 头部指针，没有可读的记录时返回-1
+     */
+    private long locateHead(DatabaseEntry key, DatabaseEntry value) {
+        for (; ; ) {
+            long head = headIndex.get();
+            long tail = tailIndex.get();
+            if (head >= tail) {
+                return -1;
+            }
+            LongBinding.longToEntry(head, key);
+            if (queueDb.get(null, key, value, null) == OperationStatus.SUCCESS) {
+                return head;
+            }
+            if (headIndex.get() != head) {
+                //已被其他消费者取走
+                continue;
+            }
+            long lowest = lowestWriting();
+            if (head >= lowest) {
+                //头部位置仍在写入中
+                return -1;
+            }
+            //写入失败留下的空洞，移动到下一条存在的记录，不越过仍在写入的位置；
+            //读取后才写完的记录会被nextIndex找到，头指针不变
+            headIndex.compareAndSet(head, nextIndex(head, lowest));
+        }
+    }
+
+    /**
+     * 查找大于等于index的第一条记录
+     *
+     * @param index the index
+     * @param tail  没有记录时返回的位置，结果不超过该位置
+     * @return the long
+     */
+    private long nextIndex(long index, long tail) {
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        value.setPartial(0, 0, true);
+        LongBinding.longToEntry(index, key);
+        try (Cursor cursor = queueDb.openCursor(null, CursorConfig.DEFAULT)) {
+            if (cursor.getSearchKeyRange(key, value, null) == OperationStatus.SUCCESS) {
+                return Math.min(LongBinding.entryToLong(key), tail);
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * 通过一次游标遍历删除从start开始的n条记录
+     *
+     * @param start the start
+     * @param n     the n
+     */
+    private void deleteRange(long start, int n) {
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        value.setPartial(0, 0, true);
+        LongBinding.longToEntry(start, key);
+        try (Cursor cursor = queueDb.openCursor(null, CursorConfig.DEFAULT)) {
+            OperationStatus status = cursor.getSearchKey(key, value, null);
+            for (int i = 0; i < n && status == OperationStatus.SUCCESS; i++) {
+                cursor.delete();
+                status = cursor.getNext(key, value, null);
+            }
+        }
+    }
+
+    /**
+     * 读取头部值，不删除
+     */
     @Override
-    public boolean isEmpty() {
-        if (peekItem != null) {
-            return false;
+    public E peek() {
+        if (!timed) {
+            return readHead();
         }
+        long start = System.nanoTime();
         try {
-            return queueMap.isEmpty();
-        } catch (IllegalStateException de) {
+            return readHead();
+        } finally {
+            metrics.recordPeek(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 读取头部值，不删除
+     *
+     * @return the e
+     */
+    private E readHead() {
+        DatabaseEntry value = new DatabaseEntry();
+        for (; ; ) {
+            long head = locateHead(new DatabaseEntry(), value);
+            if (head < 0) {
+                return null;
+            }
+            try {
+                return valueBinding.entryToObject(value);
+            } catch (IllegalStateException e) {
+                //外置内容已被并发取出的消费者删除，重新定位头部
+                if (headIndex.get() == head) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录已被取出，释放外置内容的引用
+     *
+     * @param value the value
+     */
+    private void release(DatabaseEntry value) {
+        if (spill != null) {
+            spill.release(spill.reference(value.getData(), value.getOffset()));
+        }
+    }
+
+    /**
+     * 从头部获取值,并删除当前值
+     * 通过CAS认领头部位置，多个消费者可以并发获取
+     */
+    @Override
+    public E poll() {
+        long start = timed ? System.nanoTime() : 0L;
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        for (; ; ) {
+            long head = locateHead(key, value);
+            if (head < 0) {
+                return null;
+            }
+            if (headIndex.compareAndSet(head, head + 1)) {
+                queueDb.delete(null, key);
+                //归还容量
+                blocking.release(1);
+                E item = valueBinding.entryToObject(value);
+                release(value);
+                if (timed) {
+                    metrics.recordHead(head + 1);
+                    metrics.recordPoll(System.nanoTime() - start, 1);
+                }
+                return item;
+            }
+        }
+    }
+
+    /**
+     * 是否没有可读的记录，与poll/peek的结果一致：头部位置仍在写入中时为true，空洞会被跳过
+     *
+     * @return the boolean
+     */
+    @Override
+    public boolean isEmpty() {
+        if (headIndex.get() >= tailIndex.get()) {
             return true;
         }
+        DatabaseEntry value = new DatabaseEntry();
+        //只判断是否存在
+        value.setPartial(0, 0, true);
+        return locateHead(new DatabaseEntry(), value) < 0;
     }
 
     /**
      * 关闭所用的BDB数据库但不关闭数据库环境。
      */
-    private void close() {
+    private void closeDb() {
+        if (blocking != null) {
+            //唤醒等待中的生产者与消费者
+            blocking.close();
+        }
+        if (compactor != null) {
+            compactor.close();
+        }
+        if (leaseReaper != null) {
+            leaseReaper.close();
+        }
+        if (syncer != null) {
+            syncer.close();
+        }
+        if (metrics != null) {
+            metrics.unbind(this);
+        }
         try {
+            if (inFlightDb != null) {
+                inFlightDb.sync();
+                inFlightDb.close();
+            }
+            if (metaDb != null) {
+                if (inFlight != null) {
+                    saveInFlightCount();
+                }
+                metaDb.close();
+            }
             if (queueDb != null) {
                 //同步写入
                 queueDb.sync();
@@ -252,13 +1334,21 @@ public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implement
         }
     }
 
+    /**
+     * 关闭队列，同closeDbAndEnv()
+     */
+    @Override
+    public void close() {
+        closeDbAndEnv();
+    }
+
     /**
      * 关闭所用的BDB数据库 同时关闭数据库环境。
      */
     public void closeDbAndEnv() {
         try {
             //闭所用的BDB数据库但不关闭数据库环境。
-            close();
+            closeDb();
             if (dbEnv != null && queueDb != null) {
                 //关闭数据库环境
                 dbEnv.close();
@@ -269,13 +1359,13 @@ public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implement
     }
 
     /**
-     * 清理,会清空数据库,并且删掉数据库所在目录,慎用.如果想保留数据,请调用close()
+     * 清理,会清空数据库,并且删掉数据库所在目录,慎用.如果想保留数据,请调用close()或closeDbAndEnv()
      */
     @Override
     public void clear() {
         try {
             //关闭所用的BDB数据库但不关闭数据库环境。
-            close();
+            closeDb();
             if (dbEnv != null && queueDb != null) {
                 //清空数据
                 if (dbName == null) {
@@ -283,6 +1373,8 @@ public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implement
                 } else {
                     dbEnv.removeDatabase(null, dbName);
                 }
+                dbEnv.removeDatabase(null, dbName + IN_FLIGHT_DB_SUFFIX);
+                dbEnv.removeDatabase(null, dbName + META_DB_SUFFIX);
                 //关闭环境
                 dbEnv.close();
             }
@@ -300,11 +1392,78 @@ public class BdbQueue<E extends Serializable> extends AbstractQueue<E> implement
         }
     }
 
+    /**
+     * Stats queue stats.
+     *
+     * @return the queue stats
+     */
+    @Override
+    public QueueStats stats() {
+        return new QueueStats(longSize(), inFlight.get(), blocking.remainingCapacity());
+    }
+
     /**
      * Sync.
      */
+    @Override
     public void sync() {
+        syncer.sync();
+    }
+
+    /**
+     * 队列库与租约库刷盘
+     */
+    private void flushAll() {
+        flush(queueDb);
+        flush(inFlightDb);
+    }
+
+    @Override
+    public long unsyncedRecords() {
+        return syncer.unsyncedRecords();
+    }
+
+    @Override
+    public long unsyncedAgeNanos() {
+        return syncer.unsyncedAgeNanos();
+    }
+
+    /**
+     * 在线回收日志空间：刷盘后反复执行JE日志清理，直到没有利用率低于je.cleaner.minUtilization的日志文件，
+     * 再强制检查点删除已清理的文件；读写不停止
+     *
+     * @return 清理了日志文件返回true
+     */
+    @Override
+    public boolean compact() {
+        Environment env = queueDb.getEnvironment();
+        //延迟写入的库刷盘后，已删除的记录才在日志中标记为过期
         queueDb.sync();
+        inFlightDb.sync();
+        metaDb.sync();
+        int cleaned = 0;
+        int files;
+        while ((files = env.cleanLog()) > 0) {
+            cleaned += files;
+        }
+        if (cleaned == 0) {
+            return false;
+        }
+        //检查点之后才会删除已清理的日志文件
+        CheckpointConfig checkpoint = new CheckpointConfig();
+        checkpoint.setForce(true);
+        env.checkpoint(checkpoint);
+        LOGGER.info("bdb {} compacted, {} log files cleaned.", dbName, cleaned);
+        return true;
+    }
+
+    /**
+     * JE环境统计，包含日志大小等需要完整统计的项，频繁读取时由调用方缓存
+     *
+     * @return the environment stats
+     */
+    public EnvironmentStats environmentStats() {
+        return queueDb.getEnvironment().getStats(new StatsConfig().setFast(false));
     }
 
 }
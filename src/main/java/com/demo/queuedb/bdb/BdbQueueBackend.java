@@ -0,0 +1,48 @@
+package com.demo.queuedb.bdb;
+
+import com.demo.queuedb.queue.PersistentQueue;
+import com.demo.queuedb.queue.QueueBackend;
+import com.demo.queuedb.queue.QueueSpec;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * BDB队列后端
+ * 特有配置：lease.timeout-ms、lease.reap-interval-ms、spill-threshold、
+ * compaction.interval-ms、compaction.free-ratio、compaction.idle-only、log-file-max
+ *
+ * @author lizhiming
+ */
+public class BdbQueueBackend implements QueueBackend {
+
+    @Override
+    public String name() {
+        return "bdb";
+    }
+
+    @Override
+    public <E extends Serializable> PersistentQueue<E> open(QueueSpec spec, Class<E> type) {
+        try {
+            //确认存在文件夹
+            Files.createDirectories(Paths.get(spec.getPath()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        BdbQueueConfig defaults = new BdbQueueConfig();
+        BdbQueueConfig config = new BdbQueueConfig().setDbDir(spec.getPath()).setDbName(spec.getName())
+                .setCapacity(spec.getCapacity()).setSyncMode(spec.getSyncMode())
+                .setSyncIntervalMillis(spec.getSyncIntervalMillis()).setSyncEveryRecords(spec.getSyncEveryRecords()).setCodec(spec.getCodec()).setMetrics(spec.getMetrics())
+                .setLeaseTimeoutMillis(spec.getLong("lease.timeout-ms", defaults.getLeaseTimeoutMillis()))
+                .setLeaseReapIntervalMillis(spec.getLong("lease.reap-interval-ms", defaults.getLeaseReapIntervalMillis()))
+                .setCompactIntervalMillis(spec.getLong("compaction.interval-ms", defaults.getCompactIntervalMillis()))
+                .setCompactFreeRatio(spec.getDouble("compaction.free-ratio", defaults.getCompactFreeRatio()))
+                .setCompactIdleOnly(spec.getBoolean("compaction.idle-only", defaults.isCompactIdleOnly()))
+                .setLogFileMax(spec.getLong("log-file-max", defaults.getLogFileMax()))
+                .setSpillThreshold(spec.getInt("spill-threshold", defaults.getSpillThreshold()));
+        return new BdbQueue<>(config, type);
+    }
+}
@@ -0,0 +1,388 @@
+package com.demo.queuedb.bdb;
+
+import com.demo.queuedb.queue.QueueMetrics;
+import com.demo.queuedb.queue.SyncMode;
+import com.demo.queuedb.util.BlockingSupport;
+
+/**
+ * BDB队列配置
+ *
+ * @author lizhiming
+ */
+public class BdbQueueConfig {
+
+    /**
+     * 数据库所在位置
+     */
+    private String dbDir;
+
+    /**
+     * 数据库名
+     */
+    private String dbName;
+
+    /**
+     * 容量，达到容量后offer返回false，put阻塞；默认不限
+     */
+    private int capacity = BlockingSupport.UNBOUNDED;
+
+    /**
+     * reserve()未指定超时时的默认可见性超时，毫秒
+     */
+    private long leaseTimeoutMillis = 30000;
+
+    /**
+     * 超时租约的检查间隔，毫秒
+     */
+    private long leaseReapIntervalMillis = 1000;
+
+    /**
+     * 刷盘模式，默认不主动刷盘
+     */
+    private SyncMode syncMode = SyncMode.NONE;
+
+    /**
+     * PERIODIC模式的刷盘间隔，毫秒；0表示不按时间刷盘
+     */
+    private long syncIntervalMillis = 1000;
+
+    /**
+     * PERIODIC模式下累计多少条未刷盘记录时提前刷盘；0表示只按时间刷盘
+     */
+    private long syncEveryRecords;
+
+    /**
+     * 记录编码id，见Codecs；为null时新建队列使用默认编码，已有队列使用其记录的编码
+     */
+    private String codec;
+
+    /**
+     * 大记录外置阈值，字节；编码后不小于此值的记录写入外置存储，队列中只保存引用。0表示不外置，只能在新建队列时开启
+     */
+    private int spillThreshold;
+
+    /**
+     * 队列埋点，默认不开启
+     */
+    private QueueMetrics metrics = QueueMetrics.NOOP;
+
+    /**
+     * 自动压缩的检查间隔，毫秒；0表示不自动压缩
+     */
+    private long compactIntervalMillis;
+
+    /**
+     * 自动压缩的空闲空间比例阈值，换算为JE的je.cleaner.minUtilization(1 - 比例)，日志整体利用率低于该值时清理
+     */
+    private double compactFreeRatio = 0.5;
+
+    /**
+     * 是否只在两次检查之间没有入队出队时自动压缩
+     */
+    private boolean compactIdleOnly = true;
+
+    /**
+     * JE单个日志文件的最大字节数，0表示使用JE默认值；文件越小，清理时需要搬迁的有效记录越少
+     */
+    private long logFileMax;
+
+    /**
+     * Gets db dir.
+     *
+     * @return the db dir
+     */
+    public String getDbDir() {
+        return dbDir;
+    }
+
+    /**
+     * Sets db dir.
+     *
+     * @param dbDir the db dir
+     * @return the db dir
+     */
+    public BdbQueueConfig setDbDir(String dbDir) {
+        this.dbDir = dbDir;
+        return this;
+    }
+
+    /**
+     * Gets db name.
+     *
+     * @return the db name
+     */
+    public String getDbName() {
+        return dbName;
+    }
+
+    /**
+     * Sets db name.
+     *
+     * @param dbName the db name
+     * @return the db name
+     */
+    public BdbQueueConfig setDbName(String dbName) {
+        this.dbName = dbName;
+        return this;
+    }
+
+    /**
+     * Gets capacity.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets capacity.
+     *
+     * @param capacity the capacity
+     * @return the capacity
+     */
+    public BdbQueueConfig setCapacity(int capacity) {
+        this.capacity = capacity;
+        return this;
+    }
+
+    /**
+     * Gets lease timeout millis.
+     *
+     * @return the lease timeout millis
+     */
+    public long getLeaseTimeoutMillis() {
+        return leaseTimeoutMillis;
+    }
+
+    /**
+     * Sets lease timeout millis.
+     *
+     * @param leaseTimeoutMillis the lease timeout millis
+     * @return the lease timeout millis
+     */
+    public BdbQueueConfig setLeaseTimeoutMillis(long leaseTimeoutMillis) {
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Gets lease reap interval millis.
+     *
+     * @return the lease reap interval millis
+     */
+    public long getLeaseReapIntervalMillis() {
+        return leaseReapIntervalMillis;
+    }
+
+    /**
+     * Sets lease reap interval millis.
+     *
+     * @param leaseReapIntervalMillis the lease reap interval millis
+     * @return the lease reap interval millis
+     */
+    public BdbQueueConfig setLeaseReapIntervalMillis(long leaseReapIntervalMillis) {
+        this.leaseReapIntervalMillis = leaseReapIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Gets sync mode.
+     *
+     * @return the sync mode
+     */
+    public SyncMode getSyncMode() {
+        return syncMode;
+    }
+
+    /**
+     * Sets sync mode.
+     *
+     * @param syncMode the sync mode
+     * @return the sync mode
+     */
+    public BdbQueueConfig setSyncMode(SyncMode syncMode) {
+        this.syncMode = syncMode;
+        return this;
+    }
+
+    /**
+     * Gets codec.
+     *
+     * @return the codec
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets codec.
+     *
+     * @param codec the codec
+     * @return the codec
+     */
+    public BdbQueueConfig setCodec(String codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Gets spill threshold.
+     *
+     * @return the spill threshold
+     */
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * Sets spill threshold.
+     *
+     * @param spillThreshold the spill threshold
+     * @return the spill threshold
+     */
+    public BdbQueueConfig setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+        return this;
+    }
+
+    /**
+     * Gets metrics.
+     *
+     * @return the metrics
+     */
+    public QueueMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets metrics.
+     *
+     * @param metrics the metrics
+     * @return the metrics
+     */
+    public BdbQueueConfig setMetrics(QueueMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Gets compact interval millis.
+     *
+     * @return the compact interval millis
+     */
+    public long getCompactIntervalMillis() {
+        return compactIntervalMillis;
+    }
+
+    /**
+     * Sets compact interval millis.
+     *
+     * @param compactIntervalMillis the compact interval millis
+     * @return the compact interval millis
+     */
+    public BdbQueueConfig setCompactIntervalMillis(long compactIntervalMillis) {
+        this.compactIntervalMillis = compactIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Gets compact free ratio.
+     *
+     * @return the compact free ratio
+     */
+    public double getCompactFreeRatio() {
+        return compactFreeRatio;
+    }
+
+    /**
+     * Sets compact free ratio.
+     *
+     * @param compactFreeRatio the compact free ratio
+     * @return the compact free ratio
+     */
+    public BdbQueueConfig setCompactFreeRatio(double compactFreeRatio) {
+        this.compactFreeRatio = compactFreeRatio;
+        return this;
+    }
+
+    /**
+     * Is compact idle only boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isCompactIdleOnly() {
+        return compactIdleOnly;
+    }
+
+    /**
+     * Sets compact idle only.
+     *
+     * @param compactIdleOnly the compact idle only
+     * @return the compact idle only
+     */
+    public BdbQueueConfig setCompactIdleOnly(boolean compactIdleOnly) {
+        this.compactIdleOnly = compactIdleOnly;
+        return this;
+    }
+
+    /**
+     * Gets log file max.
+     *
+     * @return the log file max
+     */
+    public long getLogFileMax() {
+        return logFileMax;
+    }
+
+    /**
+     * Sets log file max.
+     *
+     * @param logFileMax the log file max
+     * @return the log file max
+     */
+    public BdbQueueConfig setLogFileMax(long logFileMax) {
+        this.logFileMax = logFileMax;
+        return this;
+    }
+
+    /**
+     * Gets sync interval millis.
+     *
+     * @return the sync interval millis
+     */
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    /**
+     * Sets sync interval millis.
+     *
+     * @param syncIntervalMillis the sync interval millis
+     * @return the sync interval millis
+     */
+    public BdbQueueConfig setSyncIntervalMillis(long syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Gets sync every records.
+     *
+     * @return the sync every records
+     */
+    public long getSyncEveryRecords() {
+        return syncEveryRecords;
+    }
+
+    /**
+     * Sets sync every records.
+     *
+     * @param syncEveryRecords the sync every records
+     * @return the sync every records
+     */
+    public BdbQueueConfig setSyncEveryRecords(long syncEveryRecords) {
+        this.syncEveryRecords = syncEveryRecords;
+        return this;
+    }
+}
@@ -0,0 +1,96 @@
+package com.demo.queuedb.bdb;
+
+import com.demo.queuedb.codec.Codec;
+import com.demo.queuedb.queue.QueueMetrics;
+import com.esotericsoftware.kryo.io.Output;
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+
+import java.util.Arrays;
+
+/**
+ * 按队列记录的编码绑定值
+ *
+ * @param <K> the type parameter
+ * @author lizhiming
+ */
+public class CodecBinding<K> implements EntryBinding<K> {
+    /**
+     * 记录编码
+     */
+    private final Codec<K> codec;
+
+    /**
+     * 队列埋点
+     */
+    private final QueueMetrics metrics;
+
+    /**
+     * 是否计时，未开启监控时不读取时钟
+     */
+    private final boolean timed;
+
+    /**
+     * Instantiates a new Codec binding.
+     *
+     * @param codec the codec
+     */
+    public CodecBinding(Codec<K> codec) {
+        this(codec, QueueMetrics.NOOP);
+    }
+
+    /**
+     * Instantiates a new Codec binding.
+     *
+     * @param codec   the codec
+     * @param metrics 队列埋点
+     */
+    public CodecBinding(Codec<K> codec, QueueMetrics metrics) {
+        this.codec = codec;
+        this.metrics = metrics;
+        this.timed = metrics.isEnabled();
+    }
+
+    /**
+     * 记录编码
+     *
+     * @return the codec
+     */
+    public Codec<K> getCodec() {
+        return codec;
+    }
+
+    /**
+     * 反序列化
+     *
+     * @param entry entry
+     * @return 对象
+     */
+    @Override
+    public K entryToObject(DatabaseEntry entry) {
+        if (!timed) {
+            return codec.decode(entry.getData(), entry.getOffset(), entry.getSize());
+        }
+        long start = System.nanoTime();
+        K object = codec.decode(entry.getData(), entry.getOffset(), entry.getSize());
+        metrics.recordDeserialize(System.nanoTime() - start);
+        return object;
+    }
+
+    /**
+     * 序列化
+     *
+     * @param object 对象
+     * @param entry  entry
+     */
+    @Override
+    public void objectToEntry(K object, DatabaseEntry entry) {
+        //复用线程的输出缓冲，只拷贝实际写入的部分
+        long start = timed ? System.nanoTime() : 0L;
+        Output out = codec.encode(object);
+        entry.setData(Arrays.copyOf(out.getBuffer(), out.position()));
+        if (timed) {
+            metrics.recordSerialize(System.nanoTime() - start, out.position());
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.demo.queuedb.codec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * 按内容寻址的大记录存储，文件名为内容的SHA-256，相同内容只保存一份
+ * 引用计数只在内存中维护，启动时由队列扫描已有记录重建，之后删除没有被引用的文件
+ *
+ * @author lizhiming
+ */
+public class BlobStore {
+
+    /**
+     * 哈希长度
+     */
+    public static final int HASH_BYTES = 32;
+
+    /**
+     * 写入中的临时文件后缀
+     */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * The constant HEX.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The constant DIGEST.
+     */
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * The Logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(BlobStore.class);
+
+    /**
+     * 存储目录
+     */
+    private final Path dir;
+
+    /**
+     * 写入后是否刷盘
+     */
+    private final boolean sync;
+
+    /**
+     * 引用计数，key为哈希的十六进制
+     */
+    private final Map<String, Integer> refs = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new Blob store.
+     *
+     * @param dir  存储目录
+     * @param sync 写入后是否刷盘
+     */
+    public BlobStore(Path dir, boolean sync) {
+        this.dir = dir;
+        this.sync = sync;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 保存数据并增加引用，内容已存在时只增加引用
+     *
+     * @param data   the data
+     * @param offset the offset
+     * @param length the length
+     * @return 内容哈希
+     */
+    public byte[] put(byte[] data, int offset, int length) {
+        MessageDigest digest = DIGEST.get();
+        digest.update(data, offset, length);
+        byte[] hash = digest.digest();
+        refs.compute(hex(hash), (name, count) -> {
+            if (count == null) {
+                write(name, data, offset, length);
+                return 1;
+            }
+            return count + 1;
+        });
+        return hash;
+    }
+
+    /**
+     * 读取数据
+     *
+     * @param hash the hash
+     * @return the byte [ ]
+     */
+    public byte[] get(byte[] hash) {
+        String name = hex(hash);
+        try {
+            return Files.readAllBytes(path(name));
+        } catch (NoSuchFileException e) {
+            //记录已被其他消费者取走
+            throw new IllegalStateException("blob " + name + " not found", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 数据的字节数
+     *
+     * @param hash the hash
+     * @return the long
+     */
+    public long size(byte[] hash) {
+        String name = hex(hash);
+        try {
+            return Files.size(path(name));
+        } catch (NoSuchFileException e) {
+            throw new IllegalStateException("blob " + name + " not found", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 增加引用，启动时重建引用计数使用
+     *
+     * @param hash the hash
+     */
+    public void retain(byte[] hash) {
+        refs.merge(hex(hash), 1, Integer::sum);
+    }
+
+    /**
+     * 减少引用，没有引用时删除文件
+     *
+     * @param hash the hash
+     */
+    public void release(byte[] hash) {
+        refs.computeIfPresent(hex(hash), (name, count) -> {
+            if (count > 1) {
+                return count - 1;
+            }
+            try {
+                Files.deleteIfExists(path(name));
+            } catch (IOException e) {
+                logger.warn("delete blob " + name + " fail." + e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 删除没有被引用的文件，如写入后事务未提交留下的文件
+     */
+    public void deleteUnreferenced() {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(Files::isRegularFile)
+                    .filter(path -> !refs.containsKey(path.getFileName().toString()))
+                    .forEach(path -> {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            logger.warn("delete blob " + path + " fail." + e);
+                        }
+                    });
+        } catch (IOException e) {
+            logger.warn("scan blobs fail." + e);
+        }
+    }
+
+    /**
+     * 被引用的文件数
+     *
+     * @return the int
+     */
+    public int count() {
+        return refs.size();
+    }
+
+    /**
+     * 先写临时文件再改名，读取方不会看到写了一半的文件
+     *
+     * @param name   the name
+     * @param data   the data
+     * @param offset the offset
+     * @param length the length
+     */
+    private void write(String name, byte[] data, int offset, int length) {
+        Path target = path(name);
+        Path tmp = target.resolveSibling(name + TMP_SUFFIX);
+        try {
+            Files.createDirectories(target.getParent());
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (sync) {
+                    channel.force(true);
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 文件路径，按哈希前两位分目录
+     *
+     * @param name the name
+     * @return the path
+     */
+    private Path path(String name) {
+        return dir.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    /**
+     * 十六进制
+     *
+     * @param hash the hash
+     * @return the string
+     */
+    private static String hex(byte[] hash) {
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
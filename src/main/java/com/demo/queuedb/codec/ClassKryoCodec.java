@@ -0,0 +1,55 @@
+package com.demo.queuedb.codec;
+
+import com.demo.queuedb.util.ThreadLocalKryo;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 写入类信息的Kryo编码，按记录中的类信息读取，可保存baseClass的子类；新建队列的默认编码
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+public class ClassKryoCodec<E> implements Codec<E> {
+
+    /**
+     * The Base class.
+     */
+    private final Class<E> baseClass;
+
+    /**
+     * 线程私有的Kryo，注册baseClass
+     */
+    private final ThreadLocalKryo kryo;
+
+    /**
+     * Instantiates a new Class kryo codec.
+     *
+     * @param baseClass the base class
+     */
+    public ClassKryoCodec(Class<E> baseClass) {
+        this.baseClass = baseClass;
+        this.kryo = new ThreadLocalKryo(baseClass);
+    }
+
+    @Override
+    public String id() {
+        return Codecs.KRYO_CLASS;
+    }
+
+    @Override
+    public Output encode(E item) {
+        return kryo.serialize(item);
+    }
+
+    @Override
+    public E decode(ByteBuffer buffer) {
+        return baseClass.cast(kryo.deserializeClassAndObject(buffer.duplicate()));
+    }
+
+    @Override
+    public E decode(byte[] data, int offset, int length) {
+        return baseClass.cast(kryo.deserializeClassAndObject(data, offset, length));
+    }
+}
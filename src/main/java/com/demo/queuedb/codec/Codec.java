@@ -0,0 +1,48 @@
+package com.demo.queuedb.codec;
+
+import com.esotericsoftware.kryo.io.Output;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 记录编解码，队列按codec id记录所用的编码，重新打开时使用相同的编码读取
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+public interface Codec<E> {
+
+    /**
+     * 编码标识，保存在队列元数据中
+     *
+     * @return the string
+     */
+    String id();
+
+    /**
+     * 编码到当前线程的输出缓冲，数据为getBuffer()的[0, position())
+     * 返回的缓冲在本线程下次编码前有效
+     *
+     * @param item the item
+     * @return the output
+     */
+    Output encode(E item);
+
+    /**
+     * 从ByteBuffer的position到limit解码，不修改buffer的位置
+     *
+     * @param buffer the buffer
+     * @return the e
+     */
+    E decode(ByteBuffer buffer);
+
+    /**
+     * 从字节数组的[offset, offset + length)解码
+     *
+     * @param data   the data
+     * @param offset the offset
+     * @param length the length
+     * @return the e
+     */
+    E decode(byte[] data, int offset, int length);
+}
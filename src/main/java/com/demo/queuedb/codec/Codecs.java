@@ -0,0 +1,128 @@
+package com.demo.queuedb.codec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 按codec id创建编码
+ * 内置：kryo-class(默认)、kryo(旧版本格式)、kryo-registered、raw，以及"deflate:"前缀包装任意编码，如deflate:kryo-class
+ *
+ * @author lizhiming
+ */
+public final class Codecs {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(Codecs.class);
+
+    /**
+     * 旧版本的Kryo编码，未记录codec id的队列使用；按baseClass读取写入了类信息的记录，只适用于旧版本保存的JSONObject等类型
+     */
+    public static final String KRYO = "kryo";
+
+    /**
+     * 写入类信息并按类信息读取
+     */
+    public static final String KRYO_CLASS = "kryo-class";
+
+    /**
+     * 按注册类编码，不写入类信息
+     */
+    public static final String KRYO_REGISTERED = "kryo-registered";
+
+    /**
+     * byte[]原样保存
+     */
+    public static final String RAW = "raw";
+
+    /**
+     * 块压缩前缀
+     */
+    public static final String DEFLATE_PREFIX = "deflate:";
+
+    /**
+     * 新建队列未指定编码时使用
+     */
+    public static final String DEFAULT = KRYO_CLASS;
+
+    /**
+     * 已注册的编码
+     */
+    private static final Map<String, Function<Class<?>, Codec<?>>> FACTORIES = new ConcurrentHashMap<>();
+
+    static {
+        register(KRYO, KryoCodec::new);
+        register(KRYO_CLASS, ClassKryoCodec::new);
+        register(KRYO_REGISTERED, RegisteredKryoCodec::new);
+        register(RAW, type -> {
+            if (type != byte[].class) {
+                throw new IllegalArgumentException("raw codec requires byte[] elements, but was " + type.getName());
+            }
+            return RawCodec.INSTANCE;
+        });
+    }
+
+    /**
+     * Instantiates a new Codecs.
+     */
+    private Codecs() {
+    }
+
+    /**
+     * 注册自定义编码，id不能以deflate:开头
+     *
+     * @param id      the id
+     * @param factory 按元素类型创建编码
+     */
+    public static void register(String id, Function<Class<?>, Codec<?>> factory) {
+        if (id.startsWith(DEFLATE_PREFIX)) {
+            throw new IllegalArgumentException("codec id must not start with " + DEFLATE_PREFIX);
+        }
+        FACTORIES.put(id, factory);
+    }
+
+    /**
+     * 按id创建编码
+     *
+     * @param <E>  the type parameter
+     * @param id   the id
+     * @param type 元素类型
+     * @return the codec
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> Codec<E> create(String id, Class<E> type) {
+        if (id.startsWith(DEFLATE_PREFIX)) {
+            return new DeflateCodec<>(create(id.substring(DEFLATE_PREFIX.length()), type));
+        }
+        Function<Class<?>, Codec<?>> factory = FACTORIES.get(id);
+        if (factory == null) {
+            throw new IllegalArgumentException("unknown codec: " + id);
+        }
+        return (Codec<E>) factory.apply(type);
+    }
+
+    /**
+     * 确定队列使用的编码：已记录的编码优先，保证已有数据可读；
+     * 未记录编码但已有数据的队列由旧版本写入，使用旧版本格式
+     *
+     * @param queue      队列名，用于日志
+     * @param recorded   队列元数据中记录的编码，没有时为null
+     * @param configured 配置的编码，没有时为null
+     * @param hasData    队列中是否已有数据
+     * @return the string
+     */
+    public static String resolve(String queue, String recorded, String configured, boolean hasData) {
+        if (recorded == null) {
+            recorded = hasData ? KRYO : configured == null ? DEFAULT : configured;
+        }
+        if (configured != null && !configured.equals(recorded)) {
+            LOGGER.warn("queue {} was written with codec {}, configured codec {} ignored.", queue, recorded, configured);
+        }
+        return recorded;
+    }
+}
@@ -0,0 +1,158 @@
+package com.demo.queuedb.codec;
+
+import com.demo.queuedb.util.ThreadLocalKryo;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 整条记录块压缩，包装其他编码
+ * 记录格式：1字节标志 + 4字节原始长度 + 数据；压缩后没有变小的记录按原样保存
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+public class DeflateCodec<E> implements Codec<E> {
+
+    /**
+     * 按原样保存
+     */
+    private static final byte STORED = 0;
+
+    /**
+     * deflate压缩
+     */
+    private static final byte DEFLATED = 1;
+
+    /**
+     * 标志与长度的字节数
+     */
+    private static final int HEADER_SIZE = 1 + Integer.BYTES;
+
+    /**
+     * 压缩输出缓冲，与被包装编码的输出缓冲分开
+     */
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(() -> new Output(ThreadLocalKryo.INITIAL_BUFFER_SIZE, -1));
+
+    /**
+     * 堆外记录的读取缓冲
+     */
+    private static final ThreadLocal<byte[][]> SCRATCH = ThreadLocal.withInitial(() -> new byte[1][0]);
+
+    /**
+     * The constant DEFLATER.
+     */
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+
+    /**
+     * The constant INFLATER.
+     */
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    /**
+     * 被包装的编码
+     */
+    private final Codec<E> delegate;
+
+    /**
+     * Instantiates a new Deflate codec.
+     *
+     * @param delegate the delegate
+     */
+    public DeflateCodec(Codec<E> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String id() {
+        return Codecs.DEFLATE_PREFIX + delegate.id();
+    }
+
+    @Override
+    public Output encode(E item) {
+        Output plain = delegate.encode(item);
+        int length = plain.position();
+        Output out = output(HEADER_SIZE + length);
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(plain.getBuffer(), 0, length);
+        deflater.finish();
+        out.writeByte(DEFLATED);
+        out.writeInt(length);
+        byte[] buffer = out.getBuffer();
+        int start = out.position();
+        int limit = start + length;
+        int position = start;
+        while (!deflater.finished() && position < limit) {
+            position += deflater.deflate(buffer, position, limit - position);
+        }
+        if (!deflater.finished()) {
+            //压缩后没有变小，按原样保存
+            out.clear();
+            out.writeByte(STORED);
+            out.writeInt(length);
+            out.writeBytes(plain.getBuffer(), 0, length);
+        } else {
+            out.setPosition(position);
+        }
+        return out;
+    }
+
+    @Override
+    public E decode(ByteBuffer buffer) {
+        //Java 8的Inflater只接受数组
+        int length = buffer.remaining();
+        byte[][] scratch = SCRATCH.get();
+        if (scratch[0].length < length) {
+            scratch[0] = new byte[length];
+        }
+        buffer.duplicate().get(scratch[0], 0, length);
+        return decode(scratch[0], 0, length);
+    }
+
+    @Override
+    public E decode(byte[] data, int offset, int length) {
+        byte flag = data[offset];
+        //Output.writeInt为大端序
+        int plainLength = (data[offset + 1] & 0xFF) << 24 | (data[offset + 2] & 0xFF) << 16 | (data[offset + 3] & 0xFF) << 8 | data[offset + 4] & 0xFF;
+        int start = offset + HEADER_SIZE;
+        if (flag == STORED) {
+            return delegate.decode(data, start, plainLength);
+        }
+        byte[] plain = new byte[plainLength];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(data, start, offset + length - start);
+        try {
+            int n = 0;
+            while (n < plainLength && !inflater.finished()) {
+                n += inflater.inflate(plain, n, plainLength - n);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupted deflate record", e);
+        }
+        return delegate.decode(plain, 0, plainLength);
+    }
+
+    /**
+     * 当前线程的压缩输出缓冲，容量不小于capacity
+     *
+     * @param capacity the capacity
+     * @return the output
+     */
+    private static Output output(int capacity) {
+        Output out = OUTPUT.get();
+        int size = out.getBuffer().length;
+        if (size < capacity || size > ThreadLocalKryo.RETAINED_BUFFER_SIZE && capacity <= ThreadLocalKryo.RETAINED_BUFFER_SIZE) {
+            //容量不足，或上次压缩了大记录，按本次大小重建
+            out = new Output(Math.max(capacity, ThreadLocalKryo.INITIAL_BUFFER_SIZE), -1);
+            OUTPUT.set(out);
+        } else {
+            out.clear();
+        }
+        return out;
+    }
+}
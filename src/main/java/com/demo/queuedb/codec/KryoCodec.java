@@ -0,0 +1,55 @@
+package com.demo.queuedb.codec;
+
+import com.demo.queuedb.util.ThreadLocalKryo;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 旧版本的Kryo编码，writeClassAndObject写入类信息，未记录codec id的队列使用此编码
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+public class KryoCodec<E> implements Codec<E> {
+
+    /**
+     * The Base class.
+     */
+    private final Class<E> baseClass;
+
+    /**
+     * 线程私有的Kryo，注册baseClass，与旧版本的KryoBinding一致
+     */
+    private final ThreadLocalKryo kryo;
+
+    /**
+     * Instantiates a new Kryo codec.
+     *
+     * @param baseClass the base class
+     */
+    public KryoCodec(Class<E> baseClass) {
+        this.baseClass = baseClass;
+        this.kryo = new ThreadLocalKryo(baseClass);
+    }
+
+    @Override
+    public String id() {
+        return Codecs.KRYO;
+    }
+
+    @Override
+    public Output encode(E item) {
+        return kryo.serialize(item);
+    }
+
+    @Override
+    public E decode(ByteBuffer buffer) {
+        return kryo.deserialize(buffer.duplicate(), baseClass);
+    }
+
+    @Override
+    public E decode(byte[] data, int offset, int length) {
+        return kryo.deserialize(data, offset, length, baseClass);
+    }
+}
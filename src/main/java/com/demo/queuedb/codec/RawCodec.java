@@ -0,0 +1,48 @@
+package com.demo.queuedb.codec;
+
+import com.demo.queuedb.util.ThreadLocalKryo;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 原样保存byte[]，不经过Kryo，适合已经编码好的负载(如图片)
+ *
+ * @author lizhiming
+ */
+public class RawCodec implements Codec<byte[]> {
+
+    /**
+     * The constant INSTANCE.
+     */
+    public static final RawCodec INSTANCE = new RawCodec();
+
+    @Override
+    public String id() {
+        return Codecs.RAW;
+    }
+
+    @Override
+    public Output encode(byte[] item) {
+        Output out = ThreadLocalKryo.output();
+        out.writeBytes(item);
+        return out;
+    }
+
+    @Override
+    public byte[] decode(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.remaining()];
+        buffer.duplicate().get(value);
+        return value;
+    }
+
+    @Override
+    public byte[] decode(byte[] data, int offset, int length) {
+        if (offset == 0 && length == data.length) {
+            //调用方已拷贝到堆内存(如出队时删除前的拷贝)，直接使用
+            return data;
+        }
+        return Arrays.copyOfRange(data, offset, offset + length);
+    }
+}
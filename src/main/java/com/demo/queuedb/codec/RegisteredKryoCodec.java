@@ -0,0 +1,57 @@
+package com.demo.queuedb.codec;
+
+import com.demo.queuedb.util.ThreadLocalKryo;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 按注册类编码，记录中不写入类信息，读写两端都以baseClass为准
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+public class RegisteredKryoCodec<E> implements Codec<E> {
+
+    /**
+     * The Base class.
+     */
+    private final Class<E> baseClass;
+
+    /**
+     * 线程私有的Kryo
+     */
+    private final ThreadLocalKryo kryo;
+
+    /**
+     * Instantiates a new Registered kryo codec.
+     *
+     * @param baseClass the base class
+     */
+    public RegisteredKryoCodec(Class<E> baseClass) {
+        this.baseClass = baseClass;
+        this.kryo = new ThreadLocalKryo(baseClass);
+    }
+
+    @Override
+    public String id() {
+        return Codecs.KRYO_REGISTERED;
+    }
+
+    @Override
+    public Output encode(E item) {
+        Output out = ThreadLocalKryo.output();
+        kryo.kryo().writeObjectOrNull(out, item, baseClass);
+        return out;
+    }
+
+    @Override
+    public E decode(ByteBuffer buffer) {
+        return kryo.deserialize(buffer.duplicate(), baseClass);
+    }
+
+    @Override
+    public E decode(byte[] data, int offset, int length) {
+        return kryo.deserialize(data, offset, length, baseClass);
+    }
+}
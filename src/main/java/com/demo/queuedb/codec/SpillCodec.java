@@ -0,0 +1,233 @@
+package com.demo.queuedb.codec;
+
+import com.demo.queuedb.util.ThreadLocalKryo;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * 大记录外置，包装其他编码
+ * 编码后不小于阈值的记录写入BlobStore，队列中只保存引用；读取时才加载内容，记录被取出或确认后由队列释放引用
+ * 记录格式：1字节标志 + 内联数据或32字节内容哈希
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+public class SpillCodec<E> implements Codec<E> {
+
+    /**
+     * codec id前缀
+     */
+    public static final String PREFIX = "spill:";
+
+    /**
+     * 内联保存
+     */
+    private static final byte INLINE = 0;
+
+    /**
+     * 外置保存
+     */
+    private static final byte REFERENCE = 1;
+
+    /**
+     * 输出缓冲，与被包装编码的输出缓冲分开
+     */
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(() -> new Output(ThreadLocalKryo.INITIAL_BUFFER_SIZE, -1));
+
+    /**
+     * 被包装的编码
+     */
+    private final Codec<E> delegate;
+
+    /**
+     * 外置存储
+     */
+    private final BlobStore store;
+
+    /**
+     * 外置阈值，字节；0表示新记录不再外置
+     */
+    private final int threshold;
+
+    /**
+     * Instantiates a new Spill codec.
+     *
+     * @param delegate  the delegate
+     * @param store     the store
+     * @param threshold the threshold
+     */
+    public SpillCodec(Codec<E> delegate, BlobStore store, int threshold) {
+        this.delegate = delegate;
+        this.store = store;
+        this.threshold = threshold;
+    }
+
+    /**
+     * 开启外置时新建队列使用的codec id
+     *
+     * @param configured 配置的编码，null表示默认
+     * @param threshold  外置阈值
+     * @return the string
+     */
+    public static String configure(String configured, int threshold) {
+        if (threshold <= 0 || configured != null && configured.startsWith(PREFIX)) {
+            return configured;
+        }
+        return PREFIX + (configured == null ? Codecs.DEFAULT : configured);
+    }
+
+    /**
+     * 按codec id创建，spill:前缀时包装外置存储
+     *
+     * @param <E>       the type parameter
+     * @param id        the id
+     * @param type      the type
+     * @param store     外置存储，只在需要时创建
+     * @param threshold the threshold
+     * @return the codec
+     */
+    public static <E> Codec<E> create(String id, Class<E> type, Supplier<BlobStore> store, int threshold) {
+        if (!id.startsWith(PREFIX)) {
+            return Codecs.create(id, type);
+        }
+        return new SpillCodec<>(Codecs.create(id.substring(PREFIX.length()), type), store.get(), threshold);
+    }
+
+    @Override
+    public String id() {
+        return PREFIX + delegate.id();
+    }
+
+    @Override
+    public Output encode(E item) {
+        Output plain = delegate.encode(item);
+        int length = plain.position();
+        Output out = OUTPUT.get();
+        if (out.getBuffer().length > ThreadLocalKryo.RETAINED_BUFFER_SIZE) {
+            //上次内联了大记录，恢复初始大小
+            out = new Output(ThreadLocalKryo.INITIAL_BUFFER_SIZE, -1);
+            OUTPUT.set(out);
+        } else {
+            out.clear();
+        }
+        if (threshold > 0 && length >= threshold) {
+            out.writeByte(REFERENCE);
+            out.writeBytes(store.put(plain.getBuffer(), 0, length));
+        } else {
+            out.writeByte(INLINE);
+            out.writeBytes(plain.getBuffer(), 0, length);
+        }
+        return out;
+    }
+
+    @Override
+    public E decode(ByteBuffer buffer) {
+        int position = buffer.position();
+        if (buffer.get(position) == INLINE) {
+            ByteBuffer inline = buffer.duplicate();
+            inline.position(position + 1);
+            return delegate.decode(inline);
+        }
+        byte[] hash = new byte[BlobStore.HASH_BYTES];
+        ByteBuffer ref = buffer.duplicate();
+        ref.position(position + 1);
+        ref.get(hash);
+        return load(hash);
+    }
+
+    @Override
+    public E decode(byte[] data, int offset, int length) {
+        if (data[offset] == INLINE) {
+            return delegate.decode(data, offset + 1, length - 1);
+        }
+        return load(Arrays.copyOfRange(data, offset + 1, offset + 1 + BlobStore.HASH_BYTES));
+    }
+
+    /**
+     * 加载外置的内容
+     *
+     * @param hash the hash
+     * @return the e
+     */
+    private E load(byte[] hash) {
+        byte[] blob = store.get(hash);
+        return delegate.decode(blob, 0, blob.length);
+    }
+
+    /**
+     * 记录内容的字节数，外置记录为外置内容的大小
+     *
+     * @param record 记录，从position开始
+     * @return the long
+     */
+    public long length(ByteBuffer record) {
+        byte[] hash = reference(record);
+        return hash == null ? record.remaining() - 1 : store.size(hash);
+    }
+
+    /**
+     * 记录引用的内容哈希，内联记录返回null
+     *
+     * @param record 记录，从position开始
+     * @return the byte [ ]
+     */
+    public byte[] reference(ByteBuffer record) {
+        int position = record.position();
+        if (record.get(position) == INLINE) {
+            return null;
+        }
+        byte[] hash = new byte[BlobStore.HASH_BYTES];
+        ByteBuffer ref = record.duplicate();
+        ref.position(position + 1);
+        ref.get(hash);
+        return hash;
+    }
+
+    /**
+     * 记录引用的内容哈希，内联记录返回null
+     *
+     * @param data   the data
+     * @param offset the offset
+     * @return the byte [ ]
+     */
+    public byte[] reference(byte[] data, int offset) {
+        if (data[offset] == INLINE) {
+            return null;
+        }
+        return Arrays.copyOfRange(data, offset + 1, offset + 1 + BlobStore.HASH_BYTES);
+    }
+
+    /**
+     * 启动时登记已有记录的引用
+     *
+     * @param hash 为null时忽略
+     */
+    public void retain(byte[] hash) {
+        if (hash != null) {
+            store.retain(hash);
+        }
+    }
+
+    /**
+     * 记录被取出或确认后释放引用
+     *
+     * @param hash 为null时忽略
+     */
+    public void release(byte[] hash) {
+        if (hash != null) {
+            store.release(hash);
+        }
+    }
+
+    /**
+     * 外置存储
+     *
+     * @return the blob store
+     */
+    public BlobStore getStore() {
+        return store;
+    }
+}
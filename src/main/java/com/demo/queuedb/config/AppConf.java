@@ -2,8 +2,18 @@ package com.demo.queuedb.config;
 
 import com.alibaba.fastjson.JSONObject;
 import com.demo.queuedb.bdb.BdbQueue;
+import com.demo.queuedb.bdb.BdbQueueConfig;
 import com.demo.queuedb.lmdb.LmdbQueue;
+import com.demo.queuedb.lmdb.LmdbQueueConfig;
+import com.demo.queuedb.metrics.MicrometerQueueMetrics;
+import com.demo.queuedb.queue.PartitionedQueue;
+import com.demo.queuedb.queue.QueueMetrics;
+import com.demo.queuedb.queue.SyncMode;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -28,12 +38,156 @@ public class AppConf {
      */
     @Value("${file.server.lmdb.size}")
     private long lmdbSize;
+
+    /**
+     * 映射空间自动扩容的上限，0表示不扩容
+     */
+    @Value("${file.server.lmdb.max-size:0}")
+    private long lmdbMaxSize;
+
+    /**
+     * The Lmdb readers.
+     */
+    @Value("${file.server.lmdb.readers:126}")
+    private int lmdbReaders;
+
+    /**
+     * The Lmdb integer key.
+     */
+    @Value("${file.server.lmdb.integer-key:false}")
+    private boolean lmdbIntegerKey;
+
+    /**
+     * The Lmdb group commit.
+     */
+    @Value("${file.server.lmdb.group-commit.enabled:false}")
+    private boolean lmdbGroupCommit;
+
+    /**
+     * The Lmdb group commit batch size.
+     */
+    @Value("${file.server.lmdb.group-commit.batch-size:256}")
+    private int lmdbGroupCommitBatchSize;
+
+    /**
+     * The Lmdb group commit max linger.
+     */
+    @Value("${file.server.lmdb.group-commit.max-linger-ms:0}")
+    private long lmdbGroupCommitMaxLingerMillis;
     /**
      * The Bdb path.
      */
     @Value("${file.server.bdb.path}")
     private String bdbPath;
 
+    /**
+     * The Lmdb capacity.
+     */
+    @Value("${file.server.lmdb.capacity:2147483647}")
+    private int lmdbCapacity;
+
+    /**
+     * LMDB头部预读的最多条数，0表示不预读
+     */
+    @Value("${file.server.lmdb.read-ahead.entries:0}")
+    private int lmdbReadAheadEntries;
+
+    /**
+     * LMDB头部预读的最多字节数
+     */
+    @Value("${file.server.lmdb.read-ahead.bytes:16777216}")
+    private long lmdbReadAheadBytes;
+
+    /**
+     * The Lmdb partitions.
+     */
+    @Value("${file.server.lmdb.partitions:4}")
+    private int lmdbPartitions;
+
+    /**
+     * The Bdb capacity.
+     */
+    @Value("${file.server.bdb.capacity:2147483647}")
+    private int bdbCapacity;
+
+    /**
+     * LMDB队列的刷盘模式
+     */
+    @Value("${file.server.lmdb.sync-mode:NONE}")
+    private SyncMode lmdbSyncMode;
+
+    /**
+     * BDB队列的刷盘模式
+     */
+    @Value("${file.server.bdb.sync-mode:NONE}")
+    private SyncMode bdbSyncMode;
+
+    /**
+     * PERIODIC模式的刷盘间隔，0表示不按时间刷盘
+     */
+    @Value("${file.server.sync.interval-ms:1000}")
+    private long syncIntervalMillis;
+
+    /**
+     * PERIODIC模式下累计多少条未刷盘记录时提前刷盘，0表示只按时间刷盘
+     */
+    @Value("${file.server.sync.records:0}")
+    private long syncEveryRecords;
+
+    /**
+     * The lease timeout.
+     */
+    @Value("${file.server.lease.timeout-ms:30000}")
+    private long leaseTimeoutMillis;
+
+    /**
+     * The lease reap interval.
+     */
+    @Value("${file.server.lease.reap-interval-ms:1000}")
+    private long leaseReapIntervalMillis;
+
+    /**
+     * 新建队列的记录编码，为空时使用默认编码；已有队列始终使用其记录的编码
+     */
+    @Value("${file.server.codec:}")
+    private String codec;
+
+    /**
+     * 新建队列的大记录外置阈值(字节)，0表示不开启
+     */
+    @Value("${file.server.spill-threshold:0}")
+    private int spillThreshold;
+
+    /**
+     * 自动压缩的检查间隔，0表示不自动压缩
+     */
+    @Value("${file.server.compaction.interval-ms:0}")
+    private long compactIntervalMillis;
+
+    /**
+     * 自动压缩的空闲空间比例阈值
+     */
+    @Value("${file.server.compaction.free-ratio:0.5}")
+    private double compactFreeRatio;
+
+    /**
+     * 是否只在空闲时自动压缩
+     */
+    @Value("${file.server.compaction.idle-only:true}")
+    private boolean compactIdleOnly;
+
+    /**
+     * 是否注册队列指标，关闭后读写路径不计时
+     */
+    @Value("${file.server.metrics.enabled:true}")
+    private boolean metricsEnabled;
+
+    /**
+     * 引入Actuator时由Spring Boot创建
+     */
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistries;
+
 
     /**
      * BDB文件队列
@@ -46,7 +200,11 @@ public class AppConf {
         //确认存在文件夹
         Files.createDirectories(Paths.get(bdbPath));
         //新建一个BDB文件队列
-        return new BdbQueue<>(bdbPath, "image", JSONObject.class);
+        return new BdbQueue<>(new BdbQueueConfig().setDbDir(bdbPath).setDbName("image").setCapacity(bdbCapacity)
+                .setSyncMode(bdbSyncMode).setSyncIntervalMillis(syncIntervalMillis).setSyncEveryRecords(syncEveryRecords)
+                .setLeaseTimeoutMillis(leaseTimeoutMillis).setLeaseReapIntervalMillis(leaseReapIntervalMillis)
+                .setCodec(codec()).setSpillThreshold(spillThreshold).setMetrics(metrics("image", "bdb"))
+                .setCompactIntervalMillis(compactIntervalMillis).setCompactFreeRatio(compactFreeRatio).setCompactIdleOnly(compactIdleOnly), JSONObject.class);
     }
 
     /**
@@ -60,7 +218,63 @@ public class AppConf {
         //确认存在文件夹
         Files.createDirectories(Paths.get(lmdbPath));
         //新建一个LMDB文件队列
-        return new LmdbQueue<>(lmdbSize, 1, lmdbPath, 1, "image", JSONObject.class);
+        return new LmdbQueue<>(lmdbConfig(lmdbPath).setMetrics(metrics("image", "lmdb")), JSONObject.class);
+    }
+
+    /**
+     * LMDB分区队列，每个分区一个LMDB环境，写入互不阻塞
+     * 默认不创建，file.server.lmdb.partitioned=true时开启
+     *
+     * @return the partitioned queue
+     * @throws IOException the io exception
+     */
+    @Bean
+    @ConditionalOnProperty(name = "file.server.lmdb.partitioned", havingValue = "true")
+    public PartitionedQueue<JSONObject, LmdbQueue<JSONObject>> lmdbPartitionedQueue() throws IOException {
+        for (int i = 0; i < lmdbPartitions; i++) {
+            //确认存在文件夹
+            Files.createDirectories(Paths.get(lmdbPath, "partition-" + i));
+        }
+        return new PartitionedQueue<>(lmdbPartitions,
+                i -> new LmdbQueue<>(lmdbConfig(Paths.get(lmdbPath, "partition-" + i).toString())
+                        .setMetrics(metrics("image-partition-" + i, "lmdb")), JSONObject.class));
+    }
+
+    /**
+     * 队列埋点，没有MeterRegistry或已关闭时不开启
+     *
+     * @param queue   队列名
+     * @param backend 后端名
+     * @return the queue metrics
+     */
+    private QueueMetrics metrics(String queue, String backend) {
+        MeterRegistry meterRegistry = metricsEnabled ? meterRegistries.getIfAvailable() : null;
+        return meterRegistry == null ? QueueMetrics.NOOP : new MicrometerQueueMetrics(meterRegistry, queue, backend);
+    }
+
+    /**
+     * 配置的记录编码，未配置时为null
+     *
+     * @return the string
+     */
+    private String codec() {
+        return codec.isEmpty() ? null : codec;
+    }
+
+    /**
+     * LMDB队列配置
+     *
+     * @param envPath the env path
+     * @return the lmdb queue config
+     */
+    private LmdbQueueConfig lmdbConfig(String envPath) {
+        return new LmdbQueueConfig().setMapSize(lmdbSize).setMaxMapSize(lmdbMaxSize).setDbs(1).setEnvPath(envPath).setReaders(lmdbReaders)
+                .setDbName("image").setIntegerKey(lmdbIntegerKey).setCapacity(lmdbCapacity)
+                .setSyncMode(lmdbSyncMode).setSyncIntervalMillis(syncIntervalMillis).setSyncEveryRecords(syncEveryRecords)
+                .setGroupCommit(lmdbGroupCommit).setGroupCommitBatchSize(lmdbGroupCommitBatchSize).setGroupCommitMaxLingerMillis(lmdbGroupCommitMaxLingerMillis)
+                .setLeaseTimeoutMillis(leaseTimeoutMillis).setLeaseReapIntervalMillis(leaseReapIntervalMillis).setCodec(codec())
+                .setSpillThreshold(spillThreshold).setCompactIntervalMillis(compactIntervalMillis).setCompactFreeRatio(compactFreeRatio)
+                .setCompactIdleOnly(compactIdleOnly).setReadAheadEntries(lmdbReadAheadEntries).setReadAheadBytes(lmdbReadAheadBytes);
     }
 
 }
@@ -0,0 +1,223 @@
+package com.demo.queuedb.lmdb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 组提交写线程
+ * 生产者把序列化后的记录放入内存环形队列，单个写线程按批次取出，一个写事务提交一批，提交后通知生产者
+ *
+ * @author lizhiming
+ */
+class GroupCommitWriter implements Runnable {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+    /**
+     * 写线程空闲时的检查间隔，用于响应关闭
+     */
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    /**
+     * 待提交记录的环形队列
+     */
+    private final BlockingQueue<PendingWrite> ring;
+
+    /**
+     * 每批最多条数
+     */
+    private final int batchSize;
+
+    /**
+     * 第一条记录到达后最多等待多久凑批
+     */
+    private final long maxLingerNanos;
+
+    /**
+     * 一个写事务提交一批记录，失败时抛出异常
+     */
+    private final Consumer<List<PendingWrite>> committer;
+
+    /**
+     * 写线程
+     */
+    private final Thread thread;
+
+    /**
+     * 是否运行中
+     */
+    private volatile boolean running = true;
+
+    /**
+     * 正在提交记录的生产者数量，关闭时等待其全部返回，避免记录在写线程退出后放入环形队列
+     */
+    private final AtomicInteger submitting = new AtomicInteger();
+
+    /**
+     * Instantiates a new Group commit writer.
+     *
+     * @param name            线程名
+     * @param ringSize        环形队列大小
+     * @param batchSize       每批最多条数
+     * @param maxLingerMillis 最长凑批等待时间
+     * @param committer       批量提交
+     */
+    GroupCommitWriter(String name, int ringSize, int batchSize, long maxLingerMillis, Consumer<List<PendingWrite>> committer) {
+        this.ring = new ArrayBlockingQueue<>(ringSize);
+        this.batchSize = batchSize;
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMillis);
+        this.committer = committer;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 提交一条序列化后的记录，环形队列满时阻塞
+     *
+     * @param value 序列化后的数据
+     * @return 记录提交后完成的future
+     */
+    CompletableFuture<Boolean> submit(byte[] value) {
+        PendingWrite write = new PendingWrite(value);
+        //先登记再检查状态，与close()中先改状态再检查登记数配对
+        submitting.incrementAndGet();
+        try {
+            if (!running) {
+                write.future.complete(false);
+                return write.future;
+            }
+            ring.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write.future.complete(false);
+        } finally {
+            submitting.decrementAndGet();
+        }
+        return write.future;
+    }
+
+    @Override
+    public void run() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running || !ring.isEmpty()) {
+            try {
+                PendingWrite first = ring.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fill(batch);
+                commit(batch);
+            } catch (InterruptedException e) {
+                //关闭时由close()负责收尾
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 凑批：直到达到批次大小或超过最长等待时间
+     *
+     * @param batch the batch
+     * @throws InterruptedException the interrupted exception
+     */
+    private void fill(List<PendingWrite> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxLingerNanos;
+        while (batch.size() < batchSize) {
+            ring.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            PendingWrite next = ring.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * 一个写事务提交一批，并通知生产者
+     *
+     * @param batch the batch
+     */
+    private void commit(List<PendingWrite> batch) {
+        boolean success;
+        try {
+            committer.accept(batch);
+            success = true;
+        } catch (Exception e) {
+            LOGGER.error("lmdb group commit fail." + e);
+            success = false;
+        }
+        for (PendingWrite write : batch) {
+            write.future.complete(success);
+        }
+    }
+
+    /**
+     * 停止接收新记录，提交环形队列中剩余的记录后退出
+     */
+    void close() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //写线程退出后仍可能有并发提交进来的记录，阻塞在满队列上的生产者需要腾出空间才能返回，反复清空直到没有生产者在提交
+        List<PendingWrite> rest = new ArrayList<>();
+        do {
+            ring.drainTo(rest);
+            for (PendingWrite write : rest) {
+                write.future.complete(false);
+            }
+            rest.clear();
+            if (submitting.get() > 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        } while (submitting.get() > 0 || !ring.isEmpty());
+    }
+
+    /**
+     * 一条待提交的记录
+     */
+    static final class PendingWrite {
+
+        /**
+         * 序列化后的数据
+         */
+        final byte[] value;
+
+        /**
+         * 提交结果
+         */
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        /**
+         * Instantiates a new Pending write.
+         *
+         * @param value the value
+         */
+        PendingWrite(byte[] value) {
+            this.value = value;
+        }
+    }
+}
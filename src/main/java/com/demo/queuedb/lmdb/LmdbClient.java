@@ -1,31 +1,92 @@
 package com.demo.queuedb.lmdb;
 
+import org.lmdbjava.CopyFlags;
 import org.lmdbjava.Dbi;
 import org.lmdbjava.DbiFlags;
 import org.lmdbjava.Env;
 import org.lmdbjava.EnvFlags;
+import org.lmdbjava.EnvInfo;
+import org.lmdbjava.Stat;
 import org.lmdbjava.Txn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 
 /**
  * LMDB客户端操作，一个环境，对应多个库
+ * 配置了maxMapSize时，写入遇到MDB_MAP_FULL或映射用量超过高水位后按倍数扩大mapSize并重试；
+ * 扩容与压缩需要本进程内没有活动的事务，事务需在access()内开启，或通过read()/write()执行
  *
  * @author lizhiming
  */
 public class LmdbClient {
 
+    /**
+     * The Logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LmdbClient.class);
+
+    /**
+     * 映射用量超过该比例时提前扩容
+     */
+    private static final double HIGH_WATER_RATIO = 0.8;
+
+    /**
+     * 每隔多少次写入检查一次映射用量
+     */
+    private static final int HIGH_WATER_CHECK_INTERVAL = 64;
+
+    /**
+     * 扩容或压缩时等待活动事务结束的最长时间
+     */
+    private static final long QUIESCE_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * 未设置时的最大读事务数，与LMDB默认值一致
+     */
+    private static final int DEFAULT_READERS = 126;
+
+    /**
+     * 数据文件名
+     */
+    private static final String DATA_FILE = "data.mdb";
+
+    /**
+     * 压缩复制的临时目录
+     */
+    private static final String COMPACT_DIR = "compact.tmp";
+
+    /**
+     * 当前线程已进入的access数量，已进入的线程再次进入时不等待扩容或压缩，避免自身阻塞
+     */
+    private static final ThreadLocal<AtomicInteger> DEPTH = ThreadLocal.withInitial(AtomicInteger::new);
+
     /**
      * The Map size.
      */
-    private long mapSize;
+    private volatile long mapSize;
 
     /**
      * The Readers.
      */
-    private int readers;
+    private int readers = DEFAULT_READERS;
 
     /**
      * The Dbs.
@@ -37,11 +98,51 @@ public class LmdbClient {
      */
     private String envPath;
 
+    /**
+     * 是否每次提交都刷盘，默认false(MDB_NOSYNC)
+     */
+    private boolean sync;
+
+    /**
+     * mapSize上限，不大于mapSize时不扩容
+     */
+    private long maxMapSize;
+
+    /**
+     * 环境标志，压缩后重新打开时使用
+     */
+    private EnvFlags[] flags;
+
     /**
      * The Env.
      */
     private Env<ByteBuffer> env;
 
+    /**
+     * 已进入的access数量
+     */
+    private final AtomicInteger accesses = new AtomicInteger();
+
+    /**
+     * 是否正在扩容或压缩，期间新的access等待
+     */
+    private volatile boolean exclusive;
+
+    /**
+     * 扩容与压缩互斥，同时用于等待与通知
+     */
+    private final Object exclusiveLock = new Object();
+
+    /**
+     * 已打开的库，用于统计空闲页
+     */
+    private final Map<String, Dbi<ByteBuffer>> opened = new ConcurrentHashMap<>();
+
+    /**
+     * 写入次数，用于间隔检查映射用量
+     */
+    private final AtomicInteger writes = new AtomicInteger();
+
     /**
      * Sets map size.
      *
@@ -53,10 +154,21 @@ public class LmdbClient {
         return this;
     }
 
+    /**
+     * Sets max map size.
+     *
+     * @param maxMapSize mapSize上限，不大于mapSize时不扩容
+     * @return the max map size
+     */
+    public LmdbClient setMaxMapSize(long maxMapSize) {
+        this.maxMapSize = maxMapSize;
+        return this;
+    }
+
     /**
      * Sets readers.
      *
-     * @param readers the readers
+     * @param readers 最大读事务数，默认126
      * @return the readers
      */
     public LmdbClient setReaders(int readers) {
@@ -86,20 +198,48 @@ public class LmdbClient {
         return this;
     }
 
+    /**
+     * Sets sync.
+     *
+     * @param sync the sync
+     * @return the sync
+     */
+    public LmdbClient setSync(boolean sync) {
+        this.sync = sync;
+        return this;
+    }
+
     /**
      * Build lmdb client.
      *
      * @return the lmdb client
      */
     public LmdbClient build() {
+        if (readers <= 0) {
+            throw new IllegalArgumentException("lmdb readers must be positive: " + readers);
+        }
+        //MDB_NOTLS：读事务不绑定线程，同一线程可同时持有多个读事务（如迭代过程中peek）
+        //不使用MDB_FIXEDMAP：扩容与压缩后重新映射，原地址可能已被其他映射占用，打开时报EBUSY
+        this.flags = sync
+                ? new EnvFlags[]{EnvFlags.MDB_WRITEMAP, EnvFlags.MDB_NOTLS}
+                : new EnvFlags[]{EnvFlags.MDB_NOSYNC, EnvFlags.MDB_WRITEMAP, EnvFlags.MDB_NOTLS};
+        open();
+        //提升性能
+        System.setProperty(Env.DISABLE_CHECKS_PROP, Boolean.TRUE.toString());
+        return this;
+    }
+
+    /**
+     * 打开环境
+     */
+    private void open() {
         env = Env.create()
                 .setMapSize(mapSize)
                 .setMaxReaders(readers)
                 .setMaxDbs(dbs)
-                .open(new File(envPath), EnvFlags.MDB_FIXEDMAP, EnvFlags.MDB_NOSYNC, EnvFlags.MDB_WRITEMAP);
-        //提升性能
-        System.setProperty(Env.DISABLE_CHECKS_PROP, Boolean.TRUE.toString());
-        return this;
+                .open(new File(envPath), flags);
+        //已扩容过的环境，实际大小以数据文件为准
+        mapSize = env.info().mapSize;
     }
 
     /**
@@ -112,11 +252,344 @@ public class LmdbClient {
         if (env == null || env.isClosed()) {
             throw new Env.AlreadyClosedException();
         }
-        return env.openDbi(dbName, DbiFlags.MDB_CREATE);
+        Dbi<ByteBuffer> dbi = env.openDbi(dbName, DbiFlags.MDB_CREATE);
+        opened.put(dbName, dbi);
+        return dbi;
+    }
+
+    /**
+     * Creat dbi dbi.
+     *
+     * @param dbName the db name
+     * @param flags  除MDB_CREATE外的其他标志
+     * @return the dbi
+     */
+    public Dbi<ByteBuffer> creatDbi(String dbName, DbiFlags... flags) {
+        if (env == null || env.isClosed()) {
+            throw new Env.AlreadyClosedException();
+        }
+        DbiFlags[] all = Arrays.copyOf(flags, flags.length + 1);
+        all[flags.length] = DbiFlags.MDB_CREATE;
+        Dbi<ByteBuffer> dbi = env.openDbi(dbName, all);
+        opened.put(dbName, dbi);
+        return dbi;
+    }
+
+    /**
+     * 环境中是否已有该名称的库
+     *
+     * @param dbName the db name
+     * @return the boolean
+     */
+    public boolean hasDbi(String dbName) {
+        if (env == null || env.isClosed()) {
+            throw new Env.AlreadyClosedException();
+        }
+        byte[] name = dbName.getBytes(StandardCharsets.UTF_8);
+        try (Access access = access()) {
+            return env.getDbiNames().stream().anyMatch(found -> Arrays.equals(found, name));
+        }
+    }
+
+    /**
+     * 是否允许扩容
+     *
+     * @return the boolean
+     */
+    private boolean growable() {
+        return maxMapSize > mapSize;
+    }
+
+    /**
+     * 进入环境，返回的access关闭前不会扩容或压缩；事务需在access内开启并在access关闭前结束
+     * 正在扩容或压缩时等待完成，当前线程已进入时直接进入
+     *
+     * @return the access
+     */
+    public Access access() {
+        AtomicInteger depth = DEPTH.get();
+        for (; ; ) {
+            if (exclusive && depth.get() == 0) {
+                awaitReleased();
+            }
+            accesses.incrementAndGet();
+            if (!exclusive || depth.get() > 0) {
+                depth.incrementAndGet();
+                return new Access(depth);
+            }
+            //与扩容或压缩同时发生，退出后等待完成
+            leave();
+        }
+    }
+
+    /**
+     * 等待扩容或压缩完成
+     */
+    private void awaitReleased() {
+        boolean interrupted = false;
+        synchronized (exclusiveLock) {
+            while (exclusive) {
+                try {
+                    exclusiveLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 退出环境，最后一个退出时通知等待中的扩容或压缩
+     */
+    private void leave() {
+        if (accesses.decrementAndGet() == 0 && exclusive) {
+            synchronized (exclusiveLock) {
+                exclusiveLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 在读事务中执行
+     *
+     * @param <T> the type parameter
+     * @param op  the op
+     * @return the t
+     */
+    public <T> T read(Function<Txn<ByteBuffer>, T> op) {
+        try (Access access = access(); Txn<ByteBuffer> txnRead = txnRead()) {
+            return op.apply(txnRead);
+        }
+    }
+
+    /**
+     * 在写事务中执行，op负责提交；遇到MDB_MAP_FULL时扩容后重新执行op，op需在异常时回滚自身的状态
+     *
+     * @param <T> the type parameter
+     * @param op  the op
+     * @return the t
+     */
+    public <T> T write(Function<Txn<ByteBuffer>, T> op) {
+        for (; ; ) {
+            long size = mapSize;
+            T result;
+            try (Access access = access(); Txn<ByteBuffer> txnWrite = txnWrite()) {
+                result = op.apply(txnWrite);
+            } catch (Env.MapFullException e) {
+                if (!grow(size)) {
+                    throw e;
+                }
+                continue;
+            }
+            if (growable() && writes.incrementAndGet() % HIGH_WATER_CHECK_INTERVAL == 0) {
+                growIfHighWater();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 映射用量超过高水位时提前扩容，失败不影响本次写入
+     */
+    private void growIfHighWater() {
+        long size = mapSize;
+        if ((info().lastPageNumber + 1) * stat().pageSize >= size * HIGH_WATER_RATIO) {
+            grow(size);
+        }
+    }
+
+    /**
+     * 按倍数扩大mapSize，不超过maxMapSize
+     * 等待所有access退出后扩容，等待超时或当前线程仍在access内时放弃
+     *
+     * @param observed 调用方看到的mapSize，已被其他线程扩容时直接返回true
+     * @return 扩容成功或已被扩容时返回true
+     */
+    public boolean grow(long observed) {
+        if (DEPTH.get().get() > 0) {
+            return false;
+        }
+        synchronized (exclusiveLock) {
+            if (!awaitExclusive()) {
+                return false;
+            }
+            if (mapSize > observed) {
+                return true;
+            }
+            if (mapSize >= maxMapSize) {
+                return false;
+            }
+            long target = Math.min(maxMapSize, mapSize * 2);
+            exclusive = true;
+            try {
+                if (!quiesce("resize")) {
+                    return false;
+                }
+                env.setMapSize(target);
+                LOGGER.info("lmdb {} map size grown from {} to {}.", envPath, mapSize, target);
+                mapSize = target;
+                return true;
+            } finally {
+                exclusive = false;
+                exclusiveLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 等待进行中的扩容或压缩结束，需持有exclusiveLock；等待过程中会释放锁，同一时间只允许一个线程扩容或压缩
+     *
+     * @return 被中断时返回false
+     */
+    private boolean awaitExclusive() {
+        while (exclusive) {
+            try {
+                exclusiveLock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 等待所有access退出，需持有exclusiveLock并已设置exclusive
+     *
+     * @param action 操作名，用于日志
+     * @return 超时或被中断时返回false
+     */
+    private boolean quiesce(String action) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(QUIESCE_TIMEOUT_MILLIS);
+        while (accesses.get() > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                LOGGER.warn("lmdb {} {} timeout, {} transactions still active.", envPath, action, accesses.get());
+                return false;
+            }
+            try {
+                exclusiveLock.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 空闲页比例，即已使用的映射空间中不属于任何库的部分，删除记录后产生，只能被后续写入复用
+     *
+     * @return the double
+     */
+    public double freeRatio() {
+        try (Access access = access(); Txn<ByteBuffer> txnRead = txnRead()) {
+            long pages = env.info().lastPageNumber + 1;
+            //两个元数据页与主库
+            long live = 2 + pages(env.stat());
+            for (Dbi<ByteBuffer> dbi : opened.values()) {
+                live += pages(dbi.stat(txnRead));
+            }
+            return Math.max(0, 1 - (double) live / pages);
+        }
+    }
+
+    /**
+     * 库占用的页数
+     *
+     * @param stat the stat
+     * @return the long
+     */
+    private static long pages(Stat stat) {
+        return stat.branchPages + stat.leafPages + stat.overflowPages;
+    }
+
+    /**
+     * 在线压缩：等待活动事务结束后把环境压缩复制(MDB_CP_COMPACT)到临时目录，替换数据文件并重新打开环境
+     * 压缩期间新的access等待；之前打开的库全部失效，reopen在新环境上重新打开，完成前不允许其他访问
+     *
+     * @param reopen 重新打开库
+     * @return 压缩成功返回true，当前线程在access内或等待超时返回false
+     */
+    public boolean compact(Runnable reopen) {
+        if (DEPTH.get().get() > 0) {
+            return false;
+        }
+        synchronized (exclusiveLock) {
+            if (!awaitExclusive()) {
+                return false;
+            }
+            exclusive = true;
+            try {
+                if (!quiesce("compact")) {
+                    return false;
+                }
+                Path dir = Paths.get(envPath);
+                Path tmp = dir.resolve(COMPACT_DIR);
+                long before = Files.size(dir.resolve(DATA_FILE));
+                deleteDirectory(tmp);
+                Files.createDirectories(tmp);
+                try {
+                    env.copy(tmp.toFile(), CopyFlags.MDB_CP_COMPACT);
+                } catch (RuntimeException e) {
+                    deleteDirectory(tmp);
+                    throw e;
+                }
+                long after = Files.size(tmp.resolve(DATA_FILE));
+                env.close();
+                try {
+                    //同一目录内重命名，替换是原子的；失败时仍打开原数据文件
+                    Files.move(tmp.resolve(DATA_FILE), dir.resolve(DATA_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    opened.clear();
+                    open();
+                    reopen.run();
+                    deleteDirectory(tmp);
+                }
+                LOGGER.info("lmdb {} compacted, data file {} -> {} bytes.", envPath, before, after);
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                exclusive = false;
+                exclusiveLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 删除目录及其中的文件，不存在时忽略
+     *
+     * @param dir the dir
+     * @throws IOException the io exception
+     */
+    private static void deleteDirectory(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * 当前mapSize
+     *
+     * @return the long
+     */
+    public long getMapSize() {
+        return mapSize;
     }
 
     /**
      * Txn read txn.
+     * 需在access()内调用
      *
      * @return the txn
      */
@@ -129,6 +602,7 @@ public class LmdbClient {
 
     /**
      * Txn write txn.
+     * 需在access()内调用
      *
      * @return the txn
      */
@@ -139,6 +613,47 @@ public class LmdbClient {
         return env.txnWrite();
     }
 
+    /**
+     * 环境信息，包含mapSize与已使用的最后一页
+     *
+     * @return the env info
+     */
+    public EnvInfo info() {
+        if (env == null || env.isClosed()) {
+            throw new Env.AlreadyClosedException();
+        }
+        //读取映射中的元数据页，不能与扩容或压缩同时进行
+        try (Access access = access()) {
+            return env.info();
+        }
+    }
+
+    /**
+     * 环境统计，包含页大小
+     *
+     * @return the stat
+     */
+    public Stat stat() {
+        if (env == null || env.isClosed()) {
+            throw new Env.AlreadyClosedException();
+        }
+        try (Access access = access()) {
+            return env.stat();
+        }
+    }
+
+    /**
+     * 强制刷盘
+     */
+    public void sync() {
+        if (env == null || env.isClosed()) {
+            throw new Env.AlreadyClosedException();
+        }
+        try (Access access = access()) {
+            env.sync(true);
+        }
+    }
+
     /**
      * Close.
      */
@@ -147,4 +662,38 @@ public class LmdbClient {
             env.close();
         }
     }
+
+    /**
+     * 已进入环境的凭证，关闭后允许扩容或压缩
+     */
+    public final class Access implements AutoCloseable {
+
+        /**
+         * 进入线程的计数，可以在其他线程关闭
+         */
+        private final AtomicInteger depth;
+
+        /**
+         * 是否已关闭
+         */
+        private boolean closed;
+
+        /**
+         * Instantiates a new Access.
+         *
+         * @param depth the depth
+         */
+        private Access(AtomicInteger depth) {
+            this.depth = depth;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                depth.decrementAndGet();
+                leave();
+            }
+        }
+    }
 }
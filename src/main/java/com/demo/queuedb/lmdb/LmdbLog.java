@@ -0,0 +1,447 @@
+package com.demo.queuedb.lmdb;
+
+import com.demo.queuedb.codec.Codecs;
+import com.demo.queuedb.util.ByteBufferUtil;
+import org.lmdbjava.Cursor;
+import org.lmdbjava.Dbi;
+import org.lmdbjava.DbiFlags;
+import org.lmdbjava.GetOp;
+import org.lmdbjava.PutFlags;
+import org.lmdbjava.Txn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LMDB共享日志
+ * 记录读取后不删除，每个消费组各自保存消费位置，所有消费组都已提交越过的记录才会被截断；
+ * 消费组读取只使用读事务，多个消费组可以并行读取
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+public class LmdbLog<E extends Serializable> {
+    /**
+     * 消费位置库名后缀
+     */
+    private static final String OFFSETS_DB_SUFFIX = "_offsets";
+    /**
+     * 尾部追加写入标志
+     */
+    private static final PutFlags[] APPEND = {PutFlags.MDB_APPEND};
+    /**
+     * 截断时每个写事务最多删除的条数，控制单个写事务的脏页数量
+     */
+    private static final int TRUNCATE_BATCH_SIZE = 1024;
+    /**
+     * The Logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(LmdbLog.class);
+    /**
+     * The Lmdb client.
+     */
+    private LmdbClient lmdbClient;
+    /**
+     * 日志库，key为本机字节序的指针位(MDB_INTEGERKEY)
+     */
+    private Dbi<ByteBuffer> dbi;
+    /**
+     * 消费位置库，key为消费组名，value为已提交的下一条读取位置
+     */
+    private Dbi<ByteBuffer> offsetDbi;
+    /**
+     * 值序列化
+     */
+    private LmdbSerializer<E> serializer;
+    /**
+     * 最早保留的记录位置，之前的记录已被截断
+     */
+    private volatile long firstIndex;
+    /**
+     * 下一条写入位置
+     */
+    private AtomicLong lastIndex;
+    /**
+     * 各消费组已提交的位置，只在写事务中修改
+     */
+    private Map<String, Long> committed = new ConcurrentHashMap<>();
+    /**
+     * 已打开的消费组
+     */
+    private Map<String, ConsumerGroup> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new Lmdb log.
+     * 使用配置中的mapSize、dbs、envPath、readers、dbName
+     *
+     * @param config    the config
+     * @param baseClass the base class
+     */
+    public LmdbLog(LmdbQueueConfig config, Class<E> baseClass) {
+        //日志库与消费位置库
+        int dbs = Math.max(config.getDbs(), 2);
+        lmdbClient = new LmdbClient().setDbs(dbs).setEnvPath(config.getEnvPath()).setMapSize(config.getMapSize()).setReaders(config.getReaders())
+                .setMaxMapSize(config.getMaxMapSize()).build();
+        dbi = lmdbClient.creatDbi(config.getDbName(), DbiFlags.MDB_INTEGERKEY);
+        offsetDbi = lmdbClient.creatDbi(config.getDbName() + OFFSETS_DB_SUFFIX);
+        //日志不记录编码，固定使用写入类信息的格式
+        serializer = new LmdbSerializer<>(Codecs.create(Codecs.KRYO_CLASS, baseClass));
+        initIndex();
+    }
+
+    /**
+     * 初始化指针与已提交的消费位置
+     */
+    private void initIndex() {
+        try (LmdbClient.Access access = lmdbClient.access(); Txn<ByteBuffer> txnRead = lmdbClient.txnRead()) {
+            try (Cursor<ByteBuffer> cursor = offsetDbi.openCursor(txnRead)) {
+                boolean found = cursor.first();
+                while (found) {
+                    committed.put(StandardCharsets.UTF_8.decode(cursor.key()).toString(), cursor.val().getLong(0));
+                    found = cursor.next();
+                }
+            }
+            try (Cursor<ByteBuffer> cursor = dbi.openCursor(txnRead)) {
+                if (cursor.first()) {
+                    firstIndex = indexOf(cursor.key());
+                    cursor.last();
+                    lastIndex = new AtomicLong(indexOf(cursor.key()) + 1);
+                } else {
+                    //已全部截断，从消费位置继续编号，保证新记录不落在任何消费组之前
+                    firstIndex = committed.values().stream().mapToLong(Long::longValue).max().orElse(0);
+                    lastIndex = new AtomicLong(firstIndex);
+                }
+            }
+        }
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param item the item
+     * @return the boolean
+     */
+    public boolean append(E item) {
+        return appendAll(Collections.singletonList(item));
+    }
+
+    /**
+     * 批量追加，整批数据在同一个写事务中提交
+     *
+     * @param items the items
+     * @return the boolean
+     */
+    public boolean appendAll(Collection<? extends E> items) {
+        if (items.isEmpty()) {
+            return true;
+        }
+        try {
+            int count = items.size();
+            lmdbClient.write(txnWrite -> {
+                long last = lastIndex.getAndAdd(count);
+                try {
+                    for (E item : items) {
+                        serializer.write(dbi, txnWrite, key(last++), item, APPEND);
+                    }
+                    txnWrite.commit();
+                    return null;
+                } catch (RuntimeException e) {
+                    //回收指针位，避免留下空洞
+                    lastIndex.addAndGet(-count);
+                    throw e;
+                }
+            });
+            return true;
+        } catch (Exception e) {
+            logger.error("lmdb append fail." + e);
+            return false;
+        }
+    }
+
+    /**
+     * 获取消费组，不存在时创建
+     * 新建的消费组从最早保留的记录开始读取
+     *
+     * @param name the name
+     * @return the consumer group
+     */
+    public ConsumerGroup group(String name) {
+        return groups.computeIfAbsent(name, n -> {
+            Long offset = committed.get(n);
+            if (offset == null) {
+                //立即持久化，防止未提交前被截断
+                offset = firstIndex;
+                commit(n, offset);
+            }
+            return new ConsumerGroup(n, offset);
+        });
+    }
+
+    /**
+     * 删除消费组，不再阻止截断
+     *
+     * @param name the name
+     */
+    public void removeGroup(String name) {
+        groups.remove(name);
+        long min = lmdbClient.write(txnWrite -> {
+            offsetDbi.delete(txnWrite, groupKey(name));
+            txnWrite.commit();
+            committed.remove(name);
+            return minCommitted();
+        });
+        truncate(min);
+    }
+
+    /**
+     * 持久化消费组位置，并截断所有消费组都已越过的记录
+     *
+     * @param name   the name
+     * @param offset the offset
+     */
+    private void commit(String name, long offset) {
+        long min = lmdbClient.write(txnWrite -> {
+            offsetDbi.put(txnWrite, groupKey(name), ByteBufferUtil.longValue(offset));
+            txnWrite.commit();
+            //写事务互斥，提交后再更新内存中的位置
+            committed.put(name, offset);
+            return minCommitted();
+        });
+        truncate(min);
+    }
+
+    /**
+     * 所有消费组已提交位置的最小值，只在写事务中调用
+     *
+     * @return 没有消费组时返回Long.MAX_VALUE
+     */
+    private long minCommitted() {
+        long min = Long.MAX_VALUE;
+        for (Long offset : committed.values()) {
+            min = Math.min(min, offset);
+        }
+        return min;
+    }
+
+    /**
+     * 删除min之前的记录，每个写事务最多删除TRUNCATE_BATCH_SIZE条，落后很多的消费组提交时不会产生一个很大的写事务阻塞写入
+     *
+     * @param min 所有消费组都已越过的位置
+     */
+    private void truncate(long min) {
+        if (min == Long.MAX_VALUE) {
+            //没有消费组时保留全部记录
+            return;
+        }
+        while (firstIndex < min) {
+            lmdbClient.write(txnWrite -> {
+                long next = min;
+                try (Cursor<ByteBuffer> cursor = dbi.openCursor(txnWrite)) {
+                    boolean found = cursor.first();
+                    int deleted = 0;
+                    while (found && indexOf(cursor.key()) < min && deleted < TRUNCATE_BATCH_SIZE) {
+                        //删除后游标自动指向下一条
+                        cursor.delete();
+                        deleted++;
+                        found = cursor.next();
+                    }
+                    if (found && indexOf(cursor.key()) < min) {
+                        //本批已满，剩余部分下一个写事务继续
+                        next = indexOf(cursor.key());
+                    }
+                }
+                txnWrite.commit();
+                //多个消费组并发截断时只前进不后退
+                firstIndex = Math.max(firstIndex, next);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 最早保留的记录位置
+     *
+     * @return the long
+     */
+    public long firstIndex() {
+        return firstIndex;
+    }
+
+    /**
+     * 下一条写入位置
+     *
+     * @return the long
+     */
+    public long lastIndex() {
+        return lastIndex.get();
+    }
+
+    /**
+     * 保留的记录数
+     *
+     * @return the long
+     */
+    public long size() {
+        return lastIndex.get() - firstIndex;
+    }
+
+    /**
+     * 指针位转key
+     *
+     * @param index the index
+     * @return the byte buffer
+     */
+    private ByteBuffer key(long index) {
+        return ByteBufferUtil.nativeLongKey(index);
+    }
+
+    /**
+     * key转指针位
+     *
+     * @param key the key
+     * @return the long
+     */
+    private long indexOf(ByteBuffer key) {
+        return ByteBufferUtil.readLong(key, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * 消费组名转key
+     *
+     * @param name the name
+     * @return the byte buffer
+     */
+    private ByteBuffer groupKey(String name) {
+        return ByteBufferUtil.bytesToByteBuffer(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Close.
+     */
+    public void close() {
+        if (offsetDbi != null) {
+            offsetDbi.close();
+        }
+        if (dbi != null) {
+            dbi.close();
+        }
+        lmdbClient.close();
+    }
+
+    /**
+     * 消费组，读取只推进内存中的位置，commit()后持久化
+     * 未提交的位置在重启后从上次提交处重新读取
+     */
+    public final class ConsumerGroup {
+        /**
+         * 消费组名
+         */
+        private final String name;
+        /**
+         * 下一条读取位置
+         */
+        private long offset;
+
+        /**
+         * Instantiates a new Consumer group.
+         *
+         * @param name   the name
+         * @param offset the offset
+         */
+        private ConsumerGroup(String name, long offset) {
+            this.name = name;
+            this.offset = offset;
+        }
+
+        /**
+         * 读取下一条记录，没有新记录时返回null
+         *
+         * @return the e
+         */
+        public E poll() {
+            List<E> items = poll(1);
+            return items.isEmpty() ? null : items.get(0);
+        }
+
+        /**
+         * 读取最多maxElements条记录，只使用读事务
+         *
+         * @param maxElements the max elements
+         * @return the list
+         */
+        public synchronized List<E> poll(int maxElements) {
+            List<E> items = new ArrayList<>();
+            if (maxElements <= 0 || offset >= lastIndex.get()) {
+                return items;
+            }
+            try (LmdbClient.Access access = lmdbClient.access();
+                 Txn<ByteBuffer> txnRead = lmdbClient.txnRead();
+                 Cursor<ByteBuffer> cursor = dbi.openCursor(txnRead)) {
+                boolean found = cursor.get(key(offset), GetOp.MDB_SET_KEY);
+                while (found && items.size() < maxElements && indexOf(cursor.key()) == offset + items.size()) {
+                    //读事务未结束，页面不会被复用，直接在映射内存上反序列化
+                    items.add(serializer.read(cursor.val()));
+                    found = cursor.next();
+                }
+            }
+            offset += items.size();
+            return items;
+        }
+
+        /**
+         * 读取下一条记录，不推进位置
+         *
+         * @return the e
+         */
+        public synchronized E peek() {
+            try (LmdbClient.Access access = lmdbClient.access(); Txn<ByteBuffer> txnRead = lmdbClient.txnRead()) {
+                return serializer.read(dbi.get(txnRead, key(offset)));
+            }
+        }
+
+        /**
+         * 持久化当前位置，并截断所有消费组都已越过的记录
+         */
+        public synchronized void commit() {
+            LmdbLog.this.commit(name, offset);
+        }
+
+        /**
+         * 尚未读取的记录数
+         *
+         * @return the long
+         */
+        public synchronized long lag() {
+            return lastIndex.get() - offset;
+        }
+
+        /**
+         * 下一条读取位置
+         *
+         * @return the long
+         */
+        public synchronized long offset() {
+            return offset;
+        }
+
+        /**
+         * Gets name.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,739 @@
+package com.demo.queuedb.lmdb;
+
+import com.demo.queuedb.codec.Codec;
+import com.demo.queuedb.codec.Codecs;
+import com.demo.queuedb.queue.PersistentQueue;
+import com.demo.queuedb.queue.QueueMetrics;
+import com.demo.queuedb.queue.QueueStats;
+import com.demo.queuedb.queue.SyncMode;
+import com.demo.queuedb.queue.Syncer;
+import com.demo.queuedb.util.BlockingSupport;
+import com.demo.queuedb.util.ByteBufferUtil;
+import com.esotericsoftware.kryo.io.Output;
+import org.lmdbjava.Cursor;
+import org.lmdbjava.Dbi;
+import org.lmdbjava.GetOp;
+import org.lmdbjava.Txn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LMDB优先级队列
+ * key为(Integer.MAX_VALUE - 优先级, 级别内序号)的大端组合，库按key顺序即为优先级从高到低、同级先进先出；
+ * 出队时游标直接定位到第一条记录，即最高非空级别的头部，不需要遍历。每个级别各自记录头尾序号
+ * 不支持预留确认、外置存储、组提交与预读
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+public class LmdbPriorityQueue<E extends Serializable> extends AbstractQueue<E> implements PersistentQueue<E> {
+    /**
+     * 默认优先级，最低
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+    /**
+     * 元数据库名后缀
+     */
+    private static final String META_DB_SUFFIX = "_meta";
+    /**
+     * 记录编码id的key
+     */
+    private static final ByteBuffer CODEC_KEY = ByteBufferUtil.stringToByteBuffer("index_queue_codec");
+    /**
+     * drainTo(Collection)每个写事务最多取出的条数
+     */
+    private static final int DRAIN_BATCH_SIZE = 1024;
+    /**
+     * 迭代器每个读事务读取的条数
+     */
+    private static final int ITERATOR_BATCH_SIZE = 64;
+    /**
+     * The Logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(LmdbPriorityQueue.class);
+    /**
+     * The Lmdb client.
+     */
+    private LmdbClient lmdbClient;
+    /**
+     * 队列库，key为组合key
+     */
+    private Dbi<ByteBuffer> dbi;
+    /**
+     * 元数据库
+     */
+    private Dbi<ByteBuffer> metaDbi;
+    /**
+     * 值序列化
+     */
+    private LmdbSerializer<E> serializer;
+    /**
+     * 各级别的头尾序号，按优先级从高到低；级别清空后保留，继续使用原来的序号
+     */
+    private final ConcurrentSkipListMap<Integer, Level> levels = new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+    /**
+     * 数量
+     */
+    private AtomicLong entries;
+    /**
+     * 容量控制与非空等待
+     */
+    private BlockingSupport blocking;
+    /**
+     * 刷盘线程与未刷盘记录的统计
+     */
+    private Syncer syncer;
+    /**
+     * 队列埋点
+     */
+    private QueueMetrics metrics;
+    /**
+     * 是否计时，未开启监控时不读取时钟
+     */
+    private boolean timed;
+
+    /**
+     * Instantiates a new Lmdb priority queue.
+     * 使用配置中的mapSize、maxMapSize、dbs、envPath、readers、dbName、capacity、syncMode、codec、metrics
+     *
+     * @param config    the config
+     * @param baseClass the base class
+     */
+    public LmdbPriorityQueue(LmdbQueueConfig config, Class<E> baseClass) {
+        metrics = config.getMetrics();
+        timed = metrics.isEnabled();
+        //队列库与元数据库
+        int dbs = Math.max(config.getDbs(), 2);
+        lmdbClient = new LmdbClient().setDbs(dbs).setEnvPath(config.getEnvPath()).setMapSize(config.getMapSize()).setReaders(config.getReaders())
+                .setMaxMapSize(config.getMaxMapSize()).setSync(config.getSyncMode() == SyncMode.SYNC).build();
+        dbi = lmdbClient.creatDbi(config.getDbName());
+        metaDbi = lmdbClient.creatDbi(config.getDbName() + META_DB_SUFFIX);
+        serializer = new LmdbSerializer<>(initCodec(config, baseClass), metrics);
+        initLevels();
+        blocking = new BlockingSupport(config.getCapacity(), entries.get());
+        syncer = new Syncer("lmdb-priority-sync-" + config.getDbName(), config.getSyncMode(), config.getSyncIntervalMillis(),
+                config.getSyncEveryRecords(), lmdbClient::sync, metrics);
+        metrics.bind(this);
+    }
+
+    /**
+     * 检查key布局，读取队列记录的编码，新建队列记录配置的编码与布局
+     *
+     * @param config    the config
+     * @param baseClass the base class
+     * @return the codec
+     */
+    private Codec<E> initCodec(LmdbQueueConfig config, Class<E> baseClass) {
+        return lmdbClient.write(txnWrite -> {
+            //普通队列的库不能按组合key读取，反之亦然
+            boolean layoutRecorded = LmdbQueue.checkKeyLayout(txnWrite, dbi, metaDbi, config.getDbName(), LmdbQueue.LAYOUT_PRIORITY);
+            ByteBuffer recorded = metaDbi.get(txnWrite, CODEC_KEY);
+            String id = Codecs.resolve(config.getDbName(), recorded == null ? null : StandardCharsets.UTF_8.decode(recorded).toString(),
+                    config.getCodec(), dbi.stat(txnWrite).entries > 0);
+            //先创建，编码无效时不记录
+            Codec<E> codec = Codecs.create(id, baseClass);
+            if (recorded == null) {
+                metaDbi.put(txnWrite, CODEC_KEY, ByteBufferUtil.stringToByteBuffer(id));
+            }
+            if (recorded == null || layoutRecorded) {
+                commit(txnWrite);
+            }
+            return codec;
+        });
+    }
+
+    /**
+     * 初始化各级别的头尾序号，每个非空级别定位两次，不遍历记录
+     */
+    private void initLevels() {
+        try (LmdbClient.Access access = lmdbClient.access(); Txn<ByteBuffer> txnRead = lmdbClient.txnRead()) {
+            entries = new AtomicLong(dbi.stat(txnRead).entries);
+            try (Cursor<ByteBuffer> cursor = dbi.openCursor(txnRead)) {
+                boolean found = cursor.first();
+                while (found) {
+                    int priority = priorityOf(cursor.key());
+                    long head = sequenceOf(cursor.key());
+                    //定位到下一级别的第一条，再退回本级别的最后一条
+                    found = cursor.get(key(priority, -1L), GetOp.MDB_SET_RANGE) ? cursor.prev() : cursor.last();
+                    levels.put(priority, new Level(head, sequenceOf(cursor.key()) + 1));
+                    found = found && cursor.next();
+                }
+            }
+        }
+    }
+
+    /**
+     * 提交写事务，开启监控时记录提交耗时
+     *
+     * @param txnWrite the txn write
+     */
+    private void commit(Txn<ByteBuffer> txnWrite) {
+        if (!timed) {
+            txnWrite.commit();
+            return;
+        }
+        long start = System.nanoTime();
+        txnWrite.commit();
+        metrics.recordCommit(System.nanoTime() - start);
+    }
+
+    /**
+     * 以默认优先级入队，容量已满时返回false
+     *
+     * @param item the item
+     * @return the boolean
+     */
+    @Override
+    public boolean offer(E item) {
+        return offer(item, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * 按优先级入队，数值越大越先出队；容量已满时返回false
+     *
+     * @param item     the item
+     * @param priority 优先级，不小于0
+     * @return the boolean
+     */
+    public boolean offer(E item, int priority) {
+        Objects.requireNonNull(item);
+        checkPriority(priority);
+        return blocking.tryAcquire(1) && enqueue(item, priority);
+    }
+
+    /**
+     * 以默认优先级入队，容量已满时阻塞等待
+     *
+     * @param item the item
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public void put(E item) throws InterruptedException {
+        put(item, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * 按优先级入队，容量已满时阻塞等待；写入失败时抛出IllegalStateException
+     *
+     * @param item     the item
+     * @param priority 优先级，不小于0
+     * @throws InterruptedException the interrupted exception
+     */
+    public void put(E item, int priority) throws InterruptedException {
+        Objects.requireNonNull(item);
+        checkPriority(priority);
+        blocking.acquire(1);
+        if (!enqueue(item, priority)) {
+            throw new IllegalStateException("lmdb priority put fail.");
+        }
+    }
+
+    /**
+     * 以默认优先级入队，容量已满时最多等待timeout
+     *
+     * @param item    the item
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the boolean
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public boolean offer(E item, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(item);
+        return blocking.tryAcquire(1, timeout, unit) && enqueue(item, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * 已获取容量许可后入队，失败时记录日志、归还许可并返回false
+     *
+     * @param item     the item
+     * @param priority the priority
+     * @return the boolean
+     */
+    private boolean enqueue(E item, int priority) {
+        long start = timed ? System.nanoTime() : 0L;
+        try {
+            //事务外序列化到线程的输出缓冲，事务内只做拷贝
+            Output out = serializer.serialize(item);
+            Level level = level(priority);
+            lmdbClient.write(txnWrite -> {
+                //写事务互斥，在事务内获取序号
+                long sequence = level.tail.getAndIncrement();
+                try {
+                    serializer.put(dbi, txnWrite, key(priority, sequence), out);
+                    commit(txnWrite);
+                } catch (RuntimeException e) {
+                    //回收序号，避免留下空洞
+                    level.tail.decrementAndGet();
+                    throw e;
+                }
+                return sequence;
+            });
+            entries.incrementAndGet();
+            syncer.written(1);
+            blocking.signalNotEmpty();
+            if (timed) {
+                metrics.recordOffer(System.nanoTime() - start, 1);
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("lmdb priority offer fail." + e);
+            blocking.release(1);
+            return false;
+        }
+    }
+
+    /**
+     * 以默认优先级批量入队，整批数据在同一个写事务中提交
+     *
+     * @param items the items
+     * @return the boolean
+     */
+    @Override
+    public boolean offerAll(Collection<? extends E> items) {
+        return offerAll(items, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * 按同一优先级批量入队，整批数据在同一个写事务中提交；容量不足或写入失败时整批拒绝
+     *
+     * @param items    the items
+     * @param priority 优先级，不小于0
+     * @return the boolean
+     */
+    public boolean offerAll(Collection<? extends E> items, int priority) {
+        items.forEach(Objects::requireNonNull);
+        checkPriority(priority);
+        if (items.isEmpty()) {
+            return true;
+        }
+        if (!blocking.tryAcquire(items.size())) {
+            return false;
+        }
+        long start = timed ? System.nanoTime() : 0L;
+        try {
+            int count = items.size();
+            Level level = level(priority);
+            lmdbClient.write(txnWrite -> {
+                //一次性获取一段连续的序号
+                long sequence = level.tail.getAndAdd(count);
+                long next = sequence;
+                try {
+                    for (E item : items) {
+                        serializer.write(dbi, txnWrite, key(priority, next++), item);
+                    }
+                    commit(txnWrite);
+                } catch (RuntimeException e) {
+                    //回收序号，避免留下空洞
+                    level.tail.addAndGet(-count);
+                    throw e;
+                }
+                return sequence;
+            });
+            entries.addAndGet(count);
+            syncer.written(count);
+            blocking.signalNotEmpty();
+            if (timed) {
+                metrics.recordOffer(System.nanoTime() - start, count);
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("lmdb priority offerAll fail." + e);
+            blocking.release(items.size());
+            return false;
+        }
+    }
+
+    /**
+     * 最高优先级的头部数据，不移除
+     *
+     * @return the e
+     */
+    @Override
+    public E peek() {
+        long start = timed ? System.nanoTime() : 0L;
+        try (LmdbClient.Access access = lmdbClient.access();
+             Txn<ByteBuffer> txnRead = lmdbClient.txnRead();
+             Cursor<ByteBuffer> cursor = dbi.openCursor(txnRead)) {
+            //事务结束后页面可能被写事务复用，需在事务内反序列化
+            return cursor.first() ? serializer.read(cursor.val()) : null;
+        } finally {
+            if (timed) {
+                metrics.recordPeek(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * 取出最高优先级的头部数据
+     *
+     * @return the e
+     */
+    @Override
+    public synchronized E poll() {
+        List<E> head = new ArrayList<>(1);
+        return drainTo(head, 1) == 0 ? null : head.get(0);
+    }
+
+    /**
+     * 按优先级从高到低批量出队，最多取出maxElements条；游标从第一条记录开始顺序删除，跨级别时不重新定位
+     *
+     * @param c           the c
+     * @param maxElements the max elements
+     * @return 实际取出的数量
+     */
+    @Override
+    public synchronized int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        if (maxElements <= 0) {
+            return 0;
+        }
+        long start = timed ? System.nanoTime() : 0L;
+        //各级别本批取出的数量
+        Map<Integer, Integer> taken = new HashMap<>();
+        List<byte[]> values = lmdbClient.write(txnWrite -> {
+            taken.clear();
+            List<byte[]> removed = new ArrayList<>();
+            try (Cursor<ByteBuffer> cursor = dbi.openCursor(txnWrite)) {
+                boolean found = cursor.first();
+                while (found && removed.size() < maxElements) {
+                    taken.merge(priorityOf(cursor.key()), 1, Integer::sum);
+                    //删除后页面会被复用，需要先拷贝到堆内存
+                    removed.add(ByteBufferUtil.byteBufferToBytes(cursor.val()));
+                    cursor.delete();
+                    found = cursor.next();
+                }
+            }
+            commit(txnWrite);
+            return removed;
+        });
+        if (values.isEmpty()) {
+            return 0;
+        }
+        //出队互斥，只有这里移动各级别的头序号
+        taken.forEach((priority, n) -> levels.get(priority).head.addAndGet(n));
+        entries.addAndGet(-values.size());
+        blocking.release(values.size());
+        //事务外完成反序列化
+        for (byte[] value : values) {
+            c.add(serializer.read(value));
+        }
+        if (timed) {
+            metrics.recordPoll(System.nanoTime() - start, values.size());
+        }
+        return values.size();
+    }
+
+    /**
+     * 取出当前所有数据，按批提交，每批一个写事务
+     *
+     * @param c the c
+     * @return 实际取出的数量
+     */
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        //只取调用时已有的数据，避免生产者持续写入时无法返回
+        long available = entries.get();
+        int total = 0;
+        while (total < available) {
+            int n = drainTo(c, (int) Math.min(DRAIN_BATCH_SIZE, available - total));
+            if (n == 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * 取出最高优先级的头部数据，队列为空时阻塞等待
+     *
+     * @return the e
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public E take() throws InterruptedException {
+        for (; ; ) {
+            E item = poll();
+            if (item != null) {
+                return item;
+            }
+            blocking.awaitNotEmpty(this::isEmpty, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 取出最高优先级的头部数据，队列为空时最多等待timeout
+     *
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the e
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (; ; ) {
+            E item = poll();
+            if (item != null) {
+                return item;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !blocking.awaitNotEmpty(this::isEmpty, remaining)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 剩余容量
+     *
+     * @return the int
+     */
+    @Override
+    public int remainingCapacity() {
+        return blocking.remainingCapacity();
+    }
+
+    /**
+     * 只读迭代器，按出队顺序遍历；每批记录在一个短读事务中读取，不长期占用读事务，遍历期间的写入可能可见
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            /**
+             * 已读取未返回的记录
+             */
+            private final ArrayDeque<E> buffered = new ArrayDeque<>();
+            /**
+             * 已读取的最后一条记录的优先级
+             */
+            private int lastPriority = -1;
+            /**
+             * 已读取的最后一条记录的序号
+             */
+            private long lastSequence;
+            /**
+             * 是否已读到末尾
+             */
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (buffered.isEmpty() && !exhausted) {
+                    fill();
+                }
+                return !buffered.isEmpty();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return buffered.poll();
+            }
+
+            /**
+             * 从上次读取的位置之后读取一批
+             */
+            private void fill() {
+                try (LmdbClient.Access access = lmdbClient.access();
+                     Txn<ByteBuffer> txnRead = lmdbClient.txnRead();
+                     Cursor<ByteBuffer> cursor = dbi.openCursor(txnRead)) {
+                    boolean found = lastPriority < 0 ? cursor.first() : cursor.get(key(lastPriority, lastSequence), GetOp.MDB_SET_RANGE);
+                    if (found && lastPriority >= 0 && priorityOf(cursor.key()) == lastPriority && sequenceOf(cursor.key()) == lastSequence) {
+                        found = cursor.next();
+                    }
+                    while (found && buffered.size() < ITERATOR_BATCH_SIZE) {
+                        lastPriority = priorityOf(cursor.key());
+                        lastSequence = sequenceOf(cursor.key());
+                        buffered.add(serializer.read(cursor.val()));
+                        found = cursor.next();
+                    }
+                    exhausted = !found;
+                }
+            }
+        };
+    }
+
+    /**
+     * Size int.
+     *
+     * @return the int
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, entries.get());
+    }
+
+    @Override
+    public long longSize() {
+        return entries.get();
+    }
+
+    /**
+     * 指定优先级的待消费数量
+     *
+     * @param priority the priority
+     * @return the long
+     */
+    public long levelSize(int priority) {
+        Level level = levels.get(priority);
+        return level == null ? 0 : Math.max(0, level.tail.get() - level.head.get());
+    }
+
+    /**
+     * 强制刷盘
+     */
+    @Override
+    public void sync() {
+        syncer.sync();
+    }
+
+    @Override
+    public long unsyncedRecords() {
+        return syncer.unsyncedRecords();
+    }
+
+    @Override
+    public long unsyncedAgeNanos() {
+        return syncer.unsyncedAgeNanos();
+    }
+
+    /**
+     * Stats queue stats.
+     *
+     * @return the queue stats
+     */
+    @Override
+    public QueueStats stats() {
+        return new QueueStats(entries.get(), 0, blocking.remainingCapacity());
+    }
+
+    /**
+     * Close.
+     */
+    @Override
+    public void close() {
+        if (blocking != null) {
+            //唤醒等待中的生产者与消费者
+            blocking.close();
+        }
+        if (syncer != null) {
+            //刷盘未落盘的记录
+            syncer.close();
+        }
+        metrics.unbind(this);
+        if (metaDbi != null) {
+            metaDbi.close();
+        }
+        if (dbi != null) {
+            dbi.close();
+        }
+        lmdbClient.close();
+    }
+
+    /**
+     * 优先级对应的级别，不存在时创建
+     *
+     * @param priority the priority
+     * @return the level
+     */
+    private Level level(int priority) {
+        return levels.computeIfAbsent(priority, p -> new Level(0, 0));
+    }
+
+    /**
+     * 检查优先级
+     *
+     * @param priority the priority
+     */
+    private static void checkPriority(int priority) {
+        if (priority < 0) {
+            throw new IllegalArgumentException("priority must not be negative: " + priority);
+        }
+    }
+
+    /**
+     * 组合key，优先级取反使高优先级排在前面
+     * 返回当前线程复用的缓冲区
+     *
+     * @param priority the priority
+     * @param sequence the sequence
+     * @return the byte buffer
+     */
+    private static ByteBuffer key(int priority, long sequence) {
+        return ByteBufferUtil.compositeKey(Integer.MAX_VALUE - priority, sequence);
+    }
+
+    /**
+     * key中的优先级
+     *
+     * @param key the key
+     * @return the int
+     */
+    private static int priorityOf(ByteBuffer key) {
+        int rank = key.getInt(key.position());
+        return Integer.MAX_VALUE - (key.order() == ByteOrder.BIG_ENDIAN ? rank : Integer.reverseBytes(rank));
+    }
+
+    /**
+     * key中的序号
+     *
+     * @param key the key
+     * @return the long
+     */
+    private static long sequenceOf(ByteBuffer key) {
+        long sequence = key.getLong(key.position() + Integer.BYTES);
+        return key.order() == ByteOrder.BIG_ENDIAN ? sequence : Long.reverseBytes(sequence);
+    }
+
+    /**
+     * 一个优先级的头尾序号
+     */
+    private static final class Level {
+        /**
+         * 头序号，只在出队时移动
+         */
+        private final AtomicLong head;
+        /**
+         * 下一条写入的序号，只在写事务中移动
+         */
+        private final AtomicLong tail;
+
+        /**
+         * Instantiates a new Level.
+         *
+         * @param head the head
+         * @param tail the tail
+         */
+        private Level(long head, long tail) {
+            this.head = new AtomicLong(head);
+            this.tail = new AtomicLong(tail);
+        }
+    }
+}
@@ -1,28 +1,106 @@
 package com.demo.queuedb.lmdb;
 
+import com.demo.queuedb.codec.BlobStore;
+import com.demo.queuedb.codec.Codec;
+import com.demo.queuedb.codec.Codecs;
+import com.demo.queuedb.codec.SpillCodec;
+import com.demo.queuedb.queue.Lease;
+import com.demo.queuedb.queue.Compactor;
+import com.demo.queuedb.queue.LeaseReaper;
+import com.demo.queuedb.queue.PersistentQueue;
+import com.demo.queuedb.queue.QueueMetrics;
+import com.demo.queuedb.queue.QueueStats;
+import com.demo.queuedb.queue.SyncMode;
+import com.demo.queuedb.queue.Syncer;
+import com.demo.queuedb.util.BlockingSupport;
 import com.demo.queuedb.util.ByteBufferUtil;
-import com.demo.queuedb.util.KryoPoolFactory;
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.ByteBufferInput;
-import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import org.lmdbjava.Cursor;
 import org.lmdbjava.Dbi;
+import org.lmdbjava.DbiFlags;
+import org.lmdbjava.GetOp;
+import org.lmdbjava.PutFlags;
 import org.lmdbjava.Txn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * The type Lmdb queue.
  *
  * @param <E> the type parameter
  */
-public class LmdbQueue<E extends Serializable> extends AbstractQueue<E> implements Serializable {
+public class LmdbQueue<E extends Serializable> extends AbstractQueue<E> implements PersistentQueue<E>, Serializable {
+    /**
+     * 头指针的key，只读共享，不会被修改
+     */
+    private static final ByteBuffer FIRST_INDEX_KEY = ByteBufferUtil.stringToByteBuffer("index_queue_first_index");
+    /**
+     * 记录编码id的key，只读共享
+     */
+    private static final ByteBuffer CODEC_KEY = ByteBufferUtil.stringToByteBuffer("index_queue_codec");
+    /**
+     * 记录key布局的key，只读共享；与编码id同库
+     */
+    static final ByteBuffer KEY_LAYOUT_KEY = ByteBufferUtil.stringToByteBuffer("index_queue_key_layout");
+    /**
+     * key布局：8字节大端指针
+     */
+    static final String LAYOUT_INDEX = "index";
+    /**
+     * key布局：8字节本机字节序指针(MDB_INTEGERKEY)
+     */
+    static final String LAYOUT_INTEGER = "integer";
+    /**
+     * key布局：12字节(优先级, 序号)组合key，见LmdbPriorityQueue
+     */
+    static final String LAYOUT_PRIORITY = "priority";
+    /**
+     * 元数据库名后缀
+     */
+    private static final String META_DB_SUFFIX = "_meta";
+    /**
+     * 租约库名后缀
+     */
+    private static final String IN_FLIGHT_DB_SUFFIX = "_inflight";
+    /**
+     * 外置存储目录后缀
+     */
+    private static final String BLOBS_DIR_SUFFIX = "_blobs";
+    /**
+     * 普通写入标志
+     */
+    private static final PutFlags[] PUT = new PutFlags[0];
+    /**
+     * 尾部追加写入标志
+     */
+    private static final PutFlags[] APPEND = {PutFlags.MDB_APPEND};
+    /**
+     * drainTo(Collection)每个写事务取出的条数
+     */
+    private static final int DRAIN_BATCH_SIZE = 1024;
+    /**
+     * 每次回收最多重新投递的条数，控制单个写事务大小
+     */
+    private static final int REAP_BATCH_SIZE = 1024;
     /**
      * The Logger.
      */
@@ -39,18 +117,94 @@ public class LmdbQueue<E extends Serializable> extends AbstractQueue<E> implemen
      * The Lmdb client.
      */
     private LmdbClient lmdbClient;
+    /**
+     * 库名
+     */
+    private String dbName;
     /**
      * The Dbi.
      */
     private Dbi<ByteBuffer> dbi;
+    /**
+     * 元数据库，保存头指针；非整数key模式下与dbi为同一个库
+     */
+    private Dbi<ByteBuffer> metaDbi;
+    /**
+     * 租约库，key为租约id，value为8字节deadline加序列化数据
+     */
+    private Dbi<ByteBuffer> inFlightDbi;
+    /**
+     * 是否为整数key模式
+     */
+    private boolean integerKey;
+    /**
+     * 写入数据时使用的标志
+     */
+    private PutFlags[] putFlags;
     /**
      * The Entries.
      */
     private AtomicLong entries;
     /**
-     * The Base class.
+     * 已预留未确认的数量
+     */
+    private AtomicLong inFlight;
+    /**
+     * 未确认租约的最早deadline下界，早于该时间不遍历租约库；Long.MIN_VALUE表示未知，下次回收时遍历
+     */
+    private final AtomicLong nextDeadline = new AtomicLong(Long.MIN_VALUE);
+    /**
+     * 默认可见性超时，毫秒
+     */
+    private long leaseTimeoutMillis;
+    /**
+     * 迭代器每个读事务读取并反序列化的条数
+     */
+    private int iteratorBatchSize;
+    /**
+     * 租约回收线程
+     */
+    private LeaseReaper leaseReaper;
+    /**
+     * 压缩线程，未开启自动压缩时为null
+     */
+    private Compactor compactor;
+    /**
+     * 刷盘线程与未刷盘记录的统计
+     */
+    private Syncer syncer;
+    /**
+     * 头部预读缓冲，未开启时为null
+     */
+    private ReadAheadBuffer<E> readAhead;
+    /**
+     * 自动压缩的空闲页比例阈值
+     */
+    private double compactFreeRatio;
+    /**
+     * 值序列化
+     */
+    private LmdbSerializer<E> serializer;
+    /**
+     * 大记录外置，未开启时为null
+     */
+    private SpillCodec<E> spill;
+    /**
+     * 组提交写线程，未开启组提交时为null
+     */
+    private GroupCommitWriter groupCommitWriter;
+    /**
+     * 容量控制与非空等待
      */
-    private Class<E> baseClass;
+    private BlockingSupport blocking;
+    /**
+     * 队列埋点
+     */
+    private QueueMetrics metrics;
+    /**
+     * 是否计时，未开启监控时不读取时钟
+     */
+    private boolean timed;
 
     /**
      * Instantiates a new Lmdb queue.
@@ -63,85 +217,304 @@ public class LmdbQueue<E extends Serializable> extends AbstractQueue<E> implemen
      * @param baseClass the base class
      */
     public LmdbQueue(long mapSize, int dbs, String envPath, int readers, String dbName, Class<E> baseClass) {
+        this(new LmdbQueueConfig().setMapSize(mapSize).setDbs(dbs).setEnvPath(envPath).setReaders(readers).setDbName(dbName), baseClass);
+    }
+
+    /**
+     * Instantiates a new Lmdb queue.
+     *
+     * @param config    the config
+     * @param baseClass the base class
+     */
+    public LmdbQueue(LmdbQueueConfig config, Class<E> baseClass) {
+        if (config.getIteratorBatchSize() <= 0) {
+            throw new IllegalArgumentException("lmdb iterator batch size must be positive: " + config.getIteratorBatchSize());
+        }
+        metrics = config.getMetrics();
+        timed = metrics.isEnabled();
+        integerKey = config.isIntegerKey();
+        //整数key模式需要额外的元数据库，另加一个租约库
+        int dbs = Math.max(config.getDbs(), integerKey ? 3 : 2);
         //初始化LMDB环境
-        lmdbClient = new LmdbClient().setDbs(dbs).setEnvPath(envPath).setMapSize(mapSize).setReaders(readers).build();
+        lmdbClient = new LmdbClient().setDbs(dbs).setEnvPath(config.getEnvPath()).setMapSize(config.getMapSize()).setReaders(config.getReaders())
+                .setMaxMapSize(config.getMaxMapSize()).setSync(config.getSyncMode() == SyncMode.SYNC).build();
+        putFlags = integerKey ? APPEND : PUT;
         //创建DB
-        dbi = lmdbClient.creatDbi(dbName);
-        //基础类类型，用于序列化与反序列化
-        this.baseClass = baseClass;
+        dbName = config.getDbName();
+        Codec<E> codec;
+        try {
+            checkMetaLayout();
+            openDbis();
+            //记录编码，已有队列使用其记录的编码
+            codec = initCodec(config, baseClass);
+        } catch (RuntimeException e) {
+            //key布局不一致等无法打开时释放环境
+            lmdbClient.close();
+            throw e;
+        }
+        serializer = new LmdbSerializer<>(codec, metrics);
+        if (serializer.codec() instanceof SpillCodec) {
+            spill = (SpillCodec<E>) serializer.codec();
+            initSpill();
+        }
         //初始化指针
         initIndex();
+        //容量控制，未确认的记录确认前仍占用容量
+        blocking = new BlockingSupport(config.getCapacity(), entries.get() + inFlight.get());
+        //定期刷盘线程，PERIODIC模式下环境以MDB_NOSYNC打开，由该线程刷盘
+        syncer = new Syncer("lmdb-sync-" + config.getDbName(), config.getSyncMode(), config.getSyncIntervalMillis(),
+                config.getSyncEveryRecords(), lmdbClient::sync, metrics);
+        //预读线程
+        if (config.getReadAheadEntries() > 0) {
+            readAhead = new ReadAheadBuffer<>("lmdb-read-ahead-" + config.getDbName(), firstIndex, config.getReadAheadEntries(),
+                    config.getReadAheadBytes(), this::readAhead);
+        }
+        //组提交写线程
+        if (config.isGroupCommit()) {
+            groupCommitWriter = new GroupCommitWriter("lmdb-group-commit-" + config.getDbName(), config.getGroupCommitRingSize(),
+                    config.getGroupCommitBatchSize(), config.getGroupCommitMaxLingerMillis(), this::commitBatch);
+        }
+        //租约回收线程
+        leaseTimeoutMillis = config.getLeaseTimeoutMillis();
+        iteratorBatchSize = config.getIteratorBatchSize();
+        leaseReaper = new LeaseReaper("lmdb-lease-reaper-" + config.getDbName(), config.getLeaseReapIntervalMillis(), this::redeliverExpired);
+        //压缩线程
+        compactFreeRatio = config.getCompactFreeRatio();
+        if (config.getCompactIntervalMillis() > 0) {
+            compactor = new Compactor("lmdb-compactor-" + config.getDbName(), config.getCompactIntervalMillis(), config.isCompactIdleOnly(),
+                    () -> lastIndex.get() + firstIndex, this::compactIfNeeded);
+        }
+        //已有记录的写入时间未知，按打开时间计
+        metrics.recordAppend(firstIndex, (int) Math.min(Integer.MAX_VALUE, entries.get()));
+        metrics.recordHead(firstIndex);
+        metrics.bind(this);
+    }
+
+    /**
+     * 整数key队列与优先级队列的元数据单独成库，普通队列的元数据与数据同库；按库是否存在区分整数key与普通队列
+     * 在创建任何库之前检查，拒绝打开时不修改环境
+     */
+    private void checkMetaLayout() {
+        boolean separateMeta = lmdbClient.hasDbi(dbName + META_DB_SUFFIX);
+        if (integerKey && !separateMeta && lmdbClient.hasDbi(dbName)) {
+            throw new IllegalStateException("lmdb queue " + dbName + " has key layout " + LAYOUT_INDEX + ", cannot open it as " + LAYOUT_INTEGER);
+        }
+        if (!integerKey && separateMeta) {
+            Dbi<ByteBuffer> separate = lmdbClient.creatDbi(dbName + META_DB_SUFFIX);
+            String found = lmdbClient.read(txnRead -> {
+                ByteBuffer recorded = separate.get(txnRead, KEY_LAYOUT_KEY);
+                //旧版本的整数key队列没有记录布局
+                return recorded == null ? LAYOUT_INTEGER : StandardCharsets.UTF_8.decode(recorded).toString();
+            });
+            throw new IllegalStateException("lmdb queue " + dbName + " has key layout " + found + ", cannot open it as " + LAYOUT_INDEX);
+        }
+    }
+
+    /**
+     * 打开队列库、元数据库与租约库，压缩后在新环境上重新打开
+     */
+    private void openDbis() {
+        if (integerKey) {
+            dbi = lmdbClient.creatDbi(dbName, DbiFlags.MDB_INTEGERKEY);
+            metaDbi = lmdbClient.creatDbi(dbName + META_DB_SUFFIX);
+        } else {
+            dbi = lmdbClient.creatDbi(dbName);
+            metaDbi = dbi;
+        }
+        inFlightDbi = lmdbClient.creatDbi(dbName + IN_FLIGHT_DB_SUFFIX);
+    }
+
+    /**
+     * 读取队列记录的编码，新建队列记录配置的编码
+     *
+     * @param config    the config
+     * @param baseClass the base class
+     * @return the codec
+     */
+    private Codec<E> initCodec(LmdbQueueConfig config, Class<E> baseClass) {
+        return lmdbClient.write(txnWrite -> {
+            //记录布局前判断，非整数key模式下布局与数据同库
+            boolean hasData = dbi.stat(txnWrite).entries > 0 || inFlightDbi.stat(txnWrite).entries > 0;
+            //先检查key布局，不一致时不修改库
+            boolean layoutRecorded = checkKeyLayout(txnWrite, dbi, metaDbi, config.getDbName(), integerKey ? LAYOUT_INTEGER : LAYOUT_INDEX);
+            ByteBuffer recorded = metaDbi.get(txnWrite, CODEC_KEY);
+            String id = Codecs.resolve(config.getDbName(), recorded == null ? null : StandardCharsets.UTF_8.decode(recorded).toString(),
+                    SpillCodec.configure(config.getCodec(), config.getSpillThreshold()), hasData);
+            //先创建，编码无效时不记录
+            Codec<E> codec = SpillCodec.create(id, baseClass, () -> new BlobStore(Paths.get(config.getEnvPath(), config.getDbName() + BLOBS_DIR_SUFFIX),
+                    config.getSyncMode() != SyncMode.NONE), config.getSpillThreshold());
+            if (recorded == null) {
+                metaDbi.put(txnWrite, CODEC_KEY, ByteBufferUtil.stringToByteBuffer(id));
+            }
+            if (recorded == null || layoutRecorded) {
+                commit(txnWrite);
+            }
+            return codec;
+        });
+    }
+
+    /**
+     * 检查队列库的key布局，与记录的布局或已有key的长度不一致时拒绝打开，避免按错误的key格式读写；没有记录时记录layout
+     * 旧版本没有记录布局，按第一条key的长度区分优先级队列的12字节组合key与普通队列的key
+     *
+     * @param txnWrite the txn write
+     * @param dbi      队列库
+     * @param metaDbi  元数据库，可以与队列库相同
+     * @param dbName   the db name
+     * @param layout   本次打开使用的布局
+     * @return 是否新记录了布局，需要提交
+     */
+    static boolean checkKeyLayout(Txn<ByteBuffer> txnWrite, Dbi<ByteBuffer> dbi, Dbi<ByteBuffer> metaDbi, String dbName, String layout) {
+        ByteBuffer recorded = metaDbi.get(txnWrite, KEY_LAYOUT_KEY);
+        String found = recorded == null ? null : StandardCharsets.UTF_8.decode(recorded).toString();
+        //记录的布局可能早于另一种模式写入的数据，始终按第一条key再检查一次
+        try (Cursor<ByteBuffer> cursor = dbi.openCursor(txnWrite)) {
+            if (cursor.first()) {
+                boolean composite = cursor.key().remaining() == Integer.BYTES + Long.BYTES;
+                if (composite != LAYOUT_PRIORITY.equals(layout)) {
+                    found = composite ? LAYOUT_PRIORITY : LAYOUT_INDEX;
+                }
+            }
+        }
+        if (found != null && !found.equals(layout)) {
+            throw new IllegalStateException("lmdb queue " + dbName + " has key layout " + found + ", cannot open it as " + layout);
+        }
+        if (recorded == null) {
+            metaDbi.put(txnWrite, KEY_LAYOUT_KEY, ByteBufferUtil.stringToByteBuffer(layout));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 扫描队列与租约库中的记录重建外置内容的引用计数，删除没有被引用的外置文件
+     */
+    private void initSpill() {
+        try (LmdbClient.Access access = lmdbClient.access(); Txn<ByteBuffer> txnRead = lmdbClient.txnRead()) {
+            try (Cursor<ByteBuffer> cursor = dbi.openCursor(txnRead)) {
+                boolean found = cursor.first();
+                while (found) {
+                    //跳过与数据同库的元数据
+                    if (cursor.key().remaining() == Long.BYTES) {
+                        spill.retain(spill.reference(cursor.val()));
+                    }
+                    found = cursor.next();
+                }
+            }
+            try (Cursor<ByteBuffer> cursor = inFlightDbi.openCursor(txnRead)) {
+                boolean found = cursor.first();
+                while (found) {
+                    //跳过8字节deadline
+                    ByteBuffer value = cursor.val();
+                    value.position(value.position() + Long.BYTES);
+                    spill.retain(spill.reference(value));
+                    found = cursor.next();
+                }
+            }
+        }
+        spill.getStore().deleteUnreferenced();
     }
 
     /**
      * 初始化指针
+     * 首尾指针由游标定位头指针之后的第一条与最后一条记录得到，数量取自库的统计(LMDB随事务维护条数)，都不需要遍历记录
      */
     private void initIndex() {
         //获取读事务
-        Txn<ByteBuffer> txnRead = lmdbClient.txnRead();
-        //获取 firstIndex
-        ByteBuffer byteBuffer = dbi.get(txnRead, ByteBufferUtil.stringToByteBuffer("index_queue_first_index"));
-        if (byteBuffer != null) {
-            //获取lmdb中的值，如果没有则默认0
-            firstIndex = byteBuffer.getLong();
-            //除去index_queue_first_index所占用的1个位置
-            entries = new AtomicLong(dbi.stat(txnRead).entries - 1);
-        } else {
-            //系统启动后，获取lmdb中数据量多少
-            entries = new AtomicLong(dbi.stat(txnRead).entries);
-        }
+        try (LmdbClient.Access access = lmdbClient.access(); Txn<ByteBuffer> txnRead = lmdbClient.txnRead()) {
+            //获取 firstIndex
+            ByteBuffer byteBuffer = metaDbi.get(txnRead, FIRST_INDEX_KEY);
+            if (byteBuffer != null) {
+                //获取lmdb中的值，如果没有则默认0
+                firstIndex = byteBuffer.getLong();
+            }
+            //系统启动后，获取lmdb中数据量多少，除去与数据同库的元数据(index_queue_first_index、index_queue_codec、index_queue_key_layout)
+            entries = new AtomicLong(dbi.stat(txnRead).entries - (metaDbi == dbi ? metaEntries(txnRead) : 0));
+            //上次运行未确认的租约，超时后由回收线程重新投递
+            inFlight = new AtomicLong(inFlightDbi.stat(txnRead).entries);
+            try (Cursor<ByteBuffer> cursor = dbi.openCursor(txnRead)) {
+                //头指针位置为空洞时移到之后的第一条记录；与数据同库的元数据key不是8字节，排在指针key之后
+                if (cursor.get(key(firstIndex), GetOp.MDB_SET_RANGE) && cursor.key().remaining() == Long.BYTES) {
+                    firstIndex = indexOf(cursor.key());
+                }
+                //尾指针为最后一条记录之后，中间有空洞时也不会与已有记录重叠
+                long last = lastIndexKey(cursor);
+                lastIndex = new AtomicLong(last >= firstIndex ? last + 1 : firstIndex);
+            }
 
-        //提交事务
-        txnRead.commit();
+            //提交事务
+            txnRead.commit();
+        }
+    }
 
-        //尾指针
-        lastIndex = new AtomicLong(entries.longValue() + firstIndex);
+    /**
+     * 最后一条记录的指针位，跳过排在末尾的元数据
+     *
+     * @param cursor the cursor
+     * @return 没有记录时返回-1
+     */
+    private long lastIndexKey(Cursor<ByteBuffer> cursor) {
+        boolean found = cursor.last();
+        while (found && cursor.key().remaining() != Long.BYTES) {
+            found = cursor.prev();
+        }
+        return found ? indexOf(cursor.key()) : -1;
     }
 
     /**
-     * Peek e.
+     * 提交写事务，开启监控时记录提交耗时
      *
-     * @return the e
+     * @param txnWrite the txn write
      */
-    @Override
-    public synchronized E peek() {
-        ByteBuffer byteBuffer;
-        try (Txn<ByteBuffer> txnRead = lmdbClient.txnRead()) {
-            //获取byteBuffer
-            byteBuffer = dbi.get(txnRead, ByteBufferUtil.longToByteBuffer(firstIndex));
-            txnRead.commit();
-            if (byteBuffer == null) {
-                return null;
-            }
+    private void commit(Txn<ByteBuffer> txnWrite) {
+        if (!timed) {
+            txnWrite.commit();
+            return;
         }
-        //byteBuffer
-        return readObject(byteBuffer);
+        long start = System.nanoTime();
+        txnWrite.commit();
+        metrics.recordCommit(System.nanoTime() - start);
+    }
+
+    /**
+     * 元数据的条数
+     *
+     * @param txn the txn
+     * @return the int
+     */
+    private int metaEntries(Txn<ByteBuffer> txn) {
+        return (metaDbi.get(txn, FIRST_INDEX_KEY) != null ? 1 : 0) + (metaDbi.get(txn, CODEC_KEY) != null ? 1 : 0)
+                + (metaDbi.get(txn, KEY_LAYOUT_KEY) != null ? 1 : 0);
     }
 
     /**
-     * Read object e.
+     * Peek e.
+     * 开启预读时直接返回缓存的对象，随后poll()返回的是同一个对象
      *
-     * @param byteBuffer the byte buffer
      * @return the e
      */
-    private E readObject(ByteBuffer byteBuffer) {
-        //byteBuffer
-        if (byteBuffer == null) {
-            return null;
+    @Override
+    public synchronized E peek() {
+        long start = timed ? System.nanoTime() : 0L;
+        if (readAhead != null) {
+            E item = readAhead.peek(firstIndex);
+            if (item != null) {
+                if (timed) {
+                    metrics.recordPeek(System.nanoTime() - start);
+                }
+                return item;
+            }
         }
-        //反序列化
-        try (Input in = new ByteBufferInput(byteBuffer)) {
-            //获取序列化器
-            Kryo kryo = KryoPoolFactory.INSTANCE.getPool().borrow();
-            //执行反序列化
-            E result = kryo.readObjectOrNull(in, baseClass);
-            //释放序列化器
-            KryoPoolFactory.INSTANCE.getPool().release(kryo);
-            return result;
+        try (LmdbClient.Access access = lmdbClient.access(); Txn<ByteBuffer> txnRead = lmdbClient.txnRead()) {
+            //获取byteBuffer，事务结束后页面可能被写事务复用，需在事务内反序列化
+            return serializer.read(dbi.get(txnRead, key(firstIndex)));
+        } finally {
+            if (timed) {
+                metrics.recordPeek(System.nanoTime() - start);
+            }
         }
     }
 
-
     /**
      * Poll e.
      *
@@ -149,58 +522,788 @@ public class LmdbQueue<E extends Serializable> extends AbstractQueue<E> implemen
      */
     @Override
     public synchronized E poll() {
-        ByteBuffer byteBuffer;
-        try (Txn<ByteBuffer> txnWrite = lmdbClient.txnWrite()) {
-            //获取byteBuffer
-            byteBuffer = dbi.get(txnWrite, ByteBufferUtil.longToByteBuffer(firstIndex));
-            if (byteBuffer == null) {
-                txnWrite.commit();
-                return null;
-            }
-            boolean isDel = dbi.delete(txnWrite, ByteBufferUtil.longToByteBuffer(firstIndex));
-            firstIndex += 1;
-            dbi.put(txnWrite, ByteBufferUtil.stringToByteBuffer("index_queue_first_index"), ByteBufferUtil.longToByteBuffer(firstIndex));
-            //数量-1
-            entries.decrementAndGet();
-            txnWrite.commit();
-        }
-        //byteBuffer
-        return readObject(byteBuffer);
+        List<E> head = new ArrayList<>(1);
+        return drainTo(head, 1) == 0 ? null : head.get(0);
     }
 
     /**
      * Offer boolean.
+     * 容量已满时返回false
      *
      * @param item the item
      * @return the boolean
      */
     @Override
     public boolean offer(E item) {
-        //获取一个指针位
-        long last = lastIndex.getAndIncrement();
-        //序列化
-        try (Output out = new Output(0, 20971520)) {
-            //获取序列化器
-            Kryo kryo = KryoPoolFactory.INSTANCE.getPool().borrow();
-            //序列化
-            kryo.writeClassAndObject(out, item);
-            //释放序列化器
-            KryoPoolFactory.INSTANCE.getPool().release(kryo);
-            //入库
-            dbi.put(ByteBufferUtil.longToByteBuffer(last), ByteBufferUtil.bytesToByteBuffer(out.getBuffer()));
+        Objects.requireNonNull(item);
+        return blocking.tryAcquire(1) && enqueue(item);
+    }
+
+    /**
+     * 入队，容量已满时阻塞等待
+     *
+     * @param item the item
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public void put(E item) throws InterruptedException {
+        Objects.requireNonNull(item);
+        blocking.acquire(1);
+        if (!enqueue(item)) {
+            throw new IllegalStateException("lmdb put fail.");
+        }
+    }
+
+    /**
+     * 入队，容量已满时最多等待timeout
+     *
+     * @param item    the item
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the boolean
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public boolean offer(E item, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(item);
+        return blocking.tryAcquire(1, timeout, unit) && enqueue(item);
+    }
+
+    /**
+     * 已获取容量许可后入队，失败时归还许可
+     *
+     * @param item the item
+     * @return the boolean
+     */
+    private boolean enqueue(E item) {
+        if (groupCommitWriter != null) {
+            //等待所在批次提交
+            return submit(item).join();
+        }
+        long start = timed ? System.nanoTime() : 0L;
+        //编码时外置内容增加的引用，提交后由记录持有，写入失败时释放
+        byte[] reference = null;
+        try {
+            //事务外序列化到线程的输出缓冲，事务内只做拷贝
+            Output out = serializer.serialize(item);
+            reference = spillReference(out.getBuffer());
+            //映射空间不足时扩容后重试
+            long last = lmdbClient.write(txnWrite -> {
+                //写事务互斥，在事务内获取指针位，保证提交顺序与指针顺序一致
+                long index = lastIndex.getAndIncrement();
+                try {
+                    //入库
+                    serializer.put(dbi, txnWrite, key(index), out, putFlags);
+                    commit(txnWrite);
+                } catch (RuntimeException e) {
+                    //回收指针位，避免留下空洞
+                    lastIndex.decrementAndGet();
+                    throw e;
+                }
+                return index;
+            });
+            reference = null;
             //数量+1
             entries.incrementAndGet();
+            syncer.written(1);
+            signalNotEmpty();
+            if (timed) {
+                metrics.recordAppend(last, 1);
+                metrics.recordOffer(System.nanoTime() - start, 1);
+            }
             return true;
         } catch (Exception e) {
             logger.error("lmdb offer fail." + e);
+            if (reference != null) {
+                spill.release(reference);
+            }
+            blocking.release(1);
             return false;
         }
     }
 
+    /**
+     * 编码结果引用的外置内容
+     *
+     * @param data 编码结果，从0开始
+     * @return 未开启外置或内联记录返回null
+     */
+    private byte[] spillReference(byte[] data) {
+        return spill == null ? null : spill.reference(data, 0);
+    }
 
+    /**
+     * 写入失败时释放编码时增加的外置引用
+     *
+     * @param references the references
+     */
+    private void releaseSpilled(List<byte[]> references) {
+        for (byte[] reference : references) {
+            spill.release(reference);
+        }
+        references.clear();
+    }
+
+    /**
+     * 异步入队，返回的future在记录提交后完成，容量已满时直接返回false
+     * 开启组提交时在调用线程完成序列化，由写线程与其他生产者的记录合并到同一个写事务中提交；未开启时同步写入
+     *
+     * @param item the item
+     * @return the completable future
+     */
+    public CompletableFuture<Boolean> offerAsync(E item) {
+        if (!blocking.tryAcquire(1)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (groupCommitWriter == null) {
+            return CompletableFuture.completedFuture(enqueue(item));
+        }
+        return submit(item);
+    }
+
+    /**
+     * 序列化后交给组提交写线程，失败时归还容量许可
+     *
+     * @param item the item
+     * @return the completable future
+     */
+    private CompletableFuture<Boolean> submit(E item) {
+        long start = timed ? System.nanoTime() : 0L;
+        byte[] value;
+        try {
+            value = serializer.toBytes(item);
+        } catch (Exception e) {
+            logger.error("lmdb offer fail." + e);
+            blocking.release(1);
+            return CompletableFuture.completedFuture(false);
+        }
+        return groupCommitWriter.submit(value).thenApply(success -> {
+            if (!success) {
+                //批次未提交，记录不再持有外置引用
+                byte[] reference = spillReference(value);
+                if (reference != null) {
+                    spill.release(reference);
+                }
+                blocking.release(1);
+            } else if (timed) {
+                //包含等待所在批次提交的时间
+                metrics.recordOffer(System.nanoTime() - start, 1);
+            }
+            return success;
+        });
+    }
+
+    /**
+     * 组提交：一个写事务写入一批已序列化的记录，由写线程调用
+     *
+     * @param batch the batch
+     */
+    private void commitBatch(List<GroupCommitWriter.PendingWrite> batch) {
+        long first = lmdbClient.write(txnWrite -> {
+            long index = lastIndex.getAndAdd(batch.size());
+            long last = index;
+            try {
+                for (GroupCommitWriter.PendingWrite write : batch) {
+                    dbi.reserve(txnWrite, key(last++), write.value.length, putFlags).put(write.value);
+                }
+                commit(txnWrite);
+            } catch (RuntimeException e) {
+                //回收指针位，避免留下空洞
+                lastIndex.addAndGet(-batch.size());
+                throw e;
+            }
+            return index;
+        });
+        //数量+n
+        entries.addAndGet(batch.size());
+        syncer.written(batch.size());
+        signalNotEmpty();
+        metrics.recordAppend(first, batch.size());
+    }
+
+    /**
+     * 批量入队，整批数据在同一个写事务中提交
+     *
+     * @param items the items
+     * @return the boolean
+     */
     @Override
-    public Iterator<E> iterator() {
-        throw new UnsupportedOperationException("lmdb not support");
+    public boolean offerAll(Collection<? extends E> items) {
+        items.forEach(Objects::requireNonNull);
+        if (items.isEmpty()) {
+            return true;
+        }
+        //整批获取容量许可，不足时整批拒绝
+        if (!blocking.tryAcquire(items.size())) {
+            return false;
+        }
+        long start = timed ? System.nanoTime() : 0L;
+        //编码时外置内容增加的引用，提交后由记录持有，写入失败时释放
+        List<byte[]> references = new ArrayList<>(spill == null ? 0 : items.size());
+        try {
+            int count = items.size();
+            long first = lmdbClient.write(txnWrite -> {
+                //扩容后重试时重新编码，先释放上次编码增加的引用
+                releaseSpilled(references);
+                //一次性获取一段连续的指针位
+                long index = lastIndex.getAndAdd(count);
+                long last = index;
+                try {
+                    //逐条序列化到线程的输出缓冲再拷贝到预留内存，不为每条记录分配中间数组
+                    for (E item : items) {
+                        Output out = serializer.serialize(item);
+                        byte[] reference = spillReference(out.getBuffer());
+                        if (reference != null) {
+                            references.add(reference);
+                        }
+                        serializer.put(dbi, txnWrite, key(last++), out, putFlags);
+                    }
+                    commit(txnWrite);
+                } catch (RuntimeException e) {
+                    //回收指针位，避免留下空洞
+                    lastIndex.addAndGet(-count);
+                    throw e;
+                }
+                return index;
+            });
+            references.clear();
+            //数量+n
+            entries.addAndGet(count);
+            syncer.written(count);
+            signalNotEmpty();
+            if (timed) {
+                metrics.recordAppend(first, count);
+                metrics.recordOffer(System.nanoTime() - start, count);
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("lmdb offerAll fail." + e);
+            releaseSpilled(references);
+            blocking.release(items.size());
+            return false;
+        }
+    }
+
+    /**
+     * 批量出队，最多取出maxElements条，整批删除与头指针更新在同一个写事务中完成
+     *
+     * @param c           the c
+     * @param maxElements the max elements
+     * @return 实际取出的数量
+     */
+    public synchronized int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        if (maxElements <= 0) {
+            return 0;
+        }
+        long start = timed ? System.nanoTime() : 0L;
+        //已预读的记录不再拷贝与反序列化
+        List<E> cached = readAhead == null ? Collections.emptyList() : readAhead.get(firstIndex, maxElements);
+        List<byte[]> values = lmdbClient.write(txnWrite -> {
+            List<byte[]> removed = removeHead(txnWrite, firstIndex, maxElements, cached.size());
+            if (!removed.isEmpty()) {
+                //整批只更新一次头指针
+                metaDbi.put(txnWrite, FIRST_INDEX_KEY, ByteBufferUtil.longValue(firstIndex + removed.size()));
+            }
+            commit(txnWrite);
+            return removed;
+        });
+        if (values.isEmpty()) {
+            return 0;
+        }
+        long index = firstIndex + values.size();
+        firstIndex = index;
+        //数量-n
+        entries.addAndGet(-values.size());
+        //归还容量
+        blocking.release(values.size());
+        if (readAhead != null) {
+            readAhead.advance(index);
+        }
+        //事务外完成反序列化
+        for (int i = 0; i < values.size(); i++) {
+            byte[] value = values.get(i);
+            c.add(i < cached.size() ? cached.get(i) : serializer.read(value));
+            if (spill != null) {
+                //外置内容已读取，释放引用
+                spill.release(spill.reference(value, 0));
+            }
+        }
+        if (timed) {
+            metrics.recordHead(index);
+            metrics.recordPoll(System.nanoTime() - start, values.size());
+        }
+        return values.size();
+    }
+
+    /**
+     * 记录已提交，唤醒等待的消费者与预读线程
+     */
+    private void signalNotEmpty() {
+        blocking.signalNotEmpty();
+        if (readAhead != null) {
+            readAhead.signal();
+        }
+    }
+
+    /**
+     * 预读：在读事务中从from开始反序列化已提交的连续记录
+     *
+     * @param from       起始位置
+     * @param maxEntries 最多条数
+     * @param maxBytes   最多字节数
+     * @param out        the out
+     */
+    private void readAhead(long from, int maxEntries, long maxBytes, List<ReadAheadBuffer.Entry<E>> out) {
+        try (LmdbClient.Access access = lmdbClient.access();
+             Txn<ByteBuffer> txnRead = lmdbClient.txnRead();
+             Cursor<ByteBuffer> cursor = dbi.openCursor(txnRead)) {
+            long index = from;
+            long bytes = 0;
+            boolean found = cursor.get(key(index), GetOp.MDB_SET_KEY);
+            while (found && out.size() < maxEntries && isIndexKey(cursor.key(), index)) {
+                ByteBuffer value = cursor.val();
+                long size = spill == null ? value.remaining() : spill.length(value);
+                if (bytes + size > maxBytes) {
+                    break;
+                }
+                out.add(new ReadAheadBuffer.Entry<>(index, serializer.read(value), size));
+                bytes += size;
+                index++;
+                found = cursor.next();
+            }
+        }
+    }
+
+    /**
+     * 在写事务中删除从头指针开始最多maxElements条连续的记录
+     *
+     * @param txnWrite    the txn write
+     * @param index       头指针
+     * @param maxElements the max elements
+     * @param cached      前cached条已预读，未开启外置时不拷贝，对应位置为null
+     * @return 拷贝到堆内存的序列化数据
+     */
+    private List<byte[]> removeHead(Txn<ByteBuffer> txnWrite, long index, int maxElements, int cached) {
+        List<byte[]> values = new ArrayList<>();
+        try (Cursor<ByteBuffer> cursor = dbi.openCursor(txnWrite)) {
+            //定位到头指针
+            boolean found = cursor.get(key(index), GetOp.MDB_SET_KEY);
+            while (found && values.size() < maxElements && isIndexKey(cursor.key(), index)) {
+                //删除后页面会被复用，需要先拷贝到堆内存；外置记录需要引用来释放
+                values.add(values.size() < cached && spill == null ? null : ByteBufferUtil.byteBufferToBytes(cursor.val()));
+                //删除后游标自动指向下一条
+                cursor.delete();
+                index++;
+                found = cursor.next();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 预留头部数据，使用默认可见性超时
+     *
+     * @return 队列为空时返回null
+     */
+    public Lease<E> reserve() {
+        return reserve(leaseTimeoutMillis);
+    }
+
+    /**
+     * 预留头部数据，记录移入租约库，超时前未确认则重新投递
+     *
+     * @param visibilityMillis 可见性超时
+     * @return 队列为空时返回null
+     */
+    public Lease<E> reserve(long visibilityMillis) {
+        List<Lease<E>> leases = reserve(1, visibilityMillis);
+        return leases.isEmpty() ? null : leases.get(0);
+    }
+
+    /**
+     * 批量预留头部数据，出队、写入租约库与头指针更新在同一个写事务中完成
+     *
+     * @param maxElements      the max elements
+     * @param visibilityMillis 可见性超时
+     * @return the list
+     */
+    public synchronized List<Lease<E>> reserve(int maxElements, long visibilityMillis) {
+        if (maxElements <= 0) {
+            return new ArrayList<>(0);
+        }
+        long start = timed ? System.nanoTime() : 0L;
+        long deadline = System.currentTimeMillis() + visibilityMillis;
+        long index = firstIndex;
+        List<E> cached = readAhead == null ? Collections.emptyList() : readAhead.get(index, maxElements);
+        List<byte[]> values = lmdbClient.write(txnWrite -> {
+            //租约库需要序列化数据，全部拷贝
+            List<byte[]> removed = removeHead(txnWrite, index, maxElements, 0);
+            if (removed.isEmpty()) {
+                txnWrite.commit();
+                return removed;
+            }
+            //以出队时的指针位作为租约id
+            for (int i = 0; i < removed.size(); i++) {
+                byte[] value = removed.get(i);
+                ByteBuffer reserved = inFlightDbi.reserve(txnWrite, ByteBufferUtil.longKey(index + i), Long.BYTES + value.length);
+                reserved.putLong(0, deadline);
+                reserved.position(Long.BYTES);
+                reserved.put(value);
+            }
+            metaDbi.put(txnWrite, FIRST_INDEX_KEY, ByteBufferUtil.longValue(index + removed.size()));
+            commit(txnWrite);
+            return removed;
+        });
+        if (values.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        //提交之后再更新，回收线程遍历前已提交的租约不会被漏掉
+        nextDeadline.accumulateAndGet(deadline, Math::min);
+        firstIndex = index + values.size();
+        entries.addAndGet(-values.size());
+        //确认前不归还容量
+        inFlight.addAndGet(values.size());
+        if (readAhead != null) {
+            readAhead.advance(firstIndex);
+        }
+        List<Lease<E>> leases = new ArrayList<>(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            leases.add(new Lease<>(index + i, i < cached.size() ? cached.get(i) : serializer.read(values.get(i)), deadline));
+        }
+        if (timed) {
+            metrics.recordHead(firstIndex);
+            metrics.recordPoll(System.nanoTime() - start, values.size());
+        }
+        return leases;
+    }
+
+    /**
+     * 确认处理完成，删除租约
+     *
+     * @param id the id
+     * @return 租约已超时被重新投递或已确认时返回false
+     */
+    public boolean ack(long id) {
+        return ack(Collections.singletonList(id)) == 1;
+    }
+
+    /**
+     * 批量确认，在同一个写事务中删除
+     *
+     * @param ids the ids
+     * @return 实际确认的数量
+     */
+    public int ack(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<byte[]> references = new ArrayList<>(0);
+        int acked = lmdbClient.write(txnWrite -> {
+            //扩容后重试时重新收集
+            references.clear();
+            int deleted = 0;
+            for (Long id : ids) {
+                ByteBuffer key = ByteBufferUtil.longKey(id);
+                if (spill != null) {
+                    //删除前取出外置内容的引用
+                    ByteBuffer value = inFlightDbi.get(txnWrite, key);
+                    if (value != null) {
+                        value.position(value.position() + Long.BYTES);
+                        references.add(spill.reference(value));
+                    }
+                }
+                if (inFlightDbi.delete(txnWrite, key)) {
+                    deleted++;
+                }
+            }
+            commit(txnWrite);
+            return deleted;
+        });
+        //提交后再删除外置内容
+        for (byte[] reference : references) {
+            spill.release(reference);
+        }
+        inFlight.addAndGet(-acked);
+        //归还容量
+        blocking.release(acked);
+        return acked;
+    }
+
+    /**
+     * 退回租约，记录立即重新投递到队列尾部
+     *
+     * @param id the id
+     * @return 租约已超时被重新投递或已确认时返回false
+     */
+    public boolean nack(long id) {
+        return nack(Collections.singletonList(id)) == 1;
+    }
+
+    /**
+     * 批量退回，在同一个写事务中重新投递
+     *
+     * @param ids the ids
+     * @return 实际退回的数量
+     */
+    public int nack(Collection<Long> ids) {
+        return requeue(ids);
+    }
+
+    /**
+     * 重新投递deadline不晚于now的租约，由回收线程调用
+     * 最早deadline未到时不遍历租约库；遍历时顺便计算剩余租约的最早deadline
+     *
+     * @param now the now
+     * @return 重新投递的数量
+     */
+    private int redeliverExpired(long now) {
+        if (inFlight.get() == 0 || now < nextDeadline.get()) {
+            return 0;
+        }
+        //遍历期间新预留的租约通过accumulateAndGet并入
+        nextDeadline.set(Long.MAX_VALUE);
+        long earliest = Long.MAX_VALUE;
+        //读事务中查找超时的租约，不阻塞写入
+        List<Long> expired = new ArrayList<>();
+        try (LmdbClient.Access access = lmdbClient.access();
+             Txn<ByteBuffer> txnRead = lmdbClient.txnRead();
+             Cursor<ByteBuffer> cursor = inFlightDbi.openCursor(txnRead)) {
+            boolean found = cursor.first();
+            while (found && expired.size() < REAP_BATCH_SIZE) {
+                long deadline = cursor.val().getLong(0);
+                if (deadline <= now) {
+                    expired.add(ByteBufferUtil.readLong(cursor.key(), ByteOrder.BIG_ENDIAN));
+                } else {
+                    earliest = Math.min(earliest, deadline);
+                }
+                found = cursor.next();
+            }
+            if (found) {
+                //超过单次回收条数，剩余部分下次继续遍历
+                earliest = Long.MIN_VALUE;
+            }
+        } catch (RuntimeException e) {
+            nextDeadline.set(Long.MIN_VALUE);
+            throw e;
+        }
+        nextDeadline.accumulateAndGet(earliest, Math::min);
+        try {
+            return expired.isEmpty() ? 0 : requeue(expired);
+        } catch (RuntimeException e) {
+            //未移回的租约下次重新遍历
+            nextDeadline.set(Long.MIN_VALUE);
+            throw e;
+        }
+    }
+
+    /**
+     * 把租约库中的记录移回队列尾部，已确认的id跳过
+     *
+     * @param ids the ids
+     * @return 实际移回的数量
+     */
+    private int requeue(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        //扩容后重试时重新赋值，提交后再记录追加位置
+        long[] first = new long[1];
+        int moved = lmdbClient.write(txnWrite -> {
+            int count = 0;
+            //写事务互斥，在事务内获取指针位
+            long last = lastIndex.get();
+            first[0] = last;
+            for (Long id : ids) {
+                ByteBuffer value = inFlightDbi.get(txnWrite, ByteBufferUtil.longKey(id));
+                if (value == null) {
+                    continue;
+                }
+                //删除后页面会被复用，先拷贝去掉deadline后的数据
+                value.position(Long.BYTES);
+                byte[] bytes = ByteBufferUtil.byteBufferToBytes(value);
+                inFlightDbi.delete(txnWrite, ByteBufferUtil.longKey(id));
+                dbi.reserve(txnWrite, key(last + count), bytes.length, putFlags).put(bytes);
+                count++;
+            }
+            lastIndex.addAndGet(count);
+            try {
+                commit(txnWrite);
+            } catch (RuntimeException e) {
+                lastIndex.addAndGet(-count);
+                throw e;
+            }
+            return count;
+        });
+        inFlight.addAndGet(-moved);
+        entries.addAndGet(moved);
+        syncer.written(moved);
+        if (moved > 0) {
+            signalNotEmpty();
+            metrics.recordAppend(first[0], moved);
+        }
+        return moved;
+    }
+
+    /**
+     * 已预留未确认的数量
+     *
+     * @return the long
+     */
+    public long inFlightSize() {
+        return inFlight.get();
+    }
+
+    /**
+     * 取出当前所有数据，按批提交，每批一个写事务
+     *
+     * @param c the c
+     * @return 实际取出的数量
+     */
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        //只取调用时已有的数据，避免生产者持续写入时无法返回
+        long available = entries.get();
+        int total = 0;
+        while (total < available) {
+            int n = drainTo(c, (int) Math.min(DRAIN_BATCH_SIZE, available - total));
+            if (n == 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * 取出头部数据，队列为空时阻塞等待
+     *
+     * @return the e
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public E take() throws InterruptedException {
+        for (; ; ) {
+            E item = poll();
+            if (item != null) {
+                return item;
+            }
+            blocking.awaitNotEmpty(this::isEmpty, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 取出头部数据，队列为空时最多等待timeout
+     *
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the e
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (; ; ) {
+            E item = poll();
+            if (item != null) {
+                return item;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !blocking.awaitNotEmpty(this::isEmpty, remaining)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 剩余容量
+     *
+     * @return the int
+     */
+    @Override
+    public int remainingCapacity() {
+        return blocking.remainingCapacity();
+    }
+
+    /**
+     * 判断游标当前的key是否为指定的指针位
+     *
+     * @param key   the key
+     * @param index the index
+     * @return the boolean
+     */
+    private boolean isIndexKey(ByteBuffer key, long index) {
+        return key.remaining() == Long.BYTES && indexOf(key) == index;
+    }
+
+    /**
+     * 指针位转key
+     * 返回当前线程复用的缓冲区
+     *
+     * @param index the index
+     * @return the byte buffer
+     */
+    private ByteBuffer key(long index) {
+        return integerKey ? ByteBufferUtil.nativeLongKey(index) : ByteBufferUtil.longKey(index);
+    }
+
+    /**
+     * key转指针位
+     *
+     * @param key the key
+     * @return the long
+     */
+    private long indexOf(ByteBuffer key) {
+        return ByteBufferUtil.readLong(key, integerKey ? ByteOrder.nativeOrder() : ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * 只读迭代器，从头指针开始按顺序遍历
+     * 每批记录在一个短读事务中读取并反序列化，批次之间不持有读事务，提前结束遍历(包括remove(Object)、stream短路等)不会占用读事务、推迟扩容与压缩
+     *
+     * @return the queue iterator
+     */
+    @Override
+    public QueueIterator iterator() {
+        return new QueueIterator();
+    }
+
+    /**
+     * 遍历过程中找到即返回
+     *
+     * @param o the o
+     * @return the boolean
+     */
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+        try (QueueIterator it = iterator()) {
+            while (it.hasNext()) {
+                if (o.equals(it.next())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 遍历所有数据
+     *
+     * @param action the action
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        try (QueueIterator it = iterator()) {
+            while (it.hasNext()) {
+                action.accept(it.next());
+            }
+        }
     }
 
     /**
@@ -210,16 +1313,214 @@ public class LmdbQueue<E extends Serializable> extends AbstractQueue<E> implemen
      */
     @Override
     public int size() {
-        return entries.intValue();
+        return (int) Math.min(Integer.MAX_VALUE, entries.get());
+    }
+
+    @Override
+    public long longSize() {
+        return entries.get();
+    }
+
+    /**
+     * 强制刷盘
+     */
+    @Override
+    public void sync() {
+        syncer.sync();
+    }
+
+    @Override
+    public long unsyncedRecords() {
+        return syncer.unsyncedRecords();
+    }
+
+    @Override
+    public long unsyncedAgeNanos() {
+        return syncer.unsyncedAgeNanos();
+    }
+
+    /**
+     * 已使用的映射空间，字节
+     *
+     * @return the long
+     */
+    public long mapUsedBytes() {
+        return (lmdbClient.info().lastPageNumber + 1) * lmdbClient.stat().pageSize;
+    }
+
+    /**
+     * 映射空间上限(mapSize)，字节
+     *
+     * @return the long
+     */
+    public long mapSizeBytes() {
+        return lmdbClient.info().mapSize;
+    }
+
+    /**
+     * 在线压缩：把环境压缩复制到新的数据文件并替换，回收删除记录后留下的空闲页
+     * 压缩期间读写等待，耗时与存量数据成正比；有进行中的读事务时等待其结束，超时放弃
+     *
+     * @return 压缩成功返回true
+     */
+    @Override
+    public boolean compact() {
+        return lmdbClient.compact(this::openDbis);
+    }
+
+    /**
+     * 空闲页比例达到阈值时压缩
+     */
+    private void compactIfNeeded() {
+        if (lmdbClient.freeRatio() >= compactFreeRatio) {
+            compact();
+        }
+    }
+
+    /**
+     * 空闲页比例，即已使用的映射空间中可以被压缩回收的部分
+     *
+     * @return the double
+     */
+    public double freeRatio() {
+        return lmdbClient.freeRatio();
+    }
+
+    /**
+     * Stats queue stats.
+     *
+     * @return the queue stats
+     */
+    @Override
+    public QueueStats stats() {
+        return new QueueStats(entries.get(), inFlight.get(), blocking.remainingCapacity());
     }
 
     /**
      * Close.
      */
+    @Override
     public void close() {
+        if (blocking != null) {
+            //唤醒等待中的生产者与消费者
+            blocking.close();
+        }
+        if (compactor != null) {
+            compactor.close();
+        }
+        if (readAhead != null) {
+            readAhead.close();
+        }
+        if (leaseReaper != null) {
+            leaseReaper.close();
+        }
+        if (groupCommitWriter != null) {
+            //先提交已进入环形队列的记录
+            groupCommitWriter.close();
+        }
+        if (syncer != null) {
+            //写入已停止，刷盘未落盘的记录
+            syncer.close();
+        }
+        metrics.unbind(this);
+        if (inFlightDbi != null) {
+            inFlightDbi.close();
+        }
+        if (metaDbi != null && metaDbi != dbi) {
+            metaDbi.close();
+        }
         if (dbi != null) {
             dbi.close();
         }
         lmdbClient.close();
     }
+
+    /**
+     * 基于LMDB游标的只读迭代器，每批读取iteratorBatchSize条，读完即释放读事务
+     * 弱一致：批次之间的入队可见，已出队的记录不再返回；不支持remove()
+     */
+    public final class QueueIterator implements Iterator<E>, AutoCloseable {
+        /**
+         * 已读取未返回的记录
+         */
+        private final ArrayDeque<E> buffered = new ArrayDeque<>();
+        /**
+         * 下一批读取的起始指针
+         */
+        private long nextIndex = firstIndex;
+        /**
+         * 是否已读到末尾或已关闭
+         */
+        private boolean exhausted;
+
+        /**
+         * Instantiates a new Queue iterator.
+         */
+        private QueueIterator() {
+        }
+
+        /**
+         * 指针位key固定8字节，非整数key模式下头指针key排在所有指针位之后
+         *
+         * @param key the key
+         * @return the boolean
+         */
+        private boolean isIndex(ByteBuffer key) {
+            return key.remaining() == Long.BYTES;
+        }
+
+        /**
+         * Has next boolean.
+         *
+         * @return the boolean
+         */
+        @Override
+        public boolean hasNext() {
+            if (buffered.isEmpty() && !exhausted) {
+                fill();
+            }
+            return !buffered.isEmpty();
+        }
+
+        /**
+         * Next e.
+         *
+         * @return the e
+         */
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buffered.poll();
+        }
+
+        /**
+         * 在一个读事务中从nextIndex开始读取一批
+         */
+        private void fill() {
+            try (LmdbClient.Access access = lmdbClient.access();
+                 Txn<ByteBuffer> txnRead = lmdbClient.txnRead();
+                 Cursor<ByteBuffer> cursor = dbi.openCursor(txnRead)) {
+                //头指针之前的数据已被删除，从第一个不小于nextIndex的key开始
+                boolean found = cursor.get(key(Math.max(nextIndex, firstIndex)), GetOp.MDB_SET_RANGE) && isIndex(cursor.key());
+                while (found && buffered.size() < iteratorBatchSize) {
+                    nextIndex = indexOf(cursor.key()) + 1;
+                    //读事务未结束，页面不会被复用，直接在映射内存上反序列化
+                    buffered.add(serializer.read(cursor.val()));
+                    found = cursor.next() && isIndex(cursor.key());
+                }
+                exhausted = !found;
+            }
+        }
+
+        /**
+         * 停止遍历，丢弃已读取的记录；批次之间不持有读事务，不调用也不会泄漏
+         */
+        @Override
+        public void close() {
+            exhausted = true;
+            buffered.clear();
+        }
+    }
 }
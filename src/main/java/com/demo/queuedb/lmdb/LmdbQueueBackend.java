@@ -0,0 +1,60 @@
+package com.demo.queuedb.lmdb;
+
+import com.demo.queuedb.queue.PersistentQueue;
+import com.demo.queuedb.queue.QueueBackend;
+import com.demo.queuedb.queue.QueueSpec;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * LMDB队列后端
+ * 特有配置：integer-key、group-commit.enabled、group-commit.batch-size、group-commit.max-linger-ms、
+ * lease.timeout-ms、lease.reap-interval-ms、spill-threshold、max-map-size、
+ * compaction.interval-ms、compaction.free-ratio、compaction.idle-only、read-ahead.entries、read-ahead.bytes、priority
+ * priority为true时打开优先级队列，只使用通用配置与max-map-size
+ *
+ * @author lizhiming
+ */
+public class LmdbQueueBackend implements QueueBackend {
+
+    @Override
+    public String name() {
+        return "lmdb";
+    }
+
+    @Override
+    public <E extends Serializable> PersistentQueue<E> open(QueueSpec spec, Class<E> type) {
+        try {
+            //确认存在文件夹
+            Files.createDirectories(Paths.get(spec.getPath()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        LmdbQueueConfig defaults = new LmdbQueueConfig();
+        LmdbQueueConfig config = new LmdbQueueConfig().setEnvPath(spec.getPath()).setMapSize(spec.getMapSize())
+                .setReaders(spec.getReaders()).setDbName(spec.getName()).setCapacity(spec.getCapacity()).setSyncMode(spec.getSyncMode())
+                .setSyncIntervalMillis(spec.getSyncIntervalMillis()).setSyncEveryRecords(spec.getSyncEveryRecords()).setCodec(spec.getCodec()).setMetrics(spec.getMetrics())
+                .setMaxMapSize(spec.getLong("max-map-size", defaults.getMaxMapSize()))
+                .setCompactIntervalMillis(spec.getLong("compaction.interval-ms", defaults.getCompactIntervalMillis()))
+                .setCompactFreeRatio(spec.getDouble("compaction.free-ratio", defaults.getCompactFreeRatio()))
+                .setCompactIdleOnly(spec.getBoolean("compaction.idle-only", defaults.isCompactIdleOnly()))
+                .setReadAheadEntries(spec.getInt("read-ahead.entries", defaults.getReadAheadEntries()))
+                .setReadAheadBytes(spec.getLong("read-ahead.bytes", defaults.getReadAheadBytes()))
+                .setIteratorBatchSize(spec.getInt("iterator.batch-size", defaults.getIteratorBatchSize()))
+                .setIntegerKey(spec.getBoolean("integer-key", defaults.isIntegerKey()))
+                .setGroupCommit(spec.getBoolean("group-commit.enabled", defaults.isGroupCommit()))
+                .setGroupCommitBatchSize(spec.getInt("group-commit.batch-size", defaults.getGroupCommitBatchSize()))
+                .setGroupCommitMaxLingerMillis(spec.getLong("group-commit.max-linger-ms", defaults.getGroupCommitMaxLingerMillis()))
+                .setLeaseTimeoutMillis(spec.getLong("lease.timeout-ms", defaults.getLeaseTimeoutMillis()))
+                .setLeaseReapIntervalMillis(spec.getLong("lease.reap-interval-ms", defaults.getLeaseReapIntervalMillis()))
+                .setSpillThreshold(spec.getInt("spill-threshold", defaults.getSpillThreshold()));
+        if (spec.getBoolean("priority", false)) {
+            return new LmdbPriorityQueue<>(config, type);
+        }
+        return new LmdbQueue<>(config, type);
+    }
+}
@@ -0,0 +1,664 @@
+package com.demo.queuedb.lmdb;
+
+import com.demo.queuedb.queue.QueueMetrics;
+import com.demo.queuedb.queue.SyncMode;
+import com.demo.queuedb.util.BlockingSupport;
+
+/**
+ * LMDB队列配置
+ *
+ * @author lizhiming
+ */
+public class LmdbQueueConfig {
+
+    /**
+     * The Map size.
+     */
+    private long mapSize;
+
+    /**
+     * 映射空间自动扩容的上限，字节；写满或用量超过80%时按倍数扩容直到该值。不大于mapSize表示不扩容
+     */
+    private long maxMapSize;
+
+    /**
+     * The Dbs.
+     */
+    private int dbs = 1;
+
+    /**
+     * The Env path.
+     */
+    private String envPath;
+
+    /**
+     * The Readers.
+     */
+    private int readers = 126;
+
+    /**
+     * The Db name.
+     */
+    private String dbName;
+
+    /**
+     * 整数key模式：key按本机字节序存储(MDB_INTEGERKEY)，尾部写入使用MDB_APPEND，头指针存放在单独的元数据库中。
+     * 只能在创建队列时选择，已有数据的库不能切换模式
+     */
+    private boolean integerKey;
+
+    /**
+     * 容量，达到容量后offer返回false，put阻塞；默认不限
+     */
+    private int capacity = BlockingSupport.UNBOUNDED;
+
+    /**
+     * 组提交模式：生产者只把序列化后的记录放入内存环形队列，由单个写线程按批提交
+     */
+    private boolean groupCommit;
+
+    /**
+     * 组提交每个写事务最多提交的条数
+     */
+    private int groupCommitBatchSize = 256;
+
+    /**
+     * 组提交凑批的最长等待时间，毫秒；0表示不等待，写线程取出环形队列中已有的记录立即提交
+     */
+    private long groupCommitMaxLingerMillis;
+
+    /**
+     * 组提交环形队列大小，满时生产者阻塞
+     */
+    private int groupCommitRingSize = 4096;
+
+    /**
+     * reserve()未指定超时时的默认可见性超时，毫秒
+     */
+    private long leaseTimeoutMillis = 30000;
+
+    /**
+     * 超时租约的检查间隔，毫秒
+     */
+    private long leaseReapIntervalMillis = 1000;
+
+    /**
+     * 刷盘模式，默认不主动刷盘
+     */
+    private SyncMode syncMode = SyncMode.NONE;
+
+    /**
+     * PERIODIC模式的刷盘间隔，毫秒；0表示不按时间刷盘
+     */
+    private long syncIntervalMillis = 1000;
+
+    /**
+     * PERIODIC模式下累计多少条未刷盘记录时提前刷盘；0表示只按时间刷盘
+     */
+    private long syncEveryRecords;
+
+    /**
+     * 记录编码id，见Codecs；为null时新建队列使用默认编码，已有队列使用其记录的编码
+     */
+    private String codec;
+
+    /**
+     * 大记录外置阈值，字节；编码后不小于此值的记录写入外置存储，队列中只保存引用。0表示不外置，只能在新建队列时开启
+     */
+    private int spillThreshold;
+
+    /**
+     * 队列埋点，默认不开启
+     */
+    private QueueMetrics metrics = QueueMetrics.NOOP;
+
+    /**
+     * 头部预读的最多条数，后台线程提前反序列化头部记录供peek、poll直接使用；0表示不预读
+     */
+    private int readAheadEntries;
+
+    /**
+     * 头部预读的最多字节数，按编码后的大小计算，外置记录按外置内容的大小计算
+     */
+    private long readAheadBytes = 16L * 1024 * 1024;
+
+    /**
+     * 迭代器每个读事务读取并反序列化的条数
+     */
+    private int iteratorBatchSize = 64;
+
+    /**
+     * 自动压缩的检查间隔，毫秒；0表示不自动压缩
+     */
+    private long compactIntervalMillis;
+
+    /**
+     * 自动压缩的空闲空间比例阈值，空闲页占已使用映射空间的比例达到该值时压缩
+     */
+    private double compactFreeRatio = 0.5;
+
+    /**
+     * 是否只在两次检查之间没有入队出队时自动压缩
+     */
+    private boolean compactIdleOnly = true;
+
+    /**
+     * Gets map size.
+     *
+     * @return the map size
+     */
+    public long getMapSize() {
+        return mapSize;
+    }
+
+    /**
+     * Sets map size.
+     *
+     * @param mapSize the map size
+     * @return the map size
+     */
+    public LmdbQueueConfig setMapSize(long mapSize) {
+        this.mapSize = mapSize;
+        return this;
+    }
+
+    /**
+     * Gets max map size.
+     *
+     * @return the max map size
+     */
+    public long getMaxMapSize() {
+        return maxMapSize;
+    }
+
+    /**
+     * Sets max map size.
+     *
+     * @param maxMapSize the max map size
+     * @return the max map size
+     */
+    public LmdbQueueConfig setMaxMapSize(long maxMapSize) {
+        this.maxMapSize = maxMapSize;
+        return this;
+    }
+
+    /**
+     * Gets dbs.
+     *
+     * @return the dbs
+     */
+    public int getDbs() {
+        return dbs;
+    }
+
+    /**
+     * Sets dbs.
+     *
+     * @param dbs the dbs
+     * @return the dbs
+     */
+    public LmdbQueueConfig setDbs(int dbs) {
+        this.dbs = dbs;
+        return this;
+    }
+
+    /**
+     * Gets env path.
+     *
+     * @return the env path
+     */
+    public String getEnvPath() {
+        return envPath;
+    }
+
+    /**
+     * Sets env path.
+     *
+     * @param envPath the env path
+     * @return the env path
+     */
+    public LmdbQueueConfig setEnvPath(String envPath) {
+        this.envPath = envPath;
+        return this;
+    }
+
+    /**
+     * Gets readers.
+     *
+     * @return the readers
+     */
+    public int getReaders() {
+        return readers;
+    }
+
+    /**
+     * Sets readers.
+     *
+     * @param readers the readers
+     * @return the readers
+     */
+    public LmdbQueueConfig setReaders(int readers) {
+        this.readers = readers;
+        return this;
+    }
+
+    /**
+     * Gets db name.
+     *
+     * @return the db name
+     */
+    public String getDbName() {
+        return dbName;
+    }
+
+    /**
+     * Sets db name.
+     *
+     * @param dbName the db name
+     * @return the db name
+     */
+    public LmdbQueueConfig setDbName(String dbName) {
+        this.dbName = dbName;
+        return this;
+    }
+
+    /**
+     * Is integer key boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isIntegerKey() {
+        return integerKey;
+    }
+
+    /**
+     * Sets integer key.
+     *
+     * @param integerKey the integer key
+     * @return the integer key
+     */
+    public LmdbQueueConfig setIntegerKey(boolean integerKey) {
+        this.integerKey = integerKey;
+        return this;
+    }
+
+    /**
+     * Is group commit boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isGroupCommit() {
+        return groupCommit;
+    }
+
+    /**
+     * Sets group commit.
+     *
+     * @param groupCommit the group commit
+     * @return the group commit
+     */
+    public LmdbQueueConfig setGroupCommit(boolean groupCommit) {
+        this.groupCommit = groupCommit;
+        return this;
+    }
+
+    /**
+     * Gets group commit batch size.
+     *
+     * @return the group commit batch size
+     */
+    public int getGroupCommitBatchSize() {
+        return groupCommitBatchSize;
+    }
+
+    /**
+     * Sets group commit batch size.
+     *
+     * @param groupCommitBatchSize the group commit batch size
+     * @return the group commit batch size
+     */
+    public LmdbQueueConfig setGroupCommitBatchSize(int groupCommitBatchSize) {
+        this.groupCommitBatchSize = groupCommitBatchSize;
+        return this;
+    }
+
+    /**
+     * Gets group commit max linger millis.
+     *
+     * @return the group commit max linger millis
+     */
+    public long getGroupCommitMaxLingerMillis() {
+        return groupCommitMaxLingerMillis;
+    }
+
+    /**
+     * Sets group commit max linger millis.
+     *
+     * @param groupCommitMaxLingerMillis the group commit max linger millis
+     * @return the group commit max linger millis
+     */
+    public LmdbQueueConfig setGroupCommitMaxLingerMillis(long groupCommitMaxLingerMillis) {
+        this.groupCommitMaxLingerMillis = groupCommitMaxLingerMillis;
+        return this;
+    }
+
+    /**
+     * Gets group commit ring size.
+     *
+     * @return the group commit ring size
+     */
+    public int getGroupCommitRingSize() {
+        return groupCommitRingSize;
+    }
+
+    /**
+     * Sets group commit ring size.
+     *
+     * @param groupCommitRingSize the group commit ring size
+     * @return the group commit ring size
+     */
+    public LmdbQueueConfig setGroupCommitRingSize(int groupCommitRingSize) {
+        this.groupCommitRingSize = groupCommitRingSize;
+        return this;
+    }
+
+    /**
+     * Gets capacity.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets capacity.
+     *
+     * @param capacity the capacity
+     * @return the capacity
+     */
+    public LmdbQueueConfig setCapacity(int capacity) {
+        this.capacity = capacity;
+        return this;
+    }
+
+    /**
+     * Gets lease timeout millis.
+     *
+     * @return the lease timeout millis
+     */
+    public long getLeaseTimeoutMillis() {
+        return leaseTimeoutMillis;
+    }
+
+    /**
+     * Sets lease timeout millis.
+     *
+     * @param leaseTimeoutMillis the lease timeout millis
+     * @return the lease timeout millis
+     */
+    public LmdbQueueConfig setLeaseTimeoutMillis(long leaseTimeoutMillis) {
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Gets lease reap interval millis.
+     *
+     * @return the lease reap interval millis
+     */
+    public long getLeaseReapIntervalMillis() {
+        return leaseReapIntervalMillis;
+    }
+
+    /**
+     * Sets lease reap interval millis.
+     *
+     * @param leaseReapIntervalMillis the lease reap interval millis
+     * @return the lease reap interval millis
+     */
+    public LmdbQueueConfig setLeaseReapIntervalMillis(long leaseReapIntervalMillis) {
+        this.leaseReapIntervalMillis = leaseReapIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Gets sync mode.
+     *
+     * @return the sync mode
+     */
+    public SyncMode getSyncMode() {
+        return syncMode;
+    }
+
+    /**
+     * Sets sync mode.
+     *
+     * @param syncMode the sync mode
+     * @return the sync mode
+     */
+    public LmdbQueueConfig setSyncMode(SyncMode syncMode) {
+        this.syncMode = syncMode;
+        return this;
+    }
+
+    /**
+     * Gets codec.
+     *
+     * @return the codec
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets codec.
+     *
+     * @param codec the codec
+     * @return the codec
+     */
+    public LmdbQueueConfig setCodec(String codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Gets spill threshold.
+     *
+     * @return the spill threshold
+     */
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * Sets spill threshold.
+     *
+     * @param spillThreshold the spill threshold
+     * @return the spill threshold
+     */
+    public LmdbQueueConfig setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+        return this;
+    }
+
+    /**
+     * Gets metrics.
+     *
+     * @return the metrics
+     */
+    public QueueMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets metrics.
+     *
+     * @param metrics the metrics
+     * @return the metrics
+     */
+    public LmdbQueueConfig setMetrics(QueueMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Gets compact interval millis.
+     *
+     * @return the compact interval millis
+     */
+    public long getCompactIntervalMillis() {
+        return compactIntervalMillis;
+    }
+
+    /**
+     * Sets compact interval millis.
+     *
+     * @param compactIntervalMillis the compact interval millis
+     * @return the compact interval millis
+     */
+    public LmdbQueueConfig setCompactIntervalMillis(long compactIntervalMillis) {
+        this.compactIntervalMillis = compactIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Gets compact free ratio.
+     *
+     * @return the compact free ratio
+     */
+    public double getCompactFreeRatio() {
+        return compactFreeRatio;
+    }
+
+    /**
+     * Sets compact free ratio.
+     *
+     * @param compactFreeRatio the compact free ratio
+     * @return the compact free ratio
+     */
+    public LmdbQueueConfig setCompactFreeRatio(double compactFreeRatio) {
+        this.compactFreeRatio = compactFreeRatio;
+        return this;
+    }
+
+    /**
+     * Is compact idle only boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isCompactIdleOnly() {
+        return compactIdleOnly;
+    }
+
+    /**
+     * Sets compact idle only.
+     *
+     * @param compactIdleOnly the compact idle only
+     * @return the compact idle only
+     */
+    public LmdbQueueConfig setCompactIdleOnly(boolean compactIdleOnly) {
+        this.compactIdleOnly = compactIdleOnly;
+        return this;
+    }
+
+    /**
+     * Gets read ahead entries.
+     *
+     * @return the read ahead entries
+     */
+    public int getReadAheadEntries() {
+        return readAheadEntries;
+    }
+
+    /**
+     * Sets read ahead entries.
+     *
+     * @param readAheadEntries the read ahead entries
+     * @return the read ahead entries
+     */
+    public LmdbQueueConfig setReadAheadEntries(int readAheadEntries) {
+        this.readAheadEntries = readAheadEntries;
+        return this;
+    }
+
+    /**
+     * Gets read ahead bytes.
+     *
+     * @return the read ahead bytes
+     */
+    public long getReadAheadBytes() {
+        return readAheadBytes;
+    }
+
+    /**
+     * Sets read ahead bytes.
+     *
+     * @param readAheadBytes the read ahead bytes
+     * @return the read ahead bytes
+     */
+    public LmdbQueueConfig setReadAheadBytes(long readAheadBytes) {
+        this.readAheadBytes = readAheadBytes;
+        return this;
+    }
+
+    /**
+     * Gets iterator batch size.
+     *
+     * @return the iterator batch size
+     */
+    public int getIteratorBatchSize() {
+        return iteratorBatchSize;
+    }
+
+    /**
+     * Sets iterator batch size.
+     *
+     * @param iteratorBatchSize the iterator batch size
+     * @return the iterator batch size
+     */
+    public LmdbQueueConfig setIteratorBatchSize(int iteratorBatchSize) {
+        this.iteratorBatchSize = iteratorBatchSize;
+        return this;
+    }
+
+    /**
+     * Gets sync interval millis.
+     *
+     * @return the sync interval millis
+     */
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    /**
+     * Sets sync interval millis.
+     *
+     * @param syncIntervalMillis the sync interval millis
+     * @return the sync interval millis
+     */
+    public LmdbQueueConfig setSyncIntervalMillis(long syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Gets sync every records.
+     *
+     * @return the sync every records
+     */
+    public long getSyncEveryRecords() {
+        return syncEveryRecords;
+    }
+
+    /**
+     * Sets sync every records.
+     *
+     * @param syncEveryRecords the sync every records
+     * @return the sync every records
+     */
+    public LmdbQueueConfig setSyncEveryRecords(long syncEveryRecords) {
+        this.syncEveryRecords = syncEveryRecords;
+        return this;
+    }
+}
@@ -0,0 +1,154 @@
+package com.demo.queuedb.lmdb;
+
+import com.demo.queuedb.codec.Codec;
+import com.demo.queuedb.queue.QueueMetrics;
+import com.esotericsoftware.kryo.io.Output;
+import org.lmdbjava.Dbi;
+import org.lmdbjava.PutFlags;
+import org.lmdbjava.Txn;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * LMDB值的序列化，队列与日志共用
+ * 编码到线程的输出缓冲后拷贝到预留内存，稳定状态下写入除记录本身外不再分配内存
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+class LmdbSerializer<E> {
+
+    /**
+     * 记录编码
+     */
+    private final Codec<E> codec;
+
+    /**
+     * 队列埋点
+     */
+    private final QueueMetrics metrics;
+
+    /**
+     * 是否计时，未开启监控时不读取时钟
+     */
+    private final boolean timed;
+
+    /**
+     * Instantiates a new Lmdb serializer.
+     *
+     * @param codec 记录编码
+     */
+    LmdbSerializer(Codec<E> codec) {
+        this(codec, QueueMetrics.NOOP);
+    }
+
+    /**
+     * Instantiates a new Lmdb serializer.
+     *
+     * @param codec   记录编码
+     * @param metrics 队列埋点
+     */
+    LmdbSerializer(Codec<E> codec, QueueMetrics metrics) {
+        this.codec = codec;
+        this.metrics = metrics;
+        this.timed = metrics.isEnabled();
+    }
+
+    /**
+     * 记录编码
+     *
+     * @return the codec
+     */
+    Codec<E> codec() {
+        return codec;
+    }
+
+    /**
+     * 反序列化，byteBuffer为null时返回null
+     *
+     * @param byteBuffer the byte buffer
+     * @return the e
+     */
+    E read(ByteBuffer byteBuffer) {
+        if (byteBuffer == null) {
+            return null;
+        }
+        if (!timed) {
+            return codec.decode(byteBuffer);
+        }
+        long start = System.nanoTime();
+        E item = codec.decode(byteBuffer);
+        metrics.recordDeserialize(System.nanoTime() - start);
+        return item;
+    }
+
+    /**
+     * 反序列化已拷贝到堆内存的记录
+     *
+     * @param value the value
+     * @return the e
+     */
+    E read(byte[] value) {
+        if (!timed) {
+            return codec.decode(value, 0, value.length);
+        }
+        long start = System.nanoTime();
+        E item = codec.decode(value, 0, value.length);
+        metrics.recordDeserialize(System.nanoTime() - start);
+        return item;
+    }
+
+    /**
+     * 序列化到当前线程的输出缓冲，在本线程下次序列化前有效
+     *
+     * @param item the item
+     * @return the output
+     */
+    Output serialize(E item) {
+        if (!timed) {
+            return codec.encode(item);
+        }
+        long start = System.nanoTime();
+        Output out = codec.encode(item);
+        metrics.recordSerialize(System.nanoTime() - start, out.position());
+        return out;
+    }
+
+    /**
+     * 序列化为字节数组，长度与序列化结果一致
+     *
+     * @param item the item
+     * @return the byte [ ]
+     */
+    byte[] toBytes(E item) {
+        Output out = serialize(item);
+        return Arrays.copyOf(out.getBuffer(), out.position());
+    }
+
+    /**
+     * 按实际长度预留(MDB_RESERVE)，把已序列化的数据拷贝到预留的内存中
+     *
+     * @param dbi      the dbi
+     * @param txnWrite the txn write
+     * @param key      the key
+     * @param out      serialize()的结果
+     * @param flags    the flags
+     */
+    void put(Dbi<ByteBuffer> dbi, Txn<ByteBuffer> txnWrite, ByteBuffer key, Output out, PutFlags... flags) {
+        dbi.reserve(txnWrite, key, out.position(), flags).put(out.getBuffer(), 0, out.position());
+    }
+
+    /**
+     * 序列化并写入
+     *
+     * @param dbi      the dbi
+     * @param txnWrite the txn write
+     * @param key      the key
+     * @param item     the item
+     * @param flags    the flags
+     */
+    void write(Dbi<ByteBuffer> dbi, Txn<ByteBuffer> txnWrite, ByteBuffer key, E item, PutFlags... flags) {
+        put(dbi, txnWrite, key, serialize(item), flags);
+    }
+}
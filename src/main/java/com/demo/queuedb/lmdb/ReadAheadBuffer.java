@@ -0,0 +1,271 @@
+package com.demo.queuedb.lmdb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 队列头部的预读缓冲
+ * 预读线程从头指针之后用一个读事务顺序扫描、反序列化，缓存在内存中，peek与poll直接使用缓存的对象；
+ * 缓存的记录按指针位连续，条数与字节数都不超过上限。指针位上的记录写入后不会改变，出队后由消费者移除
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+class ReadAheadBuffer<E> implements Runnable {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadAheadBuffer.class);
+
+    /**
+     * 没有新记录或缓冲已满时的等待时长，入队与出队会提前唤醒
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * 最多缓存的条数
+     */
+    private final int maxEntries;
+
+    /**
+     * 最多缓存的字节数，按编码后的大小计算，外置记录按外置内容的大小计算
+     */
+    private final long maxBytes;
+
+    /**
+     * 读取已提交的记录
+     */
+    private final Loader<E> loader;
+
+    /**
+     * 已缓存的记录，按指针位连续
+     */
+    private final ArrayDeque<Entry<E>> entries = new ArrayDeque<>();
+
+    /**
+     * 已缓存的字节数
+     */
+    private long bytes;
+
+    /**
+     * 头指针，缓存中只保留不小于该位置的记录
+     */
+    private long head;
+
+    /**
+     * 下一条要预读的位置
+     */
+    private long next;
+
+    /**
+     * 预读线程
+     */
+    private final Thread thread;
+
+    /**
+     * 是否运行中
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Instantiates a new Read ahead buffer.
+     *
+     * @param name       线程名
+     * @param head       头指针
+     * @param maxEntries 最多缓存的条数
+     * @param maxBytes   最多缓存的字节数
+     * @param loader     读取已提交的记录
+     */
+    ReadAheadBuffer(String name, long head, int maxEntries, long maxBytes, Loader<E> loader) {
+        this.head = head;
+        this.next = head;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.loader = loader;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 头部的记录，未缓存时返回null
+     *
+     * @param index 头指针
+     * @return the e
+     */
+    synchronized E peek(long index) {
+        Entry<E> first = entries.peekFirst();
+        return first != null && first.index == index ? first.item : null;
+    }
+
+    /**
+     * 从头指针开始已缓存的连续记录，不移除
+     *
+     * @param index       头指针
+     * @param maxElements 最多条数
+     * @return the list
+     */
+    synchronized List<E> get(long index, int maxElements) {
+        Entry<E> first = entries.peekFirst();
+        if (first == null || first.index != index) {
+            return Collections.emptyList();
+        }
+        List<E> items = new ArrayList<>(Math.min(maxElements, entries.size()));
+        for (Entry<E> entry : entries) {
+            if (items.size() >= maxElements) {
+                break;
+            }
+            items.add(entry.item);
+        }
+        return items;
+    }
+
+    /**
+     * 头指针已移动，移除之前的记录并唤醒预读
+     *
+     * @param index 新的头指针
+     */
+    void advance(long index) {
+        synchronized (this) {
+            head = index;
+            while (!entries.isEmpty() && entries.peekFirst().index < index) {
+                bytes -= entries.pollFirst().bytes;
+            }
+            if (next < index) {
+                //消费者已越过预读位置
+                next = index;
+            }
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * 有新记录提交，唤醒预读
+     */
+    void signal() {
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        List<Entry<E>> loaded = new ArrayList<>();
+        while (running) {
+            long from;
+            int entryRoom;
+            long byteRoom;
+            synchronized (this) {
+                from = next;
+                entryRoom = maxEntries - entries.size();
+                byteRoom = maxBytes - bytes;
+            }
+            if (entryRoom > 0 && byteRoom > 0) {
+                try {
+                    loader.load(from, entryRoom, byteRoom, loaded);
+                } catch (RuntimeException e) {
+                    //外置内容可能已被消费者释放，已读取的部分仍然有效，下次从中断处继续
+                    LOGGER.debug("read ahead from {} stopped. {}", from, e.toString());
+                }
+                append(from, loaded);
+            }
+            if (loaded.isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            loaded.clear();
+        }
+    }
+
+    /**
+     * 追加预读的记录，预读期间头指针已越过的记录丢弃
+     *
+     * @param from   本次预读的起始位置
+     * @param loaded the loaded
+     */
+    private synchronized void append(long from, List<Entry<E>> loaded) {
+        if (loaded.isEmpty() || from != next) {
+            return;
+        }
+        for (Entry<E> entry : loaded) {
+            if (entry.index >= head) {
+                entries.addLast(entry);
+                bytes += entry.bytes;
+            }
+        }
+        next = Math.max(next, loaded.get(loaded.size() - 1).index + 1);
+    }
+
+    /**
+     * 停止预读线程，清空缓存
+     */
+    void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * 读取已提交的记录
+     *
+     * @param <E> the type parameter
+     */
+    interface Loader<E> {
+
+        /**
+         * 从from开始读取已提交的连续记录追加到out，达到条数或字节数上限、遇到不连续或未提交的位置时停止
+         *
+         * @param from       起始位置
+         * @param maxEntries 最多条数
+         * @param maxBytes   最多字节数
+         * @param out        the out
+         */
+        void load(long from, int maxEntries, long maxBytes, List<Entry<E>> out);
+    }
+
+    /**
+     * 已反序列化的记录
+     *
+     * @param <E> the type parameter
+     */
+    static final class Entry<E> {
+        /**
+         * 指针位
+         */
+        private final long index;
+        /**
+         * 反序列化后的对象
+         */
+        private final E item;
+        /**
+         * 计入上限的字节数
+         */
+        private final long bytes;
+
+        /**
+         * Instantiates a new Entry.
+         *
+         * @param index the index
+         * @param item  the item
+         * @param bytes the bytes
+         */
+        Entry(long index, E item, long bytes) {
+            this.index = index;
+            this.item = item;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.demo.queuedb.metrics;
+
+import com.demo.queuedb.bdb.BdbQueue;
+import com.demo.queuedb.lmdb.LmdbQueue;
+import com.demo.queuedb.queue.PersistentQueue;
+import com.demo.queuedb.queue.QueueMetrics;
+import com.sleepycat.je.EnvironmentStats;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 基于Micrometer的队列埋点，每个队列一个实例，指标带queue、backend标签，通过Actuator的/actuator/metrics暴露
+ * 读写耗时为Timer(默认发布百分位直方图)，批量大小与序列化字节数为DistributionSummary；
+ * 深度、最早记录的等待时间、未刷盘的记录数与时长、LMDB映射用量、JE缓存与日志统计为Gauge，只在采集时读取
+ *
+ * @author lizhiming
+ */
+public class MicrometerQueueMetrics implements QueueMetrics {
+
+    /**
+     * 写入时间采样间隔，最早记录的等待时间最多高估该值
+     */
+    private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * JE统计的缓存时长，避免每个Gauge各自读取一次
+     */
+    private static final long ENV_STATS_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The Registry.
+     */
+    private final MeterRegistry registry;
+
+    /**
+     * queue、backend标签
+     */
+    private final Tags tags;
+
+    /**
+     * The Offer timer.
+     */
+    private final Timer offer;
+
+    /**
+     * The Poll timer.
+     */
+    private final Timer poll;
+
+    /**
+     * The Peek timer.
+     */
+    private final Timer peek;
+
+    /**
+     * The Serialize timer.
+     */
+    private final Timer serialize;
+
+    /**
+     * The Deserialize timer.
+     */
+    private final Timer deserialize;
+
+    /**
+     * The Commit timer.
+     */
+    private final Timer commit;
+
+    /**
+     * The Sync timer.
+     */
+    private final Timer sync;
+
+    /**
+     * 每次刷盘落盘的记录数
+     */
+    private final DistributionSummary syncRecords;
+
+    /**
+     * 序列化后的字节数
+     */
+    private final DistributionSummary serializedBytes;
+
+    /**
+     * 每次入队的数量
+     */
+    private final DistributionSummary offerBatch;
+
+    /**
+     * 每次出队的数量
+     */
+    private final DistributionSummary pollBatch;
+
+    /**
+     * 写入时间采样，key为指针位，value为写入时的nanoTime
+     */
+    private final ConcurrentSkipListMap<Long, Long> appendSamples = new ConcurrentSkipListMap<>();
+
+    /**
+     * 最近一次采样的时间
+     */
+    private volatile long lastSampleNanos;
+
+    /**
+     * 头指针
+     */
+    private volatile long headIndex;
+
+    /**
+     * bind()注册的指标
+     */
+    private final List<Meter> bound = new CopyOnWriteArrayList<>();
+
+    /**
+     * JE统计缓存
+     */
+    private volatile EnvironmentStats envStats;
+
+    /**
+     * JE统计读取时间
+     */
+    private volatile long envStatsNanos;
+
+    /**
+     * Instantiates a new Micrometer queue metrics.
+     *
+     * @param registry the registry
+     * @param queue    队列名
+     * @param backend  后端名
+     */
+    public MicrometerQueueMetrics(MeterRegistry registry, String queue, String backend) {
+        this.registry = registry;
+        this.tags = Tags.of("queue", queue, "backend", backend);
+        offer = latency("queue.offer", "入队耗时");
+        poll = latency("queue.poll", "出队耗时");
+        peek = latency("queue.peek", "读取头部数据耗时");
+        commit = latency("queue.commit", "写事务提交或刷盘耗时");
+        sync = latency("queue.sync", "定期或手动刷盘耗时");
+        syncRecords = DistributionSummary.builder("queue.sync.records").description("每次刷盘落盘的记录数，即刷盘前可能丢失的范围")
+                .tags(tags).register(registry);
+        serialize = Timer.builder("queue.serialize").description("序列化单条记录耗时").tags(tags).register(registry);
+        deserialize = Timer.builder("queue.deserialize").description("反序列化单条记录耗时").tags(tags).register(registry);
+        serializedBytes = DistributionSummary.builder("queue.serialize.bytes").description("序列化后的记录大小").baseUnit("bytes")
+                .tags(tags).register(registry);
+        offerBatch = DistributionSummary.builder("queue.offer.batch").description("每次入队的记录数").tags(tags).register(registry);
+        pollBatch = DistributionSummary.builder("queue.poll.batch").description("每次出队的记录数").tags(tags).register(registry);
+    }
+
+    /**
+     * 发布百分位直方图的耗时指标
+     *
+     * @param name        the name
+     * @param description the description
+     * @return the timer
+     */
+    private Timer latency(String name, String description) {
+        return Timer.builder(name).description(description).tags(tags).publishPercentileHistogram().register(registry);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordOffer(long nanos, int count) {
+        offer.record(nanos, TimeUnit.NANOSECONDS);
+        offerBatch.record(count);
+    }
+
+    @Override
+    public void recordPoll(long nanos, int count) {
+        poll.record(nanos, TimeUnit.NANOSECONDS);
+        pollBatch.record(count);
+    }
+
+    @Override
+    public void recordPeek(long nanos) {
+        peek.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordSerialize(long nanos, int bytes) {
+        serialize.record(nanos, TimeUnit.NANOSECONDS);
+        serializedBytes.record(bytes);
+    }
+
+    @Override
+    public void recordDeserialize(long nanos) {
+        deserialize.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordCommit(long nanos) {
+        commit.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordSync(long nanos, long records) {
+        sync.record(nanos, TimeUnit.NANOSECONDS);
+        syncRecords.record(records);
+    }
+
+    /**
+     * 每个采样间隔最多记录一次批次起始指针位的写入时间，同一间隔内的后续记录视为与采样同时写入
+     *
+     * @param firstIndex the first index
+     * @param count      the count
+     */
+    @Override
+    public void recordAppend(long firstIndex, int count) {
+        if (count <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (appendSamples.isEmpty() || now - lastSampleNanos >= SAMPLE_INTERVAL_NANOS) {
+            lastSampleNanos = now;
+            appendSamples.putIfAbsent(firstIndex, now);
+        }
+    }
+
+    /**
+     * 只保留不晚于头指针的最后一个采样，更早的采样不再需要
+     *
+     * @param headIndex the head index
+     */
+    @Override
+    public void recordHead(long headIndex) {
+        this.headIndex = headIndex;
+        Long floor = appendSamples.floorKey(headIndex);
+        if (floor != null) {
+            appendSamples.headMap(floor).clear();
+        }
+    }
+
+    @Override
+    public void bind(PersistentQueue<?> queue) {
+        gauge("queue.size", "待消费的数量", queue, q -> q.stats().getSize());
+        gauge("queue.in.flight", "已预留未确认的数量", queue, q -> q.stats().getInFlight());
+        gauge("queue.remaining.capacity", "剩余容量", queue, q -> q.stats().getRemainingCapacity());
+        bound.add(TimeGauge.builder("queue.oldest.age", queue, TimeUnit.NANOSECONDS, this::oldestAgeNanos)
+                .description("最早记录的等待时间，按写入时间采样估算").tags(tags).register(registry));
+        gauge("queue.unsynced.records", "自上次刷盘以来写入的记录数，宕机时可能丢失", queue, PersistentQueue::unsyncedRecords);
+        bound.add(TimeGauge.builder("queue.unsynced.age", queue, TimeUnit.NANOSECONDS, PersistentQueue::unsyncedAgeNanos)
+                .description("最早一条未刷盘记录的写入时间距今，即可能丢失的时间范围").tags(tags).register(registry));
+        if (queue instanceof LmdbQueue) {
+            LmdbQueue<?> lmdb = (LmdbQueue<?>) queue;
+            bytes("queue.lmdb.map.used", "LMDB已使用的映射空间", lmdb, LmdbQueue::mapUsedBytes);
+            bytes("queue.lmdb.map.size", "LMDB映射空间上限(mapSize)", lmdb, LmdbQueue::mapSizeBytes);
+        }
+        if (queue instanceof BdbQueue) {
+            BdbQueue<?> bdb = (BdbQueue<?>) queue;
+            bytes("queue.bdb.cache.bytes", "JE缓存占用", bdb, q -> envStats(q).getCacheTotalBytes());
+            bytes("queue.bdb.log.size", "JE日志文件总大小", bdb, q -> envStats(q).getTotalLogSize());
+            gauge("queue.bdb.cleaner.backlog", "待清理的日志文件数", bdb, q -> envStats(q).getCleanerBacklog());
+            counter("queue.bdb.cache.misses", "JE缓存未命中次数", bdb, q -> envStats(q).getNCacheMiss());
+            counter("queue.bdb.fsyncs", "JE日志fsync次数", bdb, q -> envStats(q).getNFSyncs());
+            counter("queue.bdb.cleaner.runs", "JE日志清理次数", bdb, q -> envStats(q).getNCleanerRuns());
+        }
+    }
+
+    @Override
+    public void unbind(PersistentQueue<?> queue) {
+        for (Meter meter : bound) {
+            registry.remove(meter);
+        }
+        bound.clear();
+    }
+
+    /**
+     * 最早记录的等待时间，队列为空时为0
+     *
+     * @param queue the queue
+     * @return the double
+     */
+    private double oldestAgeNanos(PersistentQueue<?> queue) {
+        if (queue.stats().getSize() == 0) {
+            return 0;
+        }
+        Map.Entry<Long, Long> sample = appendSamples.floorEntry(headIndex);
+        if (sample == null) {
+            //重新投递的记录指针位在头指针之后，取最早的采样
+            sample = appendSamples.firstEntry();
+        }
+        return sample == null ? 0 : System.nanoTime() - sample.getValue();
+    }
+
+    /**
+     * JE统计，一秒内复用同一次读取的结果
+     *
+     * @param queue the queue
+     * @return the environment stats
+     */
+    private EnvironmentStats envStats(BdbQueue<?> queue) {
+        long now = System.nanoTime();
+        EnvironmentStats stats = envStats;
+        if (stats == null || now - envStatsNanos >= ENV_STATS_TTL_NANOS) {
+            stats = queue.environmentStats();
+            envStats = stats;
+            envStatsNanos = now;
+        }
+        return stats;
+    }
+
+    /**
+     * 注册Gauge
+     *
+     * @param <T>         the type parameter
+     * @param name        the name
+     * @param description the description
+     * @param obj         the obj
+     * @param f           the f
+     */
+    private <T> void gauge(String name, String description, T obj, ToDoubleFunction<T> f) {
+        bound.add(Gauge.builder(name, obj, f).description(description).tags(tags).register(registry));
+    }
+
+    /**
+     * 注册以字节为单位的Gauge
+     *
+     * @param <T>         the type parameter
+     * @param name        the name
+     * @param description the description
+     * @param obj         the obj
+     * @param f           the f
+     */
+    private <T> void bytes(String name, String description, T obj, ToDoubleFunction<T> f) {
+        bound.add(Gauge.builder(name, obj, f).description(description).baseUnit("bytes").tags(tags).register(registry));
+    }
+
+    /**
+     * 注册单调递增的计数
+     *
+     * @param <T>         the type parameter
+     * @param name        the name
+     * @param description the description
+     * @param obj         the obj
+     * @param f           the f
+     */
+    private <T> void counter(String name, String description, T obj, ToDoubleFunction<T> f) {
+        bound.add(FunctionCounter.builder(name, obj, f).description(description).tags(tags).register(registry));
+    }
+}
@@ -0,0 +1,100 @@
+package com.demo.queuedb.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 压缩线程，定期检查并回收存储空间
+ * 只在空闲时压缩时，两次检查之间有入队或出队则跳过本次
+ *
+ * @author lizhiming
+ */
+public class Compactor implements AutoCloseable {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(Compactor.class);
+
+    /**
+     * 定时线程
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * 是否只在空闲时压缩
+     */
+    private final boolean idleOnly;
+
+    /**
+     * 读写进度，入队或出队后变化
+     */
+    private final LongSupplier progress;
+
+    /**
+     * 按需压缩，由后端判断是否值得压缩
+     */
+    private final Runnable compact;
+
+    /**
+     * 上次检查时的读写进度
+     */
+    private long lastProgress;
+
+    /**
+     * Instantiates a new Compactor.
+     *
+     * @param name           线程名
+     * @param intervalMillis 检查间隔
+     * @param idleOnly       是否只在空闲时压缩
+     * @param progress       读写进度，入队或出队后变化
+     * @param compact        按需压缩，由后端判断是否值得压缩
+     */
+    public Compactor(String name, long intervalMillis, boolean idleOnly, LongSupplier progress, Runnable compact) {
+        this.idleOnly = idleOnly;
+        this.progress = progress;
+        this.compact = compact;
+        this.lastProgress = progress.getAsLong();
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::check, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 执行一次检查，异常只记录日志，避免定时任务被取消
+     */
+    private void check() {
+        try {
+            long current = progress.getAsLong();
+            boolean idle = current == lastProgress;
+            lastProgress = current;
+            if (idleOnly && !idle) {
+                return;
+            }
+            compact.run();
+        } catch (Exception e) {
+            LOGGER.error("compact fail.", e);
+        }
+    }
+
+    /**
+     * 停止压缩线程，等待正在执行的压缩完成
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(60, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
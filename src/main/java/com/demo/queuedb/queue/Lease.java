@@ -0,0 +1,78 @@
+package com.demo.queuedb.queue;
+
+import java.io.Serializable;
+
+/**
+ * 已预留(reserve)但尚未确认的记录
+ * 在deadline之前需调用ack(id)确认或nack(id)退回，超时后由后台线程重新投递，重新投递后原id失效
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+public class Lease<E> implements Serializable {
+
+    /**
+     * serialVersionUID
+     */
+    private static final long serialVersionUID = 3166203569017409127L;
+
+    /**
+     * 租约id，即记录出队时的指针位
+     */
+    private final long id;
+
+    /**
+     * 记录
+     */
+    private final E item;
+
+    /**
+     * 可见性超时时间点，毫秒时间戳
+     */
+    private final long deadline;
+
+    /**
+     * Instantiates a new Lease.
+     *
+     * @param id       the id
+     * @param item     the item
+     * @param deadline the deadline
+     */
+    public Lease(long id, E item, long deadline) {
+        this.id = id;
+        this.item = item;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Gets id.
+     *
+     * @return the id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Gets item.
+     *
+     * @return the item
+     */
+    public E getItem() {
+        return item;
+    }
+
+    /**
+     * Gets deadline.
+     *
+     * @return the deadline
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    @Override
+    public String toString() {
+        return "Lease{id=" + id + ", deadline=" + deadline + '}';
+    }
+}
@@ -0,0 +1,76 @@
+package com.demo.queuedb.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongToIntFunction;
+
+/**
+ * 租约回收线程，定期把超时未确认的记录重新投递到队列尾部
+ *
+ * @author lizhiming
+ */
+public class LeaseReaper implements AutoCloseable {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LeaseReaper.class);
+
+    /**
+     * 定时线程
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * 按当前时间重新投递超时记录，返回重新投递的条数
+     */
+    private final LongToIntFunction redeliver;
+
+    /**
+     * Instantiates a new Lease reaper.
+     *
+     * @param name           线程名
+     * @param intervalMillis 检查间隔
+     * @param redeliver      重新投递deadline不晚于参数时间的记录
+     */
+    public LeaseReaper(String name, long intervalMillis, LongToIntFunction redeliver) {
+        this.redeliver = redeliver;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::reap, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 执行一次回收，异常只记录日志，避免定时任务被取消
+     */
+    private void reap() {
+        try {
+            int n = redeliver.applyAsInt(System.currentTimeMillis());
+            if (n > 0) {
+                LOGGER.info("redelivered {} expired leases.", n);
+            }
+        } catch (Exception e) {
+            LOGGER.error("reap expired leases fail.", e);
+        }
+    }
+
+    /**
+     * 停止回收线程，等待正在执行的回收完成
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
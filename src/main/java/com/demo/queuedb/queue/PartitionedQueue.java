@@ -0,0 +1,542 @@
+package com.demo.queuedb.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * 分区队列，把写入分散到N个子队列(如N个LMDB环境)，每个分区各自持有写锁与指针
+ * 按key路由时同一个key落在同一分区，分区内保持顺序；未指定key函数时轮询写入
+ * poll/peek/drainTo从各分区轮流读取，只保证分区内有序；需要分区内顺序消费时通过partition(i)直接读取
+ *
+ * @param <E> the type parameter
+ * @param <Q> 分区队列类型
+ * @author lizhiming
+ */
+public class PartitionedQueue<E, Q extends BlockingQueue<E>> extends AbstractQueue<E> implements BlockingQueue<E>, AutoCloseable {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedQueue.class);
+
+    /**
+     * 阻塞读取时单次等待的时长，超时后重新检查所有分区
+     * 通过本队列写入时立即唤醒等待者；绕过本队列直接写入partition(i)的记录，最多延迟一个时间片才被读到
+     */
+    private static final long WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * 分区
+     */
+    private final List<Q> partitions;
+
+    /**
+     * key函数，null表示轮询写入
+     */
+    private final ToIntFunction<? super E> keyFunction;
+
+    /**
+     * 轮询写入位置
+     */
+    private final AtomicInteger nextWrite = new AtomicInteger();
+
+    /**
+     * 轮询读取位置
+     */
+    private final AtomicInteger nextRead = new AtomicInteger();
+
+    /**
+     * 阻塞读取等待的锁
+     */
+    private final ReentrantLock waitLock = new ReentrantLock();
+
+    /**
+     * 任一分区写入后的通知
+     */
+    private final Condition notEmpty = waitLock.newCondition();
+
+    /**
+     * 等待中的读取者数量，没有等待者时写入不加锁
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * 是否已关闭，关闭后等待中的读取者抛出IllegalStateException
+     */
+    private volatile boolean closed;
+
+    /**
+     * 轮询写入的分区队列
+     *
+     * @param partitionCount 分区数
+     * @param factory        按分区号创建分区
+     */
+    public PartitionedQueue(int partitionCount, IntFunction<? extends Q> factory) {
+        this(partitionCount, factory, null);
+    }
+
+    /**
+     * 按key路由的分区队列
+     *
+     * @param partitionCount 分区数
+     * @param factory        按分区号创建分区
+     * @param keyFunction    key函数，按floorMod(key, partitionCount)选择分区；null表示轮询写入
+     */
+    public PartitionedQueue(int partitionCount, IntFunction<? extends Q> factory, ToIntFunction<? super E> keyFunction) {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("partitionCount must be positive");
+        }
+        List<Q> list = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            list.add(factory.apply(i));
+        }
+        this.partitions = Collections.unmodifiableList(list);
+        this.keyFunction = keyFunction;
+    }
+
+    /**
+     * 分区数
+     *
+     * @return the int
+     */
+    public int partitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * 获取分区，用于分区内顺序消费
+     *
+     * @param partition the partition
+     * @return the q
+     */
+    public Q partition(int partition) {
+        return partitions.get(partition);
+    }
+
+    /**
+     * 所有分区
+     *
+     * @return the list
+     */
+    public List<Q> partitions() {
+        return partitions;
+    }
+
+    /**
+     * 计算记录所在分区
+     *
+     * @param e the e
+     * @return the int
+     */
+    public int partitionOf(E e) {
+        if (keyFunction == null) {
+            return Math.floorMod(nextWrite.getAndIncrement(), partitions.size());
+        }
+        return Math.floorMod(keyFunction.applyAsInt(e), partitions.size());
+    }
+
+    /**
+     * 下一个轮询读取的起始分区
+     *
+     * @return the int
+     */
+    private int nextReadStart() {
+        return Math.floorMod(nextRead.getAndIncrement(), partitions.size());
+    }
+
+    /**
+     * 写入成功后唤醒等待的读取者
+     */
+    private void signalNotEmpty() {
+        if (waiters.get() > 0) {
+            waitLock.lock();
+            try {
+                notEmpty.signalAll();
+            } finally {
+                waitLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 所有分区为空时最多等待nanos，写入后提前返回
+     *
+     * @param nanos the nanos
+     * @throws InterruptedException  the interrupted exception
+     * @throws IllegalStateException 等待期间关闭
+     */
+    private void awaitNotEmpty(long nanos) throws InterruptedException {
+        //先登记再检查，写入方看到登记后一定会通知
+        waiters.incrementAndGet();
+        waitLock.lockInterruptibly();
+        try {
+            if (!closed && isEmpty()) {
+                notEmpty.awaitNanos(nanos);
+            }
+            if (closed) {
+                throw new IllegalStateException("queue closed");
+            }
+        } finally {
+            waitLock.unlock();
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * 写入，轮询模式下目标分区已满时依次尝试其他分区
+     *
+     * @param e the e
+     * @return the boolean
+     */
+    @Override
+    public boolean offer(E e) {
+        int start = partitionOf(e);
+        if (partitions.get(start).offer(e)) {
+            signalNotEmpty();
+            return true;
+        }
+        if (keyFunction != null) {
+            //按key路由时不能换分区，否则破坏分区内顺序
+            return false;
+        }
+        for (int i = 1; i < partitions.size(); i++) {
+            if (partitions.get((start + i) % partitions.size()).offer(e)) {
+                signalNotEmpty();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 写入目标分区，分区已满时阻塞等待
+     *
+     * @param e the e
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public void put(E e) throws InterruptedException {
+        partitions.get(partitionOf(e)).put(e);
+        signalNotEmpty();
+    }
+
+    /**
+     * 写入目标分区，分区已满时最多等待timeout
+     *
+     * @param e       the e
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the boolean
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (partitions.get(partitionOf(e)).offer(e, timeout, unit)) {
+            signalNotEmpty();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 从各分区轮流读取
+     *
+     * @return the e
+     */
+    @Override
+    public E poll() {
+        int start = nextReadStart();
+        for (int i = 0; i < partitions.size(); i++) {
+            E e = partitions.get((start + i) % partitions.size()).poll();
+            if (e != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取下一个轮询分区的头部数据，不删除
+     *
+     * @return the e
+     */
+    @Override
+    public E peek() {
+        int start = Math.floorMod(nextRead.get(), partitions.size());
+        for (int i = 0; i < partitions.size(); i++) {
+            E e = partitions.get((start + i) % partitions.size()).peek();
+            if (e != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 队列为空时阻塞等待，本队列写入时唤醒，否则每个WAIT_SLICE_NANOS重新检查所有分区
+     *
+     * @return the e
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public E take() throws InterruptedException {
+        for (; ; ) {
+            E e = poll();
+            if (e != null) {
+                return e;
+            }
+            awaitNotEmpty(WAIT_SLICE_NANOS);
+        }
+    }
+
+    /**
+     * 队列为空时最多等待timeout，唤醒方式与take相同
+     *
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the e
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (; ; ) {
+            E e = poll();
+            if (e != null) {
+                return e;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            awaitNotEmpty(Math.min(remaining, WAIT_SLICE_NANOS));
+        }
+    }
+
+    /**
+     * 从各分区轮流批量取出，最多取出maxElements条
+     *
+     * @param c           the c
+     * @param maxElements the max elements
+     * @return 实际取出的数量
+     */
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int start = nextReadStart();
+        int total = 0;
+        for (int i = 0; i < partitions.size() && total < maxElements; i++) {
+            total += partitions.get((start + i) % partitions.size()).drainTo(c, maxElements - total);
+        }
+        return total;
+    }
+
+    /**
+     * 取出所有分区当前的数据，由各分区按自己的批量方式取出
+     *
+     * @param c the c
+     * @return 实际取出的数量
+     */
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int start = nextReadStart();
+        int total = 0;
+        for (int i = 0; i < partitions.size(); i++) {
+            total += partitions.get((start + i) % partitions.size()).drainTo(c);
+        }
+        return total;
+    }
+
+    /**
+     * 各分区剩余容量之和
+     *
+     * @return the int
+     */
+    @Override
+    public int remainingCapacity() {
+        long remaining = 0;
+        for (Q partition : partitions) {
+            remaining += partition.remainingCapacity();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    /**
+     * 各分区数量之和
+     *
+     * @return the int
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, longSize());
+    }
+
+    /**
+     * 各分区数量之和，不受int范围限制
+     *
+     * @return the long
+     */
+    public long longSize() {
+        long size = 0;
+        for (Q partition : partitions) {
+            size += partition instanceof PersistentQueue ? ((PersistentQueue<?>) partition).longSize() : partition.size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Q partition : partitions) {
+            if (!partition.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 由各分区判断，分区迭代器提前结束时可以释放资源
+     *
+     * @param o the o
+     * @return the boolean
+     */
+    @Override
+    public boolean contains(Object o) {
+        for (Q partition : partitions) {
+            if (partition.contains(o)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按分区顺序遍历
+     *
+     * @param action the action
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        for (Q partition : partitions) {
+            partition.forEach(action);
+        }
+    }
+
+    /**
+     * 按分区顺序依次遍历各分区，切换分区时释放上一个分区的迭代器；提前结束遍历时应调用close()
+     *
+     * @return the iterator
+     */
+    @Override
+    public PartitionIterator iterator() {
+        return new PartitionIterator();
+    }
+
+    /**
+     * 释放实现了AutoCloseable的分区迭代器
+     *
+     * @param iterator the iterator
+     */
+    private static void closeIterator(Iterator<?> iterator) {
+        if (iterator instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) iterator).close();
+            } catch (Exception e) {
+                LOGGER.error("close partition iterator fail.", e);
+            }
+        }
+    }
+
+    /**
+     * 按分区顺序串联各分区迭代器，同一时间只持有一个分区的迭代器
+     */
+    public final class PartitionIterator implements Iterator<E>, AutoCloseable {
+        /**
+         * 当前分区
+         */
+        private int partition;
+        /**
+         * 当前分区的迭代器，关闭后为null
+         */
+        private Iterator<E> current = partitions.get(0).iterator();
+
+        @Override
+        public boolean hasNext() {
+            if (current == null) {
+                return false;
+            }
+            while (!current.hasNext()) {
+                closeIterator(current);
+                if (++partition >= partitions.size()) {
+                    current = null;
+                    return false;
+                }
+                current = partitions.get(partition).iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        /**
+         * 释放当前分区的迭代器，可重复调用
+         */
+        @Override
+        public void close() {
+            if (current != null) {
+                closeIterator(current);
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * 唤醒等待中的读取者，关闭实现了AutoCloseable的分区
+     */
+    @Override
+    public void close() {
+        closed = true;
+        waitLock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+        for (Q partition : partitions) {
+            if (partition instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) partition).close();
+                } catch (Exception e) {
+                    LOGGER.error("close partition fail.", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.demo.queuedb.queue;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 本地持久化队列的公共接口，各存储后端(LMDB、BDB、段文件)均实现该接口
+ * 单条与批量读写、阻塞等待来自BlockingQueue，批量写入、刷盘与统计为扩展部分
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+public interface PersistentQueue<E> extends BlockingQueue<E>, AutoCloseable {
+
+    /**
+     * 批量入队，整批成功或整批失败；容量不足时返回false
+     *
+     * @param items the items
+     * @return the boolean
+     */
+    boolean offerAll(Collection<? extends E> items);
+
+    /**
+     * 待消费的数量，不受int范围限制；size()超过Integer.MAX_VALUE时返回Integer.MAX_VALUE
+     *
+     * @return the long
+     */
+    long longSize();
+
+    /**
+     * 把已写入的数据刷到磁盘
+     */
+    void sync();
+
+    /**
+     * 自上次刷盘以来写入的记录数，宕机时可能丢失；每次提交都刷盘时为0
+     *
+     * @return the long
+     */
+    default long unsyncedRecords() {
+        return 0;
+    }
+
+    /**
+     * 最早一条未刷盘记录距今的时间，纳秒；没有未刷盘记录时为0
+     *
+     * @return the long
+     */
+    default long unsyncedAgeNanos() {
+        return 0;
+    }
+
+    /**
+     * 在线回收已删除记录占用的存储空间，不支持的后端返回false
+     *
+     * @return 执行了回收返回true
+     */
+    default boolean compact() {
+        return false;
+    }
+
+    /**
+     * 当前统计信息
+     *
+     * @return the queue stats
+     */
+    QueueStats stats();
+
+    /**
+     * 关闭队列，释放存储资源
+     */
+    @Override
+    void close();
+}
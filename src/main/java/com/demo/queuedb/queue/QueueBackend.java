@@ -0,0 +1,29 @@
+package com.demo.queuedb.queue;
+
+import java.io.Serializable;
+
+/**
+ * 队列存储后端SPI
+ * 实现类通过META-INF/services/com.demo.queuedb.queue.QueueBackend注册，按name()选择
+ *
+ * @author lizhiming
+ */
+public interface QueueBackend {
+
+    /**
+     * 后端名，配置中用于选择后端，不区分大小写
+     *
+     * @return the string
+     */
+    String name();
+
+    /**
+     * 按规格打开(不存在时创建)一个队列
+     *
+     * @param <E>  the type parameter
+     * @param spec 队列规格
+     * @param type 元素类型，用于序列化与反序列化
+     * @return the persistent queue
+     */
+    <E extends Serializable> PersistentQueue<E> open(QueueSpec spec, Class<E> type);
+}
@@ -0,0 +1,47 @@
+package com.demo.queuedb.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * 通过ServiceLoader查找队列存储后端
+ *
+ * @author lizhiming
+ */
+public class QueueBackends {
+
+    /**
+     * 工具类
+     */
+    private QueueBackends() {
+    }
+
+    /**
+     * 所有已注册的后端
+     *
+     * @return the list
+     */
+    public static List<QueueBackend> all() {
+        List<QueueBackend> backends = new ArrayList<>();
+        for (QueueBackend backend : ServiceLoader.load(QueueBackend.class)) {
+            backends.add(backend);
+        }
+        return backends;
+    }
+
+    /**
+     * 按名称查找后端，不区分大小写
+     *
+     * @param name the name
+     * @return the queue backend
+     */
+    public static QueueBackend get(String name) {
+        for (QueueBackend backend : all()) {
+            if (backend.name().equalsIgnoreCase(name)) {
+                return backend;
+            }
+        }
+        throw new IllegalArgumentException("unknown queue backend: " + name);
+    }
+}
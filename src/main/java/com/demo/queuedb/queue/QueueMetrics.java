@@ -0,0 +1,118 @@
+package com.demo.queuedb.queue;
+
+/**
+ * 队列埋点，后端在读写路径上回调，不依赖具体的监控实现
+ * 默认实现NOOP不做任何事；后端在isEnabled()为false时不计时，关闭监控时只多一次字段判断
+ *
+ * @author lizhiming
+ */
+public interface QueueMetrics {
+
+    /**
+     * 不开启监控
+     */
+    QueueMetrics NOOP = new QueueMetrics() {
+    };
+
+    /**
+     * 是否开启监控，后端据此决定是否计时
+     *
+     * @return the boolean
+     */
+    default boolean isEnabled() {
+        return false;
+    }
+
+    /**
+     * 入队，单条与批量入队各记录一次
+     *
+     * @param nanos 耗时
+     * @param count 本次入队的数量
+     */
+    default void recordOffer(long nanos, int count) {
+    }
+
+    /**
+     * 出队，单条与批量出队各记录一次，队列为空时不记录
+     *
+     * @param nanos 耗时
+     * @param count 本次出队的数量
+     */
+    default void recordPoll(long nanos, int count) {
+    }
+
+    /**
+     * 读取头部数据
+     *
+     * @param nanos 耗时
+     */
+    default void recordPeek(long nanos) {
+    }
+
+    /**
+     * 序列化一条记录
+     *
+     * @param nanos 耗时
+     * @param bytes 序列化后的字节数
+     */
+    default void recordSerialize(long nanos, int bytes) {
+    }
+
+    /**
+     * 反序列化一条记录
+     *
+     * @param nanos 耗时
+     */
+    default void recordDeserialize(long nanos) {
+    }
+
+    /**
+     * 提交写入，LMDB为写事务提交，BDB为刷盘
+     *
+     * @param nanos 耗时
+     */
+    default void recordCommit(long nanos) {
+    }
+
+    /**
+     * 刷盘，记录本次落盘前未刷盘的记录数，即宕机时可能丢失的范围
+     *
+     * @param nanos   耗时
+     * @param records 本次落盘的记录数
+     */
+    default void recordSync(long nanos, long records) {
+    }
+
+    /**
+     * 记录已写入，指针位为[firstIndex, firstIndex + count)，用于估算最早记录的等待时间
+     *
+     * @param firstIndex the first index
+     * @param count      the count
+     */
+    default void recordAppend(long firstIndex, int count) {
+    }
+
+    /**
+     * 头指针已移动到headIndex
+     *
+     * @param headIndex the head index
+     */
+    default void recordHead(long headIndex) {
+    }
+
+    /**
+     * 队列创建完成时由后端调用，注册深度、存储用量等按需读取的指标
+     *
+     * @param queue the queue
+     */
+    default void bind(PersistentQueue<?> queue) {
+    }
+
+    /**
+     * 队列关闭时由后端调用，移除bind()注册的指标
+     *
+     * @param queue the queue
+     */
+    default void unbind(PersistentQueue<?> queue) {
+    }
+}
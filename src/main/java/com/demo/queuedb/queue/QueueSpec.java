@@ -0,0 +1,348 @@
+package com.demo.queuedb.queue;
+
+import com.demo.queuedb.util.BlockingSupport;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 队列规格，与后端无关的公共配置；后端特有的配置放在properties中
+ *
+ * @author lizhiming
+ */
+public class QueueSpec {
+
+    /**
+     * 队列名，同时作为库名或文件名前缀
+     */
+    private String name;
+
+    /**
+     * 存储目录
+     */
+    private String path;
+
+    /**
+     * LMDB环境大小(map size)
+     */
+    private long mapSize = 1024L * 1024 * 1024;
+
+    /**
+     * LMDB最大读事务数
+     */
+    private int readers = 126;
+
+    /**
+     * 刷盘模式
+     */
+    private SyncMode syncMode = SyncMode.NONE;
+
+    /**
+     * PERIODIC模式的刷盘间隔，毫秒；0表示不按时间刷盘
+     */
+    private long syncIntervalMillis = 1000;
+
+    /**
+     * PERIODIC模式下累计多少条未刷盘记录时提前刷盘；0表示只按时间刷盘
+     */
+    private long syncEveryRecords;
+
+    /**
+     * 记录编码id，见Codecs；为null时新建队列使用默认编码，已有队列使用其记录的编码
+     */
+    private String codec;
+
+    /**
+     * 容量，达到容量后offer返回false，put阻塞；默认不限
+     */
+    private int capacity = BlockingSupport.UNBOUNDED;
+
+    /**
+     * 后端特有的配置，如integer-key、group-commit.enabled、segment-size
+     */
+    private Map<String, String> properties = new LinkedHashMap<>();
+
+    /**
+     * 队列埋点，默认不开启
+     */
+    private QueueMetrics metrics = QueueMetrics.NOOP;
+
+    /**
+     * Gets name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets name.
+     *
+     * @param name the name
+     * @return the name
+     */
+    public QueueSpec setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Gets path.
+     *
+     * @return the path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Sets path.
+     *
+     * @param path the path
+     * @return the path
+     */
+    public QueueSpec setPath(String path) {
+        this.path = path;
+        return this;
+    }
+
+    /**
+     * Gets map size.
+     *
+     * @return the map size
+     */
+    public long getMapSize() {
+        return mapSize;
+    }
+
+    /**
+     * Sets map size.
+     *
+     * @param mapSize the map size
+     * @return the map size
+     */
+    public QueueSpec setMapSize(long mapSize) {
+        this.mapSize = mapSize;
+        return this;
+    }
+
+    /**
+     * Gets readers.
+     *
+     * @return the readers
+     */
+    public int getReaders() {
+        return readers;
+    }
+
+    /**
+     * Sets readers.
+     *
+     * @param readers the readers
+     * @return the readers
+     */
+    public QueueSpec setReaders(int readers) {
+        this.readers = readers;
+        return this;
+    }
+
+    /**
+     * Gets sync mode.
+     *
+     * @return the sync mode
+     */
+    public SyncMode getSyncMode() {
+        return syncMode;
+    }
+
+    /**
+     * Sets sync mode.
+     *
+     * @param syncMode the sync mode
+     * @return the sync mode
+     */
+    public QueueSpec setSyncMode(SyncMode syncMode) {
+        this.syncMode = syncMode;
+        return this;
+    }
+
+    /**
+     * Gets sync interval millis.
+     *
+     * @return the sync interval millis
+     */
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    /**
+     * Sets sync interval millis.
+     *
+     * @param syncIntervalMillis the sync interval millis
+     * @return the sync interval millis
+     */
+    public QueueSpec setSyncIntervalMillis(long syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Gets sync every records.
+     *
+     * @return the sync every records
+     */
+    public long getSyncEveryRecords() {
+        return syncEveryRecords;
+    }
+
+    /**
+     * Sets sync every records.
+     *
+     * @param syncEveryRecords the sync every records
+     * @return the sync every records
+     */
+    public QueueSpec setSyncEveryRecords(long syncEveryRecords) {
+        this.syncEveryRecords = syncEveryRecords;
+        return this;
+    }
+
+    /**
+     * Gets capacity.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets capacity.
+     *
+     * @param capacity the capacity
+     * @return the capacity
+     */
+    public QueueSpec setCapacity(int capacity) {
+        this.capacity = capacity;
+        return this;
+    }
+
+    /**
+     * Gets properties.
+     *
+     * @return the properties
+     */
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Sets properties.
+     *
+     * @param properties the properties
+     * @return the properties
+     */
+    public QueueSpec setProperties(Map<String, String> properties) {
+        this.properties = properties;
+        return this;
+    }
+
+    /**
+     * 后端特有的配置
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the string
+     */
+    public String getProperty(String key, String defaultValue) {
+        return properties.getOrDefault(key, defaultValue);
+    }
+
+    /**
+     * 后端特有的布尔配置
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the boolean
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = properties.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * 后端特有的整数配置
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the int
+     */
+    public int getInt(String key, int defaultValue) {
+        String value = properties.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * 后端特有的长整数配置
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the long
+     */
+    public long getLong(String key, long defaultValue) {
+        String value = properties.get(key);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * 后端特有的小数配置
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the double
+     */
+    public double getDouble(String key, double defaultValue) {
+        String value = properties.get(key);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    /**
+     * Gets codec.
+     *
+     * @return the codec
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets codec.
+     *
+     * @param codec the codec
+     * @return the codec
+     */
+    public QueueSpec setCodec(String codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Gets metrics.
+     *
+     * @return the metrics
+     */
+    public QueueMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets metrics.
+     *
+     * @param metrics the metrics
+     * @return the metrics
+     */
+    public QueueSpec setMetrics(QueueMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+}
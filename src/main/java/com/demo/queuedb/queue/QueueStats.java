@@ -0,0 +1,76 @@
+package com.demo.queuedb.queue;
+
+import java.io.Serializable;
+
+/**
+ * 队列统计信息快照
+ *
+ * @author lizhiming
+ */
+public class QueueStats implements Serializable {
+
+    /**
+     * serialVersionUID
+     */
+    private static final long serialVersionUID = -2312416032245981372L;
+
+    /**
+     * 待消费的数量
+     */
+    private final long size;
+
+    /**
+     * 已预留未确认的数量，不支持预留的后端为0
+     */
+    private final long inFlight;
+
+    /**
+     * 剩余容量
+     */
+    private final int remainingCapacity;
+
+    /**
+     * Instantiates a new Queue stats.
+     *
+     * @param size              the size
+     * @param inFlight          the in flight
+     * @param remainingCapacity the remaining capacity
+     */
+    public QueueStats(long size, long inFlight, int remainingCapacity) {
+        this.size = size;
+        this.inFlight = inFlight;
+        this.remainingCapacity = remainingCapacity;
+    }
+
+    /**
+     * Gets size.
+     *
+     * @return the size
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets in flight.
+     *
+     * @return the in flight
+     */
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Gets remaining capacity.
+     *
+     * @return the remaining capacity
+     */
+    public int getRemainingCapacity() {
+        return remainingCapacity;
+    }
+
+    @Override
+    public String toString() {
+        return "QueueStats{size=" + size + ", inFlight=" + inFlight + ", remainingCapacity=" + remainingCapacity + '}';
+    }
+}
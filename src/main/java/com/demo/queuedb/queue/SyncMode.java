@@ -0,0 +1,24 @@
+package com.demo.queuedb.queue;
+
+/**
+ * 刷盘模式
+ *
+ * @author lizhiming
+ */
+public enum SyncMode {
+
+    /**
+     * 不主动刷盘，由操作系统回写；进程崩溃不丢数据，宕机可能丢失最近的写入
+     */
+    NONE,
+
+    /**
+     * 后台线程按时间间隔或未刷盘记录数定期刷盘，宕机最多丢失一个间隔内的写入
+     */
+    PERIODIC,
+
+    /**
+     * 每次提交写入后刷盘
+     */
+    SYNC
+}
@@ -0,0 +1,198 @@
+package com.demo.queuedb.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 刷盘线程与未刷盘记录的统计
+ * PERIODIC模式下后台线程每隔intervalMillis或累计everyRecords条未刷盘记录时刷盘一次；
+ * 各模式都统计自上次刷盘以来写入的记录数与其中最早一条的写入时间，即宕机时可能丢失的范围，SYNC模式始终为0
+ *
+ * @author lizhiming
+ */
+public class Syncer implements AutoCloseable {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(Syncer.class);
+
+    /**
+     * 只按条数刷盘时的最长等待，写入达到条数时会提前唤醒
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 刷盘模式
+     */
+    private final SyncMode mode;
+
+    /**
+     * 刷盘间隔，纳秒；0表示不按时间刷盘
+     */
+    private final long intervalNanos;
+
+    /**
+     * 累计多少条未刷盘记录时刷盘；0表示不按条数刷盘
+     */
+    private final long everyRecords;
+
+    /**
+     * 刷盘操作
+     */
+    private final Runnable sync;
+
+    /**
+     * 队列埋点
+     */
+    private final QueueMetrics metrics;
+
+    /**
+     * 未刷盘的记录数
+     */
+    private final AtomicLong unsynced = new AtomicLong();
+
+    /**
+     * 最早一条未刷盘记录的写入时间
+     */
+    private volatile long firstUnsyncedNanos;
+
+    /**
+     * 刷盘线程，PERIODIC以外的模式为null
+     */
+    private final Thread thread;
+
+    /**
+     * The Running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Instantiates a new Syncer.
+     *
+     * @param name           线程名
+     * @param mode           刷盘模式
+     * @param intervalMillis 刷盘间隔，0表示不按时间刷盘
+     * @param everyRecords   累计多少条未刷盘记录时刷盘，0表示不按条数刷盘
+     * @param sync           刷盘操作
+     * @param metrics        队列埋点
+     */
+    public Syncer(String name, SyncMode mode, long intervalMillis, long everyRecords, Runnable sync, QueueMetrics metrics) {
+        if (mode == SyncMode.PERIODIC && intervalMillis <= 0 && everyRecords <= 0) {
+            throw new IllegalArgumentException("periodic sync requires interval or record count");
+        }
+        this.mode = mode;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, intervalMillis));
+        this.everyRecords = Math.max(0, everyRecords);
+        this.sync = sync;
+        this.metrics = metrics;
+        if (mode == SyncMode.PERIODIC) {
+            thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            thread = null;
+        }
+    }
+
+    /**
+     * 记录已提交，SYNC模式下提交时已刷盘，不计数
+     *
+     * @param count 本次提交的记录数
+     */
+    public void written(int count) {
+        if (count <= 0 || mode == SyncMode.SYNC) {
+            return;
+        }
+        if (unsynced.getAndAdd(count) == 0) {
+            firstUnsyncedNanos = System.nanoTime();
+        }
+        if (thread != null && everyRecords > 0 && unsynced.get() >= everyRecords) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * 刷盘，刷盘期间写入的记录仍计为未刷盘
+     */
+    public void sync() {
+        long pending = unsynced.get();
+        long start = System.nanoTime();
+        sync.run();
+        metrics.recordSync(System.nanoTime() - start, pending);
+        if (pending > 0 && unsynced.addAndGet(-pending) > 0) {
+            //刷盘期间的写入，按刷盘开始时间计
+            firstUnsyncedNanos = start;
+        }
+    }
+
+    /**
+     * 未刷盘的记录数
+     *
+     * @return the long
+     */
+    public long unsyncedRecords() {
+        return unsynced.get();
+    }
+
+    /**
+     * 最早一条未刷盘记录距今的时间，没有未刷盘记录时为0
+     *
+     * @return the long
+     */
+    public long unsyncedAgeNanos() {
+        return unsynced.get() == 0 ? 0 : System.nanoTime() - firstUnsyncedNanos;
+    }
+
+    /**
+     * 刷盘线程，异常只记录日志，下次继续
+     */
+    private void run() {
+        while (running) {
+            long pending = unsynced.get();
+            long wait = IDLE_PARK_NANOS;
+            if (intervalNanos > 0) {
+                wait = pending == 0 ? intervalNanos : intervalNanos - (System.nanoTime() - firstUnsyncedNanos);
+            }
+            boolean due = pending > 0 && (wait <= 0 || everyRecords > 0 && pending >= everyRecords);
+            if (!due) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            try {
+                sync();
+            } catch (Exception e) {
+                LOGGER.error("periodic sync fail.", e);
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * 停止刷盘线程，等待正在执行的刷盘完成后刷盘剩余的记录；需在写入停止后、存储关闭前调用
+     */
+    @Override
+    public void close() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(60));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (unsynced.get() > 0) {
+            try {
+                sync();
+            } catch (Exception e) {
+                LOGGER.error("final sync fail.", e);
+            }
+        }
+    }
+}
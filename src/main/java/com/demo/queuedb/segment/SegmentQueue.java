@@ -0,0 +1,852 @@
+package com.demo.queuedb.segment;
+
+import com.demo.queuedb.codec.Codec;
+import com.demo.queuedb.codec.Codecs;
+import com.demo.queuedb.queue.PersistentQueue;
+import com.demo.queuedb.queue.QueueMetrics;
+import com.demo.queuedb.queue.QueueStats;
+import com.demo.queuedb.queue.SyncMode;
+import com.demo.queuedb.queue.Syncer;
+import com.demo.queuedb.util.BlockingSupport;
+import com.demo.queuedb.util.MappedBuffers;
+import com.esotericsoftware.kryo.io.Output;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于内存映射段文件的队列
+ * 记录按[4字节长度][数据]顺序追加到固定大小的段文件中，段内剩余空间不足时写入结束标记并切换到下一个段；
+ * 头尾位置保存在单独映射的检查点文件中，头指针越过整个段后删除该段文件。
+ * 位置为全局偏移量：段号 * 段大小 + 段内偏移；写入与读取各持有一把锁，互不阻塞
+ *
+ * @param <E> the type parameter
+ * @author lizhiming
+ */
+public class SegmentQueue<E extends Serializable> extends AbstractQueue<E> implements PersistentQueue<E> {
+
+    /**
+     * 段文件后缀
+     */
+    private static final String SEGMENT_SUFFIX = ".seg";
+    /**
+     * 检查点文件后缀
+     */
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    /**
+     * 记录编码id文件后缀
+     */
+    private static final String CODEC_SUFFIX = ".codec";
+    /**
+     * drainTo(Collection)每批取出的条数
+     */
+    private static final int DRAIN_BATCH_SIZE = 1024;
+    /**
+     * 检查点：头位置、头序号、尾位置、尾序号各8字节
+     */
+    private static final int CHECKPOINT_SIZE = 4 * Long.BYTES;
+    /**
+     * 检查点中头位置的偏移
+     */
+    private static final int HEAD_POSITION = 0;
+    /**
+     * 检查点中头序号的偏移
+     */
+    private static final int HEAD_INDEX = 8;
+    /**
+     * 检查点中尾位置的偏移
+     */
+    private static final int TAIL_POSITION = 16;
+    /**
+     * 检查点中尾序号的偏移
+     */
+    private static final int TAIL_INDEX = 24;
+    /**
+     * 记录长度所占字节
+     */
+    private static final int LENGTH_BYTES = Integer.BYTES;
+    /**
+     * 段结束标记
+     */
+    private static final int END_OF_SEGMENT = -1;
+    /**
+     * The Logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(SegmentQueue.class);
+    /**
+     * 所在目录
+     */
+    private Path dir;
+    /**
+     * 队列名
+     */
+    private String name;
+    /**
+     * 段大小
+     */
+    private int segmentSize;
+    /**
+     * 记录编码
+     */
+    private Codec<E> codec;
+    /**
+     * 检查点映射
+     */
+    private MappedByteBuffer checkpoint;
+    /**
+     * 写锁
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /**
+     * 读锁
+     */
+    private final ReentrantLock readLock = new ReentrantLock();
+    /**
+     * 写入方当前段，只在写锁内访问
+     */
+    private SegmentCursor writer;
+    /**
+     * 读取方当前段，只在读锁内访问
+     */
+    private SegmentCursor reader;
+    /**
+     * 头位置
+     */
+    private volatile long headPosition;
+    /**
+     * 头序号
+     */
+    private volatile long headIndex;
+    /**
+     * 尾位置，数据写完后才更新，读取方以此判断可读范围
+     */
+    private volatile long tailPosition;
+    /**
+     * 尾序号
+     */
+    private volatile long tailIndex;
+    /**
+     * 容量控制与非空等待
+     */
+    private BlockingSupport blocking;
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed;
+    /**
+     * 每次写入后刷盘
+     */
+    private boolean syncOnWrite;
+    /**
+     * 刷盘线程与未刷盘记录的统计
+     */
+    private Syncer syncer;
+
+    /**
+     * Instantiates a new Segment queue.
+     *
+     * @param config    the config
+     * @param baseClass the base class
+     */
+    public SegmentQueue(SegmentQueueConfig config, Class<E> baseClass) {
+        this.dir = Paths.get(config.getDir());
+        this.name = config.getName();
+        this.segmentSize = config.getSegmentSize();
+        this.syncOnWrite = config.getSyncMode() == SyncMode.SYNC;
+        try {
+            Files.createDirectories(dir);
+            //初始化指针，新文件全部为0
+            checkpoint = MappedBuffers.map(dir.resolve(name + CHECKPOINT_SUFFIX), CHECKPOINT_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        headPosition = checkpoint.getLong(HEAD_POSITION);
+        headIndex = checkpoint.getLong(HEAD_INDEX);
+        tailPosition = checkpoint.getLong(TAIL_POSITION);
+        tailIndex = checkpoint.getLong(TAIL_INDEX);
+        codec = initCodec(config.getCodec(), baseClass);
+        writer = new SegmentCursor(true);
+        reader = new SegmentCursor(false);
+        //删除上次运行中头指针已越过但未来得及删除的段
+        deleteSegmentsBefore(segmentOf(headPosition));
+        blocking = new BlockingSupport(config.getCapacity(), size());
+        syncer = new Syncer("segment-sync-" + name, config.getSyncMode(), config.getSyncIntervalMillis(), config.getSyncEveryRecords(),
+                this::forceAll, QueueMetrics.NOOP);
+    }
+
+    /**
+     * 读取队列记录的编码，新建队列记录配置的编码
+     *
+     * @param configured 配置的编码
+     * @param baseClass  the base class
+     * @return the codec
+     */
+    private Codec<E> initCodec(String configured, Class<E> baseClass) {
+        Path path = dir.resolve(name + CODEC_SUFFIX);
+        try {
+            String recorded = Files.exists(path) ? new String(Files.readAllBytes(path), StandardCharsets.UTF_8) : null;
+            String id = Codecs.resolve(name, recorded, configured, tailIndex > 0);
+            //先创建，编码无效时不记录
+            Codec<E> result = Codecs.create(id, baseClass);
+            if (recorded == null) {
+                Files.write(path, id.getBytes(StandardCharsets.UTF_8));
+            }
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 位置所在段号
+     *
+     * @param position the position
+     * @return the long
+     */
+    private long segmentOf(long position) {
+        return position / segmentSize;
+    }
+
+    /**
+     * 位置在段内的偏移
+     *
+     * @param position the position
+     * @return the int
+     */
+    private int offsetOf(long position) {
+        return (int) (position % segmentSize);
+    }
+
+    /**
+     * 段文件路径
+     *
+     * @param segment the segment
+     * @return the path
+     */
+    private Path segmentPath(long segment) {
+        return dir.resolve(String.format("%s-%020d%s", name, segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * 删除段号小于segment的段文件
+     *
+     * @param segment the segment
+     */
+    private void deleteSegmentsBefore(long segment) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, name + "-*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String file = path.getFileName().toString();
+                long no = Long.parseLong(file.substring(name.length() + 1, file.length() - SEGMENT_SUFFIX.length()));
+                if (no < segment) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("delete consumed segments fail." + e);
+        }
+    }
+
+    /**
+     * Offer boolean.
+     * 容量已满时返回false
+     *
+     * @param item the item
+     * @return the boolean
+     */
+    @Override
+    public boolean offer(E item) {
+        Objects.requireNonNull(item);
+        return blocking.tryAcquire(1) && enqueue(item);
+    }
+
+    /**
+     * 入队，容量已满时阻塞等待
+     *
+     * @param item the item
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public void put(E item) throws InterruptedException {
+        Objects.requireNonNull(item);
+        blocking.acquire(1);
+        if (!enqueue(item)) {
+            throw new IllegalStateException("segment put fail.");
+        }
+    }
+
+    /**
+     * 入队，容量已满时最多等待timeout
+     *
+     * @param item    the item
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the boolean
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public boolean offer(E item, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(item);
+        return blocking.tryAcquire(1, timeout, unit) && enqueue(item);
+    }
+
+    /**
+     * 已获取容量许可后入队，失败时归还许可
+     *
+     * @param item the item
+     * @return the boolean
+     */
+    private boolean enqueue(E item) {
+        List<E> items = new ArrayList<>(1);
+        items.add(item);
+        return append(items);
+    }
+
+    /**
+     * 批量入队，整批数据只更新一次检查点
+     *
+     * @param items the items
+     * @return the boolean
+     */
+    @Override
+    public boolean offerAll(Collection<? extends E> items) {
+        items.forEach(Objects::requireNonNull);
+        if (items.isEmpty()) {
+            return true;
+        }
+        //整批获取容量许可，不足时整批拒绝
+        return blocking.tryAcquire(items.size()) && append(items);
+    }
+
+    /**
+     * 已获取容量许可后写入，失败时归还许可
+     *
+     * @param items the items
+     * @return the boolean
+     */
+    private boolean append(Collection<? extends E> items) {
+        try {
+            //锁外完成序列化
+            List<byte[]> values = new ArrayList<>(items.size());
+            for (E item : items) {
+                byte[] value = toBytes(item);
+                if (LENGTH_BYTES + value.length > segmentSize) {
+                    throw new IllegalArgumentException("record size " + value.length + " exceeds segment size " + segmentSize);
+                }
+                values.add(value);
+            }
+            writeLock.lock();
+            try {
+                ensureOpen();
+                long position = tailPosition;
+                for (byte[] value : values) {
+                    position = writer.write(position, value);
+                }
+                //先更新检查点再发布尾位置
+                checkpoint.putLong(TAIL_POSITION, position);
+                checkpoint.putLong(TAIL_INDEX, tailIndex + values.size());
+                if (syncOnWrite) {
+                    writer.force();
+                    checkpoint.force();
+                }
+                tailIndex += values.size();
+                tailPosition = position;
+            } finally {
+                writeLock.unlock();
+            }
+            syncer.written(values.size());
+            blocking.signalNotEmpty();
+            return true;
+        } catch (Exception e) {
+            logger.error("segment offer fail." + e);
+            blocking.release(items.size());
+            return false;
+        }
+    }
+
+    /**
+     * Peek e.
+     *
+     * @return the e
+     */
+    @Override
+    public E peek() {
+        byte[] value;
+        readLock.lock();
+        try {
+            ensureOpen();
+            long position = headPosition;
+            if (position >= tailPosition) {
+                return null;
+            }
+            value = reader.read(position);
+        } finally {
+            readLock.unlock();
+        }
+        return readObject(value);
+    }
+
+    /**
+     * Poll e.
+     *
+     * @return the e
+     */
+    @Override
+    public E poll() {
+        List<E> head = new ArrayList<>(1);
+        return drainTo(head, 1) == 0 ? null : head.get(0);
+    }
+
+    /**
+     * 批量出队，最多取出maxElements条，整批只更新一次检查点
+     *
+     * @param c           the c
+     * @param maxElements the max elements
+     * @return 实际取出的数量
+     */
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        if (maxElements <= 0) {
+            return 0;
+        }
+        List<byte[]> values = new ArrayList<>();
+        long consumedBefore;
+        readLock.lock();
+        try {
+            ensureOpen();
+            long position = headPosition;
+            long tail = tailPosition;
+            while (position < tail && values.size() < maxElements) {
+                values.add(reader.read(position));
+                position = reader.next;
+            }
+            if (values.isEmpty()) {
+                return 0;
+            }
+            //先更新检查点再删除段文件，宕机后不会指向已删除的段
+            checkpoint.putLong(HEAD_POSITION, position);
+            checkpoint.putLong(HEAD_INDEX, headIndex + values.size());
+            headIndex += values.size();
+            headPosition = position;
+            consumedBefore = segmentOf(position);
+        } finally {
+            readLock.unlock();
+        }
+        //删除已读完的段
+        deleteSegmentsBefore(consumedBefore);
+        //归还容量
+        blocking.release(values.size());
+        //锁外完成反序列化
+        for (byte[] value : values) {
+            c.add(readObject(value));
+        }
+        return values.size();
+    }
+
+    /**
+     * 取出当前所有数据，按批取出，每批持有一次读锁
+     *
+     * @param c the c
+     * @return 实际取出的数量
+     */
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        //只取调用时已有的数据，避免生产者持续写入时无法返回
+        long available = longSize();
+        int total = 0;
+        while (total < available) {
+            int n = drainTo(c, (int) Math.min(DRAIN_BATCH_SIZE, available - total));
+            if (n == 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * 取出头部数据，队列为空时阻塞等待
+     *
+     * @return the e
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public E take() throws InterruptedException {
+        for (; ; ) {
+            E item = poll();
+            if (item != null) {
+                return item;
+            }
+            blocking.awaitNotEmpty(this::isEmpty, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 取出头部数据，队列为空时最多等待timeout
+     *
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the e
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (; ; ) {
+            E item = poll();
+            if (item != null) {
+                return item;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !blocking.awaitNotEmpty(this::isEmpty, remaining)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 剩余容量
+     *
+     * @return the int
+     */
+    @Override
+    public int remainingCapacity() {
+        return blocking.remainingCapacity();
+    }
+
+    /**
+     * Size int.
+     *
+     * @return the int
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, longSize());
+    }
+
+    @Override
+    public long longSize() {
+        return Math.max(0, tailIndex - headIndex);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return headPosition >= tailPosition;
+    }
+
+    /**
+     * 只读迭代器，从当前头部开始遍历到创建时的尾部
+     * 每次next()短暂持有读锁，遍历过程中被消费的记录会被跳过；跨段或遍历结束时释放映射，提前结束时应调用close()
+     *
+     * @return the iterator
+     */
+    @Override
+    public SegmentIterator iterator() {
+        return new SegmentIterator();
+    }
+
+    /**
+     * 段文件只读迭代器，只持有当前段的映射，已消费的段可以被删除
+     */
+    public final class SegmentIterator implements Iterator<E>, AutoCloseable {
+        /**
+         * 迭代器自己的段映射，不与读取方共用
+         */
+        private final SegmentCursor cursor = new SegmentCursor(false);
+        /**
+         * 创建时的尾位置
+         */
+        private final long end = tailPosition;
+        /**
+         * 下一条位置
+         */
+        private long position = headPosition;
+
+        @Override
+        public boolean hasNext() {
+            if (Math.max(position, headPosition) < end) {
+                return true;
+            }
+            close();
+            return false;
+        }
+
+        @Override
+        public E next() {
+            byte[] value;
+            readLock.lock();
+            try {
+                ensureOpen();
+                //已被消费的部分直接跳过，之后的段文件一定存在；跨段时释放旧映射
+                position = Math.max(position, headPosition);
+                if (position >= end) {
+                    cursor.release();
+                    throw new NoSuchElementException();
+                }
+                value = cursor.read(position);
+                position = cursor.next;
+            } finally {
+                readLock.unlock();
+            }
+            return readObject(value);
+        }
+
+        /**
+         * 释放当前段的映射，可重复调用
+         */
+        @Override
+        public void close() {
+            readLock.lock();
+            try {
+                cursor.release();
+            } finally {
+                readLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stats queue stats.
+     *
+     * @return the queue stats
+     */
+    @Override
+    public QueueStats stats() {
+        return new QueueStats(Math.max(0, tailIndex - headIndex), 0, blocking.remainingCapacity());
+    }
+
+    /**
+     * 刷盘，计入未刷盘记录的统计
+     */
+    @Override
+    public void sync() {
+        syncer.sync();
+    }
+
+    @Override
+    public long unsyncedRecords() {
+        return syncer.unsyncedRecords();
+    }
+
+    @Override
+    public long unsyncedAgeNanos() {
+        return syncer.unsyncedAgeNanos();
+    }
+
+    /**
+     * 刷新当前写入段与检查点到磁盘
+     */
+    private void forceAll() {
+        writeLock.lock();
+        try {
+            ensureOpen();
+            writer.force();
+            checkpoint.force();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 关闭，刷盘后释放所有映射
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        //唤醒等待中的生产者与消费者
+        blocking.close();
+        syncer.close();
+        writeLock.lock();
+        readLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writer.force();
+            checkpoint.force();
+            writer.release();
+            reader.release();
+            MappedBuffers.unmap(checkpoint);
+        } finally {
+            readLock.unlock();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 关闭后释放了映射，不能再访问
+     */
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("segment queue closed.");
+        }
+    }
+
+    /**
+     * 序列化为字节数组
+     *
+     * @param item the item
+     * @return the byte [ ]
+     */
+    private byte[] toBytes(E item) {
+        //复用线程的输出缓冲，只拷贝实际写入的部分
+        Output out = codec.encode(item);
+        return Arrays.copyOf(out.getBuffer(), out.position());
+    }
+
+    /**
+     * 反序列化
+     *
+     * @param value the value
+     * @return the e
+     */
+    private E readObject(byte[] value) {
+        return codec.decode(value, 0, value.length);
+    }
+
+    /**
+     * 当前映射的段，位置跨段时切换映射
+     */
+    private final class SegmentCursor {
+        /**
+         * 是否写入方，写入方切换段前刷盘；读取方只读，不刷盘
+         */
+        private final boolean writable;
+        /**
+         * 当前段号
+         */
+        private long segment = -1;
+        /**
+         * 当前段映射
+         */
+        private MappedByteBuffer buffer;
+        /**
+         * 上一次read之后的下一条位置
+         */
+        private long next;
+
+        /**
+         * Instantiates a new Segment cursor.
+         *
+         * @param writable 是否写入方
+         */
+        private SegmentCursor(boolean writable) {
+            this.writable = writable;
+        }
+
+        /**
+         * 映射位置所在的段
+         *
+         * @param position the position
+         * @return the mapped byte buffer
+         */
+        private MappedByteBuffer segmentFor(long position) {
+            long target = segmentOf(position);
+            if (target != segment) {
+                if (writable) {
+                    //写入方切换段时旧段已写满，释放前刷盘
+                    force();
+                }
+                //旧映射不再使用，立即释放，Windows下映射未释放的段文件无法删除
+                release();
+                try {
+                    buffer = MappedBuffers.map(segmentPath(target), segmentSize);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                segment = target;
+            }
+            return buffer;
+        }
+
+        /**
+         * 在position写入一条记录，剩余空间不足时写入结束标记并切换到下一个段
+         *
+         * @param position the position
+         * @param value    the value
+         * @return 下一条记录的位置
+         */
+        private long write(long position, byte[] value) {
+            int offset = offsetOf(position);
+            if (offset + LENGTH_BYTES + value.length > segmentSize) {
+                if (offset + LENGTH_BYTES <= segmentSize) {
+                    segmentFor(position).putInt(offset, END_OF_SEGMENT);
+                }
+                position = (segmentOf(position) + 1) * segmentSize;
+                offset = 0;
+            }
+            MappedByteBuffer segmentBuffer = segmentFor(position);
+            //先写数据再写长度
+            ByteBuffer target = segmentBuffer.duplicate();
+            target.position(offset + LENGTH_BYTES);
+            target.put(value);
+            segmentBuffer.putInt(offset, value.length);
+            return position + LENGTH_BYTES + value.length;
+        }
+
+        /**
+         * 读取position处的记录，遇到结束标记时跳到下一个段，下一条位置记录在next中
+         *
+         * @param position the position
+         * @return the byte [ ]
+         */
+        private byte[] read(long position) {
+            int offset = offsetOf(position);
+            if (offset + LENGTH_BYTES > segmentSize || segmentFor(position).getInt(offset) == END_OF_SEGMENT) {
+                position = (segmentOf(position) + 1) * segmentSize;
+                offset = 0;
+            }
+            MappedByteBuffer segmentBuffer = segmentFor(position);
+            int length = segmentBuffer.getInt(offset);
+            byte[] value = new byte[length];
+            ByteBuffer source = segmentBuffer.duplicate();
+            source.position(offset + LENGTH_BYTES);
+            source.get(value);
+            next = position + LENGTH_BYTES + length;
+            return value;
+        }
+
+        /**
+         * 刷新当前段
+         */
+        private void force() {
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+
+        /**
+         * 释放当前映射
+         */
+        private void release() {
+            MappedBuffers.unmap(buffer);
+            buffer = null;
+            segment = -1;
+        }
+    }
+}
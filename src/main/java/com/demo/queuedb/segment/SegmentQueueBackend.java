@@ -0,0 +1,31 @@
+package com.demo.queuedb.segment;
+
+import com.demo.queuedb.queue.PersistentQueue;
+import com.demo.queuedb.queue.QueueBackend;
+import com.demo.queuedb.queue.QueueSpec;
+
+import java.io.Serializable;
+
+/**
+ * 内存映射段文件队列后端
+ * 特有配置：segment-size
+ *
+ * @author lizhiming
+ */
+public class SegmentQueueBackend implements QueueBackend {
+
+    @Override
+    public String name() {
+        return "segment";
+    }
+
+    @Override
+    public <E extends Serializable> PersistentQueue<E> open(QueueSpec spec, Class<E> type) {
+        SegmentQueueConfig defaults = new SegmentQueueConfig();
+        SegmentQueueConfig config = new SegmentQueueConfig().setDir(spec.getPath()).setName(spec.getName())
+                .setCapacity(spec.getCapacity()).setSyncMode(spec.getSyncMode())
+                .setSyncIntervalMillis(spec.getSyncIntervalMillis()).setSyncEveryRecords(spec.getSyncEveryRecords()).setCodec(spec.getCodec())
+                .setSegmentSize(spec.getInt("segment-size", defaults.getSegmentSize()));
+        return new SegmentQueue<>(config, type);
+    }
+}
@@ -0,0 +1,212 @@
+package com.demo.queuedb.segment;
+
+import com.demo.queuedb.queue.SyncMode;
+import com.demo.queuedb.util.BlockingSupport;
+
+/**
+ * 段文件队列配置
+ *
+ * @author lizhiming
+ */
+public class SegmentQueueConfig {
+
+    /**
+     * 段文件与检查点文件所在目录
+     */
+    private String dir;
+
+    /**
+     * 队列名，作为文件名前缀
+     */
+    private String name;
+
+    /**
+     * 每个段文件的大小，单条记录序列化后加4字节长度不能超过该值；默认64MB
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+
+    /**
+     * 容量，达到容量后offer返回false，put阻塞；默认不限
+     */
+    private int capacity = BlockingSupport.UNBOUNDED;
+
+    /**
+     * 刷盘模式，默认不主动刷盘
+     */
+    private SyncMode syncMode = SyncMode.NONE;
+
+    /**
+     * PERIODIC模式的刷盘间隔，毫秒；0表示不按时间刷盘
+     */
+    private long syncIntervalMillis = 1000;
+
+    /**
+     * PERIODIC模式下累计多少条未刷盘记录时提前刷盘；0表示只按时间刷盘
+     */
+    private long syncEveryRecords;
+
+    /**
+     * 记录编码id，见Codecs；为null时新建队列使用默认编码，已有队列使用其记录的编码
+     */
+    private String codec;
+
+    /**
+     * Gets dir.
+     *
+     * @return the dir
+     */
+    public String getDir() {
+        return dir;
+    }
+
+    /**
+     * Sets dir.
+     *
+     * @param dir the dir
+     * @return the dir
+     */
+    public SegmentQueueConfig setDir(String dir) {
+        this.dir = dir;
+        return this;
+    }
+
+    /**
+     * Gets name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets name.
+     *
+     * @param name the name
+     * @return the name
+     */
+    public SegmentQueueConfig setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Gets segment size.
+     *
+     * @return the segment size
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Sets segment size.
+     *
+     * @param segmentSize the segment size
+     * @return the segment size
+     */
+    public SegmentQueueConfig setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Gets capacity.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets capacity.
+     *
+     * @param capacity the capacity
+     * @return the capacity
+     */
+    public SegmentQueueConfig setCapacity(int capacity) {
+        this.capacity = capacity;
+        return this;
+    }
+
+    /**
+     * Gets sync mode.
+     *
+     * @return the sync mode
+     */
+    public SyncMode getSyncMode() {
+        return syncMode;
+    }
+
+    /**
+     * Sets sync mode.
+     *
+     * @param syncMode the sync mode
+     * @return the sync mode
+     */
+    public SegmentQueueConfig setSyncMode(SyncMode syncMode) {
+        this.syncMode = syncMode;
+        return this;
+    }
+
+    /**
+     * Gets codec.
+     *
+     * @return the codec
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets codec.
+     *
+     * @param codec the codec
+     * @return the codec
+     */
+    public SegmentQueueConfig setCodec(String codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Gets sync interval millis.
+     *
+     * @return the sync interval millis
+     */
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    /**
+     * Sets sync interval millis.
+     *
+     * @param syncIntervalMillis the sync interval millis
+     * @return the sync interval millis
+     */
+    public SegmentQueueConfig setSyncIntervalMillis(long syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Gets sync every records.
+     *
+     * @return the sync every records
+     */
+    public long getSyncEveryRecords() {
+        return syncEveryRecords;
+    }
+
+    /**
+     * Sets sync every records.
+     *
+     * @param syncEveryRecords the sync every records
+     * @return the sync every records
+     */
+    public SegmentQueueConfig setSyncEveryRecords(long syncEveryRecords) {
+        this.syncEveryRecords = syncEveryRecords;
+        return this;
+    }
+}
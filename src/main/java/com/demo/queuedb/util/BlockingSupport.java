@@ -0,0 +1,240 @@
+package com.demo.queuedb.util;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 持久化队列的阻塞支持：容量控制与非空等待
+ * 容量通过信号量控制，入队前获取许可，出队后归还；消费者在非空条件上等待，入队提交后唤醒
+ * 关闭后等待中的生产者与消费者抛出IllegalStateException
+ *
+ * @author lizhiming
+ */
+public class BlockingSupport {
+
+    /**
+     * 不限容量
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * 单次等待的最长时间，等待期间定期重新检查，防止底层存储的可见性与唤醒之间出现遗漏
+     */
+    private static final long MAX_WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * 容量
+     */
+    private final int capacity;
+
+    /**
+     * 剩余容量许可，不限容量时为null
+     */
+    private final Semaphore slots;
+
+    /**
+     * 超出容量的数量，重新打开时已有数量大于容量时产生；出队归还的许可先抵扣超出部分，避免许可数超过容量
+     */
+    private final AtomicLong overflow;
+
+    /**
+     * The Lock.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 非空条件
+     */
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * 正在等待的消费者数量，没有等待者时入队无需加锁唤醒
+     */
+    private volatile int waiters;
+
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed;
+
+    /**
+     * Instantiates a new Blocking support.
+     *
+     * @param capacity 容量，UNBOUNDED表示不限
+     * @param size     当前已有的数量
+     */
+    public BlockingSupport(int capacity, long size) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.slots = capacity == UNBOUNDED ? null : new Semaphore((int) Math.max(0, capacity - size));
+        this.overflow = new AtomicLong(capacity == UNBOUNDED ? 0 : Math.max(0, size - capacity));
+    }
+
+    /**
+     * 非阻塞获取n个许可，容量不足时返回false
+     *
+     * @param n the n
+     * @return the boolean
+     */
+    public boolean tryAcquire(int n) {
+        return slots == null || slots.tryAcquire(n);
+    }
+
+    /**
+     * 阻塞获取n个许可，直到容量足够
+     *
+     * @param n the n
+     * @throws InterruptedException  the interrupted exception
+     * @throws IllegalStateException 等待期间关闭
+     */
+    public void acquire(int n) throws InterruptedException {
+        if (!tryAcquire(n, Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+            throw new IllegalStateException("queue closed");
+        }
+    }
+
+    /**
+     * 在超时时间内获取n个许可
+     *
+     * @param n       the n
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the boolean
+     * @throws InterruptedException  the interrupted exception
+     * @throws IllegalStateException 等待期间关闭
+     */
+    public boolean tryAcquire(int n, long timeout, TimeUnit unit) throws InterruptedException {
+        if (slots == null) {
+            return true;
+        }
+        //分段等待，关闭后及时退出
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (; ; ) {
+            checkOpen();
+            long remaining = deadline - System.nanoTime();
+            if (slots.tryAcquire(n, Math.max(0, Math.min(remaining, MAX_WAIT_SLICE_NANOS)), TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+            if (remaining <= MAX_WAIT_SLICE_NANOS) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 归还n个许可，出队或入队失败后调用
+     *
+     * @param n the n
+     */
+    public void release(int n) {
+        if (slots == null || n <= 0) {
+            return;
+        }
+        //先抵扣超出容量的部分
+        long rest = n;
+        for (long over = overflow.get(); over > 0 && rest > 0; over = overflow.get()) {
+            long absorbed = Math.min(over, rest);
+            if (overflow.compareAndSet(over, over - absorbed)) {
+                rest -= absorbed;
+            }
+        }
+        if (rest > 0) {
+            slots.release((int) rest);
+        }
+    }
+
+    /**
+     * 剩余容量
+     *
+     * @return the int
+     */
+    public int remainingCapacity() {
+        return slots == null ? UNBOUNDED : Math.max(0, Math.min(capacity, slots.availablePermits()));
+    }
+
+    /**
+     * Gets capacity.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 入队提交后调用，唤醒等待的消费者
+     */
+    public void signalNotEmpty() {
+        if (waiters == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭，唤醒等待中的消费者；等待容量的生产者在当前分段结束时退出
+     */
+    public void close() {
+        closed = true;
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 已关闭时抛出IllegalStateException
+     *
+     * @return 未关闭时返回true
+     */
+    private boolean checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("queue closed");
+        }
+        return true;
+    }
+
+    /**
+     * 等待队列非空
+     *
+     * @param empty 判断队列是否为空
+     * @param nanos 最长等待时间，纳秒
+     * @return 超时前队列非空返回true
+     * @throws InterruptedException  the interrupted exception
+     * @throws IllegalStateException 等待期间关闭
+     */
+    public boolean awaitNotEmpty(BooleanSupplier empty, long nanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            waiters++;
+            try {
+                long deadline = System.nanoTime() + nanos;
+                while (checkOpen() && empty.getAsBoolean()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    notEmpty.awaitNanos(Math.min(remaining, MAX_WAIT_SLICE_NANOS));
+                }
+                return true;
+            } finally {
+                waiters--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.demo.queuedb.util;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Objects;
 
 import static java.nio.ByteBuffer.allocateDirect;
@@ -12,6 +13,27 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  * @author lizhiming
  */
 public class ByteBufferUtil {
+
+    /**
+     * 线程内复用的key缓冲区，堆外内存
+     */
+    private static final ThreadLocal<ByteBuffer> LONG_KEY = ThreadLocal.withInitial(() -> allocateDirect(Long.BYTES));
+
+    /**
+     * 线程内复用的value缓冲区，堆外内存；与LONG_KEY分开，保证同一次调用中key与value互不覆盖
+     */
+    private static final ThreadLocal<ByteBuffer> LONG_VALUE = ThreadLocal.withInitial(() -> allocateDirect(Long.BYTES));
+
+    /**
+     * 线程内复用的本机字节序key缓冲区，用于MDB_INTEGERKEY
+     */
+    private static final ThreadLocal<ByteBuffer> NATIVE_LONG_KEY = ThreadLocal.withInitial(() -> allocateDirect(Long.BYTES).order(ByteOrder.nativeOrder()));
+
+    /**
+     * 线程内复用的(int, long)组合key缓冲区，大端
+     */
+    private static final ThreadLocal<ByteBuffer> COMPOSITE_KEY = ThreadLocal.withInitial(() -> allocateDirect(Integer.BYTES + Long.BYTES));
+
     /**
      * ByteBuffer转byte[]
      *
@@ -60,6 +82,79 @@ public class ByteBufferUtil {
         return bytesToByteBuffer(longToBytes(value));
     }
 
+    /**
+     * Long转ByteBuffer，作为key使用
+     * 返回当前线程复用的堆外缓冲区，下一次调用会覆盖其内容，不能跨线程或长期持有
+     *
+     * @param value Long
+     * @return ByteBuffer
+     */
+    public static ByteBuffer longKey(long value) {
+        return fill(LONG_KEY.get(), value);
+    }
+
+    /**
+     * Long转ByteBuffer，作为value使用
+     * 返回当前线程复用的堆外缓冲区，下一次调用会覆盖其内容，不能跨线程或长期持有
+     *
+     * @param value Long
+     * @return ByteBuffer
+     */
+    public static ByteBuffer longValue(long value) {
+        return fill(LONG_VALUE.get(), value);
+    }
+
+    /**
+     * Long转本机字节序ByteBuffer，作为MDB_INTEGERKEY的key使用
+     * 返回当前线程复用的堆外缓冲区，下一次调用会覆盖其内容，不能跨线程或长期持有
+     *
+     * @param value Long
+     * @return ByteBuffer
+     */
+    public static ByteBuffer nativeLongKey(long value) {
+        return fill(NATIVE_LONG_KEY.get(), value);
+    }
+
+    /**
+     * (int, long)大端组合key，LMDB按无符号字节比较，先比较high，high相同再比较low
+     * 返回当前线程复用的堆外缓冲区，下一次调用会覆盖其内容，不能跨线程或长期持有
+     *
+     * @param high 高位
+     * @param low  低位
+     * @return ByteBuffer
+     */
+    public static ByteBuffer compositeKey(int high, long low) {
+        ByteBuffer buffer = COMPOSITE_KEY.get();
+        buffer.clear();
+        buffer.putInt(0, high).putLong(Integer.BYTES, low);
+        return buffer;
+    }
+
+    /**
+     * 按指定字节序读取当前位置的long，不修改buffer的字节序与读取位置
+     *
+     * @param buffer buffer
+     * @param order  数据的字节序
+     * @return the long
+     */
+    public static long readLong(ByteBuffer buffer, ByteOrder order) {
+        long value = buffer.getLong(buffer.position());
+        return buffer.order() == order ? value : Long.reverseBytes(value);
+    }
+
+    /**
+     * 写入long并重置读取位置
+     *
+     * @param buffer buffer
+     * @param value  value
+     * @return ByteBuffer
+     */
+    private static ByteBuffer fill(ByteBuffer buffer, long value) {
+        buffer.clear();
+        buffer.putLong(0, value);
+        return buffer;
+    }
+
     /**
      * byte[] 转 ByteBuffer
      * 堆外内存
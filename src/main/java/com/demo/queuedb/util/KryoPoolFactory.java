@@ -26,23 +26,30 @@ public enum KryoPoolFactory {
      * 类加载时初始化
      */
     KryoPoolFactory() {
-        KryoFactory kryoFactory = () -> {
-            Kryo kryo = new Kryo();
-            //这是对循环引用的支持，可以有效防止栈内存溢出，kryo默认会打开这个属性。
-            //确定不会有循环引用发生的时候，可以通过kryo.setReferences(false);关闭循环引用检测，从而提高一些性能
-            kryo.setReferences(false);
-            //把已知的结构注册到Kryo注册器里面，提高序列化/反序列化效率
-            kryo.register(JSONObject.class);
-            kryo.register(String.class);
-            //显示指定实例化器,首先使用默认无参构造策略DefaultInstantiatorStrategy，若创建对象失败再采用StdInstantiatorStrategy
-            kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
-            return kryo;
-        };
+        KryoFactory kryoFactory = this::newKryo;
         //通过软连接队列维护Kryo,当垃圾回收时，发现系统内存不足，会优先回收
         kryoPool = new KryoPool.Builder(kryoFactory).softReferences().build();
     }
 
 
+    /**
+     * 创建一个Kryo，对象池与线程私有实例使用相同的配置
+     *
+     * @return the kryo
+     */
+    public Kryo newKryo() {
+        Kryo kryo = new Kryo();
+        //这是对循环引用的支持，可以有效防止栈内存溢出，kryo默认会打开这个属性。
+        //确定不会有循环引用发生的时候，可以通过kryo.setReferences(false);关闭循环引用检测，从而提高一些性能
+        kryo.setReferences(false);
+        //把已知的结构注册到Kryo注册器里面，提高序列化/反序列化效率
+        kryo.register(JSONObject.class);
+        kryo.register(String.class);
+        //显示指定实例化器,首先使用默认无参构造策略DefaultInstantiatorStrategy，若创建对象失败再采用StdInstantiatorStrategy
+        kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        return kryo;
+    }
+
     /**
      * Gets pool.
      *
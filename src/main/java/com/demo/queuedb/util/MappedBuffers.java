@@ -0,0 +1,81 @@
+package com.demo.queuedb.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 内存映射文件工具
+ *
+ * @author lizhiming
+ */
+public class MappedBuffers {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedBuffers.class);
+
+    /**
+     * 工具类
+     */
+    private MappedBuffers() {
+    }
+
+    /**
+     * 以读写方式映射文件的前size字节，文件不存在时创建
+     * 映射建立后即关闭通道，映射在unmap或被回收前一直有效
+     *
+     * @param path the path
+     * @param size the size
+     * @return the mapped byte buffer
+     * @throws IOException the io exception
+     */
+    public static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * 立即释放映射，不等待GC；Windows下映射未释放时文件无法删除
+     * 释放后再访问该buffer会导致JVM崩溃，调用方需保证没有其他线程仍在使用
+     *
+     * @param buffer 映射得到的原始buffer，不能是slice或duplicate
+     */
+    public static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            //JDK 9及以上
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (NoSuchMethodException e) {
+            //JDK 8
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Exception ex) {
+                LOGGER.debug("unmap fail, release on gc.", ex);
+            }
+        } catch (Exception e) {
+            LOGGER.debug("unmap fail, release on gc.", e);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.demo.queuedb.util;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 线程私有的Kryo与可复用的输入输出缓冲
+ * Kryo不是线程安全的，每个线程持有一个实例；输出缓冲在同一线程内复用，
+ * 按需增长到MAX_BUFFER_SIZE，超过RETAINED_BUFFER_SIZE的缓冲在下次使用时丢弃，避免大对象长期占用内存
+ *
+ * @author lizhiming
+ */
+public class ThreadLocalKryo {
+
+    /**
+     * 输出缓冲初始大小
+     */
+    public static final int INITIAL_BUFFER_SIZE = 4096;
+
+    /**
+     * 输出缓冲最大大小，即单条记录序列化后的上限
+     */
+    public static final int MAX_BUFFER_SIZE = 20971520;
+
+    /**
+     * 线程保留的输出缓冲上限
+     */
+    public static final int RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * 读取完成后输入缓冲指向的空数组，不持有记录数据
+     */
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    /**
+     * The constant EMPTY_BUFFER.
+     */
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.wrap(EMPTY_BYTES);
+
+    /**
+     * 输出缓冲，所有实例共用，同一线程内序列化不会嵌套
+     */
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(() -> new Output(INITIAL_BUFFER_SIZE, MAX_BUFFER_SIZE));
+
+    /**
+     * 堆内数组输入
+     */
+    private static final ThreadLocal<Input> INPUT = ThreadLocal.withInitial(Input::new);
+
+    /**
+     * 直接内存(如LMDB映射内存)输入
+     */
+    private static final ThreadLocal<ByteBufferInput> BYTE_BUFFER_INPUT = ThreadLocal.withInitial(ByteBufferInput::new);
+
+    /**
+     * 每个线程的Kryo，注册顺序与单实例时一致，保证类编号相同
+     */
+    private final ThreadLocal<Kryo> kryo;
+
+    /**
+     * Instantiates a new Thread local kryo.
+     *
+     * @param registrations 在公共注册之后额外注册的类
+     */
+    public ThreadLocalKryo(Class<?>... registrations) {
+        kryo = ThreadLocal.withInitial(() -> {
+            Kryo instance = KryoPoolFactory.INSTANCE.newKryo();
+            for (Class<?> registration : registrations) {
+                instance.register(registration);
+            }
+            return instance;
+        });
+    }
+
+    /**
+     * 当前线程的Kryo
+     *
+     * @return the kryo
+     */
+    public Kryo kryo() {
+        return kryo.get();
+    }
+
+    /**
+     * 序列化到当前线程的输出缓冲，数据为getBuffer()的[0, position())
+     * 返回的缓冲在本线程下次序列化前有效
+     *
+     * @param item the item
+     * @return the output
+     */
+    public Output serialize(Object item) {
+        Output out = output();
+        kryo.get().writeClassAndObject(out, item);
+        return out;
+    }
+
+    /**
+     * 当前线程已清空的输出缓冲，在本线程下次获取前有效
+     *
+     * @return the output
+     */
+    public static Output output() {
+        Output out = OUTPUT.get();
+        if (out.getBuffer().length > RETAINED_BUFFER_SIZE) {
+            //上次序列化了大对象，恢复初始大小
+            out = new Output(INITIAL_BUFFER_SIZE, MAX_BUFFER_SIZE);
+            OUTPUT.set(out);
+        } else {
+            out.clear();
+        }
+        return out;
+    }
+
+    /**
+     * 序列化为字节数组，长度与序列化结果一致
+     *
+     * @param item the item
+     * @return the byte [ ]
+     */
+    public byte[] toBytes(Object item) {
+        return serialize(item).toBytes();
+    }
+
+    /**
+     * 从ByteBuffer的position开始反序列化
+     *
+     * @param <T>    the type parameter
+     * @param buffer the buffer
+     * @param type   the type
+     * @return the t
+     */
+    public <T> T deserialize(ByteBuffer buffer, Class<T> type) {
+        ByteBufferInput in = BYTE_BUFFER_INPUT.get();
+        in.setBuffer(buffer);
+        try {
+            return kryo.get().readObjectOrNull(in, type);
+        } finally {
+            in.setBuffer(EMPTY_BUFFER);
+        }
+    }
+
+    /**
+     * 从字节数组的[offset, offset + length)反序列化
+     *
+     * @param <T>    the type parameter
+     * @param data   the data
+     * @param offset the offset
+     * @param length the length
+     * @param type   the type
+     * @return the t
+     */
+    public <T> T deserialize(byte[] data, int offset, int length, Class<T> type) {
+        Input in = INPUT.get();
+        in.setBuffer(data, offset, length);
+        try {
+            return kryo.get().readObjectOrNull(in, type);
+        } finally {
+            in.setBuffer(EMPTY_BYTES);
+        }
+    }
+
+    /**
+     * 从ByteBuffer的position开始按记录中的类信息反序列化，与serialize对应
+     *
+     * @param buffer the buffer
+     * @return the object
+     */
+    public Object deserializeClassAndObject(ByteBuffer buffer) {
+        ByteBufferInput in = BYTE_BUFFER_INPUT.get();
+        in.setBuffer(buffer);
+        try {
+            return kryo.get().readClassAndObject(in);
+        } finally {
+            in.setBuffer(EMPTY_BUFFER);
+        }
+    }
+
+    /**
+     * 从字节数组的[offset, offset + length)按记录中的类信息反序列化，与serialize对应
+     *
+     * @param data   the data
+     * @param offset the offset
+     * @param length the length
+     * @return the object
+     */
+    public Object deserializeClassAndObject(byte[] data, int offset, int length) {
+        Input in = INPUT.get();
+        in.setBuffer(data, offset, length);
+        try {
+            return kryo.get().readClassAndObject(in);
+        } finally {
+            in.setBuffer(EMPTY_BYTES);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.demo.queuedb.bdb;
+
+import com.demo.queuedb.queue.BlockingQueueChecks;
+import com.demo.queuedb.queue.Lease;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * BDB队列
+ */
+public class BdbQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void blockingQueue() throws Exception {
+        BlockingQueueChecks.check(capacity -> new BdbQueue<>(new BdbQueueConfig().setDbDir(folder.newFolder().getPath()).setDbName("blocking")
+                .setCapacity(capacity), String.class));
+    }
+
+    @Test
+    public void batch() throws IOException {
+        BdbQueueConfig config = new BdbQueueConfig().setDbDir(folder.newFolder().getPath()).setDbName("batch").setCapacity(150);
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add("item" + i);
+        }
+        try (BdbQueue<String> queue = new BdbQueue<>(config, String.class)) {
+            Assert.assertTrue(queue.offerAll(items));
+            Assert.assertEquals(100, queue.size());
+            //容量不足时整批拒绝
+            Assert.assertFalse(queue.offerAll(items));
+            Assert.assertEquals(100, queue.size());
+            List<String> drained = new ArrayList<>();
+            Assert.assertEquals(60, queue.drainTo(drained, 60));
+            Assert.assertEquals(40, queue.size());
+            Assert.assertEquals(items.subList(0, 60), drained);
+            queue.sync();
+        }
+        //游标写入与删除的结果重新打开后不变
+        try (BdbQueue<String> queue = new BdbQueue<>(config, String.class)) {
+            Assert.assertEquals(40, queue.size());
+            List<String> drained = new ArrayList<>();
+            Assert.assertEquals(40, queue.drainTo(drained, 60));
+            Assert.assertEquals(items.subList(60, 100), drained);
+            Assert.assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    public void drainAll() throws IOException {
+        BdbQueueConfig config = new BdbQueueConfig().setDbDir(folder.newFolder().getPath()).setDbName("drain");
+        try (BdbQueue<String> queue = new BdbQueue<>(config, String.class)) {
+            for (int i = 0; i < 3000; i++) {
+                Assert.assertTrue(queue.offer("item" + i));
+            }
+            //超过单批数量时分批认领，顺序不变
+            List<String> drained = new ArrayList<>();
+            Assert.assertEquals(1500, queue.drainTo(drained, 1500));
+            Assert.assertEquals(1500, queue.drainTo(drained));
+            Assert.assertEquals(0, queue.drainTo(drained));
+            Assert.assertEquals(3000, drained.size());
+            for (int i = 0; i < 3000; i++) {
+                Assert.assertEquals("item" + i, drained.get(i));
+            }
+            Assert.assertEquals(0, queue.size());
+            Assert.assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    public void lease() throws Exception {
+        BdbQueueConfig config = new BdbQueueConfig().setDbDir(folder.newFolder().getPath()).setDbName("lease").setLeaseReapIntervalMillis(20);
+        try (BdbQueue<String> queue = new BdbQueue<>(config, String.class)) {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertTrue(queue.offer("item" + i));
+            }
+            List<Lease<String>> leases = queue.reserve(3, 60000);
+            Assert.assertEquals(3, leases.size());
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals("item" + i, leases.get(i).getItem());
+            }
+            Assert.assertEquals(3, queue.inFlightSize());
+            Assert.assertTrue(queue.ack(leases.get(0).getId()));
+            Assert.assertFalse(queue.ack(leases.get(0).getId()));
+            Assert.assertTrue(queue.nack(leases.get(1).getId()));
+            Assert.assertEquals("item1", queue.poll());
+            //超时未确认的租约重新投递
+            Assert.assertTrue(queue.offer("item3"));
+            Lease<String> shortLease = queue.reserve(200);
+            Assert.assertNull(queue.poll(100, TimeUnit.MILLISECONDS));
+            Assert.assertEquals("item3", queue.poll(2, TimeUnit.SECONDS));
+            Assert.assertFalse(queue.ack(shortLease.getId()));
+            Assert.assertEquals(1, queue.inFlightSize());
+        }
+    }
+
+    @Test
+    public void restart() throws IOException {
+        BdbQueueConfig config = new BdbQueueConfig().setDbDir(folder.newFolder().getPath()).setDbName("restart");
+        try (BdbQueue<String> queue = new BdbQueue<>(config, String.class)) {
+            for (int i = 0; i < 10; i++) {
+                Assert.assertTrue(queue.offer("item" + i));
+            }
+            Assert.assertEquals("item0", queue.poll());
+            Assert.assertEquals(2, queue.reserve(2, 60000).size());
+        }
+        //首尾key与未确认的租约数在重启后恢复
+        try (BdbQueue<String> queue = new BdbQueue<>(config, String.class)) {
+            Assert.assertEquals(7, queue.longSize());
+            Assert.assertEquals(7, queue.size());
+            Assert.assertEquals(2, queue.inFlightSize());
+            Assert.assertEquals("item3", queue.peek());
+            Assert.assertTrue(queue.offer("item10"));
+            List<String> items = new ArrayList<>();
+            Assert.assertEquals(8, queue.drainTo(items));
+            Assert.assertEquals("item3", items.get(0));
+            Assert.assertEquals("item10", items.get(7));
+        }
+    }
+
+    @Test
+    public void spill() throws IOException {
+        File dir = folder.newFolder();
+        BdbQueueConfig config = new BdbQueueConfig().setDbDir(dir.getPath()).setDbName("spill").setSpillThreshold(4096);
+        Path blobs = dir.toPath().resolve("spill_blobs");
+        String large = payload(8192);
+        try (BdbQueue<String> queue = new BdbQueue<>(config, String.class)) {
+            Assert.assertTrue(queue.offer("a" + large));
+            Assert.assertTrue(queue.offerAll(Arrays.asList("b" + large, "b" + large, "small")));
+            Assert.assertEquals(2, blobFiles(blobs));
+            Assert.assertEquals("a" + large, queue.poll());
+            Assert.assertEquals(1, blobFiles(blobs));
+            queue.sync();
+        }
+        try (BdbQueue<String> queue = new BdbQueue<>(config, String.class)) {
+            //启动时按已有记录重建引用计数
+            Assert.assertEquals(1, blobFiles(blobs));
+            Assert.assertEquals("b" + large, queue.poll());
+            Assert.assertEquals(1, blobFiles(blobs));
+            Assert.assertEquals("b" + large, queue.poll());
+            Assert.assertEquals(0, blobFiles(blobs));
+            Assert.assertEquals("small", queue.poll());
+        }
+    }
+
+    @Test
+    public void compact() throws IOException {
+        File dir = folder.newFolder();
+        BdbQueueConfig config = new BdbQueueConfig().setDbDir(dir.getPath()).setDbName("compact").setLogFileMax(1024 * 1024);
+        String payload = payload(1024);
+        try (BdbQueue<String> queue = new BdbQueue<>(config, String.class)) {
+            for (int i = 0; i < 5000; i++) {
+                Assert.assertTrue(queue.offer(i + payload));
+            }
+            //延迟写入的记录刷盘后才进入日志，出队后成为过期记录
+            queue.sync();
+            for (int i = 0; i < 4900; i++) {
+                Assert.assertEquals(i + payload, queue.poll());
+            }
+            //清理后删除日志文件，剩余数据完整
+            int files = logFiles(dir);
+            Assert.assertTrue(queue.compact());
+            Assert.assertTrue(logFiles(dir) < files);
+            Assert.assertEquals(100, queue.size());
+            Assert.assertEquals(4900 + payload, queue.poll());
+            Assert.assertTrue(queue.offer(5000 + payload));
+        }
+        try (BdbQueue<String> queue = new BdbQueue<>(config, String.class)) {
+            Assert.assertEquals(100, queue.size());
+            for (int i = 4901; i <= 5000; i++) {
+                Assert.assertEquals(i + payload, queue.poll());
+            }
+            Assert.assertNull(queue.poll());
+        }
+    }
+
+    /**
+     * JE日志文件数
+     *
+     * @param dir the dir
+     * @return the int
+     */
+    private static int logFiles(File dir) {
+        return dir.listFiles((d, name) -> name.endsWith(".jdb")).length;
+    }
+
+    /**
+     * 外置文件数
+     *
+     * @param blobs the blobs
+     * @return the long
+     * @throws IOException the io exception
+     */
+    private static long blobFiles(Path blobs) throws IOException {
+        try (Stream<Path> files = Files.walk(blobs)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static String payload(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
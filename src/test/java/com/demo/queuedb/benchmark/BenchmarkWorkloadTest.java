@@ -0,0 +1,66 @@
+package com.demo.queuedb.benchmark;
+
+import com.alibaba.fastjson.JSONObject;
+import com.demo.queuedb.queue.PersistentQueue;
+import com.demo.queuedb.queue.QueueBackends;
+import com.demo.queuedb.queue.QueueSpec;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试的负载在各后端上可以正常读写
+ * 基准测试代码只在benchmark profile下编译，这里按QueueBenchmark的参数组合执行同样的读写
+ */
+public class BenchmarkWorkloadTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everyBackendAndPayload() throws IOException {
+        for (String backend : new String[]{"LMDB", "BDB", "SEGMENT"}) {
+            for (int payloadSize : new int[]{1024, 102400, 1048576}) {
+                QueueSpec spec = new QueueSpec().setName("bench").setPath(folder.newFolder().getPath()).setMapSize(256 * MB);
+                try (PersistentQueue<JSONObject> queue = QueueBackends.get(backend).open(spec, JSONObject.class)) {
+                    String name = backend + " " + payloadSize;
+                    JSONObject payload = payload(payloadSize);
+                    //单条与批量写入
+                    Assert.assertTrue(name, queue.offer(payload));
+                    Assert.assertTrue(name, queue.offerAll(Collections.nCopies(32, payload)));
+                    JSONObject polled = queue.poll();
+                    Assert.assertArrayEquals(name, payload.getBytes("image"), polled.getBytes("image"));
+                    List<JSONObject> sink = new ArrayList<>();
+                    Assert.assertEquals(name, 32, queue.drainTo(sink, 32));
+                    Assert.assertArrayEquals(name, payload.getBytes("image"), sink.get(31).getBytes("image"));
+                    //消费者空轮询
+                    Assert.assertNull(name, queue.poll());
+                    Assert.assertEquals(name, 0, queue.drainTo(sink, 32));
+                }
+            }
+        }
+    }
+
+    /**
+     * 与QueueBenchmark相同的合成负载
+     *
+     * @param size the size
+     * @return the json object
+     */
+    private static JSONObject payload(int size) {
+        byte[] image = new byte[size];
+        new Random(size).nextBytes(image);
+        JSONObject obj = new JSONObject();
+        obj.put("image", image);
+        return obj;
+    }
+}
@@ -0,0 +1,133 @@
+package com.demo.queuedb.codec;
+
+import com.alibaba.fastjson.JSONObject;
+import com.demo.queuedb.segment.SegmentQueue;
+import com.demo.queuedb.segment.SegmentQueueConfig;
+import com.esotericsoftware.kryo.io.Output;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 编码往返与已有队列的编码确定
+ */
+public class CodecsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void stringRoundTrip() {
+        for (String id : new String[]{Codecs.DEFAULT, Codecs.KRYO_CLASS, Codecs.KRYO_REGISTERED, Codecs.DEFLATE_PREFIX + Codecs.KRYO_CLASS}) {
+            Codec<String> codec = Codecs.create(id, String.class);
+            Assert.assertEquals(id, codec.id());
+            Assert.assertEquals(id, "hello", decodeBytes(codec, "hello"));
+            Assert.assertEquals(id, "hello", decodeDirect(codec, "hello"));
+        }
+    }
+
+    @Test
+    public void subclassRoundTrip() {
+        //写入类信息的默认编码保留元素的实际类型
+        Codec<Number> codec = Codecs.create(Codecs.DEFAULT, Number.class);
+        Assert.assertEquals(42L, decodeBytes(codec, 42L));
+        Assert.assertEquals(1.5d, decodeDirect(codec, 1.5d));
+    }
+
+    @Test
+    public void legacyJsonRoundTrip() {
+        JSONObject json = new JSONObject();
+        json.put("name", "value");
+        Codec<JSONObject> codec = Codecs.create(Codecs.KRYO, JSONObject.class);
+        Assert.assertEquals(json, decodeBytes(codec, json));
+        Assert.assertEquals(json, decodeDirect(codec, json));
+    }
+
+    @Test
+    public void rawRoundTrip() {
+        Codec<byte[]> codec = Codecs.create(Codecs.RAW, byte[].class);
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, decodeBytes(codec, new byte[]{1, 2, 3}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rawRequiresBytes() {
+        Codecs.create(Codecs.RAW, String.class);
+    }
+
+    @Test
+    public void resolve() {
+        //已记录的编码优先
+        Assert.assertEquals(Codecs.KRYO_REGISTERED, Codecs.resolve("q", Codecs.KRYO_REGISTERED, Codecs.RAW, true));
+        //未记录编码但已有数据，旧版本写入
+        Assert.assertEquals(Codecs.KRYO, Codecs.resolve("q", null, Codecs.RAW, true));
+        //新建队列
+        Assert.assertEquals(Codecs.RAW, Codecs.resolve("q", null, Codecs.RAW, false));
+        Assert.assertEquals(Codecs.DEFAULT, Codecs.resolve("q", null, null, false));
+    }
+
+    @Test
+    public void newQueueUsesDefault() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        SegmentQueueConfig config = new SegmentQueueConfig().setDir(dir.toString()).setName("codec");
+        try (SegmentQueue<String> queue = new SegmentQueue<>(config, String.class)) {
+            Assert.assertTrue(queue.offer("hello"));
+        }
+        Assert.assertEquals(Codecs.DEFAULT, new String(Files.readAllBytes(dir.resolve("codec.codec")), StandardCharsets.UTF_8));
+        try (SegmentQueue<String> queue = new SegmentQueue<>(config, String.class)) {
+            Assert.assertEquals("hello", queue.poll());
+        }
+    }
+
+    @Test
+    public void legacyQueue() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        Path codecFile = dir.resolve("codec.codec");
+        SegmentQueueConfig config = new SegmentQueueConfig().setDir(dir.toString()).setName("codec").setCodec(Codecs.KRYO);
+        try (SegmentQueue<JSONObject> queue = new SegmentQueue<>(config, JSONObject.class)) {
+            Assert.assertTrue(queue.offer(json("a")));
+            Assert.assertTrue(queue.offer(json("b")));
+        }
+        //模拟旧版本写入的数据：有数据但未记录编码，按旧版本格式读取并补记
+        Files.delete(codecFile);
+        config.setCodec(Codecs.DEFLATE_PREFIX + Codecs.KRYO_CLASS);
+        try (SegmentQueue<JSONObject> queue = new SegmentQueue<>(config, JSONObject.class)) {
+            Assert.assertEquals(json("a"), queue.poll());
+        }
+        Assert.assertEquals(Codecs.KRYO, new String(Files.readAllBytes(codecFile), StandardCharsets.UTF_8));
+        //已记录的编码优先于配置
+        try (SegmentQueue<JSONObject> queue = new SegmentQueue<>(config, JSONObject.class)) {
+            Assert.assertTrue(queue.offer(json("c")));
+            Assert.assertEquals(json("b"), queue.poll());
+            Assert.assertEquals(json("c"), queue.poll());
+        }
+        Assert.assertEquals(Codecs.KRYO, new String(Files.readAllBytes(codecFile), StandardCharsets.UTF_8));
+    }
+
+    private static JSONObject json(String name) {
+        JSONObject json = new JSONObject();
+        json.put("name", name);
+        return json;
+    }
+
+    private static <E> E decodeBytes(Codec<E> codec, E item) {
+        Output out = codec.encode(item);
+        byte[] data = new byte[out.position() + 2];
+        System.arraycopy(out.getBuffer(), 0, data, 1, out.position());
+        return codec.decode(data, 1, out.position());
+    }
+
+    private static <E> E decodeDirect(Codec<E> codec, E item) {
+        Output out = codec.encode(item);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(out.position());
+        buffer.put(out.getBuffer(), 0, out.position());
+        buffer.flip();
+        return codec.decode(buffer);
+    }
+}
@@ -0,0 +1,69 @@
+package com.demo.queuedb.lmdb;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 组提交写线程
+ */
+public class GroupCommitWriterTest {
+
+    @Test
+    public void batchesConcurrentWrites() throws Exception {
+        List<Integer> batches = new CopyOnWriteArrayList<>();
+        GroupCommitWriter writer = new GroupCommitWriter("group-commit-test", 64, 10, 50, batch -> batches.add(batch.size()));
+        try {
+            List<CompletableFuture<Boolean>> futures = new CopyOnWriteArrayList<>();
+            List<Thread> producers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread producer = new Thread(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        futures.add(writer.submit(new byte[]{(byte) i}));
+                    }
+                });
+                producers.add(producer);
+                producer.start();
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            for (CompletableFuture<Boolean> future : futures) {
+                Assert.assertTrue(future.get(5, TimeUnit.SECONDS));
+            }
+            //所有记录都已提交，每批不超过批次大小，凑批等待期间到达的记录合并提交
+            Assert.assertEquals(100, batches.stream().mapToInt(Integer::intValue).sum());
+            Assert.assertTrue(batches.stream().allMatch(size -> size <= 10));
+            Assert.assertTrue(batches.size() < 100);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void failedCommit() throws Exception {
+        GroupCommitWriter writer = new GroupCommitWriter("group-commit-test", 64, 10, 0, batch -> {
+            throw new IllegalStateException("commit fail");
+        });
+        try {
+            Assert.assertFalse(writer.submit(new byte[]{1}).get(5, TimeUnit.SECONDS));
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void submitAfterClose() throws Exception {
+        GroupCommitWriter writer = new GroupCommitWriter("group-commit-test", 64, 10, 0, batch -> {
+        });
+        writer.close();
+        CompletableFuture<Boolean> future = writer.submit(new byte[]{1});
+        Assert.assertTrue(future.isDone());
+        Assert.assertFalse(future.get());
+    }
+}
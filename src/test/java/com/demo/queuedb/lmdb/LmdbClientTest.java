@@ -0,0 +1,117 @@
+package com.demo.queuedb.lmdb;
+
+import com.demo.queuedb.util.ByteBufferUtil;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lmdbjava.Dbi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 映射空间扩容
+ */
+public class LmdbClientTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNoReaders() throws IOException {
+        new LmdbClient().setEnvPath(folder.newFolder().getPath()).setDbs(1).setMapSize(MB).setReaders(0).build();
+    }
+
+    @Test
+    public void queueGrowsOnMapFull() throws IOException {
+        //初始映射1M，写入约4M数据，写满时扩容后重试
+        LmdbQueueConfig config = new LmdbQueueConfig().setEnvPath(folder.newFolder().getPath()).setDbName("grow")
+                .setMapSize(MB).setMaxMapSize(64 * MB);
+        String payload = payload(8 * 1024);
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            for (int i = 0; i < 500; i++) {
+                Assert.assertTrue(queue.offer(i + payload));
+            }
+            Assert.assertEquals(500, queue.size());
+            Assert.assertTrue(queue.mapSizeBytes() > config.getMapSize());
+            for (int i = 0; i < 500; i++) {
+                Assert.assertEquals(i + payload, queue.poll());
+            }
+        }
+        //重新打开时沿用扩容后的大小
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            Assert.assertTrue(queue.mapSizeBytes() > config.getMapSize());
+            Assert.assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void mapFullWithoutMaxSize() throws IOException {
+        //未设置上限时不扩容，写满后offer返回false
+        LmdbQueueConfig config = new LmdbQueueConfig().setEnvPath(folder.newFolder().getPath()).setDbName("full").setMapSize(MB);
+        String payload = payload(8 * 1024);
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            int offered = 0;
+            while (offered < 500 && queue.offer(offered + payload)) {
+                offered++;
+            }
+            Assert.assertTrue(offered < 500);
+            Assert.assertEquals(offered, queue.size());
+            Assert.assertEquals(config.getMapSize(), queue.mapSizeBytes());
+            Assert.assertEquals(0 + payload, queue.poll());
+        }
+    }
+
+    @Test
+    public void growTimeout() throws Exception {
+        LmdbClient client = new LmdbClient().setEnvPath(folder.newFolder().getPath()).setDbs(1).setReaders(8)
+                .setMapSize(MB).setMaxMapSize(4 * MB).build();
+        try {
+            Dbi<ByteBuffer> dbi = client.creatDbi("timeout");
+            long size = client.getMapSize();
+            //持有access时扩容等待超时后放弃
+            LmdbClient.Access access = client.access();
+            try {
+                CompletableFuture<Boolean> grow = CompletableFuture.supplyAsync(() -> client.grow(size));
+                Assert.assertFalse(grow.get(30, TimeUnit.SECONDS));
+            } finally {
+                access.close();
+            }
+            Assert.assertEquals(size, client.getMapSize());
+            //放弃后环境仍可读写，再次扩容成功
+            client.write(txn -> {
+                dbi.put(txn, ByteBufferUtil.stringToByteBuffer("key"), ByteBufferUtil.stringToByteBuffer("value"));
+                txn.commit();
+                return true;
+            });
+            Assert.assertEquals("value", client.read(txn -> ByteBufferUtil.byteBufferToString(dbi.get(txn, ByteBufferUtil.stringToByteBuffer("key")))));
+            Assert.assertTrue(client.grow(size));
+            Assert.assertEquals(size * 2, client.getMapSize());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void growInsideAccess() throws IOException {
+        LmdbClient client = new LmdbClient().setEnvPath(folder.newFolder().getPath()).setDbs(1).setMapSize(MB).setMaxMapSize(4 * MB).build();
+        try (LmdbClient.Access access = client.access()) {
+            //当前线程在access内扩容会等待自己，直接放弃
+            Assert.assertFalse(client.grow(client.getMapSize()));
+        } finally {
+            client.close();
+        }
+    }
+
+    private static String payload(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
@@ -0,0 +1,116 @@
+package com.demo.queuedb.lmdb;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 多消费组日志
+ */
+public class LmdbLogTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void groupsReadIndependently() throws IOException {
+        LmdbLog<String> log = new LmdbLog<>(config(), String.class);
+        try {
+            LmdbLog<String>.ConsumerGroup index = log.group("index");
+            LmdbLog<String>.ConsumerGroup archive = log.group("archive");
+            Assert.assertTrue(log.appendAll(Arrays.asList("a", "b", "c")));
+            //每个消费组都能读到全部记录
+            Assert.assertEquals("a", index.peek());
+            Assert.assertEquals(Arrays.asList("a", "b", "c"), index.poll(10));
+            Assert.assertNull(index.poll());
+            Assert.assertEquals(0, index.lag());
+            Assert.assertEquals("a", archive.poll());
+            Assert.assertEquals(2, archive.lag());
+            Assert.assertSame(index, log.group("index"));
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void truncateAfterAllGroupsCommit() throws IOException {
+        LmdbLog<String> log = new LmdbLog<>(config(), String.class);
+        try {
+            LmdbLog<String>.ConsumerGroup index = log.group("index");
+            LmdbLog<String>.ConsumerGroup audit = log.group("audit");
+            List<String> items = new ArrayList<>();
+            //超过单个截断批次
+            for (int i = 0; i < 3000; i++) {
+                items.add("item-" + i);
+            }
+            Assert.assertTrue(log.appendAll(items));
+            Assert.assertEquals(3000, index.poll(3000).size());
+            index.commit();
+            //还有消费组没有越过，不截断
+            Assert.assertEquals(0, log.firstIndex());
+            Assert.assertEquals(3000, log.size());
+            Assert.assertEquals(2500, audit.poll(2500).size());
+            audit.commit();
+            Assert.assertEquals(2500, log.firstIndex());
+            Assert.assertEquals(500, log.size());
+            Assert.assertEquals("item-2500", audit.poll());
+            //删除落后的消费组后截断到剩余消费组的位置
+            log.removeGroup("audit");
+            Assert.assertEquals(3000, log.firstIndex());
+            Assert.assertEquals(0, log.size());
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void offsetsPersistAcrossReopen() throws IOException {
+        LmdbQueueConfig config = config();
+        LmdbLog<String> log = new LmdbLog<>(config, String.class);
+        try {
+            LmdbLog<String>.ConsumerGroup index = log.group("index");
+            Assert.assertTrue(log.appendAll(Arrays.asList("a", "b", "c", "d")));
+            index.poll(2);
+            index.commit();
+            //未提交的位置重启后从上次提交处重新读取
+            index.poll();
+        } finally {
+            log.close();
+        }
+        log = new LmdbLog<>(config, String.class);
+        try {
+            LmdbLog<String>.ConsumerGroup index = log.group("index");
+            Assert.assertEquals(2, index.offset());
+            Assert.assertEquals(2, log.firstIndex());
+            Assert.assertEquals(4, log.lastIndex());
+            Assert.assertEquals(Arrays.asList("c", "d"), index.poll(10));
+            index.commit();
+        } finally {
+            log.close();
+        }
+        log = new LmdbLog<>(config, String.class);
+        try {
+            //已全部截断，新记录从消费位置继续编号
+            Assert.assertEquals(4, log.firstIndex());
+            Assert.assertEquals(4, log.lastIndex());
+            Assert.assertTrue(log.append("e"));
+            Assert.assertEquals("e", log.group("index").poll());
+            //新建的消费组从最早保留的记录开始读取
+            Assert.assertEquals("e", log.group("late").poll());
+        } finally {
+            log.close();
+        }
+    }
+
+    private LmdbQueueConfig config() throws IOException {
+        return new LmdbQueueConfig().setEnvPath(folder.newFolder().getPath()).setDbName("log").setMapSize(64 * MB);
+    }
+}
@@ -0,0 +1,81 @@
+package com.demo.queuedb.lmdb;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LMDB优先级队列
+ */
+public class LmdbPriorityQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void orderAcrossRestart() throws IOException {
+        LmdbQueueConfig config = config();
+        try (LmdbPriorityQueue<String> queue = new LmdbPriorityQueue<>(config, String.class)) {
+            Assert.assertTrue(queue.offer("low-1", 0));
+            Assert.assertTrue(queue.offer("high-1", 5));
+            Assert.assertTrue(queue.offer("mid-1", 1));
+            Assert.assertTrue(queue.offer("high-2", 5));
+            Assert.assertTrue(queue.offer("low-2"));
+            Assert.assertEquals("high-1", queue.peek());
+        }
+        //重启后仍按优先级从高到低、同级先进先出，新写入排在同级已有数据之后
+        try (LmdbPriorityQueue<String> queue = new LmdbPriorityQueue<>(config, String.class)) {
+            Assert.assertEquals(5, queue.size());
+            Assert.assertEquals(2, queue.levelSize(5));
+            Assert.assertEquals(2, queue.levelSize(LmdbPriorityQueue.DEFAULT_PRIORITY));
+            Assert.assertTrue(queue.offer("high-3", 5));
+            Assert.assertTrue(queue.offerAll(Arrays.asList("mid-2", "mid-3"), 1));
+            List<String> polled = new ArrayList<>();
+            Assert.assertEquals(2, queue.drainTo(polled, 2));
+            String item;
+            while ((item = queue.poll()) != null) {
+                polled.add(item);
+            }
+            Assert.assertEquals(Arrays.asList("high-1", "high-2", "high-3", "mid-1", "mid-2", "mid-3", "low-1", "low-2"), polled);
+            Assert.assertEquals(0, queue.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNegativePriority() throws IOException {
+        try (LmdbPriorityQueue<String> queue = new LmdbPriorityQueue<>(config(), String.class)) {
+            queue.offer("item", -1);
+        }
+    }
+
+    @Test
+    public void keyLayoutChecked() throws IOException {
+        LmdbQueueConfig config = config();
+        try (LmdbPriorityQueue<String> queue = new LmdbPriorityQueue<>(config, String.class)) {
+            Assert.assertTrue(queue.offer("item", 1));
+        }
+        //优先级库不能作为普通队列打开
+        try {
+            new LmdbQueue<>(config, String.class).close();
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+            Assert.assertTrue(expected.getMessage().contains(LmdbQueue.LAYOUT_PRIORITY));
+        }
+    }
+
+    /**
+     * 临时目录中的队列配置
+     *
+     * @return the lmdb queue config
+     * @throws IOException the io exception
+     */
+    private LmdbQueueConfig config() throws IOException {
+        return new LmdbQueueConfig().setEnvPath(folder.newFolder().getPath()).setDbName("priority").setMapSize(64 * 1024 * 1024);
+    }
+}
@@ -0,0 +1,412 @@
+package com.demo.queuedb.lmdb;
+
+import com.demo.queuedb.queue.BlockingQueueChecks;
+import com.demo.queuedb.queue.Lease;
+import com.demo.queuedb.util.ByteBufferUtil;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lmdbjava.Dbi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * LMDB队列
+ */
+public class LmdbQueueTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void blockingQueue() throws Exception {
+        BlockingQueueChecks.check(capacity -> new LmdbQueue<>(config("blocking").setCapacity(capacity), String.class));
+    }
+
+    @Test
+    public void batch() throws IOException {
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config("batch").setCapacity(150), String.class)) {
+            List<String> items = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                items.add("item" + i);
+            }
+            Assert.assertTrue(queue.offerAll(items));
+            Assert.assertEquals(100, queue.size());
+            //容量不足时整批拒绝
+            Assert.assertFalse(queue.offerAll(items));
+            Assert.assertEquals(100, queue.size());
+            Assert.assertTrue(queue.offerAll(new ArrayList<>()));
+            List<String> drained = new ArrayList<>();
+            Assert.assertEquals(60, queue.drainTo(drained, 60));
+            Assert.assertEquals(40, queue.size());
+            Assert.assertEquals(40, queue.drainTo(drained, 60));
+            Assert.assertEquals(0, queue.drainTo(drained, 60));
+            Assert.assertEquals(items, drained);
+            Assert.assertEquals(0, queue.size());
+            //取出后归还容量
+            Assert.assertTrue(queue.offerAll(items));
+            Assert.assertEquals("item0", queue.poll());
+        }
+    }
+
+    @Test
+    public void groupCommit() throws Exception {
+        LmdbQueueConfig config = config("group").setGroupCommit(true).setCapacity(1000);
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            //多个生产者的记录合并提交，各生产者内部保持顺序
+            List<Thread> producers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                String producer = "p" + t + "-";
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        Assert.assertTrue(queue.offer(producer + i));
+                    }
+                });
+                producers.add(thread);
+                thread.start();
+            }
+            for (Thread thread : producers) {
+                thread.join();
+            }
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(queue.offerAsync("async-" + i));
+            }
+            for (CompletableFuture<Boolean> future : futures) {
+                Assert.assertTrue(future.get(5, TimeUnit.SECONDS));
+            }
+            //容量已满时直接返回false
+            Assert.assertFalse(queue.offerAsync("full").get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1000, queue.size());
+        }
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            int[] next = new int[5];
+            for (int n = 0; n < 1000; n++) {
+                String item = queue.poll();
+                int split = item.indexOf('-');
+                int producer = item.startsWith("async") ? 4 : Integer.parseInt(item.substring(1, split));
+                Assert.assertEquals(next[producer]++, Integer.parseInt(item.substring(split + 1)));
+            }
+            Assert.assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    public void readAhead() throws Exception {
+        LmdbQueueConfig config = config("readAhead").setReadAheadEntries(16).setReadAheadBytes(MB);
+        try (LmdbQueue<HashMap> queue = new LmdbQueue<>(config, HashMap.class)) {
+            for (int i = 0; i < 100; i++) {
+                HashMap<String, Integer> item = new HashMap<>();
+                item.put("seq", i);
+                Assert.assertTrue(queue.offer(item));
+            }
+            //等待预读填满缓冲
+            Thread.sleep(200);
+            for (int i = 0; i < 100; i++) {
+                //已预读时peek与poll返回同一个对象，未预读时从库中读取，顺序不变
+                HashMap head = queue.peek();
+                HashMap polled = queue.poll();
+                Assert.assertEquals(i, head.get("seq"));
+                Assert.assertEquals(head, polled);
+                if (i < 16) {
+                    Assert.assertSame(head, polled);
+                }
+            }
+            Assert.assertNull(queue.peek());
+            Assert.assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    public void restartWithHoles() throws IOException {
+        LmdbQueueConfig config = config("restart");
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            for (int i = 0; i < 10; i++) {
+                Assert.assertTrue(queue.offer("item" + i));
+            }
+        }
+        //头部与尾部留下空洞，头指针仍指向已删除的位置
+        LmdbClient client = new LmdbClient().setEnvPath(config.getEnvPath()).setDbs(2).setMapSize(config.getMapSize()).build();
+        try {
+            Dbi<ByteBuffer> dbi = client.creatDbi("restart");
+            client.write(txn -> {
+                for (long index : new long[]{0, 1, 9}) {
+                    Assert.assertTrue(dbi.delete(txn, ByteBufferUtil.longKey(index)));
+                }
+                txn.commit();
+                return null;
+            });
+        } finally {
+            client.close();
+        }
+        //首尾指针由游标定位
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            Assert.assertEquals(7, queue.longSize());
+            Assert.assertEquals(7, queue.size());
+            Assert.assertEquals("item2", queue.peek());
+            Assert.assertTrue(queue.offer("item10"));
+            List<String> items = new ArrayList<>();
+            Assert.assertEquals(8, queue.drainTo(items));
+            Assert.assertEquals(Arrays.asList("item2", "item3", "item4", "item5", "item6", "item7", "item8", "item10"), items);
+            Assert.assertEquals(0, queue.longSize());
+        }
+    }
+
+    @Test
+    public void integerKey() throws IOException {
+        LmdbQueueConfig config = config("integer").setIntegerKey(true);
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            //超过256条，本机字节序key的低位字节进位后仍按数值顺序追加
+            for (int i = 0; i < 300; i++) {
+                Assert.assertTrue(queue.offer("item" + i));
+            }
+            List<String> items = new ArrayList<>();
+            for (int i = 300; i < 600; i++) {
+                items.add("item" + i);
+            }
+            Assert.assertTrue(queue.offerAll(items));
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals("item" + i, queue.poll());
+            }
+        }
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            Assert.assertEquals(500, queue.size());
+            List<String> drained = new ArrayList<>();
+            Assert.assertEquals(500, queue.drainTo(drained));
+            for (int i = 0; i < 500; i++) {
+                Assert.assertEquals("item" + (i + 100), drained.get(i));
+            }
+            Assert.assertTrue(queue.offer("next"));
+            Assert.assertEquals("next", queue.poll());
+        }
+        //整数key队列不能按普通队列打开，反之亦然
+        try {
+            new LmdbQueue<>(config.setIntegerKey(false), String.class).close();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains(LmdbQueue.LAYOUT_INTEGER + ", cannot open it as " + LmdbQueue.LAYOUT_INDEX));
+        }
+        LmdbQueueConfig index = config("index");
+        try (LmdbQueue<String> queue = new LmdbQueue<>(index, String.class)) {
+            Assert.assertTrue(queue.offer("item"));
+        }
+        try {
+            new LmdbQueue<>(index.setIntegerKey(true), String.class).close();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains(LmdbQueue.LAYOUT_INDEX + ", cannot open it as " + LmdbQueue.LAYOUT_INTEGER));
+        }
+        //拒绝打开时没有修改库
+        try (LmdbQueue<String> queue = new LmdbQueue<>(index.setIntegerKey(false), String.class)) {
+            Assert.assertEquals("item", queue.poll());
+        }
+    }
+
+    @Test
+    public void iterator() throws IOException {
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config("iterator").setIteratorBatchSize(3), String.class)) {
+            for (int i = 0; i < 10; i++) {
+                Assert.assertTrue(queue.offer("item" + i));
+            }
+            Assert.assertEquals("item0", queue.poll());
+            //从头指针开始按顺序遍历，跨多个批次
+            List<String> items = new ArrayList<>();
+            try (LmdbQueue<String>.QueueIterator it = queue.iterator()) {
+                while (it.hasNext()) {
+                    String item = it.next();
+                    if (items.isEmpty()) {
+                        //批次之间的入队可见
+                        Assert.assertTrue(queue.offer("item10"));
+                    }
+                    items.add(item);
+                }
+            }
+            Assert.assertEquals(10, items.size());
+            for (int i = 0; i < 10; i++) {
+                Assert.assertEquals("item" + (i + 1), items.get(i));
+            }
+            Assert.assertTrue(queue.contains("item5"));
+            Assert.assertFalse(queue.contains("item0"));
+            List<String> visited = new ArrayList<>();
+            queue.forEach(visited::add);
+            Assert.assertEquals(items, visited);
+            //提前结束遍历后不再返回记录
+            LmdbQueue<String>.QueueIterator it = queue.iterator();
+            Assert.assertEquals("item1", it.next());
+            it.close();
+            Assert.assertFalse(it.hasNext());
+            Assert.assertEquals(10, queue.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectIteratorBatchSize() throws IOException {
+        new LmdbQueue<>(config("iterator").setIteratorBatchSize(0), String.class);
+    }
+
+    @Test
+    public void lease() throws Exception {
+        LmdbQueueConfig config = config("lease").setLeaseReapIntervalMillis(20);
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertTrue(queue.offer("item" + i));
+            }
+            List<Lease<String>> leases = queue.reserve(3, 60000);
+            Assert.assertEquals(3, leases.size());
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals("item" + i, leases.get(i).getItem());
+            }
+            Assert.assertEquals(0, queue.size());
+            Assert.assertEquals(3, queue.inFlightSize());
+            //重复确认返回false
+            Assert.assertTrue(queue.ack(leases.get(0).getId()));
+            Assert.assertFalse(queue.ack(leases.get(0).getId()));
+            //退回后立即重新投递到尾部
+            Assert.assertTrue(queue.nack(leases.get(1).getId()));
+            Assert.assertFalse(queue.nack(leases.get(1).getId()));
+            Assert.assertEquals(1, queue.inFlightSize());
+            Assert.assertEquals("item1", queue.poll());
+            Assert.assertNull(queue.poll());
+            //较早到期的租约不会被之前较晚的deadline跳过
+            Assert.assertTrue(queue.offer("item3"));
+            Lease<String> shortLease = queue.reserve(200);
+            Assert.assertEquals("item3", shortLease.getItem());
+            Assert.assertNull(queue.poll(100, TimeUnit.MILLISECONDS));
+            Assert.assertEquals("item3", queue.poll(2, TimeUnit.SECONDS));
+            Assert.assertFalse(queue.ack(shortLease.getId()));
+            Assert.assertEquals(1, queue.inFlightSize());
+        }
+        //未确认的租约重新打开后仍在租约库中
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            Assert.assertEquals(1, queue.inFlightSize());
+            Assert.assertEquals(0, queue.size());
+        }
+    }
+
+    @Test
+    public void spill() throws IOException {
+        LmdbQueueConfig config = config("spill").setSpillThreshold(4096);
+        Path blobs = Paths.get(config.getEnvPath(), "spill_blobs");
+        String large = payload(8192);
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            Assert.assertTrue(queue.offer("a" + large));
+            //相同内容只保存一份
+            Assert.assertTrue(queue.offerAll(Arrays.asList("b" + large, "b" + large, "small")));
+            Assert.assertEquals(2, blobFiles(blobs));
+            //取出后释放引用，没有引用时删除文件
+            Assert.assertEquals("a" + large, queue.poll());
+            Assert.assertEquals(1, blobFiles(blobs));
+        }
+        //没有记录引用的文件在启动时删除
+        Path orphan = blobs.resolve("ff").resolve("ff00");
+        Files.createDirectories(orphan.getParent());
+        Files.write(orphan, new byte[]{1});
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            Assert.assertFalse(Files.exists(orphan));
+            //启动时按已有记录重建引用计数
+            Assert.assertEquals(1, blobFiles(blobs));
+            Assert.assertEquals("b" + large, queue.poll());
+            Assert.assertEquals(1, blobFiles(blobs));
+            Assert.assertEquals("b" + large, queue.poll());
+            Assert.assertEquals(0, blobFiles(blobs));
+            Assert.assertEquals("small", queue.poll());
+        }
+    }
+
+    @Test
+    public void spillReleasedOnFailure() throws IOException {
+        //未设置上限时不扩容，写满后写入失败
+        LmdbQueueConfig config = config("spill").setMapSize(MB).setSpillThreshold(4096);
+        Path blobs = Paths.get(config.getEnvPath(), "spill_blobs");
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            String inline = payload(2000);
+            int offered = 0;
+            while (offered < 1000 && queue.offer(offered + inline)) {
+                offered++;
+            }
+            Assert.assertTrue(offered < 1000);
+            List<String> items = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                items.add(i + payload(4096));
+            }
+            //整批未提交，编码时写入的外置文件全部删除
+            Assert.assertFalse(queue.offerAll(items));
+            Assert.assertEquals(0, blobFiles(blobs));
+            Assert.assertEquals(offered, queue.size());
+        }
+    }
+
+    @Test
+    public void compact() throws IOException {
+        LmdbQueueConfig config = config("compact");
+        String payload = payload(1024);
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            for (int i = 0; i < 2000; i++) {
+                Assert.assertTrue(queue.offer(i + payload));
+            }
+            for (int i = 0; i < 1500; i++) {
+                Assert.assertEquals(i + payload, queue.poll());
+            }
+            //压缩替换数据文件后剩余数据完整，且可以继续读写
+            long used = queue.mapUsedBytes();
+            Assert.assertTrue(queue.freeRatio() > 0.5);
+            Assert.assertTrue(queue.compact());
+            Assert.assertTrue(queue.mapUsedBytes() < used);
+            Assert.assertEquals(500, queue.size());
+            Assert.assertEquals(1500 + payload, queue.poll());
+            Assert.assertTrue(queue.offer(2000 + payload));
+        }
+        //重新打开后数据不变
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            Assert.assertEquals(500, queue.size());
+            for (int i = 1501; i <= 2000; i++) {
+                Assert.assertEquals(i + payload, queue.poll());
+            }
+            Assert.assertNull(queue.poll());
+        }
+    }
+
+    /**
+     * 临时目录中的队列配置
+     *
+     * @param name the name
+     * @return the lmdb queue config
+     * @throws IOException the io exception
+     */
+    private LmdbQueueConfig config(String name) throws IOException {
+        return new LmdbQueueConfig().setEnvPath(folder.newFolder().getPath()).setDbName(name).setMapSize(64 * MB);
+    }
+
+    /**
+     * 外置文件数
+     *
+     * @param blobs the blobs
+     * @return the long
+     * @throws IOException the io exception
+     */
+    private static long blobFiles(Path blobs) throws IOException {
+        try (Stream<Path> files = Files.walk(blobs)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static String payload(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
@@ -0,0 +1,101 @@
+package com.demo.queuedb.lmdb;
+
+import com.demo.queuedb.codec.Codecs;
+import com.demo.queuedb.util.ByteBufferUtil;
+import com.demo.queuedb.util.ThreadLocalKryo;
+import com.esotericsoftware.kryo.io.Output;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lmdbjava.Dbi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * 序列化到预留内存
+ */
+public class LmdbSerializerTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LmdbClient client;
+
+    private Dbi<ByteBuffer> dbi;
+
+    @Before
+    public void before() throws IOException {
+        client = new LmdbClient().setEnvPath(folder.newFolder().getPath()).setDbs(1).setMapSize(64 * MB).build();
+        dbi = client.creatDbi("serializer");
+    }
+
+    @After
+    public void after() {
+        client.close();
+    }
+
+    @Test
+    public void reserveExactLength() {
+        LmdbSerializer<String> serializer = new LmdbSerializer<>(Codecs.create(Codecs.DEFAULT, String.class));
+        //包含超过线程保留大小的记录，输出缓冲丢弃后重新分配
+        int[] lengths = {0, 1, 127, 128, 4096, ThreadLocalKryo.RETAINED_BUFFER_SIZE + 1, 16};
+        for (int i = 0; i < lengths.length; i++) {
+            String item = payload(lengths[i]);
+            int encoded = serializer.toBytes(item).length;
+            long key = i;
+            client.write(txn -> {
+                serializer.write(dbi, txn, ByteBufferUtil.longKey(key), item);
+                txn.commit();
+                return null;
+            });
+            //预留长度与编码长度一致，没有多余的尾部
+            ByteBuffer value = client.read(txn -> copy(dbi.get(txn, ByteBufferUtil.longKey(key))));
+            Assert.assertEquals(encoded, value.remaining());
+            Assert.assertEquals(item, serializer.read(value));
+        }
+    }
+
+    @Test
+    public void putSerialized() {
+        LmdbSerializer<HashMap> serializer = new LmdbSerializer<>(Codecs.create(Codecs.DEFAULT, HashMap.class));
+        HashMap<String, Object> item = new HashMap<>();
+        //变长整数在各个长度边界上
+        item.put("small", 1);
+        item.put("varint", 300);
+        item.put("large", Long.MAX_VALUE);
+        item.put("text", payload(1000));
+        Output out = serializer.serialize(item);
+        int length = out.position();
+        client.write(txn -> {
+            serializer.put(dbi, txn, ByteBufferUtil.longKey(1), out);
+            txn.commit();
+            return null;
+        });
+        byte[] value = client.read(txn -> ByteBufferUtil.byteBufferToBytes(dbi.get(txn, ByteBufferUtil.longKey(1))));
+        Assert.assertEquals(length, value.length);
+        Assert.assertEquals(item, serializer.read(value));
+    }
+
+    /**
+     * 读事务结束后映射内存可能被复用，拷贝到堆内
+     */
+    private static ByteBuffer copy(ByteBuffer value) {
+        ByteBuffer copy = ByteBuffer.allocate(value.remaining());
+        copy.put(value).flip();
+        return copy;
+    }
+
+    private static String payload(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
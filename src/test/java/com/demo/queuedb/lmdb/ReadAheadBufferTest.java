@@ -0,0 +1,89 @@
+package com.demo.queuedb.lmdb;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 队列头部的预读缓冲
+ */
+public class ReadAheadBufferTest {
+
+    /**
+     * 已提交的记录，下标即指针位，每条按10字节计算
+     */
+    private final List<String> log = new CopyOnWriteArrayList<>();
+
+    private final ReadAheadBuffer.Loader<String> loader = (from, maxEntries, maxBytes, out) -> {
+        long bytes = 0;
+        for (long i = from; i < log.size() && out.size() < maxEntries && bytes < maxBytes; i++) {
+            out.add(new ReadAheadBuffer.Entry<>(i, log.get((int) i), 10));
+            bytes += 10;
+        }
+    };
+
+    @Test
+    public void boundedByEntries() throws InterruptedException {
+        log.addAll(Arrays.asList("a", "b", "c", "d", "e"));
+        ReadAheadBuffer<String> buffer = new ReadAheadBuffer<>("read-ahead-test", 0, 3, Long.MAX_VALUE, loader);
+        try {
+            await(() -> buffer.get(0, 10).size() == 3);
+            Assert.assertEquals(Arrays.asList("a", "b", "c"), buffer.get(0, 10));
+            Assert.assertEquals(Arrays.asList("a", "b"), buffer.get(0, 2));
+            Assert.assertEquals("a", buffer.peek(0));
+            //不是头指针时不使用缓存
+            Assert.assertNull(buffer.peek(1));
+            Assert.assertTrue(buffer.get(1, 10).isEmpty());
+            //出队后继续预读
+            buffer.advance(2);
+            await(() -> buffer.get(2, 10).size() == 3);
+            Assert.assertEquals(Arrays.asList("c", "d", "e"), buffer.get(2, 10));
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void boundedByBytes() throws InterruptedException {
+        log.addAll(Arrays.asList("a", "b", "c", "d", "e"));
+        ReadAheadBuffer<String> buffer = new ReadAheadBuffer<>("read-ahead-test", 0, 100, 20, loader);
+        try {
+            await(() -> buffer.get(0, 10).size() == 2);
+            Thread.sleep(50);
+            Assert.assertEquals(Arrays.asList("a", "b"), buffer.get(0, 10));
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void signalAndSkip() throws InterruptedException {
+        ReadAheadBuffer<String> buffer = new ReadAheadBuffer<>("read-ahead-test", 0, 100, Long.MAX_VALUE, loader);
+        try {
+            log.addAll(Arrays.asList("a", "b", "c"));
+            //新记录提交后唤醒预读
+            buffer.signal();
+            await(() -> buffer.get(0, 10).size() == 3);
+            //消费者越过预读位置后从新的头指针继续
+            log.addAll(Arrays.asList("d", "e", "f"));
+            buffer.advance(5);
+            await(() -> "f".equals(buffer.peek(5)));
+            Assert.assertEquals(Arrays.asList("f"), buffer.get(5, 10));
+        } finally {
+            buffer.close();
+        }
+        Assert.assertNull(buffer.peek(5));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.demo.queuedb.metrics;
+
+import com.demo.queuedb.bdb.BdbQueue;
+import com.demo.queuedb.bdb.BdbQueueConfig;
+import com.demo.queuedb.lmdb.LmdbQueue;
+import com.demo.queuedb.lmdb.LmdbQueueConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Micrometer的队列埋点
+ */
+public class MicrometerQueueMetricsTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    public void lmdb() throws Exception {
+        LmdbQueueConfig config = new LmdbQueueConfig().setEnvPath(folder.newFolder().getPath()).setDbName("metrics").setMapSize(64 * MB)
+                .setMetrics(new MicrometerQueueMetrics(registry, "metrics", "lmdb"));
+        try (LmdbQueue<String> queue = new LmdbQueue<>(config, String.class)) {
+            Assert.assertTrue(queue.offer("a"));
+            Assert.assertTrue(queue.offerAll(Arrays.asList("b", "c", "d")));
+            Assert.assertEquals("a", queue.peek());
+            Assert.assertEquals("a", queue.poll());
+            //每次入队记录一次耗时，批次大小按记录数
+            Assert.assertEquals(2, timer("queue.offer").count());
+            Assert.assertEquals(4, registry.get("queue.offer.batch").tags("queue", "metrics", "backend", "lmdb").summary().totalAmount(), 0);
+            Assert.assertEquals(1, timer("queue.poll").count());
+            Assert.assertEquals(1, timer("queue.peek").count());
+            Assert.assertEquals(3, gauge("queue.size"), 0);
+            Assert.assertTrue(gauge("queue.lmdb.map.used") > 0);
+            Assert.assertEquals(64 * MB, gauge("queue.lmdb.map.size"), 0);
+            //最早记录的等待时间随时间增长，队列为空时为0
+            Thread.sleep(20);
+            Assert.assertTrue(registry.get("queue.oldest.age").timeGauge().value(TimeUnit.MILLISECONDS) >= 20);
+            queue.clear();
+            Assert.assertEquals(0, registry.get("queue.oldest.age").timeGauge().value(TimeUnit.MILLISECONDS), 0);
+        }
+        //关闭后移除Gauge，计时指标保留
+        Assert.assertNull(registry.find("queue.size").gauge());
+        Assert.assertNotNull(registry.find("queue.offer").timer());
+    }
+
+    @Test
+    public void bdb() throws IOException {
+        BdbQueueConfig config = new BdbQueueConfig().setDbDir(folder.newFolder().getPath()).setDbName("metrics")
+                .setMetrics(new MicrometerQueueMetrics(registry, "metrics", "bdb"));
+        try (BdbQueue<String> queue = new BdbQueue<>(config, String.class)) {
+            Assert.assertTrue(queue.offerAll(Arrays.asList("a", "b")));
+            queue.sync();
+            Assert.assertEquals(2, gauge("queue.size"), 0);
+            Assert.assertTrue(gauge("queue.bdb.log.size") > 0);
+            Assert.assertTrue(gauge("queue.bdb.cache.bytes") > 0);
+            Assert.assertEquals(1, timer("queue.sync").count());
+        }
+        Assert.assertNull(registry.find("queue.bdb.log.size").gauge());
+    }
+
+    private Timer timer(String name) {
+        return registry.get(name).timer();
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).gauge().value();
+    }
+}
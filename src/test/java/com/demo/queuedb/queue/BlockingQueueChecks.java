@@ -0,0 +1,210 @@
+package com.demo.queuedb.queue;
+
+import com.demo.queuedb.util.BlockingSupport;
+import org.junit.Assert;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各后端共用的BlockingQueue行为检查：拒绝null、空时等待、满时等待、关闭唤醒等待者
+ */
+public final class BlockingQueueChecks {
+
+    /**
+     * 等待者应保持阻塞的观察时间
+     */
+    private static final long BLOCKED_MILLIS = 100;
+
+    /**
+     * 唤醒后结果的最长等待时间
+     */
+    private static final long WAKE_SECONDS = 5;
+
+    private BlockingQueueChecks() {
+    }
+
+    /**
+     * 按容量打开一个新的空队列
+     */
+    public interface QueueFactory {
+        /**
+         * Open persistent queue.
+         *
+         * @param capacity the capacity
+         * @return the persistent queue
+         * @throws IOException the io exception
+         */
+        PersistentQueue<String> open(int capacity) throws IOException;
+    }
+
+    /**
+     * 可能抛出异常的操作
+     */
+    private interface Action {
+        /**
+         * Run.
+         *
+         * @throws Exception the exception
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * 执行全部检查，每项使用新打开的队列
+     *
+     * @param factory the factory
+     * @throws Exception the exception
+     */
+    public static void check(QueueFactory factory) throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            try (PersistentQueue<String> queue = factory.open(BlockingSupport.UNBOUNDED)) {
+                rejectsNull(queue);
+                waitsWhenEmpty(queue, executor);
+            }
+            try (PersistentQueue<String> queue = factory.open(1)) {
+                waitsWhenFull(queue, executor);
+            }
+            closeWakesConsumer(factory.open(BlockingSupport.UNBOUNDED), executor);
+            closeWakesProducer(factory.open(1), executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 所有入队方法拒绝null，且不写入任何记录
+     *
+     * @param queue the queue
+     */
+    private static void rejectsNull(PersistentQueue<String> queue) {
+        expect(NullPointerException.class, () -> queue.offer(null));
+        expect(NullPointerException.class, () -> queue.put(null));
+        expect(NullPointerException.class, () -> queue.offer(null, 1, TimeUnit.MILLISECONDS));
+        expect(NullPointerException.class, () -> queue.offerAll(Arrays.asList("a", null)));
+        Assert.assertEquals(0, queue.size());
+        Assert.assertNull(queue.poll());
+    }
+
+    /**
+     * 空队列上poll(timeout)等待到超时，take等待到有数据写入
+     *
+     * @param queue    the queue
+     * @param executor the executor
+     * @throws Exception the exception
+     */
+    private static void waitsWhenEmpty(PersistentQueue<String> queue, ExecutorService executor) throws Exception {
+        long start = System.nanoTime();
+        Assert.assertNull(queue.poll(BLOCKED_MILLIS, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(BLOCKED_MILLIS));
+        Future<String> taken = executor.submit(queue::take);
+        Thread.sleep(BLOCKED_MILLIS);
+        Assert.assertFalse(taken.isDone());
+        queue.put("a");
+        Assert.assertEquals("a", taken.get(WAKE_SECONDS, TimeUnit.SECONDS));
+        Future<String> polled = executor.submit(() -> queue.poll(WAKE_SECONDS, TimeUnit.SECONDS));
+        Thread.sleep(BLOCKED_MILLIS);
+        Assert.assertTrue(queue.offer("b"));
+        Assert.assertEquals("b", polled.get(WAKE_SECONDS, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 容量为1的队列写满后offer失败，offer(timeout)等待到超时，put等待到有数据出队
+     *
+     * @param queue    the queue
+     * @param executor the executor
+     * @throws Exception the exception
+     */
+    private static void waitsWhenFull(PersistentQueue<String> queue, ExecutorService executor) throws Exception {
+        Assert.assertEquals(1, queue.remainingCapacity());
+        Assert.assertTrue(queue.offer("a"));
+        Assert.assertEquals(0, queue.remainingCapacity());
+        Assert.assertFalse(queue.offer("b"));
+        Assert.assertFalse(queue.offerAll(Arrays.asList("b", "c")));
+        long start = System.nanoTime();
+        Assert.assertFalse(queue.offer("b", BLOCKED_MILLIS, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(BLOCKED_MILLIS));
+        Future<?> put = executor.submit(() -> {
+            queue.put("b");
+            return null;
+        });
+        Thread.sleep(BLOCKED_MILLIS);
+        Assert.assertFalse(put.isDone());
+        Assert.assertEquals("a", queue.poll());
+        put.get(WAKE_SECONDS, TimeUnit.SECONDS);
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals("b", queue.poll());
+        Assert.assertEquals(1, queue.remainingCapacity());
+    }
+
+    /**
+     * 关闭唤醒take中的消费者，抛出IllegalStateException
+     *
+     * @param queue    the queue
+     * @param executor the executor
+     * @throws Exception the exception
+     */
+    private static void closeWakesConsumer(PersistentQueue<String> queue, ExecutorService executor) throws Exception {
+        Future<String> taken = executor.submit(queue::take);
+        Thread.sleep(BLOCKED_MILLIS);
+        Assert.assertFalse(taken.isDone());
+        queue.close();
+        expectClosed(taken);
+    }
+
+    /**
+     * 关闭唤醒put中的生产者，抛出IllegalStateException
+     *
+     * @param queue    容量为1的队列
+     * @param executor the executor
+     * @throws Exception the exception
+     */
+    private static void closeWakesProducer(PersistentQueue<String> queue, ExecutorService executor) throws Exception {
+        Assert.assertTrue(queue.offer("a"));
+        Future<?> put = executor.submit(() -> {
+            queue.put("b");
+            return null;
+        });
+        Thread.sleep(BLOCKED_MILLIS);
+        Assert.assertFalse(put.isDone());
+        queue.close();
+        expectClosed(put);
+    }
+
+    /**
+     * 等待者在关闭后抛出IllegalStateException
+     *
+     * @param future the future
+     * @throws Exception the exception
+     */
+    private static void expectClosed(Future<?> future) throws Exception {
+        try {
+            future.get(WAKE_SECONDS, TimeUnit.SECONDS);
+            Assert.fail("waiter returned after close");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * 操作抛出指定类型的异常
+     *
+     * @param type   the type
+     * @param action the action
+     */
+    private static void expect(Class<? extends Throwable> type, Action action) {
+        try {
+            action.run();
+        } catch (Throwable e) {
+            Assert.assertTrue(String.valueOf(e), type.isInstance(e));
+            return;
+        }
+        Assert.fail("expected " + type.getSimpleName());
+    }
+}
@@ -0,0 +1,114 @@
+package com.demo.queuedb.queue;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分区队列
+ */
+public class PartitionedQueueTest {
+
+    @Test
+    public void routeByKey() {
+        PartitionedQueue<Integer, ArrayBlockingQueue<Integer>> queue = new PartitionedQueue<>(3, i -> new ArrayBlockingQueue<>(100), e -> e);
+        for (int i = 0; i < 30; i++) {
+            Assert.assertTrue(queue.offer(i));
+        }
+        Assert.assertEquals(30, queue.size());
+        //同一个key落在同一分区，分区内有序
+        for (int p = 0; p < 3; p++) {
+            List<Integer> items = new ArrayList<>(queue.partition(p));
+            Assert.assertEquals(10, items.size());
+            for (int i = 0; i < items.size(); i++) {
+                Assert.assertEquals(p + i * 3, (int) items.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void roundRobinSkipsFullPartition() {
+        PartitionedQueue<Integer, ArrayBlockingQueue<Integer>> queue = new PartitionedQueue<>(2, i -> new ArrayBlockingQueue<>(2));
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(queue.offer(i));
+        }
+        Assert.assertFalse(queue.offer(4));
+        Assert.assertEquals(0, queue.remainingCapacity());
+    }
+
+    @Test
+    public void drainAll() {
+        PartitionedQueue<Integer, ArrayBlockingQueue<Integer>> queue = new PartitionedQueue<>(4, i -> new ArrayBlockingQueue<>(1000));
+        for (int i = 0; i < 2000; i++) {
+            Assert.assertTrue(queue.offer(i));
+        }
+        List<Integer> drained = new ArrayList<>();
+        Assert.assertEquals(100, queue.drainTo(drained, 100));
+        Assert.assertEquals(1900, queue.drainTo(drained));
+        Assert.assertTrue(queue.isEmpty());
+        drained.sort(Integer::compareTo);
+        for (int i = 0; i < 2000; i++) {
+            Assert.assertEquals(i, (int) drained.get(i));
+        }
+    }
+
+    @Test
+    public void pollTimeout() throws InterruptedException {
+        PartitionedQueue<Integer, ArrayBlockingQueue<Integer>> queue = new PartitionedQueue<>(2, i -> new ArrayBlockingQueue<>(10));
+        long start = System.nanoTime();
+        Assert.assertNull(queue.poll(120, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(120));
+    }
+
+    @Test
+    public void takeWakesOnOffer() throws Exception {
+        PartitionedQueue<Integer, ArrayBlockingQueue<Integer>> queue = new PartitionedQueue<>(4, i -> new ArrayBlockingQueue<>(10));
+        CompletableFuture<Integer> taken = new CompletableFuture<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                taken.complete(queue.take());
+            } catch (Throwable e) {
+                taken.completeExceptionally(e);
+            }
+        });
+        consumer.start();
+        Thread.sleep(100);
+        Assert.assertFalse(taken.isDone());
+        Assert.assertTrue(queue.offer(7));
+        Assert.assertEquals(7, (int) taken.get(1, TimeUnit.SECONDS));
+        //直接写入分区的记录在一个等待时间片内被读到
+        CompletableFuture<Integer> direct = CompletableFuture.supplyAsync(() -> {
+            try {
+                return queue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(20);
+        Assert.assertTrue(queue.partition(3).offer(8));
+        Assert.assertEquals(8, (int) direct.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void closeWakesConsumer() throws Exception {
+        PartitionedQueue<Integer, ArrayBlockingQueue<Integer>> queue = new PartitionedQueue<>(2, i -> new ArrayBlockingQueue<>(10));
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.take();
+                failure.complete(null);
+            } catch (Throwable e) {
+                failure.complete(e);
+            }
+        });
+        consumer.start();
+        Thread.sleep(100);
+        queue.close();
+        Assert.assertTrue(failure.get(1, TimeUnit.SECONDS) instanceof IllegalStateException);
+    }
+}
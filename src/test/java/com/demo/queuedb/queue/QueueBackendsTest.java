@@ -0,0 +1,61 @@
+package com.demo.queuedb.queue;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 通过SPI切换存储后端
+ */
+public class QueueBackendsTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void registered() {
+        List<String> names = new ArrayList<>();
+        for (QueueBackend backend : QueueBackends.all()) {
+            names.add(backend.name());
+        }
+        Assert.assertEquals(Arrays.asList("lmdb", "bdb", "segment"), names);
+        Assert.assertEquals("lmdb", QueueBackends.get("LMDB").name());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknown() {
+        QueueBackends.get("redis");
+    }
+
+    @Test
+    public void sameCodeOnEveryBackend() throws IOException {
+        for (QueueBackend backend : QueueBackends.all()) {
+            QueueSpec spec = new QueueSpec().setName("demo").setPath(folder.newFolder(backend.name()).getPath()).setMapSize(64 * MB).setCapacity(10);
+            try (PersistentQueue<String> queue = backend.open(spec, String.class)) {
+                Assert.assertTrue(backend.name(), queue.offerAll(Arrays.asList("a", "b", "c")));
+                //整批超出容量时整批失败
+                Assert.assertFalse(backend.name(), queue.offerAll(Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8")));
+                Assert.assertEquals(backend.name(), "a", queue.poll());
+                QueueStats stats = queue.stats();
+                Assert.assertEquals(backend.name(), 2, stats.getSize());
+                Assert.assertEquals(backend.name(), 8, stats.getRemainingCapacity());
+                queue.sync();
+            }
+            //重新打开后继续读取
+            try (PersistentQueue<String> queue = backend.open(spec, String.class)) {
+                Assert.assertEquals(backend.name(), 2, queue.longSize());
+                Assert.assertEquals(backend.name(), "b", queue.poll());
+                Assert.assertEquals(backend.name(), "c", queue.poll());
+                Assert.assertNull(backend.name(), queue.poll());
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.demo.queuedb.queue;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 刷盘模式
+ */
+public class SyncerTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger syncs = new AtomicInteger();
+
+    private final AtomicLong syncedRecords = new AtomicLong();
+
+    private final QueueMetrics metrics = new QueueMetrics() {
+        @Override
+        public void recordSync(long nanos, long records) {
+            syncedRecords.addAndGet(records);
+        }
+    };
+
+    @Test
+    public void none() throws InterruptedException {
+        try (Syncer syncer = new Syncer("syncer-test", SyncMode.NONE, 10, 0, syncs::incrementAndGet, metrics)) {
+            syncer.written(3);
+            Thread.sleep(20);
+            //只记录丢失窗口，不自动刷盘
+            Assert.assertEquals(3, syncer.unsyncedRecords());
+            Assert.assertTrue(syncer.unsyncedAgeNanos() > 0);
+            Assert.assertEquals(0, syncs.get());
+            syncer.sync();
+            Assert.assertEquals(0, syncer.unsyncedRecords());
+            Assert.assertEquals(0, syncer.unsyncedAgeNanos());
+            Assert.assertEquals(3, syncedRecords.get());
+        }
+    }
+
+    @Test
+    public void syncEveryCommit() {
+        try (Syncer syncer = new Syncer("syncer-test", SyncMode.SYNC, 0, 0, syncs::incrementAndGet, metrics)) {
+            //每次提交都已刷盘，没有丢失窗口
+            syncer.written(3);
+            Assert.assertEquals(0, syncer.unsyncedRecords());
+            Assert.assertEquals(0, syncer.unsyncedAgeNanos());
+        }
+        Assert.assertEquals(0, syncs.get());
+    }
+
+    @Test
+    public void periodicByInterval() throws InterruptedException {
+        try (Syncer syncer = new Syncer("syncer-test", SyncMode.PERIODIC, 20, 0, syncs::incrementAndGet, metrics)) {
+            syncer.written(2);
+            await(() -> syncer.unsyncedRecords() == 0);
+            Assert.assertTrue(syncs.get() >= 1);
+            Assert.assertEquals(2, syncedRecords.get());
+        }
+    }
+
+    @Test
+    public void periodicByRecords() throws InterruptedException {
+        try (Syncer syncer = new Syncer("syncer-test", SyncMode.PERIODIC, 0, 10, syncs::incrementAndGet, metrics)) {
+            syncer.written(5);
+            Thread.sleep(50);
+            Assert.assertEquals(0, syncs.get());
+            //达到记录数后立即刷盘
+            syncer.written(5);
+            await(() -> syncer.unsyncedRecords() == 0);
+            Assert.assertEquals(1, syncs.get());
+        }
+    }
+
+    @Test
+    public void finalSyncOnClose() {
+        Syncer syncer = new Syncer("syncer-test", SyncMode.PERIODIC, 60000, 0, syncs::incrementAndGet, metrics);
+        syncer.written(4);
+        syncer.close();
+        Assert.assertEquals(1, syncs.get());
+        Assert.assertEquals(0, syncer.unsyncedRecords());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void periodicRequiresTrigger() {
+        new Syncer("syncer-test", SyncMode.PERIODIC, 0, 0, syncs::incrementAndGet, metrics);
+    }
+
+    @Test
+    public void backends() throws Exception {
+        for (QueueBackend backend : QueueBackends.all()) {
+            for (SyncMode mode : SyncMode.values()) {
+                QueueSpec spec = new QueueSpec().setName("sync").setPath(folder.newFolder().getPath()).setMapSize(64 * MB)
+                        .setSyncMode(mode).setSyncIntervalMillis(20);
+                try (PersistentQueue<String> queue = backend.open(spec, String.class)) {
+                    String name = backend.name() + " " + mode;
+                    Assert.assertTrue(name, queue.offerAll(Arrays.asList("a", "b")));
+                    if (mode == SyncMode.SYNC) {
+                        Assert.assertEquals(name, 0, queue.unsyncedRecords());
+                    } else if (mode == SyncMode.PERIODIC) {
+                        await(() -> queue.unsyncedRecords() == 0);
+                    } else {
+                        Assert.assertEquals(name, 2, queue.unsyncedRecords());
+                        queue.sync();
+                        Assert.assertEquals(name, 0, queue.unsyncedRecords());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.demo.queuedb.segment;
+
+import com.demo.queuedb.queue.BlockingQueueChecks;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 段文件队列
+ */
+public class SegmentQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void blockingQueue() throws Exception {
+        BlockingQueueChecks.check(capacity -> new SegmentQueue<>(new SegmentQueueConfig().setDir(folder.newFolder().getPath()).setName("blocking")
+                .setSegmentSize(64 * 1024).setCapacity(capacity), String.class));
+    }
+
+    @Test
+    public void rolloverAndRestart() throws IOException {
+        //段大小4K，每段只能容纳几条记录
+        Path dir = folder.newFolder().toPath();
+        SegmentQueueConfig config = new SegmentQueueConfig().setDir(dir.toString()).setName("rollover").setSegmentSize(4096);
+        String payload = payload(512);
+        try (SegmentQueue<String> queue = new SegmentQueue<>(config, String.class)) {
+            for (int i = 0; i < 100; i++) {
+                Assert.assertTrue(queue.offer(i + payload));
+            }
+            long segments = segmentFiles(dir);
+            Assert.assertTrue(segments > 1);
+            for (int i = 0; i < 30; i++) {
+                Assert.assertEquals(i + payload, queue.poll());
+            }
+            //已读完的段被删除
+            Assert.assertTrue(segmentFiles(dir) < segments);
+        }
+        //重启后从检查点继续，顺序不变
+        try (SegmentQueue<String> queue = new SegmentQueue<>(config, String.class)) {
+            Assert.assertEquals(70, queue.size());
+            int i = 30;
+            try (SegmentQueue<String>.SegmentIterator iterator = queue.iterator()) {
+                while (iterator.hasNext()) {
+                    Assert.assertEquals(i++ + payload, iterator.next());
+                }
+            }
+            Assert.assertEquals(100, i);
+            Assert.assertTrue(queue.offer(100 + payload));
+            for (i = 30; i <= 100; i++) {
+                Assert.assertEquals(i + payload, queue.poll());
+            }
+            Assert.assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    public void drainAll() throws IOException {
+        SegmentQueueConfig config = new SegmentQueueConfig().setDir(folder.newFolder().getPath()).setName("drain").setSegmentSize(64 * 1024);
+        try (SegmentQueue<Integer> queue = new SegmentQueue<>(config, Integer.class)) {
+            List<Integer> items = new ArrayList<>();
+            for (int i = 0; i < 3000; i++) {
+                items.add(i);
+            }
+            Assert.assertTrue(queue.offerAll(items));
+            //超过一批的数据分批取出
+            List<Integer> drained = new ArrayList<>();
+            Assert.assertEquals(3000, queue.drainTo(drained));
+            Assert.assertEquals(items, drained);
+            Assert.assertEquals(0, queue.size());
+            Assert.assertEquals(0, queue.drainTo(drained));
+        }
+    }
+
+    /**
+     * 目录中的段文件数
+     *
+     * @param dir the dir
+     * @return the long
+     * @throws IOException the io exception
+     */
+    private static long segmentFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".seg")).count();
+        }
+    }
+
+    private static String payload(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
@@ -0,0 +1,94 @@
+package com.demo.queuedb.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 容量许可与等待
+ */
+public class BlockingSupportTest {
+
+    @Test
+    public void overCapacityOnReopen() {
+        //重新打开时已有5条，容量2：先出队的3条只抵扣超出部分
+        BlockingSupport blocking = new BlockingSupport(2, 5);
+        Assert.assertEquals(0, blocking.remainingCapacity());
+        Assert.assertFalse(blocking.tryAcquire(1));
+        blocking.release(3);
+        Assert.assertEquals(0, blocking.remainingCapacity());
+        blocking.release(2);
+        Assert.assertEquals(2, blocking.remainingCapacity());
+        Assert.assertTrue(blocking.tryAcquire(2));
+        Assert.assertFalse(blocking.tryAcquire(1));
+    }
+
+    @Test
+    public void unbounded() throws InterruptedException {
+        BlockingSupport blocking = new BlockingSupport(BlockingSupport.UNBOUNDED, 100);
+        Assert.assertTrue(blocking.tryAcquire(1000));
+        Assert.assertTrue(blocking.tryAcquire(1000, 1, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(BlockingSupport.UNBOUNDED, blocking.remainingCapacity());
+    }
+
+    @Test
+    public void timedAcquire() throws InterruptedException {
+        BlockingSupport blocking = new BlockingSupport(1, 1);
+        long start = System.nanoTime();
+        Assert.assertFalse(blocking.tryAcquire(1, 120, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(120));
+        blocking.release(1);
+        Assert.assertTrue(blocking.tryAcquire(1, 120, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void closeWakesWaiters() throws Exception {
+        BlockingSupport blocking = new BlockingSupport(1, 1);
+        CompletableFuture<Boolean> consumer = CompletableFuture.supplyAsync(() -> await(blocking));
+        CompletableFuture<Boolean> producer = CompletableFuture.supplyAsync(() -> acquire(blocking));
+        Thread.sleep(100);
+        Assert.assertFalse(consumer.isDone());
+        Assert.assertFalse(producer.isDone());
+        blocking.close();
+        expectClosed(consumer);
+        expectClosed(producer);
+        //关闭后不再等待
+        try {
+            blocking.acquire(1);
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+            Assert.assertEquals("queue closed", expected.getMessage());
+        }
+    }
+
+    private static boolean await(BlockingSupport blocking) {
+        try {
+            return blocking.awaitNotEmpty(() -> true, Long.MAX_VALUE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static boolean acquire(BlockingSupport blocking) {
+        try {
+            blocking.acquire(1);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void expectClosed(CompletableFuture<Boolean> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
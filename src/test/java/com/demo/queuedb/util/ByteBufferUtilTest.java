@@ -0,0 +1,97 @@
+package com.demo.queuedb.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 线程内复用的key缓冲区
+ */
+public class ByteBufferUtilTest {
+
+    @Test
+    public void longKeyReused() {
+        ByteBuffer key = ByteBufferUtil.longKey(42);
+        Assert.assertTrue(key.isDirect());
+        Assert.assertEquals(0, key.position());
+        Assert.assertEquals(Long.BYTES, key.remaining());
+        Assert.assertEquals(42, key.getLong(0));
+        //同一线程复用同一个缓冲区，下一次调用覆盖内容
+        Assert.assertSame(key, ByteBufferUtil.longKey(7));
+        Assert.assertEquals(7, key.getLong(0));
+        //key与value互不覆盖
+        ByteBuffer value = ByteBufferUtil.longValue(9);
+        Assert.assertNotSame(key, value);
+        Assert.assertEquals(7, key.getLong(0));
+        Assert.assertEquals(9, value.getLong(0));
+    }
+
+    @Test
+    public void longKeyPerThread() throws Exception {
+        ByteBuffer key = ByteBufferUtil.longKey(1);
+        ByteBuffer other = CompletableFuture.supplyAsync(() -> ByteBufferUtil.longKey(2)).get();
+        Assert.assertNotSame(key, other);
+        Assert.assertEquals(1, key.getLong(0));
+    }
+
+    @Test
+    public void byteOrder() {
+        //大端key按字节比较与数值顺序一致
+        ByteBuffer key = ByteBufferUtil.longKey(0x0102030405060708L);
+        Assert.assertEquals(1, key.get(0));
+        Assert.assertEquals(8, key.get(7));
+        Assert.assertEquals(0x0102030405060708L, ByteBufferUtil.readLong(key, ByteOrder.BIG_ENDIAN));
+        ByteBuffer nativeKey = ByteBufferUtil.nativeLongKey(0x0102030405060708L);
+        Assert.assertEquals(ByteOrder.nativeOrder(), nativeKey.order());
+        Assert.assertEquals(0x0102030405060708L, ByteBufferUtil.readLong(nativeKey, ByteOrder.nativeOrder()));
+        //readLong不修改缓冲区的字节序与读取位置
+        ByteOrder order = nativeKey.order();
+        ByteBufferUtil.readLong(nativeKey, ByteOrder.BIG_ENDIAN);
+        Assert.assertEquals(order, nativeKey.order());
+        Assert.assertEquals(0, nativeKey.position());
+    }
+
+    @Test
+    public void compositeKey() {
+        ByteBuffer key = ByteBufferUtil.compositeKey(3, 5);
+        Assert.assertEquals(Integer.BYTES + Long.BYTES, key.remaining());
+        Assert.assertEquals(3, key.getInt(0));
+        Assert.assertEquals(5, key.getLong(Integer.BYTES));
+        //先比较high，high相同再比较low
+        byte[] low = bytes(ByteBufferUtil.compositeKey(1, Long.MAX_VALUE));
+        byte[] high = bytes(ByteBufferUtil.compositeKey(2, 0));
+        byte[] next = bytes(ByteBufferUtil.compositeKey(2, 1));
+        Assert.assertTrue(compareUnsigned(low, high) < 0);
+        Assert.assertTrue(compareUnsigned(high, next) < 0);
+    }
+
+    @Test
+    public void bytesRoundTrip() {
+        Assert.assertEquals(-3L, ByteBufferUtil.bytesToLong(ByteBufferUtil.longToBytes(-3L)));
+        ByteBuffer buffer = ByteBufferUtil.bytesToByteBuffer(new byte[]{1, 2, 3});
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, ByteBufferUtil.byteBufferToBytes(buffer));
+        Assert.assertEquals("queue", ByteBufferUtil.byteBufferToString(ByteBufferUtil.stringToByteBuffer("queue")));
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 与LMDB默认比较方式相同，按无符号字节比较
+     */
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int c = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+}
@@ -0,0 +1,87 @@
+package com.demo.queuedb.util;
+
+import com.esotericsoftware.kryo.io.Output;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程私有的Kryo与可复用的输出缓冲
+ */
+public class ThreadLocalKryoTest {
+
+    private final ThreadLocalKryo kryo = new ThreadLocalKryo();
+
+    @Test
+    public void outputReused() {
+        Output out = kryo.serialize("first");
+        int length = out.position();
+        //同一线程复用同一个输出缓冲，序列化结果只占[0, position())
+        Assert.assertSame(out, kryo.serialize("other"));
+        Assert.assertEquals(length, out.position());
+        Assert.assertEquals(ThreadLocalKryo.INITIAL_BUFFER_SIZE, out.getBuffer().length);
+        Assert.assertEquals(length, kryo.toBytes("third").length);
+    }
+
+    @Test
+    public void largeBufferReset() {
+        char[] chars = new char[ThreadLocalKryo.RETAINED_BUFFER_SIZE + 1];
+        Arrays.fill(chars, 'x');
+        Output large = kryo.serialize(new String(chars));
+        Assert.assertTrue(large.getBuffer().length > ThreadLocalKryo.RETAINED_BUFFER_SIZE);
+        //大对象之后恢复初始大小的缓冲
+        Output small = kryo.serialize("small");
+        Assert.assertNotSame(large, small);
+        Assert.assertEquals(ThreadLocalKryo.INITIAL_BUFFER_SIZE, small.getBuffer().length);
+    }
+
+    @Test
+    public void perThreadInstance() throws Exception {
+        Assert.assertSame(kryo.kryo(), kryo.kryo());
+        Assert.assertNotSame(kryo.kryo(), CompletableFuture.supplyAsync(kryo::kryo).get());
+        //多线程并发序列化互不干扰
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            results.add(CompletableFuture.supplyAsync(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    HashMap<String, Object> item = new HashMap<>();
+                    item.put("thread", thread);
+                    item.put("seq", i);
+                    byte[] bytes = kryo.toBytes(item);
+                    if (!item.equals(kryo.deserializeClassAndObject(bytes, 0, bytes.length))) {
+                        return false;
+                    }
+                }
+                return true;
+            }));
+        }
+        for (CompletableFuture<Boolean> result : results) {
+            Assert.assertTrue(result.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void deserialize() {
+        byte[] bytes = kryo.toBytes("queue");
+        Assert.assertEquals("queue", kryo.deserializeClassAndObject(bytes, 0, bytes.length));
+        //从position开始读取，直接内存与堆内数组结果一致
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 3);
+        direct.position(3);
+        direct.put(bytes);
+        direct.position(3);
+        Assert.assertEquals("queue", kryo.deserializeClassAndObject(direct));
+        Output out = ThreadLocalKryo.output();
+        kryo.kryo().writeObjectOrNull(out, 42L, Long.class);
+        byte[] plain = out.toBytes();
+        Assert.assertEquals(Long.valueOf(42), kryo.deserialize(plain, 0, plain.length, Long.class));
+        Assert.assertEquals(Long.valueOf(42), kryo.deserialize(ByteBuffer.wrap(plain), Long.class));
+    }
+}